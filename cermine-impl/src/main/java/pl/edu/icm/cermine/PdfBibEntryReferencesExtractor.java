@@ -19,6 +19,8 @@
 package pl.edu.icm.cermine;
 
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
 import pl.edu.icm.cermine.bibref.BibReferenceExtractor;
 import pl.edu.icm.cermine.bibref.BibReferenceParser;
 import pl.edu.icm.cermine.bibref.CRFBibReferenceParser;
@@ -48,8 +50,7 @@ public class PdfBibEntryReferencesExtractor implements DocumentReferencesExtract
     public PdfBibEntryReferencesExtractor() throws AnalysisException {
         strExtractor = new PdfBxStructureExtractor();
         extractor = new KMeansBibReferenceExtractor();
-        InputStream modelFile = PdfBibEntryReferencesExtractor.class.getResourceAsStream("/pl/edu/icm/cermine/bibref/acrf.ser.gz");
-        parser = new CRFBibReferenceParser(modelFile);
+        parser = CRFBibReferenceParser.getInstance();
     }
     
     public PdfBibEntryReferencesExtractor(InputStream model) throws AnalysisException {
@@ -87,12 +88,8 @@ public class PdfBibEntryReferencesExtractor implements DocumentReferencesExtract
     @Override
     public BibEntry[] extractReferences(BxDocument document) throws AnalysisException {
         String[] refs = extractor.extractBibReferences(document);
-        
-        BibEntry[] parsedRefs = new BibEntry[refs.length];
-        for (int i = 0; i < refs.length; i++) {
-            parsedRefs[i] = parser.parseBibReference(refs[i]);
-        }
-        return parsedRefs;
+        List<BibEntry> parsedRefs = parser.parseBibReferences(Arrays.asList(refs));
+        return parsedRefs.toArray(new BibEntry[parsedRefs.size()]);
     }
 
     public void setExtractor(BibReferenceExtractor extractor) {
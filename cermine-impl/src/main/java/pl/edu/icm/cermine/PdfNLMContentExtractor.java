@@ -32,6 +32,7 @@ import pl.edu.icm.cermine.exception.TransformationException;
 import pl.edu.icm.cermine.structure.SVMAlternativeMetadataZoneClassifier;
 import pl.edu.icm.cermine.structure.ZoneClassifier;
 import pl.edu.icm.cermine.structure.model.BxDocument;
+import pl.edu.icm.cermine.structure.transformers.BinaryBxDocument;
 import pl.edu.icm.cermine.structure.transformers.BxDocumentToTrueVizWriter;
 
 /**
@@ -226,6 +227,7 @@ public class PdfNLMContentExtractor implements DocumentContentExtractor<Element>
         options.addOption("strext", true, "structure file extension");
         options.addOption("modelmeta", true, "path to metadata classifier model");
         options.addOption("modelinit", true, "path to initial classifier model");
+        options.addOption("bxd", false, "store binary structure files and reuse them instead of parsing PDF files");
         
         CommandLineParser clParser = new GnuParser();
         CommandLine line = clParser.parse(options, args);
@@ -235,6 +237,7 @@ public class PdfNLMContentExtractor implements DocumentContentExtractor<Element>
             extension = line.getOptionValue("ext");
         }
         boolean extractStr = line.hasOption("str");
+        boolean useBinaryStr = line.hasOption("bxd");
         String strExtension = "cxml";
         if (line.hasOption("strext")) {
             strExtension = line.getOptionValue("strext");
@@ -267,6 +270,9 @@ public class PdfNLMContentExtractor implements DocumentContentExtractor<Element>
                              + "                            used only if passed path is a directory\n"
                              + "  -strext <extension>       (optional) the extension of the structure (TrueViz) file;\n"
                              + "                            default: \"cxml\"; used only if passed path is a directory\n"
+                             + "  -bxd                      whether to store binary structure files (\".bxd\") and reuse\n"
+                             + "                            them instead of parsing PDF files again;\n"
+                             + "                            used only if passed path is a directory\n"
                              + "  -threads <num>            number of threads for parallel processing\n");
     		System.exit(1);
         }
@@ -311,8 +317,26 @@ public class PdfNLMContentExtractor implements DocumentContentExtractor<Element>
                 if (modelInit != null) {
                     extractor.buildStructureExtractor(new FileInputStream(modelInit), new FileInputStream(modelInitRange));
                 }
-                InputStream in = new FileInputStream(pdf);
-                BxDocument doc = extractor.structureExtractor.extractStructure(in);
+                File bxdF = new File(pdf.getPath().replaceAll("pdf$", "bxd"));
+                BxDocument doc;
+                if (useBinaryStr && bxdF.exists()) {
+                    doc = BinaryBxDocument.map(bxdF).getDocument();
+                } else {
+                    InputStream in = new FileInputStream(pdf);
+                    try {
+                        doc = extractor.structureExtractor.extractStructure(in);
+                    } finally {
+                        in.close();
+                    }
+                    if (useBinaryStr) {
+                        OutputStream bxdStream = new BufferedOutputStream(new FileOutputStream(bxdF));
+                        try {
+                            BinaryBxDocument.write(doc, bxdStream);
+                        } finally {
+                            bxdStream.close();
+                        }
+                    }
+                }
                 Element result = extractor.extractContent(doc);
 
                 long end = System.currentTimeMillis();
@@ -327,7 +351,12 @@ public class PdfNLMContentExtractor implements DocumentContentExtractor<Element>
                 if (extractStr) {
                     BxDocumentToTrueVizWriter writer = new BxDocumentToTrueVizWriter();
                     File strF = new File(pdf.getPath().replaceAll("pdf$", strExtension));
-                    writer.write(new FileWriter(strF), doc.getPages());
+                    Writer strWriter = new FileWriter(strF);
+                    try {
+                        writer.write(strWriter, doc.getPages());
+                    } finally {
+                        strWriter.close();
+                    }
                 }
                 
                 i++;
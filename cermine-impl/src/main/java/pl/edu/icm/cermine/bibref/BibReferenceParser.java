@@ -18,6 +18,7 @@
 
 package pl.edu.icm.cermine.bibref;
 
+import java.util.List;
 import pl.edu.icm.cermine.exception.AnalysisException;
 
 /**
@@ -39,4 +40,13 @@ public interface BibReferenceParser<T> {
      */
 	T parseBibReference(String text) throws AnalysisException;
 
+    /**
+     * Parses texts of a list of references.
+     * 
+     * @param texts
+     * @return Parsed references, in the order of the texts.
+     * @throws AnalysisException 
+     */
+	List<T> parseBibReferences(List<String> texts) throws AnalysisException;
+
 }
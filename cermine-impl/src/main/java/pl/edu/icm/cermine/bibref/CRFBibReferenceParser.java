@@ -18,29 +18,32 @@
 
 package pl.edu.icm.cermine.bibref;
 
-import edu.umass.cs.mallet.base.pipe.Pipe;
-import edu.umass.cs.mallet.base.pipe.iterator.LineGroupIterator;
-import edu.umass.cs.mallet.base.types.InstanceList;
+import edu.umass.cs.mallet.base.types.Instance;
 import edu.umass.cs.mallet.base.types.LabelsSequence;
-import edu.umass.cs.mallet.grmm.learning.ACRF;
 import java.io.*;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.cli.*;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.StringUtils;
 import org.jdom.Element;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
+import pl.edu.icm.cermine.PdfNLMContentExtractor;
 import pl.edu.icm.cermine.bibref.model.BibEntry;
 import pl.edu.icm.cermine.bibref.parsing.model.Citation;
+import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
 import pl.edu.icm.cermine.bibref.parsing.model.CitationTokenLabel;
+import pl.edu.icm.cermine.bibref.parsing.tools.CitationInstanceBuilder;
 import pl.edu.icm.cermine.bibref.parsing.tools.CitationUtils;
 import pl.edu.icm.cermine.bibref.transformers.BibEntryToNLMElementConverter;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.exception.TransformationException;
+import pl.edu.icm.cermine.parsing.tools.ACRFModel;
+import pl.edu.icm.cermine.parsing.tools.LinearChainCRF;
 
 /**
  * CRF-based bibiliographic reference parser.
@@ -51,101 +54,223 @@ public class CRFBibReferenceParser implements BibReferenceParser<BibEntry> {
     
     private static final int MAX_REFERENCE_LENGTH = 2000;
     
-    private ACRF model;
+    private static final int PARALLEL_BATCH_SIZE = 16;
     
-    private static final String defaultModelFile = "/pl/edu/icm/cermine/bibref/acrf.ser.gz";
+    private ACRFModel model;
+    
+    private LinearChainCRF crf;
+    
+    private CitationInstanceBuilder instanceBuilder;
+    
+    private ExecutorService executor;
+    
+    private static final String defaultModelFile = "/pl/edu/icm/cermine/bibref/crf.bin.gz";
     
     private static final String defaultWordsFile = "/pl/edu/icm/cermine/bibref/crf-train-words.txt";
     private Set<String> words;
 
     public CRFBibReferenceParser(String modelFile) throws AnalysisException {
-        System.setProperty("java.util.logging.config.file",
-            "edu/umass/cs/mallet/base/util/resources/logging.properties");
-        InputStream is;
-        ObjectInputStream ois = null;
-        try {
-            is = new FileInputStream(new File(modelFile));
-            ois = new ObjectInputStream(new BufferedInputStream(new GZIPInputStream(is)));
-            model = (ACRF)(ois.readObject());
-        } catch (ClassNotFoundException ex) {
-            throw new AnalysisException("Cannot set model!", ex);
-        } catch (IOException ex) {
-            throw new AnalysisException("Cannot set model!", ex);
-        } finally {
-            try {
-                if (ois != null) {
-                    ois.close();
-                }
-            } catch (IOException ex) {
-                throw new AnalysisException("Cannot set model!", ex);
-            }
-        }
-        
-        words = new HashSet<String>();
-        InputStream wis = CitationUtils.class.getResourceAsStream(defaultWordsFile);
-        try {
-            words.addAll(IOUtils.readLines(wis));
-        } catch (IOException ex) {
-            throw new AnalysisException("Cannot set words!", ex);
-        }
+        this(new ACRFModel(new File(modelFile)));
     }
     
     public CRFBibReferenceParser(InputStream modelInputStream) throws AnalysisException {
-        System.setProperty("java.util.logging.config.file",
-            "edu/umass/cs/mallet/base/util/resources/logging.properties");
-        ObjectInputStream ois = null;
-        try {
-            ois = new ObjectInputStream(new BufferedInputStream(new GZIPInputStream(modelInputStream)));
-            model = (ACRF)(ois.readObject());
-        } catch (IOException ex) {
-            throw new AnalysisException("Cannot set model!", ex);
-        } catch (ClassNotFoundException ex) {
-            throw new AnalysisException("Cannot set model!", ex);
-        } finally {
-            try {
-                if (ois != null) {
-                    ois.close();
-                }
-            } catch (IOException ex) {
-                throw new AnalysisException("Cannot set model!", ex);
-            }
-        }
+        this(new ACRFModel(modelInputStream));
+    }
+
+    /**
+     * @param model the model, possibly shared with other parsers
+     * @throws AnalysisException 
+     */
+    public CRFBibReferenceParser(ACRFModel model) throws AnalysisException {
+        this.model = model;
+        loadWords();
+        instanceBuilder = new CitationInstanceBuilder(model, words);
+    }
+
+    /**
+     * @param crf the linear-chain model, possibly shared with other parsers
+     * @throws AnalysisException 
+     */
+    public CRFBibReferenceParser(LinearChainCRF crf) throws AnalysisException {
+        this.crf = crf;
+        loadWords();
+        instanceBuilder = new CitationInstanceBuilder(crf, words);
+    }
+    
+    private void loadWords() throws AnalysisException {
         words = new HashSet<String>();
         InputStream wis = CitationUtils.class.getResourceAsStream(defaultWordsFile);
         try {
             words.addAll(IOUtils.readLines(wis));
         } catch (IOException ex) {
             throw new AnalysisException("Cannot set words!", ex);
+        } finally {
+            IOUtils.closeQuietly(wis);
         }
     }
 
     @Override
 	public BibEntry parseBibReference(String text) throws AnalysisException {
-        if (text.length() > MAX_REFERENCE_LENGTH) {
-            return new BibEntry().setText(text);
+        return parseBibReferences(Collections.singletonList(text)).get(0);
+    }
+
+    /**
+     * Parses a list of references. Mallet instances of all the references
+     * are built directly from the features of the tokens 
+     * (see {@link CitationInstanceBuilder}) in one instance list and labelled
+     * together. Larger lists are split into batches processed concurrently,
+     * using the executor supplied with {@link #setExecutor(ExecutorService)},
+     * or else a temporary pool of {@link PdfNLMContentExtractor#THREADS_NUMBER}
+     * threads. All the batches are labelled by the same, shared model. 
+     * A linear-chain model (see {@link LinearChainCRF}) decodes the batches 
+     * directly, an ACRF model labels each batch with its own copy of the model.
+     * 
+     * @param texts reference texts
+     * @return parsed references, in the order of the texts
+     * @throws AnalysisException 
+     */
+    @Override
+    public List<BibEntry> parseBibReferences(List<String> texts) throws AnalysisException {
+        List<Citation> citations = parseCitations(texts);
+        List<BibEntry> entries = new ArrayList<BibEntry>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            if (citations.get(i) == null) {
+                entries.add(new BibEntry().setText(texts.get(i)));
+            } else {
+                entries.add(CitationUtils.citationToBibref(citations.get(i)));
+            }
         }
-        
-        if (model == null) {
+        return entries;
+    }
+
+    /**
+     * Tokenizes and labels the references.
+     * 
+     * @param texts reference texts
+     * @return citations with labelled tokens, in the order of the texts,
+     * null for the texts too long to be parsed
+     * @throws AnalysisException 
+     */
+    List<Citation> parseCitations(List<String> texts) throws AnalysisException {
+        if (model == null && crf == null) {
             throw new AnalysisException("Model object is not set!");
         }
         
-        Citation citation = CitationUtils.stringToCitation(text);
-        String data = StringUtils.join(CitationUtils.citationToMalletInputFormat(citation, words), "\n");
+        List<Citation> citations = new ArrayList<Citation>(texts.size());
+        List<Citation> labelled = new ArrayList<Citation>(texts.size());
+        for (String text : texts) {
+            Citation citation = null;
+            if (text.length() <= MAX_REFERENCE_LENGTH) {
+                citation = CitationUtils.stringToCitation(text);
+                if (!citation.getTokens().isEmpty()) {
+                    labelled.add(citation);
+                }
+            }
+            citations.add(citation);
+        }
+        
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int from = 0; from < labelled.size(); from += PARALLEL_BATCH_SIZE) {
+            int to = Math.min(from + PARALLEL_BATCH_SIZE, labelled.size());
+            tasks.add(new LabellingTask(labelled.subList(from, to)));
+        }
+        int threads = Math.min(PdfNLMContentExtractor.THREADS_NUMBER, tasks.size());
+        if (tasks.size() <= 1 || (executor == null && threads <= 1)) {
+            labelCitations(labelled);
+            return citations;
+        }
+        
+        ExecutorService exec = executor;
+        if (exec == null) {
+            exec = Executors.newFixedThreadPool(threads);
+        }
+        try {
+            for (Future<Void> result : exec.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (ExecutionException ex) {
+            throw new AnalysisException("Cannot parse references!", ex);
+        } catch (InterruptedException ex) {
+            throw new AnalysisException("Cannot parse references!", ex);
+        } finally {
+            if (exec != executor) {
+                exec.shutdown();
+            }
+        }
+        return citations;
+    }
+    
+    private void labelCitations(List<Citation> citations) {
+        if (crf != null) {
+            List<String> labels = crf.getLabels();
+            for (Citation citation : citations) {
+                int[] best = crf.getBestLabels(instanceBuilder.getFeatureIds(citation));
+                List<CitationToken> tokens = citation.getTokens();
+                for (int j = 0; j < best.length; j++) {
+                    tokens.get(j).setLabel(CitationTokenLabel.valueOf(labels.get(best[j])));
+                }
+            }
+            return;
+        }
+        
+        List<Instance> instances = new ArrayList<Instance>(citations.size());
+        for (Citation citation : citations) {
+            instances.add(instanceBuilder.toInstance(citation));
+        }
         
-        Pipe pipe = model.getInputPipe();
-        InstanceList instanceList = new InstanceList(pipe);
-        instanceList.add(new LineGroupIterator(new StringReader(data), Pattern.compile ("\\s*"), true)); 
-        LabelsSequence labelSequence = (LabelsSequence)model.getBestLabels(instanceList).get(0);
-           
-        for (int i = 0; i < labelSequence.size(); i++) {
-            citation.getTokens().get(i).setLabel(CitationTokenLabel.valueOf(labelSequence.get(i).toString()));
+        List<LabelsSequence> labelSequences = model.getBestLabels(instances);
+        for (int i = 0; i < citations.size(); i++) {
+            LabelsSequence labelSequence = labelSequences.get(i);
+            List<CitationToken> tokens = citations.get(i).getTokens();
+            for (int j = 0; j < labelSequence.size(); j++) {
+                tokens.get(j).setLabel(CitationTokenLabel.valueOf(labelSequence.get(j).toString()));
+            }
         }
+    }
+    
+    private class LabellingTask implements Callable<Void> {
         
-        return CitationUtils.citationToBibref(citation);
+        private final List<Citation> citations;
+
+        public LabellingTask(List<Citation> citations) {
+            this.citations = citations;
+        }
+
+        @Override
+        public Void call() {
+            labelCitations(citations);
+            return null;
+        }
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to process references in parallel
+     * in {@link #parseBibReferences(List)}. The executor is not shut down
+     * by the parser.
+     * 
+     * @param executor executor, or null to use a temporary thread pool
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
     }
   
+    /**
+     * Creates a parser using the default model, exported from the ACRF model
+     * to the linear-chain format. The model is loaded once and shared 
+     * by all the parsers created by this method.
+     * After the ACRF model is retrained, the default model is regenerated with
+     * {@link LinearChainCRF#main(String[])}: 
+     * <code>-acrf acrf.ser.gz -out crf.bin.gz</code>.
+     * 
+     * @return parser
+     * @throws AnalysisException 
+     */
     public static CRFBibReferenceParser getInstance() throws AnalysisException {
-        return new CRFBibReferenceParser(CRFBibReferenceParser.class.getResourceAsStream(defaultModelFile));
+        return new CRFBibReferenceParser(LinearChainCRF.getInstance(CRFBibReferenceParser.class.getResource(defaultModelFile)));
     }
     
     public static void main(String[] args) throws ParseException, AnalysisException, TransformationException {
@@ -0,0 +1,388 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.icm.cermine.bibref;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import pl.edu.icm.cermine.bibref.model.BibEntry;
+import pl.edu.icm.cermine.bibref.model.BibEntryField;
+import pl.edu.icm.cermine.exception.AnalysisException;
+
+/**
+ * Bibliographic reference parser caching the references parsed by another
+ * parser. The same references appear in many documents, so in large batches
+ * most of them can be taken from the cache instead of being parsed again.
+ * 
+ * The cache is keyed by the normalized text of a reference: ligatures are
+ * expanded, dashes are replaced by hyphen-minus and whitespace sequences
+ * are collapsed to single spaces and trimmed. Only the normalized texts are 
+ * passed to the underlying parser, so a reference gets the same result whether
+ * it is taken from the cache or not. The text of a returned entry is 
+ * the original text of the reference and the indexes of its fields 
+ * are mapped back to the original text.
+ * 
+ * The cache is thread-safe and bounded, the least recently used entries are
+ * evicted first. Cached entries are never shared with the callers, each returned
+ * entry is a copy. Concurrent requests for the same missing reference may parse
+ * it more than once.
+ * 
+ * The content of the cache can be saved to a file and loaded in another run.
+ * The file does not identify the parser, so it has to be removed if the model
+ * of the parser changes.
+ */
+public class CachingBibReferenceParser implements BibReferenceParser<BibEntry> {
+
+    /** "CBRC" */
+    private static final int MAGIC = 0x43425243;
+    private static final int VERSION = 1;
+    
+    private static final String DASHES = "\u2010\u2011\u2012\u2013\u2014\u2015\u2212";
+    
+    private static final String[] LIGATURES = {"ff", "fi", "fl", "ffi", "ffl", "ft", "st"};
+    
+    private final BibReferenceParser<BibEntry> parser;
+    
+    private final Cache<String, BibEntry> cache;
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param parser the parser of the references missing in the cache
+     * @param maximumSize maximum number of cached references
+     */
+    public CachingBibReferenceParser(BibReferenceParser<BibEntry> parser, int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative!");
+        }
+        this.parser = parser;
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    @Override
+    public BibEntry parseBibReference(String text) throws AnalysisException {
+        return parseBibReferences(Collections.singletonList(text)).get(0);
+    }
+
+    /**
+     * Parses a list of references. The references missing in the cache
+     * are parsed by the underlying parser in a single call, the repeated ones
+     * only once.
+     * 
+     * @param texts reference texts
+     * @return parsed references, in the order of the texts
+     * @throws AnalysisException 
+     */
+    @Override
+    public List<BibEntry> parseBibReferences(List<String> texts) throws AnalysisException {
+        List<NormalizedText> normalized = new ArrayList<NormalizedText>(texts.size());
+        Map<String, BibEntry> found = new HashMap<String, BibEntry>();
+        List<String> missing = new ArrayList<String>();
+        for (String text : texts) {
+            NormalizedText normalizedText = new NormalizedText(text);
+            normalized.add(normalizedText);
+            String key = normalizedText.text;
+            if (found.containsKey(key)) {
+                hitCount.incrementAndGet();
+                continue;
+            }
+            BibEntry entry = cache.getIfPresent(key);
+            if (entry == null) {
+                missCount.incrementAndGet();
+                missing.add(key);
+            } else {
+                hitCount.incrementAndGet();
+            }
+            found.put(key, entry);
+        }
+        
+        if (!missing.isEmpty()) {
+            List<BibEntry> parsed = parser.parseBibReferences(missing);
+            for (int i = 0; i < missing.size(); i++) {
+                BibEntry entry = parsed.get(i);
+                if (entry != null) {
+                    entry = entry.copy();
+                    cache.put(missing.get(i), entry);
+                }
+                found.put(missing.get(i), entry);
+            }
+        }
+        
+        List<BibEntry> entries = new ArrayList<BibEntry>(texts.size());
+        for (NormalizedText normalizedText : normalized) {
+            BibEntry entry = found.get(normalizedText.text);
+            entries.add(entry == null ? null : normalizedText.toOriginal(entry));
+        }
+        return entries;
+    }
+
+    /**
+     * @return number of references taken from the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return number of references missing in the cache
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return ratio of the references taken from the cache to all the parsed
+     * references, or 0 if no references were parsed
+     */
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long requests = hits + missCount.get();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    /**
+     * @return number of cached references
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Writes the cached references to the file, replacing its previous content.
+     * 
+     * @param file cache file
+     * @throws IOException 
+     */
+    public void save(File file) throws IOException {
+        Map<String, BibEntry> entries = new HashMap<String, BibEntry>(cache.asMap());
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, BibEntry> entry : entries.entrySet()) {
+                writeString(out, entry.getKey());
+                writeEntry(out, entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace reference cache: " + file);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Cannot write reference cache: " + file);
+        }
+    }
+
+    /**
+     * Adds the references read from the file to the cache.
+     * 
+     * @param file cache file written by {@link #save(File)}
+     * @return number of references read
+     * @throws IOException if the file cannot be read or is not a reference cache
+     */
+    public int load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a reference cache: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported reference cache version: " + version);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(in);
+                cache.put(key, readEntry(in));
+            }
+            return count;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, BibEntry entry) throws IOException {
+        writeString(out, entry.getType());
+        writeString(out, entry.getKey());
+        writeString(out, entry.getText());
+        out.writeInt(entry.getFieldKeys().size());
+        for (String fieldKey : entry.getFieldKeys()) {
+            List<BibEntryField> fields = entry.getAllFields(fieldKey);
+            writeString(out, fieldKey);
+            out.writeInt(fields.size());
+            for (BibEntryField field : fields) {
+                writeString(out, field.getText());
+                out.writeInt(field.getStartIndex());
+                out.writeInt(field.getEndIndex());
+            }
+        }
+    }
+
+    private static BibEntry readEntry(DataInputStream in) throws IOException {
+        BibEntry entry = new BibEntry(readString(in), readString(in));
+        entry.setText(readString(in));
+        int fieldKeyCount = in.readInt();
+        for (int i = 0; i < fieldKeyCount; i++) {
+            String fieldKey = readString(in);
+            int fieldCount = in.readInt();
+            for (int j = 0; j < fieldCount; j++) {
+                String text = readString(in);
+                int startIndex = in.readInt();
+                entry.addField(fieldKey, new BibEntryField(text, startIndex, in.readInt()));
+            }
+        }
+        return entry;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+    
+    /**
+     * Normalized text of a reference, together with the mapping of its
+     * characters to the characters of the original text.
+     */
+    private static final class NormalizedText {
+        
+        private final String original;
+        
+        private final String text;
+        
+        /** the index of the first original character of each normalized character */
+        private final int[] starts;
+        
+        /** the index after the last original character of each normalized character */
+        private final int[] ends;
+        
+        NormalizedText(String original) {
+            this.original = original;
+            int length = original.length();
+            StringBuilder sb = new StringBuilder(length);
+            int[] charStarts = new int[2 * length];
+            int[] charEnds = new int[2 * length];
+            int count = 0;
+            boolean space = false;
+            for (int i = 0; i < length; i++) {
+                char c = original.charAt(i);
+                if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                    space = count > 0;
+                    continue;
+                }
+                if (space) {
+                    charStarts = ensureCapacity(charStarts, count);
+                    charEnds = ensureCapacity(charEnds, count);
+                    sb.append(' ');
+                    charStarts[count] = charEnds[count - 1];
+                    charEnds[count] = i;
+                    count++;
+                    space = false;
+                }
+                String replacement;
+                if (c >= '\uFB00' && c <= '\uFB06') {
+                    replacement = LIGATURES[c - '\uFB00'];
+                } else if (DASHES.indexOf(c) >= 0) {
+                    replacement = "-";
+                } else {
+                    replacement = String.valueOf(c);
+                }
+                for (int j = 0; j < replacement.length(); j++) {
+                    charStarts = ensureCapacity(charStarts, count);
+                    charEnds = ensureCapacity(charEnds, count);
+                    sb.append(replacement.charAt(j));
+                    charStarts[count] = i;
+                    charEnds[count] = i + 1;
+                    count++;
+                }
+            }
+            this.text = sb.toString();
+            this.starts = Arrays.copyOf(charStarts, count);
+            this.ends = Arrays.copyOf(charEnds, count);
+        }
+
+        private static int[] ensureCapacity(int[] array, int count) {
+            return count < array.length ? array : Arrays.copyOf(array, 2 * count + 1);
+        }
+
+        /**
+         * @param entry entry parsed from the normalized text
+         * @return copy of the entry, with the text and the field indexes
+         * of the original reference
+         */
+        BibEntry toOriginal(BibEntry entry) {
+            BibEntry copy = entry.copy();
+            copy.setText(original);
+            for (String fieldKey : copy.getFieldKeys()) {
+                for (BibEntryField field : copy.getAllFields(fieldKey)) {
+                    if (field.getStartIndex() >= 0 && field.getEndIndex() >= field.getStartIndex()) {
+                        field.setIndexes(mapStart(field.getStartIndex()), mapEnd(field.getEndIndex()));
+                    }
+                }
+            }
+            return copy;
+        }
+        
+        private int mapStart(int index) {
+            if (index < starts.length) {
+                return starts[index];
+            }
+            return starts.length == 0 ? 0 : ends[ends.length - 1];
+        }
+        
+        private int mapEnd(int index) {
+            if (index == 0) {
+                return starts.length == 0 ? 0 : starts[0];
+            }
+            return ends[Math.min(index, ends.length) - 1];
+        }
+    }
+
+}
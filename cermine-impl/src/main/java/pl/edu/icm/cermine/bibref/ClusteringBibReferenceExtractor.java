@@ -19,6 +19,7 @@
 package pl.edu.icm.cermine.bibref;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import pl.edu.icm.cermine.bibref.extraction.features.*;
 import pl.edu.icm.cermine.bibref.extraction.model.BxDocumentBibReferences;
 import pl.edu.icm.cermine.bibref.extraction.tools.BibRefExtractionUtils;
@@ -51,6 +52,8 @@ public class ClusteringBibReferenceExtractor implements BibReferenceExtractor {
     
     private int maxRefLines = DEFAULT_MAX_REF_LINES;
     
+    private ExecutorService executor;
+    
     private static final FeatureVectorBuilder<BxLine, BxDocumentBibReferences> VECTOR_BUILDER =
                 new FeatureVectorBuilder<BxLine, BxDocumentBibReferences>();
     static {
@@ -92,6 +95,7 @@ public class ClusteringBibReferenceExtractor implements BibReferenceExtractor {
         
         FeatureVectorClusterizer clusterizer = new FeatureVectorClusterizer();
         clusterizer.setClusterizer(new CompleteLinkageClusterizer(new BibRefLinesClusteringEvaluator()));
+        clusterizer.setExecutor(executor);
         int[] clusters = clusterizer.clusterize(featureVectors.toArray(new FeatureVector[featureVectors.size()]), VECTOR_BUILDER, 
                 new FeatureVectorEuclideanMetric(), bestDistance, false);
         
@@ -174,5 +178,13 @@ public class ClusteringBibReferenceExtractor implements BibReferenceExtractor {
     public void setMaxRefLines(int maxRefLines) {
         this.maxRefLines = maxRefLines;
     }
+
+    /**
+     * @param executor executor used to compute the distances between lines
+     * in parallel, or null
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
     
 }
@@ -21,6 +21,7 @@ package pl.edu.icm.cermine.bibref;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 import pl.edu.icm.cermine.bibref.extraction.features.*;
 import pl.edu.icm.cermine.bibref.extraction.model.BxDocumentBibReferences;
 import pl.edu.icm.cermine.bibref.extraction.tools.BibRefExtractionUtils;
@@ -29,9 +30,7 @@ import pl.edu.icm.cermine.structure.model.BxDocument;
 import pl.edu.icm.cermine.structure.model.BxLine;
 import pl.edu.icm.cermine.tools.classification.clustering.KMeansWithInitialCentroids;
 import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
-import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
-import pl.edu.icm.cermine.tools.classification.metrics.FeatureVectorDistanceMetric;
 import pl.edu.icm.cermine.tools.classification.metrics.FeatureVectorEuclideanMetric;
 
 /**
@@ -45,6 +44,10 @@ public class KMeansBibReferenceExtractor implements BibReferenceExtractor {
     
     public static final int MAX_REFS_COUNT = 1000;
     
+    private static final Pattern DIGIT_PATTERN = Pattern.compile("[0-9]");
+    
+    private static final Pattern LETTER_PATTERN = Pattern.compile("[a-zA-Z]");
+    
     private static final FeatureVectorBuilder<BxLine, BxDocumentBibReferences> VECTOR_BUILDER =
                 new FeatureVectorBuilder<BxLine, BxDocumentBibReferences>();
     static {
@@ -72,61 +75,46 @@ public class KMeansBibReferenceExtractor implements BibReferenceExtractor {
         BxDocumentBibReferences documentReferences = BibRefExtractionUtils.extractBibRefLines(document);
         documentReferences.limit(MAX_REF_LINES_COUNT);
         
-        List<String> lines = new ArrayList<String>();
-        List<FeatureVector> instances = new ArrayList<FeatureVector>();
-        FeatureVectorDistanceMetric metric = new FeatureVectorEuclideanMetric();
-        FeatureVector farthestInstance = null;
+        List<BxLine> refLines = documentReferences.getLines();
+        String[] lines = new String[refLines.size()];
+        double[][] instances = new double[refLines.size()][];
+        int farthestInstance = 0;
         double farthestDistance = 0;
-        for (BxLine line : documentReferences.getLines()) {
-            lines.add(line.toText());
-            FeatureVector featureVector = VECTOR_BUILDER.getFeatureVector(line, documentReferences);
-            instances.add(featureVector);
-            if (farthestInstance == null) {
-                farthestInstance = instances.get(0);
-            }
-            double distance = metric.getDistance(instances.get(0), featureVector);
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = refLines.get(i).toText();
+            instances[i] = VECTOR_BUILDER.getFeatureVector(refLines.get(i), documentReferences).getValues();
+            double distance = FeatureVectorEuclideanMetric.getDistance(instances[0], instances[i]);
             if (distance > farthestDistance) {
-                farthestInstance = featureVector;
+                farthestInstance = i;
                 farthestDistance = distance;
             }
         }
 
-        if (lines.size() <= 1 || farthestDistance < 0.001) {
-            if (lines.size() > MAX_REFS_COUNT) {
+        if (lines.length <= 1 || farthestDistance < 0.001) {
+            if (lines.length > MAX_REFS_COUNT) {
                 return new String[]{};
             } else {
-                return lines.toArray(new String[lines.size()]);
+                return lines;
             }
         }
         
         KMeansWithInitialCentroids clusterer = new KMeansWithInitialCentroids(2);
-        FeatureVector[] centroids = new FeatureVector[2];
-        centroids[0] = instances.get(0);
-        centroids[1] = farthestInstance;
-        clusterer.setCentroids(centroids);
-        List<FeatureVector>[] clusters = clusterer.cluster(instances);
-        
-        int firstInstanceClusterNum = 0;
-        if (clusters[1].contains(instances.get(0))) {
-            firstInstanceClusterNum = 1;
-        }
+        clusterer.setCentroids(new double[][]{instances[0], instances[farthestInstance]});
+        int[] clusters = clusterer.cluster(instances);
+        int firstInstanceCluster = clusters[0];
         
         List<String> references = new ArrayList<String>();
-        String actRef = "";
-        for (int i = 0; i < lines.size(); i++) {
-            if (clusters[firstInstanceClusterNum].contains(instances.get(i))) {
-                if (!actRef.isEmpty() && actRef.matches(".*[0-9].*") && actRef.matches(".*[a-zA-Z].*")) {
-                    references.add(actRef);
-                }
-                actRef = lines.get(i);
+        StringBuilder actRef = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            if (clusters[i] == firstInstanceCluster) {
+                addReference(references, actRef);
+                actRef.setLength(0);
             } else {
-                actRef += " ";
-                actRef += lines.get(i);
+                actRef.append(' ');
             }
+            actRef.append(lines[i]);
         }
-        if (!actRef.isEmpty() && actRef.matches(".*[0-9].*") && actRef.matches(".*[a-zA-Z].*")) {
-            references.add(actRef);
-        }
+        addReference(references, actRef);
         
         if (references.size() > MAX_REFS_COUNT) {
             references.clear();
@@ -134,5 +122,11 @@ public class KMeansBibReferenceExtractor implements BibReferenceExtractor {
         
         return references.toArray(new String[references.size()]);
     }
+    
+    private void addReference(List<String> references, CharSequence reference) {
+        if (DIGIT_PATTERN.matcher(reference).find() && LETTER_PATTERN.matcher(reference).find()) {
+            references.add(reference.toString());
+        }
+    }
 
 }
@@ -159,6 +159,20 @@ public class BibEntry {
         return addField(key, field);
     }
 
+    /**
+     * @return deep copy of the entry, sharing no mutable state with it
+     */
+    public BibEntry copy() {
+        BibEntry entry = new BibEntry(type, key).setText(text);
+        for (Map.Entry<String, List<BibEntryField>> field : fields.entrySet()) {
+            for (BibEntryField value : field.getValue()) {
+                entry.addField(field.getKey(),
+                        new BibEntryField(value.getText(), value.getStartIndex(), value.getEndIndex()));
+            }
+        }
+        return entry;
+    }
+
     public String generateKey() {
         String result = "Unknown";
         if (fields.get(FIELD_AUTHOR) != null && fields.get(FIELD_AUTHOR).size() > 0) {
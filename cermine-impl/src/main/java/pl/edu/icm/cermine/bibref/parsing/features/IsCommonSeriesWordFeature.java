@@ -18,10 +18,9 @@
 
 package pl.edu.icm.cermine.bibref.parsing.features;
 
-import java.util.Arrays;
-import java.util.List;
 import pl.edu.icm.cermine.bibref.parsing.model.Citation;
 import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
+import pl.edu.icm.cermine.bibref.parsing.tools.CitationDictionary;
 import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 /**
  *
@@ -29,23 +28,10 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
  */
 public class IsCommonSeriesWordFeature extends FeatureCalculator<CitationToken, Citation> {
 
-    private static List<String> keywords = Arrays.asList(
-            "ann", "appl", "applied", "astérisque",
-            "graduate",
-            "henri",
-            "inst",
-            "lect", "lecture", "lectures",
-            "math", "mathematical", "mathematics", "maths",
-            "note", "notes",
-            "physics", "poincaré", "pure",
-            "research",
-            "series", "soc", "springer", "statistics",
-            "texts"
-            );
             
 
     @Override
     public double calculateFeatureValue(CitationToken object, Citation context) {
-        return (keywords.contains(object.getText().toLowerCase())) ? 1 : 0;
+        return CitationDictionary.contains(object, CitationDictionary.SERIES_WORD) ? 1 : 0;
     }
 }
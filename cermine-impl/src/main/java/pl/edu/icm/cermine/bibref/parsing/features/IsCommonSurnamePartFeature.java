@@ -21,6 +21,7 @@ package pl.edu.icm.cermine.bibref.parsing.features;
 import java.util.List;
 import pl.edu.icm.cermine.bibref.parsing.model.Citation;
 import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
+import pl.edu.icm.cermine.bibref.parsing.tools.CitationDictionary;
 import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 
 /**
@@ -32,7 +33,7 @@ public class IsCommonSurnamePartFeature extends FeatureCalculator<CitationToken,
     @Override
     public double calculateFeatureValue(CitationToken object, Citation context) {
         String text = object.getText();
-        if (text.equalsIgnoreCase("van") || text.equalsIgnoreCase("de") || text.equalsIgnoreCase("der")) {
+        if (CitationDictionary.contains(object, CitationDictionary.SURNAME_PART)) {
             return 1;
         }
         if (text.matches("^Mc[A-Z].*$")) {
@@ -18,10 +18,9 @@
 
 package pl.edu.icm.cermine.bibref.parsing.features;
 
-import java.util.Arrays;
-import java.util.List;
 import pl.edu.icm.cermine.bibref.parsing.model.Citation;
 import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
+import pl.edu.icm.cermine.bibref.parsing.tools.CitationDictionary;
 import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 /**
  *
@@ -29,20 +28,17 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
  */
 public class IsTextWordFeature extends FeatureCalculator<CitationToken, Citation> {
 
-    private static String featureName = "IsOtherWord";
+    private static final String featureName = "IsOtherWord";
 
     @Override
     public String getFeatureName() {
         return featureName;
     }
 
-    private static List<String> keywords = Arrays.asList(
-            "preprint", "preparation", "submitted", "phd", "thesis", "available", "thèse", "doctorale", "paraître",
-            "appear", "proceeding", "proceedings");
 
 
     @Override
     public double calculateFeatureValue(CitationToken object, Citation context) {
-        return (keywords.contains(object.getText().toLowerCase())) ? 1 : 0;
+        return CitationDictionary.contains(object, CitationDictionary.OTHER_WORD) ? 1 : 0;
     }
 }
@@ -21,6 +21,7 @@ package pl.edu.icm.cermine.bibref.parsing.features;
 import java.util.List;
 import pl.edu.icm.cermine.bibref.parsing.model.Citation;
 import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
+import pl.edu.icm.cermine.bibref.parsing.tools.CitationDictionary;
 import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 
 /**
@@ -32,8 +33,7 @@ public class IsVolumeTextFeature extends FeatureCalculator<CitationToken, Citati
     @Override
     public double calculateFeatureValue(CitationToken object, Citation context) {
         String text = object.getText();
-        if (text.equalsIgnoreCase("vol") || text.equalsIgnoreCase("volume") || text.equalsIgnoreCase("tom")
-                || text.equalsIgnoreCase("tome")) {
+        if (CitationDictionary.contains(object, CitationDictionary.VOLUME_TEXT)) {
             return 1;
         }
         List<CitationToken> tokens = context.getTokens();
@@ -20,6 +20,7 @@ package pl.edu.icm.cermine.bibref.parsing.features;
 
 import pl.edu.icm.cermine.bibref.parsing.model.Citation;
 import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
+import pl.edu.icm.cermine.bibref.parsing.tools.CitationDictionary;
 import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 
 /**
@@ -30,7 +31,7 @@ public class IsWordJrFeature extends FeatureCalculator<CitationToken, Citation>
 
     @Override
     public double calculateFeatureValue(CitationToken object, Citation context) {
-        return (object.getText().equalsIgnoreCase("jr")) ? 1 : 0;
+        return CitationDictionary.contains(object, CitationDictionary.JR) ? 1 : 0;
     }
 
 }
@@ -29,6 +29,8 @@ public class CitationToken {
     private CitationTokenLabel label;
     private int startIndex;
     private int endIndex;
+    /** cached bit mask of dictionary memberships, -1 if not computed yet */
+    private int dictionaryMemberships = -1;
 
     public CitationToken(String text, int startIndex, int endIndex, CitationTokenLabel label) {
         this.text = text;
@@ -55,10 +57,20 @@ public class CitationToken {
 
     public void setText(String text) {
         this.text = text;
+        this.dictionaryMemberships = -1;
     }
 
     public void appendText(String text) {
         this.text += text;
+        this.dictionaryMemberships = -1;
+    }
+
+    public int getDictionaryMemberships() {
+        return dictionaryMemberships;
+    }
+
+    public void setDictionaryMemberships(int dictionaryMemberships) {
+        this.dictionaryMemberships = dictionaryMemberships;
     }
 
     public int getEndIndex() {
@@ -0,0 +1,172 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.bibref.parsing.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
+
+/**
+ * Dictionaries of words used by the citation token features.
+ * 
+ * All the dictionaries are compiled into one table mapping lowercased words
+ * to the bit masks of the dictionaries containing them. The memberships
+ * of a token are computed once, with a single lookup, and cached in the token
+ * (see {@link CitationToken#getDictionaryMemberships()}).
+ */
+public final class CitationDictionary {
+    
+    public static final int CITY            = 1;
+    public static final int PUBLISHER_WORD  = 1 << 1;
+    public static final int SERIES_WORD     = 1 << 2;
+    public static final int SOURCE_WORD     = 1 << 3;
+    public static final int OTHER_WORD      = 1 << 4;
+    public static final int SURNAME_PART    = 1 << 5;
+    public static final int VOLUME_TEXT     = 1 << 6;
+    public static final int HTTP            = 1 << 7;
+    public static final int AND             = 1 << 8;
+    public static final int DE              = 1 << 9;
+    public static final int JR              = 1 << 10;
+    public static final int LE              = 1 << 11;
+    public static final int THE             = 1 << 12;
+    public static final int THEORY          = 1 << 13;
+    
+    private static final Map<String, Integer> TABLE = new HashMap<String, Integer>();
+    
+    static {
+        add(CITY,
+                "angeles", "antonio", "amsterdam", "ankara", "athens",
+                "bangkok", "basel", "beijing", "belgrade", "berkeley", "berlin", "bern", "bologna", "bombay", "boston",
+                "bratislava", "brussels", "bucharest", "budapest",
+                "cambridge", "calgary", "chicago", "copenhagen",
+                "dallas", "delhi", "dhaka", "diego", "dordrecht", "dublin",
+                "edmonton",
+                "francisco",
+                "grenoble", "göttingen",
+                "heidelberg", "helsinki", "houston",
+                "indianapolis", "istanbul",
+                "jakarta", "jacksonville", "jose",
+                "karachi", "kiev",
+                "leipzig", "lisbon", "ljubljana", "london", "londres", "los",
+                "madrid", "manila", "mass", "minsk", "montreal", "moscou", "moscow", "mumbai",
+                "new",
+                "orsay", "oslo", "ottawa", "oxford",
+                "paris", "phoenix", "philadelphia", "prague", "princeton", "providence",
+                "reading", "reykjavik", "riga", "roma", "rome",
+                "san", "sarajevo", "seoul", "shanghai", "skopje", "sofia", "stockholm",
+                "tallinn", "tehran", "tirana", "tokyo", "toronto", "toulouse",
+                "vancouver", "vienna", "vilnius",
+                "warsaw", "warszawa",
+                "york",
+                "zagreb");
+        
+        add(PUBLISHER_WORD,
+                "academic",
+                "birkhäuser",
+                "cambridge", "company",
+                "dunod",
+                "france",
+                "gauthier",
+                "hermann", "holland",
+                "interscience",
+                "john",
+                "masson", "math",
+                "north", "nostrand",
+                "paris", "polytechnique", "press", "princeton", "publ", "publishers",
+                "sons", "springer",
+                "univ", "université", "university",
+                "verlag", "villars",
+                "wiley", "world");
+        
+        add(SERIES_WORD,
+                "ann", "appl", "applied", "astérisque",
+                "graduate",
+                "henri",
+                "inst",
+                "lect", "lecture", "lectures",
+                "math", "mathematical", "mathematics", "maths",
+                "note", "notes",
+                "physics", "poincaré", "pure",
+                "research",
+                "series", "soc", "springer", "statistics",
+                "texts");
+        
+        add(SOURCE_WORD,
+                "acad", "acta", "algebra", "amer", "anal", "ann", "annales", "annals", "appl",
+                "bourbaki", "bull",
+                "comm", "comptes",
+                "fields", "fourier",
+                "geom",
+                "inst", "invent",
+                "journal",
+                "lett",
+                "mat", "math", "mathematical", "mathematics",
+                "phys", "physics", "probab", "proc", "publ", "pure",
+                "séminaire", "sc", "sci", "sciences", "soc", "studies",
+                "theory", "trans",
+                "univ");
+        
+        add(OTHER_WORD,
+                "preprint", "preparation", "submitted", "phd", "thesis", "available", "thèse", "doctorale", "paraître",
+                "appear", "proceeding", "proceedings");
+        
+        add(SURNAME_PART, "van", "de", "der");
+        add(VOLUME_TEXT, "vol", "volume", "tom", "tome");
+        add(HTTP, "http", "https", "www");
+        add(AND, "and");
+        add(DE, "de");
+        add(JR, "jr");
+        add(LE, "le");
+        add(THE, "the");
+        add(THEORY, "theory");
+    }
+
+    private CitationDictionary() {}
+    
+    private static void add(int dictionary, String... words) {
+        for (String word : words) {
+            Integer memberships = TABLE.get(word);
+            TABLE.put(word, memberships == null ? dictionary : memberships | dictionary);
+        }
+    }
+    
+    /**
+     * @param token citation token
+     * @return the bit mask of the dictionaries containing the lowercased text of the token
+     */
+    public static int getMemberships(CitationToken token) {
+        int memberships = token.getDictionaryMemberships();
+        if (memberships < 0) {
+            Integer found = TABLE.get(token.getText().toLowerCase());
+            memberships = found == null ? 0 : found;
+            token.setDictionaryMemberships(memberships);
+        }
+        return memberships;
+    }
+    
+    /**
+     * @param token citation token
+     * @param dictionaries the bit mask of dictionaries
+     * @return true if any of the dictionaries contains the lowercased text of the token
+     */
+    public static boolean contains(CitationToken token, int dictionaries) {
+        return (getMemberships(token) & dictionaries) != 0;
+    }
+    
+}
@@ -0,0 +1,234 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.bibref.parsing.tools;
+
+import edu.umass.cs.mallet.base.pipe.Pipe;
+import edu.umass.cs.mallet.base.pipe.iterator.LineGroupIterator;
+import edu.umass.cs.mallet.base.types.*;
+import java.io.StringReader;
+import java.util.*;
+import java.util.regex.Pattern;
+import pl.edu.icm.cermine.bibref.parsing.model.Citation;
+import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
+import pl.edu.icm.cermine.bibref.parsing.model.CitationTokenLabel;
+import pl.edu.icm.cermine.parsing.tools.ACRFModel;
+import pl.edu.icm.cermine.parsing.tools.LinearChainCRF;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
+
+/**
+ * Builds Mallet instances of citations directly from the features of the tokens,
+ * equivalent to passing the output of 
+ * {@link CitationUtils#citationToMalletInputFormat(Citation, Set)}
+ * through the input pipe of the model, but without the intermediate text.
+ * 
+ * The alphabet ids of the features of the tokens in the window of two tokens
+ * before and after the current token are looked up once, when the builder
+ * is created. Features absent from the model's alphabet are skipped, as they
+ * do not have any weights in the model.
+ * 
+ * The builder does not modify the alphabets of the pipe, so it can be used
+ * by many threads at the same time.
+ * 
+ * A builder created for a {@link LinearChainCRF} looks the features up in
+ * the features of the CRF and can only compute the feature ids 
+ * (see {@link #getFeatureIds(Citation)}).
+ */
+public class CitationInstanceBuilder {
+    
+    private static final String[] OFFSET_SUFFIXES = {"@-2", "@-1", "", "@1", "@2"};
+    
+    private static final int WINDOW = 2;
+    
+    private static final String CALIBRATION_DATA = CitationTokenLabel.TEXT + " ----";
+    
+    private final Alphabet alphabet;
+    
+    private final Labels labels;
+    
+    private final LinearChainCRF crf;
+    
+    private final FeatureVectorBuilder<CitationToken, Citation> vectorBuilder = FeatureList.VECTOR_BUILDER;
+    
+    /** feature ids, indexed by offset and feature index */
+    private final int[][] featureIds;
+    
+    /** word feature ids, by offset; words clashing with feature names are skipped */
+    private final Map<String, int[]> wordIds = new HashMap<String, int[]>();
+
+    /**
+     * Creates the builder. The alphabets are taken from an instance 
+     * created by the pipe.
+     * 
+     * @param pipe input pipe of the model
+     * @param words word features
+     */
+    public CitationInstanceBuilder(Pipe pipe, Set<String> words) {
+        this(pipeCalibration(pipe), words);
+    }
+
+    /**
+     * Creates the builder. The alphabets are taken from an instance 
+     * created by the shared model.
+     * 
+     * @param model the model
+     * @param words word features
+     */
+    public CitationInstanceBuilder(ACRFModel model, Set<String> words) {
+        this(model.pipe(CALIBRATION_DATA), words);
+    }
+    
+    private static Instance pipeCalibration(Pipe pipe) {
+        InstanceList instanceList = new InstanceList(pipe);
+        instanceList.add(new LineGroupIterator(new StringReader(CALIBRATION_DATA), 
+                Pattern.compile("\\s*"), true));
+        return instanceList.getInstance(0);
+    }
+    
+    /**
+     * Creates the builder computing the feature ids of the linear-chain CRF.
+     * 
+     * @param crf the CRF
+     * @param words word features
+     */
+    public CitationInstanceBuilder(LinearChainCRF crf, Set<String> words) {
+        this(null, null, crf, words);
+    }
+    
+    private CitationInstanceBuilder(Instance instance, Set<String> words) {
+        this(((FeatureVectorSequence) instance.getData()).getAlphabet(),
+                ((LabelsSequence) instance.getTarget()).getLabels(0), null, words);
+    }
+    
+    private CitationInstanceBuilder(Alphabet alphabet, Labels labels, LinearChainCRF crf, Set<String> words) {
+        this.alphabet = alphabet;
+        this.labels = labels;
+        this.crf = crf;
+        
+        List<String> names = vectorBuilder.getFeatureNames();
+        Set<String> featureNames = new HashSet<String>(names);
+        featureIds = new int[OFFSET_SUFFIXES.length][names.size()];
+        for (int i = 0; i < OFFSET_SUFFIXES.length; i++) {
+            for (int j = 0; j < names.size(); j++) {
+                featureIds[i][j] = lookupIndex(names.get(j) + OFFSET_SUFFIXES[i]);
+            }
+        }
+        for (String word : words) {
+            if (featureNames.contains(word)) {
+                continue;
+            }
+            int[] ids = new int[OFFSET_SUFFIXES.length];
+            for (int i = 0; i < OFFSET_SUFFIXES.length; i++) {
+                ids[i] = lookupIndex(word + OFFSET_SUFFIXES[i]);
+            }
+            wordIds.put(word, ids);
+        }
+    }
+
+    private int lookupIndex(String feature) {
+        if (crf == null) {
+            return alphabet.lookupIndex(feature, false);
+        }
+        return crf.getFeatureIndex(feature);
+    }
+
+    /**
+     * Computes the ids of the features of the tokens of a citation, including
+     * the features of the neighbouring tokens. The features absent from
+     * the alphabet are skipped.
+     * 
+     * @param citation citation
+     * @return sorted feature ids, for every token
+     */
+    public int[][] getFeatureIds(Citation citation) {
+        List<CitationToken> tokens = citation.getTokens();
+        List<pl.edu.icm.cermine.tools.classification.features.FeatureVector> vectors = 
+                vectorBuilder.getFeatureVectors(tokens, Collections.nCopies(tokens.size(), citation));
+        
+        int[][] tokenFeatures = new int[tokens.size()][];
+        int[][] tokenWords = new int[tokens.size()][];
+        for (int i = 0; i < tokens.size(); i++) {
+            double[] values = vectors.get(i).getValues();
+            int[] active = new int[values.length];
+            int count = 0;
+            for (int j = 0; j < values.length; j++) {
+                if (Double.isNaN(values[j])) {
+                    throw new RuntimeException("Feature value is set to NaN: " 
+                            + vectors.get(i).getFeatureNames().get(j));
+                }
+                if (values[j] > Double.MIN_VALUE) {
+                    active[count++] = j;
+                }
+            }
+            tokenFeatures[i] = Arrays.copyOf(active, count);
+            tokenWords[i] = wordIds.get(tokens.get(i).getText().toLowerCase());
+        }
+        
+        int[][] tokenIds = new int[tokens.size()][];
+        int[] ids = new int[OFFSET_SUFFIXES.length * (vectorBuilder.size() + 1)];
+        for (int i = 0; i < tokens.size(); i++) {
+            int count = 0;
+            for (int k = Math.max(0, i - WINDOW); k <= Math.min(tokens.size() - 1, i + WINDOW); k++) {
+                int offset = k - i + WINDOW;
+                for (int feature : tokenFeatures[k]) {
+                    int id = featureIds[offset][feature];
+                    if (id >= 0) {
+                        ids[count++] = id;
+                    }
+                }
+                if (tokenWords[k] != null && tokenWords[k][offset] >= 0) {
+                    ids[count++] = tokenWords[k][offset];
+                }
+            }
+            Arrays.sort(ids, 0, count);
+            int unique = 0;
+            for (int j = 0; j < count; j++) {
+                if (unique == 0 || ids[unique - 1] != ids[j]) {
+                    ids[unique++] = ids[j];
+                }
+            }
+            tokenIds[i] = Arrays.copyOf(ids, unique);
+        }
+        return tokenIds;
+    }
+
+    /**
+     * Builds the instance of a citation. The instance has the same data as
+     * the instance created by the pipe, except for the features absent from 
+     * the alphabet, and its target labels are set to {@link CitationTokenLabel#TEXT}.
+     * 
+     * @param citation citation
+     * @return Mallet instance
+     */
+    public Instance toInstance(Citation citation) {
+        if (alphabet == null) {
+            throw new IllegalStateException("Instances cannot be built without Mallet alphabets!");
+        }
+        int[][] tokenIds = getFeatureIds(citation);
+        FeatureVector[] featureVectors = new FeatureVector[tokenIds.length];
+        Labels[] targets = new Labels[tokenIds.length];
+        for (int i = 0; i < tokenIds.length; i++) {
+            featureVectors[i] = new FeatureVector(alphabet, tokenIds[i]);
+            targets[i] = labels;
+        }
+        
+        return new Instance(new FeatureVectorSequence(featureVectors), new LabelsSequence(targets),
+                null, citation.getText());
+    }
+    
+}
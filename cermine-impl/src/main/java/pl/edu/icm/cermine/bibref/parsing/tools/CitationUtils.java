@@ -52,29 +52,49 @@ public final class CitationUtils {
 
     private CitationUtils() {}
     
+    /**
+     * Splits the text of a citation into tokens in a single pass. A token is
+     * either a maximal run of letters and digits or a single other character,
+     * and whitespace characters are skipped. Characters are classified by code
+     * points, so surrogate pairs are never split.
+     * 
+     * @param citation citation text
+     * @return citation
+     */
     public static Citation stringToCitation(String citation) {
         List<CitationToken> tokenList = new ArrayList<CitationToken>();
 
-        String text = citation;
-        int actIndex = 0;
-        while (text.length() > 0) {
-            int end = 1;
-            if (Character.isLetterOrDigit(text.charAt(0))) {
-                end = 0;
-                while (text.length() > end && Character.isLetterOrDigit(text.charAt(end))) {
-                    end++;
+        int length = citation.length();
+        int start = 0;
+        while (start < length) {
+            int codePoint = citation.codePointAt(start);
+            int end = start + Character.charCount(codePoint);
+            boolean word = Character.isLetterOrDigit(codePoint);
+            if (word) {
+                while (end < length) {
+                    int next = citation.codePointAt(end);
+                    if (!Character.isLetterOrDigit(next)) {
+                        break;
+                    }
+                    end += Character.charCount(next);
                 }
             }
-            String token = text.substring(0, end);
-            if (!token.matches("\\s+")) {
-                tokenList.add(new CitationToken(token, actIndex, actIndex + end));
+            if (word || !isSeparator(codePoint)) {
+                tokenList.add(new CitationToken(citation.substring(start, end), start, end));
             }
-            text = text.substring(end);
-            actIndex += end;
+            start = end;
         }
 
         return new Citation(citation, tokenList);
     }
+    
+    /**
+     * Whitespace as matched by the \\s regular expression class.
+     */
+    private static boolean isSeparator(int codePoint) {
+        return codePoint == ' ' || codePoint == '\t' || codePoint == '\n' 
+                || codePoint == 0x0B || codePoint == '\f' || codePoint == '\r';
+    }
 
     public static void addHMMLabels(Citation citation) {
         List<CitationToken> tokens = citation.getTokens();
@@ -232,8 +252,9 @@ public final class CitationUtils {
                     throw new RuntimeException("Feature value is set to NaN: "+featureName);
                 }
             }
-            if (words.contains(token.getText().toLowerCase())) {
-                featureVector.addFeature(token.getText().toLowerCase(), 1);
+            String word = token.getText().toLowerCase();
+            if (words.contains(word)) {
+                featureVector.addFeature(word, 1);
             }
             featureVectors.add(featureVector);
         }
@@ -21,6 +21,7 @@ package pl.edu.icm.cermine.content.filtering;
 import java.util.List;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.structure.model.*;
+import pl.edu.icm.cermine.tools.classification.features.ContextValueCache;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
 import pl.edu.icm.cermine.tools.classification.general.TrainingSample;
@@ -59,11 +60,12 @@ public class KnnContentFilter implements ContentFilter {
     @Override
     public BxDocument filter(BxDocument document) throws AnalysisException {
         KnnClassifier<BxZoneLabel> classifier = new KnnClassifier<BxZoneLabel>();
+        ContextValueCache<BxPage> cache = new ContextValueCache<BxPage>();
         
         for (BxPage page : document.getPages()) {
             for (BxZone zone : page.getZones()) {
                 if (zone.getLabel().isOfCategoryOrGeneral(BxZoneLabelCategory.CAT_BODY)) {
-                    FeatureVector featureVector = vectorBuilder.getFeatureVector(zone, page);
+                    FeatureVector featureVector = vectorBuilder.getFeatureVector(zone, page, cache);
                     BxZoneLabel label = classifier.classify(knnModel, new FeatureVectorEuclideanMetric(), featureVector, knnVoters);
                     zone.setLabel(label);
                 }
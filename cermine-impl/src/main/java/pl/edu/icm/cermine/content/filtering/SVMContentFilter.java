@@ -21,6 +21,8 @@ package pl.edu.icm.cermine.content.filtering;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.structure.model.*;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
@@ -75,11 +77,18 @@ public class SVMContentFilter extends SVMClassifier<BxZone, BxPage, BxZoneLabel>
     
     @Override
     public BxDocument filter(BxDocument document) throws AnalysisException {
+        List<BxZone> zones = new ArrayList<BxZone>();
+        List<BxPage> pages = new ArrayList<BxPage>();
         for (BxZone zone: document.asZones()) {
 			if (zone.getLabel().isOfCategoryOrGeneral(BxZoneLabelCategory.CAT_BODY)) {
-                zone.setLabel(predictLabel(zone, zone.getParent()));
+                zones.add(zone);
+                pages.add(zone.getParent());
             }
 		}
+        List<BxZoneLabel> labels = predictLabels(zones, pages);
+        for (int i = 0; i < zones.size(); i++) {
+            zones.get(i).setLabel(labels.get(i));
+        }
 		return document;
     }
     
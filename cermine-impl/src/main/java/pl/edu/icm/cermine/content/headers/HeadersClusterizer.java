@@ -18,6 +18,7 @@
 
 package pl.edu.icm.cermine.content.headers;
 
+import java.util.concurrent.ExecutorService;
 import pl.edu.icm.cermine.content.model.BxDocContentStructure;
 import pl.edu.icm.cermine.structure.model.BxLine;
 import pl.edu.icm.cermine.structure.model.BxPage;
@@ -43,6 +44,8 @@ public class HeadersClusterizer {
     private Clusterizer clusterizer;
     
     private FeatureVectorDistanceMetric metric;
+    
+    private ExecutorService executor;
 
     public HeadersClusterizer() {
         this.vectorBuilder = HeaderExtractingTools.CLUSTERING_VB;
@@ -60,6 +63,7 @@ public class HeadersClusterizer {
     public void clusterHeaders(BxDocContentStructure contentStructure) {
         FeatureVectorClusterizer fvClusterizer = new FeatureVectorClusterizer();
         fvClusterizer.setClusterizer(clusterizer);
+        fvClusterizer.setExecutor(executor);
         int[] clusters = fvClusterizer.clusterize(contentStructure.getFirstHeaderFeatureVectors(vectorBuilder), 
                 vectorBuilder, metric, maxHeaderLevelDistance, true);
         contentStructure.setHeaderLevelIds(clusters);
@@ -73,6 +77,14 @@ public class HeadersClusterizer {
         this.maxHeaderLevelDistance = maxHeaderLevelDistance;
     }
 
+    /**
+     * @param executor executor used to compute the distances between headers
+     * in parallel, or null
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
     public void setMetric(FeatureVectorDistanceMetric metric) {
         this.metric = metric;
     }
@@ -19,6 +19,7 @@
 package pl.edu.icm.cermine.content.headers;
 
 import java.io.BufferedReader;
+import java.util.*;
 import pl.edu.icm.cermine.content.model.BxDocContentStructure;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.structure.model.*;
@@ -54,21 +55,41 @@ public class SVMContentHeadersExtractor implements ContentHeadersExtractor {
 	}
     
    
-    private boolean isHeader(BxLine line, BxPage page) {
-        BxZoneLabel label = contentHeaderClassifier.predictLabel(line, page);
-        return label.equals(BxZoneLabel.BODY_HEADING);
+    private Set<BxLine> findHeaderLines(BxDocument document) throws AnalysisException {
+        List<BxLine> lines = new ArrayList<BxLine>();
+        List<BxPage> pages = new ArrayList<BxPage>();
+        for (BxPage page : document.getPages()) {
+            for (BxZone zone : page.getZones()) {
+                if (zone.getLabel().isOfCategoryOrGeneral(BxZoneLabelCategory.CAT_BODY)) {
+                    for (BxLine line : zone.getLines()) {
+                        lines.add(line);
+                        pages.add(page);
+                    }
+                }
+            }
+        }
+        
+        List<BxZoneLabel> labels = contentHeaderClassifier.predictLabels(lines, pages);
+        Set<BxLine> headerLines = Collections.newSetFromMap(new IdentityHashMap<BxLine, Boolean>());
+        for (int i = 0; i < lines.size(); i++) {
+            if (labels.get(i).equals(BxZoneLabel.BODY_HEADING)) {
+                headerLines.add(lines.get(i));
+            }
+        }
+        return headerLines;
     }
     
     @Override
     public BxDocContentStructure extractHeaders(BxDocument document) throws AnalysisException {
 
+        Set<BxLine> headerLines = findHeaderLines(document);
         BxDocContentStructure contentStructure = new BxDocContentStructure();
         BxLine lastHeaderLine = null;
         for (BxPage page : document.getPages()) {
             for (BxZone zone : page.getZones()) {
                 if (zone.getLabel().isOfCategoryOrGeneral(BxZoneLabelCategory.CAT_BODY)) {
                     for (BxLine line : zone.getLines()) {
-                        if (isHeader(line, page)) {
+                        if (headerLines.contains(line)) {
                             contentStructure.addFirstHeaderLine(page, line);
                             lastHeaderLine = line;
                         } else if (zone.getLabel().equals(BxZoneLabel.BODY_CONTENT) || zone.getLabel().equals(BxZoneLabel.GEN_BODY)) {
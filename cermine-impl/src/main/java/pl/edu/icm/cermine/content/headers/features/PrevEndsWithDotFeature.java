@@ -28,7 +28,7 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
  */
 public class PrevEndsWithDotFeature extends FeatureCalculator<BxLine, BxPage> {
 
-    private static String featureName = "PrevEndsWithDotFeature";
+    private static final String featureName = "PrevEndsWithDotFeature";
 
     @Override
     public String getFeatureName() {
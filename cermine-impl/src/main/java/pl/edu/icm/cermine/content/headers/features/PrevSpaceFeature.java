@@ -28,7 +28,7 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
  */
 public class PrevSpaceFeature extends FeatureCalculator<BxLine, BxPage> {
 
-    private static String featureName = "PrevSpaceFeature";
+    private static final String featureName = "PrevSpaceFeature";
 
     @Override
     public String getFeatureName() {
@@ -0,0 +1,280 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.evaluation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import libsvm.svm_parameter;
+import org.apache.commons.cli.*;
+import pl.edu.icm.cermine.evaluation.tools.EvaluationUtils.DocumentsIterator;
+import pl.edu.icm.cermine.evaluation.tools.PenaltyCalculator;
+import pl.edu.icm.cermine.exception.AnalysisException;
+import pl.edu.icm.cermine.metadata.zoneclassification.tools.ZoneClassificationUtils;
+import pl.edu.icm.cermine.structure.SVMInitialZoneClassifier;
+import pl.edu.icm.cermine.structure.SVMMetadataZoneClassifier;
+import pl.edu.icm.cermine.structure.model.*;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
+import pl.edu.icm.cermine.tools.classification.general.BxDocsToTrainingSamplesConverter;
+import pl.edu.icm.cermine.tools.classification.general.ClassificationUtils;
+import pl.edu.icm.cermine.tools.classification.general.TrainingSample;
+import pl.edu.icm.cermine.tools.classification.svm.SVMZoneClassifier;
+
+/**
+ * Trains a cascade first-stage zone classifier and helps to pick its margin
+ * threshold (see {@link SVMZoneClassifier#setFirstStage(SVMZoneClassifier, double)}).
+ *
+ * The first stage is a linear SVM over cheap features, trained on the training
+ * documents. Both the first stage and the full classifier are then run
+ * on the test documents and for every threshold the tool reports the fraction
+ * of zones accepted by the first stage, the accuracy of the cascade compared
+ * to the full classifier and the estimated speedup.
+ */
+public class CascadeZoneClassificationEvaluator {
+
+    private static final double[] DEFAULT_THRESHOLDS = {0.0, 0.25, 0.5, 0.75, 1.0, 1.5, 2.0, 3.0, 5.0};
+
+    private final boolean metadata;
+
+    private final List<BxZoneLabel> expectedLabels = new ArrayList<BxZoneLabel>();
+    private final List<BxZoneLabel> firstStageLabels = new ArrayList<BxZoneLabel>();
+    private final List<BxZoneLabel> fullLabels = new ArrayList<BxZoneLabel>();
+    private final List<Double> margins = new ArrayList<Double>();
+
+    private long firstStageTime;
+    private long fullTime;
+
+    public CascadeZoneClassificationEvaluator(boolean metadata) {
+        this.metadata = metadata;
+    }
+
+    public FeatureVectorBuilder<BxZone, BxPage> getFirstStageFeatureVectorBuilder() {
+        return metadata ? SVMMetadataZoneClassifier.getFirstStageFeatureVectorBuilder()
+                : SVMInitialZoneClassifier.getFirstStageFeatureVectorBuilder();
+    }
+
+    public FeatureVectorBuilder<BxZone, BxPage> getFeatureVectorBuilder() {
+        return metadata ? SVMMetadataZoneClassifier.getFeatureVectorBuilder()
+                : SVMInitialZoneClassifier.getFeatureVectorBuilder();
+    }
+
+    public SVMZoneClassifier trainFirstStage(String trainDir, String ext, double C) throws AnalysisException {
+        DocumentsIterator it = new DocumentsIterator(trainDir, ext);
+        List<TrainingSample<BxZoneLabel>> trainingSamples =
+                BxDocsToTrainingSamplesConverter.getZoneTrainingSamples(it.iterator(),
+                    getFirstStageFeatureVectorBuilder(),
+                    metadata ? BxZoneLabel.getIdentityMap() : BxZoneLabel.getLabelToGeneralMap(), Runtime.getRuntime().availableProcessors());
+        if (metadata) {
+            trainingSamples = ClassificationUtils.filterElements(trainingSamples, BxZoneLabelCategory.CAT_METADATA);
+        }
+
+        PenaltyCalculator pc = new PenaltyCalculator(trainingSamples);
+        int[] intClasses = new int[pc.getClasses().size()];
+        double[] classesWeights = new double[pc.getClasses().size()];
+        int labelIdx = 0;
+        for (BxZoneLabel label : pc.getClasses()) {
+            intClasses[labelIdx] = label.ordinal();
+            classesWeights[labelIdx] = pc.getPenaltyWeigth(label);
+            ++labelIdx;
+        }
+
+        SVMZoneClassifier firstStage = new SVMZoneClassifier(getFirstStageFeatureVectorBuilder());
+        svm_parameter param = SVMZoneClassifier.getDefaultParam();
+        param.svm_type = svm_parameter.C_SVC;
+        param.kernel_type = svm_parameter.LINEAR;
+        param.C = C;
+        param.weight_label = intClasses;
+        param.weight = classesWeights;
+        firstStage.setParameter(param);
+        firstStage.buildClassifier(trainingSamples);
+        return firstStage;
+    }
+
+    public void evaluate(SVMZoneClassifier firstStage, SVMZoneClassifier fullClassifier,
+            String testDir, String ext) {
+        FeatureVectorBuilder<BxZone, BxPage> firstStageBuilder = getFirstStageFeatureVectorBuilder();
+        FeatureVectorBuilder<BxZone, BxPage> fullBuilder = getFeatureVectorBuilder();
+
+        for (BxDocument doc : new DocumentsIterator(testDir, ext)) {
+            if (doc == null) {
+                continue;
+            }
+            if (!metadata) {
+                ZoneClassificationUtils.mapZoneLabels(doc, BxZoneLabel.getLabelToGeneralMap());
+            }
+            List<BxZone> zones = new ArrayList<BxZone>();
+            for (BxPage page : doc.getPages()) {
+                for (BxZone zone : page.getZones()) {
+                    zone.setParent(page);
+                    if (!metadata || zone.getLabel().isOfCategoryOrGeneral(BxZoneLabelCategory.CAT_METADATA)) {
+                        zones.add(zone);
+                        expectedLabels.add(zone.getLabel());
+                    }
+                }
+            }
+
+            long start = System.nanoTime();
+            List<FeatureVector> featureVectors = new ArrayList<FeatureVector>(zones.size());
+            for (BxZone zone : zones) {
+                featureVectors.add(firstStageBuilder.getFeatureVector(zone, zone.getParent()));
+            }
+            double[] docMargins = new double[zones.size()];
+            firstStageLabels.addAll(firstStage.predictLabels(featureVectors, docMargins));
+            firstStageTime += System.nanoTime() - start;
+            for (double margin : docMargins) {
+                margins.add(margin);
+            }
+
+            start = System.nanoTime();
+            featureVectors = new ArrayList<FeatureVector>(zones.size());
+            for (BxZone zone : zones) {
+                featureVectors.add(fullBuilder.getFeatureVector(zone, zone.getParent()));
+            }
+            fullLabels.addAll(fullClassifier.predictLabels(featureVectors, null));
+            fullTime += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Prints the report and returns the threshold giving the highest speedup
+     * with the accuracy loss not greater than maxLoss.
+     *
+     * @param thresholds candidate thresholds
+     * @param maxLoss maximum acceptable accuracy loss
+     * @return recommended threshold, or positive infinity if none is acceptable
+     */
+    public double printReport(double[] thresholds, double maxLoss) {
+        int zoneCount = expectedLabels.size();
+        if (zoneCount == 0) {
+            System.out.println("No zones to evaluate!");
+            return Double.POSITIVE_INFINITY;
+        }
+        int fullCorrect = 0;
+        int firstStageCorrect = 0;
+        for (int i = 0; i < zoneCount; i++) {
+            if (expectedLabels.get(i) == fullLabels.get(i)) {
+                fullCorrect++;
+            }
+            if (expectedLabels.get(i) == firstStageLabels.get(i)) {
+                firstStageCorrect++;
+            }
+        }
+        double fullAccuracy = (double) fullCorrect / zoneCount;
+
+        System.out.println("Zones: " + zoneCount);
+        System.out.printf("Full classifier:  accuracy %.4f, %.1f us/zone%n",
+                fullAccuracy, fullTime / 1000.0 / zoneCount);
+        System.out.printf("First stage only: accuracy %.4f, %.1f us/zone%n",
+                (double) firstStageCorrect / zoneCount, firstStageTime / 1000.0 / zoneCount);
+        System.out.println();
+        System.out.println("threshold  accepted  accuracy     delta  speedup");
+
+        double best = Double.POSITIVE_INFINITY;
+        double bestSpeedup = 0;
+        for (double threshold : thresholds) {
+            int accepted = 0;
+            int correct = 0;
+            for (int i = 0; i < zoneCount; i++) {
+                BxZoneLabel label;
+                if (margins.get(i) >= threshold) {
+                    accepted++;
+                    label = firstStageLabels.get(i);
+                } else {
+                    label = fullLabels.get(i);
+                }
+                if (expectedLabels.get(i) == label) {
+                    correct++;
+                }
+            }
+            double accuracy = (double) correct / zoneCount;
+            // the full classifier runs only on the rejected zones
+            double cascadeTime = firstStageTime + (double) fullTime * (zoneCount - accepted) / zoneCount;
+            double speedup = fullTime / cascadeTime;
+            System.out.printf("%9.2f  %8.4f  %8.4f  %+8.4f  %7.2f%n", threshold,
+                    (double) accepted / zoneCount, accuracy, accuracy - fullAccuracy, speedup);
+            if (fullAccuracy - accuracy <= maxLoss && speedup > bestSpeedup) {
+                best = threshold;
+                bestSpeedup = speedup;
+            }
+        }
+        System.out.println();
+        if (Double.isInfinite(best)) {
+            System.out.println("No threshold keeps the accuracy loss within " + maxLoss);
+        } else {
+            System.out.printf("Recommended threshold: %.2f (speedup %.2f)%n", best, bestSpeedup);
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws ParseException, AnalysisException, IOException {
+        Options options = new Options();
+        options.addOption("type", true, "classifier type: initial or metadata");
+        options.addOption("train", true, "training documents directory");
+        options.addOption("test", true, "test documents directory");
+        options.addOption("ext", true, "documents extension");
+        options.addOption("C", true, "first stage C");
+        options.addOption("output", true, "output first stage model path");
+        options.addOption("model", true, "full classifier model path");
+        options.addOption("range", true, "full classifier range file path");
+        options.addOption("thresholds", true, "comma-separated margin thresholds");
+        options.addOption("maxloss", true, "maximum acceptable accuracy loss");
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine line = parser.parse(options, args);
+        if (!line.hasOption("train") || !line.hasOption("test")) {
+            System.err.println("Usage: CascadeZoneClassificationEvaluator [-type <initial|metadata>] [-ext <extension>] "
+                    + "[-C <error cost>] [-output <path>] [-model <path> -range <path>] "
+                    + "[-thresholds <t1,t2,...>] [-maxloss <loss>] -train <input dir> -test <input dir>");
+            System.exit(1);
+        }
+        boolean metadata = "metadata".equals(line.getOptionValue("type", "initial"));
+        String ext = line.getOptionValue("ext", "cxml");
+        double C = Double.valueOf(line.getOptionValue("C", "8"));
+        double maxLoss = Double.valueOf(line.getOptionValue("maxloss", "0.005"));
+        double[] thresholds = DEFAULT_THRESHOLDS;
+        if (line.hasOption("thresholds")) {
+            String[] values = line.getOptionValue("thresholds").split(",");
+            thresholds = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                thresholds[i] = Double.valueOf(values[i].trim());
+            }
+        }
+
+        CascadeZoneClassificationEvaluator evaluator = new CascadeZoneClassificationEvaluator(metadata);
+        SVMZoneClassifier firstStage = evaluator.trainFirstStage(line.getOptionValue("train"), ext, C);
+        if (line.hasOption("output")) {
+            firstStage.saveModel(line.getOptionValue("output"));
+        }
+
+        SVMZoneClassifier fullClassifier;
+        if (line.hasOption("model")) {
+            fullClassifier = new SVMZoneClassifier(evaluator.getFeatureVectorBuilder());
+            fullClassifier.loadModelFromFile(line.getOptionValue("model"), line.getOptionValue("range"));
+        } else if (metadata) {
+            fullClassifier = SVMMetadataZoneClassifier.getDefaultInstance();
+        } else {
+            fullClassifier = SVMInitialZoneClassifier.getDefaultInstance();
+        }
+
+        evaluator.evaluate(firstStage, fullClassifier, line.getOptionValue("test"), ext);
+        evaluator.printReport(thresholds, maxLoss);
+    }
+
+}
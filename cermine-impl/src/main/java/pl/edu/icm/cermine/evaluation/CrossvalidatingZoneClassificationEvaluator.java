@@ -18,6 +18,7 @@
 
 package pl.edu.icm.cermine.evaluation;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
@@ -36,6 +37,7 @@ import pl.edu.icm.cermine.structure.transformers.BxDocumentToTrueVizWriter;
 import pl.edu.icm.cermine.structure.transformers.TrueVizToBxDocumentReader;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
 import pl.edu.icm.cermine.tools.classification.general.TrainingSample;
+import pl.edu.icm.cermine.tools.classification.general.TrainingSampleCache;
 import pl.edu.icm.cermine.tools.classification.svm.SVMZoneClassifier;
 
 /**
@@ -57,6 +59,9 @@ public abstract class CrossvalidatingZoneClassificationEvaluator {
     private final Map<BxZoneLabel, BxZoneLabel> labelMap = DEFAULT_LABEL_MAP.clone();
     private TrueVizToBxDocumentReader reader = new TrueVizToBxDocumentReader();
     private BxDocumentToTrueVizWriter writer = new BxDocumentToTrueVizWriter();
+    
+    /** training sample cache file, null if the cache is disabled */
+    private File cacheFile;
 
     //sample launch: -fold 5 /path/to/your/xml/catalog
     public static void main(String[] args, CrossvalidatingZoneClassificationEvaluator evaluator)
@@ -74,6 +79,7 @@ public abstract class CrossvalidatingZoneClassificationEvaluator {
         options.addOption("degree", true, "degree");
         
         options.addOption("ext", true, "ext");
+        options.addOption("cache", true, "training sample cache file");
         
         CommandLineParser parser = new GnuParser();
         CommandLine line = parser.parse(options, args);
@@ -113,6 +119,11 @@ public abstract class CrossvalidatingZoneClassificationEvaluator {
                     throw new IllegalArgumentException("Invalid kernel value provided");
             }
             
+            String cacheStr = line.getOptionValue("cache");
+            if (cacheStr != null && !cacheStr.isEmpty()) {
+                evaluator.setCacheFile(new File(cacheStr));
+            }
+            
             evaluator.setLabelMap(BxZoneLabel.getLabelToGeneralMap());
             evaluator.run(inputFile, line.getOptionValue("ext"), kernelType, gamma, C, degree);
 
@@ -121,10 +132,36 @@ public abstract class CrossvalidatingZoneClassificationEvaluator {
 
     protected abstract List<TrainingSample<BxZoneLabel>> getSamples(String inputFile, String ext) throws AnalysisException;
     
+    /**
+     * Reads the samples from the cache file if it is set and valid, otherwise
+     * obtains the samples with {@link #getSamples(String, String)} and writes
+     * them to the cache file.
+     * 
+     * @param inputFile input directory
+     * @param ext document file extension
+     * @return training samples
+     * @throws AnalysisException 
+     */
+    protected List<TrainingSample<BxZoneLabel>> getCachedSamples(String inputFile, String ext) throws AnalysisException {
+        return TrainingSampleCache.getSamples(cacheFile, getFeatureVectorBuilder(), getClass().getName(),
+                inputFile, ext, labelMap, new TrainingSampleCache.SampleProvider() {
+
+                    @Override
+                    public List<TrainingSample<BxZoneLabel>> getSamples(String inputFile, String ext) 
+                            throws AnalysisException {
+                        return CrossvalidatingZoneClassificationEvaluator.this.getSamples(inputFile, ext);
+                    }
+                });
+    }
+
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+    
     public void run(String inputFile, String ext, int kernelType, double gamma, double C, int degree) throws AnalysisException, IOException, TransformationException, CloneNotSupportedException {
         ClassificationResults summary = newResults();
 
-        List<TrainingSample<BxZoneLabel>> samples = getSamples(inputFile, ext);
+        List<TrainingSample<BxZoneLabel>> samples = getCachedSamples(inputFile, ext);
         List<DividedEvaluationSet> sampleSets = DividedEvaluationSet.build(samples, foldness);
         System.out.println("All training elements: " +  samples.size());
         for (int fold = 0; fold < foldness; ++fold) {
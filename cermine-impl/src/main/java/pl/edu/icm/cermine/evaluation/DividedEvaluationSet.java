@@ -21,6 +21,7 @@ package pl.edu.icm.cermine.evaluation;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import pl.edu.icm.cermine.structure.model.BxZoneLabel;
 import pl.edu.icm.cermine.tools.classification.general.TrainingSample;
 
@@ -42,9 +43,23 @@ public class DividedEvaluationSet {
     }
 
     public static List<DividedEvaluationSet> build(List<TrainingSample<BxZoneLabel>> samples, int numberOfFolds) {
+        return build(samples, numberOfFolds, new Random());
+    }
+    
+    /**
+     * Divides the samples into folds, shuffling them with the given random
+     * number generator, so that the division can be reproduced.
+     * 
+     * @param samples samples
+     * @param numberOfFolds number of folds
+     * @param random random number generator
+     * @return evaluation sets, one per fold
+     */
+    public static List<DividedEvaluationSet> build(List<TrainingSample<BxZoneLabel>> samples, int numberOfFolds,
+            Random random) {
         List<TrainingSample<BxZoneLabel>> shuffledDocs = new ArrayList<TrainingSample<BxZoneLabel>>(samples.size());
         shuffledDocs.addAll(samples);
-        Collections.shuffle(shuffledDocs);
+        Collections.shuffle(shuffledDocs, random);
         List<List<TrainingSample<BxZoneLabel>>> dividedSamples = new ArrayList<List<TrainingSample<BxZoneLabel>>>(numberOfFolds);
 
         for (int fold = 0; fold < numberOfFolds; ++fold) {
@@ -86,7 +86,7 @@ public class SVMInitialZoneClassificationEvaluator extends CrossvalidatingZoneCl
         DocumentsIterator it = new DocumentsIterator(inputFile, ext);
         return BxDocsToTrainingSamplesConverter.getZoneTrainingSamples(it.iterator(), 
                     getFeatureVectorBuilder(),
-                    BxZoneLabel.getLabelToGeneralMap());
+                    BxZoneLabel.getLabelToGeneralMap(), Runtime.getRuntime().availableProcessors());
     }
 }
 
@@ -93,7 +93,7 @@ public class SVMMetadataClassificationEvaluator extends CrossvalidatingZoneClass
     public List<TrainingSample<BxZoneLabel>> getSamples(String inputFile, String ext) throws AnalysisException {
         DocumentsIterator it = new DocumentsIterator(inputFile, ext);
         List<TrainingSample<BxZoneLabel>> samples = BxDocsToTrainingSamplesConverter.getZoneTrainingSamples(it.iterator(), 
-                    getFeatureVectorBuilder(), null);
+                    getFeatureVectorBuilder(), null, Runtime.getRuntime().availableProcessors());
         return ClassificationUtils.filterElements(samples, BxZoneLabelCategory.CAT_METADATA);
     }
     
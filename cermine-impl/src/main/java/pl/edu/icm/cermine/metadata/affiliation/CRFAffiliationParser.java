@@ -19,6 +19,7 @@ import pl.edu.icm.cermine.metadata.model.AffiliationLabel;
 import pl.edu.icm.cermine.metadata.model.DocumentAffiliation;
 import pl.edu.icm.cermine.metadata.transformers.DocumentMetadataToNLMElementConverter;
 import pl.edu.icm.cermine.parsing.model.Token;
+import pl.edu.icm.cermine.parsing.tools.ACRFModel;
 import pl.edu.icm.cermine.parsing.tools.ParsableStringParser;
 
 /**
@@ -67,7 +68,8 @@ public class CRFAffiliationParser implements ParsableStringParser<DocumentAffili
 	
 	/**
 	 * @param wordsFileName the name of the package resource to be used as the common words list
-	 * @param acrfFileName the name of the package resource to be used as the ACRF model
+	 * @param acrfFileName the name of the package resource to be used as the ACRF model,
+	 * loaded once and shared by all the parsers using it
 	 * @throws AnalysisException
 	 */
 	public CRFAffiliationParser(String wordsFileName, String acrfFileName) throws AnalysisException {
@@ -75,7 +77,7 @@ public class CRFAffiliationParser implements ParsableStringParser<DocumentAffili
 		tokenizer = new AffiliationTokenizer();
 		featureExtractor = new AffiliationFeatureExtractor(commonWords);
 		classifier = new AffiliationCRFTokenClassifier(
-				getClass().getResourceAsStream(acrfFileName));
+				ACRFModel.getInstance(getClass().getResource(acrfFileName)));
 	}
 	
 	public CRFAffiliationParser() throws AnalysisException {
@@ -1,17 +1,13 @@
 package pl.edu.icm.cermine.metadata.affiliation.tools;
 
-import edu.umass.cs.mallet.base.pipe.Pipe;
-import edu.umass.cs.mallet.base.pipe.iterator.LineGroupIterator;
-import edu.umass.cs.mallet.base.types.InstanceList;
 import edu.umass.cs.mallet.base.types.LabelsSequence;
-import edu.umass.cs.mallet.grmm.learning.ACRF;
-import java.io.*;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.metadata.model.AffiliationLabel;
 import pl.edu.icm.cermine.parsing.model.Token;
+import pl.edu.icm.cermine.parsing.tools.ACRFModel;
 import pl.edu.icm.cermine.parsing.tools.GrmmUtils;
 import pl.edu.icm.cermine.parsing.tools.TokenClassifier;
 
@@ -23,7 +19,7 @@ import pl.edu.icm.cermine.parsing.tools.TokenClassifier;
  */
 public class AffiliationCRFTokenClassifier implements TokenClassifier<Token<AffiliationLabel>> {
 
-	private ACRF model;
+	private ACRFModel model;
 	private static final int DEFAULT_NEIGHBOR_INFLUENCE_THRESHOLD = 1;
 	private static final String DEFAULT_MODEL_FILE =
 			"/pl/edu/icm/cermine/metadata/affiliation/acrf-affiliations-pubmed.ser.gz";
@@ -33,45 +29,25 @@ public class AffiliationCRFTokenClassifier implements TokenClassifier<Token<Affi
 	 * @throws AnalysisException if the model cannot be loaded
 	 */
 	public AffiliationCRFTokenClassifier(InputStream modelInputStream) throws AnalysisException {
-		System.setProperty("java.util.logging.config.file",
-				"edu/umass/cs/mallet/base/util/resources/logging.properties");
-		if (modelInputStream == null) {
-			throw new AnalysisException("Cannot set model, input stream is null!");
-		}
-		ObjectInputStream ois = null;
-		try {
-			ois = new ObjectInputStream(new BufferedInputStream(new GZIPInputStream(
-					modelInputStream)));
-			model = (ACRF) (ois.readObject());
-		} catch (IOException ex) {
-			throw new AnalysisException("Cannot set model!", ex);
-		} catch (ClassNotFoundException ex) {
-			throw new AnalysisException("Cannot set model!", ex);
-		} finally {
-			try {
-				if (ois != null) {
-					ois.close();
-				}
-			} catch (IOException ex) {
-				throw new AnalysisException("Cannot set model!", ex);
-			}
-		}
+		this(new ACRFModel(modelInputStream));
 	}
 
 	/**
-	 * Uses the default ACRF model.
+	 * @param model the ACRF model to be used, possibly shared with other classifiers
+	 */
+	public AffiliationCRFTokenClassifier(ACRFModel model) {
+		this.model = model;
+	}
+
+	/**
+	 * Uses the default ACRF model, shared by all the classifiers using it.
 	 * 
 	 * @throws AnalysisException
 	 */
 	public AffiliationCRFTokenClassifier() throws AnalysisException {
-		this(AffiliationCRFTokenClassifier.class.getResourceAsStream(DEFAULT_MODEL_FILE));
+		this(ACRFModel.getInstance(AffiliationCRFTokenClassifier.class.getResource(DEFAULT_MODEL_FILE)));
 	}
 
-	private LineGroupIterator getLineIterator(String data) {
-		return new LineGroupIterator(new StringReader(data), Pattern.compile("\\s*"), true);
-	}
-	
-	
 	/**
 	 * When comma is the last token in a tagged part, its label is changed to 'TEXT'.
 	 * 
@@ -97,13 +73,10 @@ public class AffiliationCRFTokenClassifier implements TokenClassifier<Token<Affi
         }
 		String data = GrmmUtils.toGrmmInput(tokens, DEFAULT_NEIGHBOR_INFLUENCE_THRESHOLD);
 
-		Pipe pipe = model.getInputPipe();
-		InstanceList instanceList = new InstanceList(pipe);
-		instanceList.add(getLineIterator(data));
 		LabelsSequence labelsSequence = null;
 		
 		try {
-			labelsSequence = (LabelsSequence) model.getBestLabels(instanceList).get(0);
+			labelsSequence = model.getBestLabels(Collections.singletonList(model.pipe(data))).get(0);
 		} catch (ArrayIndexOutOfBoundsException ex) {
 			throw new AnalysisException("ACRF model can't recognize some of the labels.");
 		}
@@ -18,32 +18,24 @@
 
 package pl.edu.icm.cermine.metadata.zoneclassification.features;
 
-import pl.edu.icm.cermine.structure.model.*;
-import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.structure.model.BxPage;
+import pl.edu.icm.cermine.structure.model.BxZone;
+import pl.edu.icm.cermine.tools.classification.features.ContextFeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureEvaluationContext;
 
 /**
  *
  * @author Dominika Tkaczyk (d.tkaczyk@icm.edu.pl)
  */
-public class AtRelativeCountFeature extends FeatureCalculator<BxZone, BxPage> {
+public class AtRelativeCountFeature extends ContextFeatureCalculator<BxZone, BxPage> {
+
+    private static final AtCountFeature AT_COUNT = new AtCountFeature();
+    
+    private static final CharCountFeature CHAR_COUNT = new CharCountFeature();
 
     @Override
-    public double calculateFeatureValue(BxZone zone, BxPage page) {
-        int count = 0;
-        int allCount = 0;
-        for (BxLine line : zone.getLines()) {
-            for (BxWord word : line.getWords()) {
-                for (BxChunk chunk : word.getChunks()) {
-                    char[] arr = chunk.toText().toCharArray();
-                    for (int i = 0; i < arr.length; i++) {
-                        allCount++;
-                        if (arr[i]=='@') {
-                            count++;
-                        }
-                    }
-                }
-            }
-        }
-        return (double) count / (double) allCount;
+    public double calculateFeatureValue(BxZone zone, BxPage page, 
+            FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+        return evaluation.getFeatureValue(AT_COUNT) / evaluation.getFeatureValue(CHAR_COUNT);
     }
 }
@@ -20,14 +20,18 @@ package pl.edu.icm.cermine.metadata.zoneclassification.features;
 
 import pl.edu.icm.cermine.structure.model.BxPage;
 import pl.edu.icm.cermine.structure.model.BxZone;
-import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.ContextFeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureEvaluationContext;
 
-public class BracketRelativeCount extends FeatureCalculator<BxZone, BxPage> {
+public class BracketRelativeCount extends ContextFeatureCalculator<BxZone, BxPage> {
 
-	@Override
-	public double calculateFeatureValue(BxZone zone, BxPage page) {
-		double brackets = new BracketCountFeature().calculateFeatureValue(zone, page);
-		double chars = new CharCountFeature().calculateFeatureValue(zone, page);
-		return brackets/chars; 
-	}
+    private static final BracketCountFeature BRACKET_COUNT = new BracketCountFeature();
+    
+    private static final CharCountFeature CHAR_COUNT = new CharCountFeature();
+
+    @Override
+    public double calculateFeatureValue(BxZone zone, BxPage page, 
+            FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+        return evaluation.getFeatureValue(BRACKET_COUNT) / evaluation.getFeatureValue(CHAR_COUNT);
+    }
 }
@@ -25,7 +25,7 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 
 public class BracketedLineRelativeCount extends FeatureCalculator<BxZone, BxPage> {
 
-    private static String featureName = "BracketedRelativeLineCount";
+    private static final String featureName = "BracketedRelativeLineCount";
 
     @Override
     public String getFeatureName() {
@@ -19,39 +19,41 @@
 package pl.edu.icm.cermine.metadata.zoneclassification.features;
 
 import pl.edu.icm.cermine.structure.model.*;
-import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.ContextFeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureEvaluationContext;
+import pl.edu.icm.cermine.tools.classification.features.SharedFeatureValue;
 
 /**
  *
  * @author Dominika Tkaczyk (d.tkaczyk@icm.edu.pl)
  */
-public class CharCountRelativeFeature extends FeatureCalculator<BxZone, BxPage> {
+public class CharCountRelativeFeature extends ContextFeatureCalculator<BxZone, BxPage> {
 
-    @Override
-    public double calculateFeatureValue(BxZone zone, BxPage page) {
-        int count = 0;
-        for (BxLine line : zone.getLines()) {
-            for (BxWord word : line.getWords()) {
-                for (BxChunk chunk : word.getChunks()) {
-                    count += chunk.toText().length();
-                }
-            }
-        }
+    private static final CharCountFeature CHAR_COUNT = new CharCountFeature();
+    
+    /** number of characters on the page, shared by all the zones of the page */
+    private static final SharedFeatureValue<BxZone, BxPage> PAGE_CHAR_COUNT =
+            new SharedFeatureValue<BxZone, BxPage>("PageCharCount", true) {
 
-        int pCount = 0;
-        for (BxZone pZone : page.getZones()) {
-            for (BxLine line : pZone.getLines()) {
-                for (BxWord word : line.getWords()) {
-                    for (BxChunk chunk : word.getChunks()) {
-                        pCount += chunk.toText().length();
+        @Override
+        public double calculate(BxZone zone, BxPage page, FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+            int pCount = 0;
+            for (BxZone pZone : page.getZones()) {
+                for (BxLine line : pZone.getLines()) {
+                    for (BxWord word : line.getWords()) {
+                        for (BxChunk chunk : word.getChunks()) {
+                            pCount += chunk.toText().length();
+                        }
                     }
                 }
             }
+            return pCount;
         }
-        if(((double) count / (double) pCount)<0.0) {
-        	System.out.println(count);
-        	System.out.println(pCount);
-        }
-        return (double) count / (double) pCount;
+    };
+
+    @Override
+    public double calculateFeatureValue(BxZone zone, BxPage page, 
+            FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+        return evaluation.getFeatureValue(CHAR_COUNT) / evaluation.getValue(PAGE_CHAR_COUNT);
     }
 }
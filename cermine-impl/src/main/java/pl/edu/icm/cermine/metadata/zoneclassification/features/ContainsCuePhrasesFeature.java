@@ -24,8 +24,8 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 
 public class ContainsCuePhrasesFeature extends FeatureCalculator<BxZone, BxPage> {
 
-    private static String featureName = "ContainsCuePhrases";
-    private static String[] cuePhrases = {"although", "therefore", "therein", "hereby",
+    private static final String featureName = "ContainsCuePhrases";
+    private static final String[] cuePhrases = {"although", "therefore", "therein", "hereby",
         "nevertheless", "to this end", "however", "moreover", "nonetheless"};
 
     @Override
@@ -18,11 +18,22 @@
 
 package pl.edu.icm.cermine.metadata.zoneclassification.features;
 
+import java.util.List;
+import pl.edu.icm.cermine.structure.model.BxBounds;
 import pl.edu.icm.cermine.structure.model.BxPage;
 import pl.edu.icm.cermine.structure.model.BxZone;
+import pl.edu.icm.cermine.structure.tools.BxZoneSpatialIndex;
 import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 
 /**
+ * Distance from the zone to the nearest zone on the page.
+ *
+ * The distances are calculated as they were when the bundled models were
+ * trained, including the skewed distance to the zones lying below and to the
+ * left (octant 6), which is never smaller than the horizontal gap between
+ * the zones. The page's zone spatial index is used only to find the zones
+ * that can be the nearest ones.
+ *
  * @author Pawel Szostek (p.szostek@icm.edu.pl)
  */
 public class DistanceFromNearestNeighbourFeature extends FeatureCalculator<BxZone, BxPage> {
@@ -33,95 +44,95 @@ public class DistanceFromNearestNeighbourFeature extends FeatureCalculator<BxZon
 
     @Override
     public double calculateFeatureValue(BxZone zone, BxPage page) {
-        double minDist = Double.MAX_VALUE;
+        BxZoneSpatialIndex index = page.getZoneSpatialIndex();
+        BxZone nearestZone = index.getNearestZone(zone);
+        if (nearestZone == null) {
+            return 0.0;
+        }
+        double minDist = distance(zone, nearestZone);
 
-        for (BxZone otherZone : page.getZones()) {
+        // zones in other octants are not farther than their true distance,
+        // zones in octant 6 are not farther than their horizontal gap
+        BxBounds bounds = zone.getBounds();
+        List<BxZone> candidates = index.getZonesWithin(zone, minDist);
+        candidates.addAll(index.getZonesIntersecting(new BxBounds(bounds.getX() - minDist,
+                bounds.getY() + bounds.getHeight(), minDist, Double.MAX_VALUE)));
+        for (BxZone otherZone : candidates) {
             if (otherZone == zone) {
                 continue;
             }
+            double dist = distance(zone, otherZone);
+            if (dist < minDist) {
+                minDist = dist;
+            }
+        }
+        return minDist;
+    }
 
-            double dist;
-            double cx, cy, cw, ch, ox, oy, ow, oh;
-            cx = zone.getBounds().getX();
-            cy = zone.getBounds().getY();
-            cw = zone.getBounds().getWidth();
-            ch = zone.getBounds().getHeight();
+    private static double distance(BxZone zone, BxZone otherZone) {
+        double cx, cy, cw, ch, ox, oy, ow, oh;
+        cx = zone.getBounds().getX();
+        cy = zone.getBounds().getY();
+        cw = zone.getBounds().getWidth();
+        ch = zone.getBounds().getHeight();
 
-            ox = otherZone.getBounds().getX();
-            oy = otherZone.getBounds().getY();
-            ow = otherZone.getBounds().getWidth();
-            oh = otherZone.getBounds().getHeight();
+        ox = otherZone.getBounds().getX();
+        oy = otherZone.getBounds().getY();
+        ow = otherZone.getBounds().getWidth();
+        oh = otherZone.getBounds().getHeight();
 
-            // Determine Octant
-            //
-            // 0 | 1 | 2
-            // __|___|__
-            // 7 | 9 | 3
-            // __|___|__
-            // 6 | 5 | 4
+        // Determine Octant
+        //
+        // 0 | 1 | 2
+        // __|___|__
+        // 7 | 9 | 3
+        // __|___|__
+        // 6 | 5 | 4
 
-            int oct;
-            if (cx + cw <= ox) {
-                if (cy + ch <= oy) {
-                    oct = 4;
-                } else if (cy >= oy + oh) {
-                    oct = 2;
-                } else {
-                    oct = 3;
-                }
-            } else if (ox + ow <= cx) {
-                if (cy + ch <= oy) {
-                    oct = 6;
-                } else if (oy + oh <= cy) {
-                    oct = 0;
-                } else {
-                    oct = 7;
-                }
-            } else if (cy + ch <= oy) {
-                oct = 5;
-            } else if (oy + oh <= cy) {
-                oct = 1;
+        int oct;
+        if (cx + cw <= ox) {
+            if (cy + ch <= oy) {
+                oct = 4;
+            } else if (cy >= oy + oh) {
+                oct = 2;
             } else {
-                continue;
-            }
-            // determine distance based on octant
-            switch (oct) {
-                case 0:
-                    dist = euclideanDist(ox + ow, oy + oh, cx, cy);
-                    break;
-                case 1:
-                    dist = cy - (oy + oh);
-                    break;
-                case 2:
-                    dist = euclideanDist(ox, oy + oh, cx + cw, cy);
-                    break;
-                case 3:
-                    dist = ox - (cx + cw);
-                    break;
-                case 4:
-                    dist = euclideanDist(cx + cw, cy + ch, ox, oy);
-                    break;
-                case 5:
-                    dist = oy - (cy + ch);
-                    break;
-                case 6:
-                    dist = euclideanDist(ox + ow, oy, cx, cx + ch);
-                    break;
-                case 7:
-                    dist = cx - (ox + ow);
-                    break;
-                default:
-                    dist = Double.MAX_VALUE;
+                oct = 3;
             }
-            
-            if (dist < minDist) {
-                minDist = dist;
+        } else if (ox + ow <= cx) {
+            if (cy + ch <= oy) {
+                oct = 6;
+            } else if (oy + oh <= cy) {
+                oct = 0;
+            } else {
+                oct = 7;
             }
-        }
-        if (minDist == Double.MAX_VALUE) {
-            return 0.0;
+        } else if (cy + ch <= oy) {
+            oct = 5;
+        } else if (oy + oh <= cy) {
+            oct = 1;
         } else {
-            return minDist;
+            return Double.MAX_VALUE;
+        }
+        // determine distance based on octant
+        switch (oct) {
+            case 0:
+                return euclideanDist(ox + ow, oy + oh, cx, cy);
+            case 1:
+                return cy - (oy + oh);
+            case 2:
+                return euclideanDist(ox, oy + oh, cx + cw, cy);
+            case 3:
+                return ox - (cx + cw);
+            case 4:
+                return euclideanDist(cx + cw, cy + ch, ox, oy);
+            case 5:
+                return oy - (cy + ch);
+            case 6:
+                return euclideanDist(ox + ow, oy, cx, cx + ch);
+            case 7:
+                return cx - (ox + ow);
+            default:
+                return Double.MAX_VALUE;
         }
     }
 };
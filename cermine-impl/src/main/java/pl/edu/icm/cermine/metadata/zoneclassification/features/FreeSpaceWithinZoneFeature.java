@@ -27,7 +27,7 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 
 public class FreeSpaceWithinZoneFeature extends FeatureCalculator<BxZone, BxPage> {
 
-	private static String featureName = "FreeSpace";
+	private static final String featureName = "FreeSpace";
 
 	@Override
 	public String getFeatureName() {
@@ -32,10 +32,8 @@ public class HorizontalRelativeProminenceFeature extends FeatureCalculator<BxZon
         double leftProminence = zone.getX();
         double rightProminence = page.getWidth() - (zone.getX() + zone.getWidth());
 
-        for (BxZone otherZone : page.getZones()) {
-            if (otherZone == zone) {
-                continue;
-            }
+        double radius = Math.max(leftProminence, rightProminence);
+        for (BxZone otherZone : page.getZoneSpatialIndex().getZonesWithin(zone, radius)) {
             double cx, cy, cw, ch, ox, oy, ow, oh;
             double newLeftProminence, newRightProminence;
 
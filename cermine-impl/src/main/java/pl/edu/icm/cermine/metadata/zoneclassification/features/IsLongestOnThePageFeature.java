@@ -20,17 +20,29 @@ package pl.edu.icm.cermine.metadata.zoneclassification.features;
 
 import pl.edu.icm.cermine.structure.model.BxPage;
 import pl.edu.icm.cermine.structure.model.BxZone;
-import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.ContextFeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureEvaluationContext;
+import pl.edu.icm.cermine.tools.classification.features.SharedFeatureValue;
 
-public class IsLongestOnThePageFeature extends FeatureCalculator<BxZone, BxPage> {
+public class IsLongestOnThePageFeature extends ContextFeatureCalculator<BxZone, BxPage> {
 
-    @Override
-    public double calculateFeatureValue(BxZone object, BxPage context) {
-        for (BxZone zone : context.getZones()) {
-            if (zone.toText().length() > object.toText().length()) {
-                return 0.0;
+    /** maximum text length of the zones of the page */
+    private static final SharedFeatureValue<BxZone, BxPage> MAX_TEXT_LENGTH =
+            new SharedFeatureValue<BxZone, BxPage>("PageMaxTextLength", true) {
+
+        @Override
+        public double calculate(BxZone zone, BxPage page, FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+            int max = Integer.MIN_VALUE;
+            for (BxZone pZone : page.getZones()) {
+                max = Math.max(max, pZone.toText().length());
             }
+            return max;
         }
-        return 1.0;
+    };
+
+    @Override
+    public double calculateFeatureValue(BxZone zone, BxPage page, 
+            FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+        return evaluation.getValue(MAX_TEXT_LENGTH) > zone.toText().length() ? 0.0 : 1.0;
     }
 }
@@ -20,17 +20,31 @@ package pl.edu.icm.cermine.metadata.zoneclassification.features;
 
 import pl.edu.icm.cermine.structure.model.BxPage;
 import pl.edu.icm.cermine.structure.model.BxZone;
-import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.ContextFeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureEvaluationContext;
+import pl.edu.icm.cermine.tools.classification.features.SharedFeatureValue;
 
-public class IsWidestOnThePageFeature extends FeatureCalculator<BxZone, BxPage> {
+public class IsWidestOnThePageFeature extends ContextFeatureCalculator<BxZone, BxPage> {
 
-    @Override
-    public double calculateFeatureValue(BxZone object, BxPage context) {
-        for (BxZone zone : context.getZones()) {
-            if (zone.getWidth() > object.getWidth()) {
-                return 0.0;
+    /** maximum width of the zones of the page */
+    private static final SharedFeatureValue<BxZone, BxPage> MAX_WIDTH =
+            new SharedFeatureValue<BxZone, BxPage>("PageMaxWidth", true) {
+
+        @Override
+        public double calculate(BxZone zone, BxPage page, FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (BxZone pZone : page.getZones()) {
+                if (pZone.getWidth() > max) {
+                    max = pZone.getWidth();
+                }
             }
+            return max;
         }
-        return 1.0;
+    };
+
+    @Override
+    public double calculateFeatureValue(BxZone zone, BxPage page, 
+            FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+        return evaluation.getValue(MAX_WIDTH) > zone.getWidth() ? 0.0 : 1.0;
     }
 }
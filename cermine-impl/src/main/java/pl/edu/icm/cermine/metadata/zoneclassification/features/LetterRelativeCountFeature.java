@@ -18,32 +18,24 @@
 
 package pl.edu.icm.cermine.metadata.zoneclassification.features;
 
-import pl.edu.icm.cermine.structure.model.*;
-import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.structure.model.BxPage;
+import pl.edu.icm.cermine.structure.model.BxZone;
+import pl.edu.icm.cermine.tools.classification.features.ContextFeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureEvaluationContext;
 
 /**
  *
  * @author Dominika Tkaczyk (d.tkaczyk@icm.edu.pl)
  */
-public class LetterRelativeCountFeature extends FeatureCalculator<BxZone, BxPage> {
+public class LetterRelativeCountFeature extends ContextFeatureCalculator<BxZone, BxPage> {
+
+    private static final LetterCountFeature LETTER_COUNT = new LetterCountFeature();
+    
+    private static final CharCountFeature CHAR_COUNT = new CharCountFeature();
 
     @Override
-    public double calculateFeatureValue(BxZone zone, BxPage page) {
-        int count = 0;
-        int allCount = 0;
-        for (BxLine line : zone.getLines()) {
-            for (BxWord word : line.getWords()) {
-                for (BxChunk chunk : word.getChunks()) {
-                    char[] arr = chunk.toText().toCharArray();
-                    for (int i = 0; i < arr.length; i++) {
-                        allCount++;
-                        if (Character.isLetter(arr[i])) {
-                            count++;
-                        }
-                    }
-                }
-            }
-        }
-        return (double) count / (double) allCount;
+    public double calculateFeatureValue(BxZone zone, BxPage page, 
+            FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+        return evaluation.getFeatureValue(LETTER_COUNT) / evaluation.getFeatureValue(CHAR_COUNT);
     }
 }
@@ -29,7 +29,7 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
  */
 public class LineHeightMaxMeanFeature extends FeatureCalculator<BxZone, BxPage> {
 
-    private static String featureName = "LineHeightMaxMeanRelative";
+    private static final String featureName = "LineHeightMaxMeanRelative";
 
     @Override
     public String getFeatureName() {
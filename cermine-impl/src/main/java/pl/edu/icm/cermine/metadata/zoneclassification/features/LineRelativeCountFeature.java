@@ -20,22 +20,33 @@ package pl.edu.icm.cermine.metadata.zoneclassification.features;
 
 import pl.edu.icm.cermine.structure.model.BxPage;
 import pl.edu.icm.cermine.structure.model.BxZone;
-import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.ContextFeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureEvaluationContext;
+import pl.edu.icm.cermine.tools.classification.features.SharedFeatureValue;
 
 /**
  *
  * @author Dominika Tkaczyk (d.tkaczyk@icm.edu.pl)
  */
-public class LineRelativeCountFeature extends FeatureCalculator<BxZone, BxPage> {
+public class LineRelativeCountFeature extends ContextFeatureCalculator<BxZone, BxPage> {
 
-    @Override
-    public double calculateFeatureValue(BxZone zone, BxPage page) {
-        int allLines = 0;
-        for (BxZone pZone : page.getZones()) {
-            allLines += pZone.getLines().size();
+    /** number of lines on the page, shared by all the zones of the page */
+    private static final SharedFeatureValue<BxZone, BxPage> PAGE_LINE_COUNT =
+            new SharedFeatureValue<BxZone, BxPage>("PageLineCount", true) {
+
+        @Override
+        public double calculate(BxZone zone, BxPage page, FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+            int allLines = 0;
+            for (BxZone pZone : page.getZones()) {
+                allLines += pZone.getLines().size();
+            }
+            return allLines;
         }
-        
-        return (double) zone.getLines().size() / (double) allLines;
-    }
+    };
 
+    @Override
+    public double calculateFeatureValue(BxZone zone, BxPage page, 
+            FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+        return (double) zone.getLines().size() / evaluation.getValue(PAGE_LINE_COUNT);
+    }
 }
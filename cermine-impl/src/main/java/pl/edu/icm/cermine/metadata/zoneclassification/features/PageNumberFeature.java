@@ -24,7 +24,7 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 
 public class PageNumberFeature extends FeatureCalculator<BxZone, BxPage> {
     
-	private static String featureName = "PageNumberFeature";
+	private static final String featureName = "PageNumberFeature";
 
 	@Override
 	public String getFeatureName() {
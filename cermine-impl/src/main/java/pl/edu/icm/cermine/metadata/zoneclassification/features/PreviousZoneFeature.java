@@ -24,7 +24,7 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 
 public class PreviousZoneFeature extends FeatureCalculator<BxZone, BxPage>
 {
-	private static String featureName = "PreviousZoneFeature";
+	private static final String featureName = "PreviousZoneFeature";
 	
 	@Override
 	public String getFeatureName() {
@@ -39,4 +39,9 @@ public class PreviousZoneFeature extends FeatureCalculator<BxZone, BxPage>
 			return -1.0;
 		}
 	}
+
+	@Override
+	public boolean isLabelDependent() {
+		return true;
+	}
 }
@@ -20,13 +20,17 @@ package pl.edu.icm.cermine.metadata.zoneclassification.features;
 
 import pl.edu.icm.cermine.structure.model.BxPage;
 import pl.edu.icm.cermine.structure.model.BxZone;
-import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.ContextFeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureEvaluationContext;
 
-public class WhitespaceRelativeCountLogFeature extends FeatureCalculator<BxZone, BxPage> {
+public class WhitespaceRelativeCountLogFeature extends ContextFeatureCalculator<BxZone, BxPage> {
+
+    private static final WhitespaceCountFeature WHITESPACE_COUNT = new WhitespaceCountFeature();
 
     @Override
-    public double calculateFeatureValue(BxZone zone, BxPage page) {
-    	double spaceCount = new WhitespaceCountFeature().calculateFeatureValue(zone, page);
+    public double calculateFeatureValue(BxZone zone, BxPage page, 
+            FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+        double spaceCount = evaluation.getFeatureValue(WHITESPACE_COUNT);
         return -Math.log(spaceCount / (zone.toText().length()) + Double.MIN_VALUE);
     }
 }
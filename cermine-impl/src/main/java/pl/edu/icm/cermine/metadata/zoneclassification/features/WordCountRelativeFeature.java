@@ -21,29 +21,39 @@ package pl.edu.icm.cermine.metadata.zoneclassification.features;
 import pl.edu.icm.cermine.structure.model.BxLine;
 import pl.edu.icm.cermine.structure.model.BxPage;
 import pl.edu.icm.cermine.structure.model.BxZone;
-import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.ContextFeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureEvaluationContext;
+import pl.edu.icm.cermine.tools.classification.features.SharedFeatureValue;
 
 /**
  *
  * @author Dominika Tkaczyk (d.tkaczyk@icm.edu.pl)
  */
-public class WordCountRelativeFeature extends FeatureCalculator<BxZone, BxPage> {
+public class WordCountRelativeFeature extends ContextFeatureCalculator<BxZone, BxPage> {
+
+    /** number of words on the page, shared by all the zones of the page */
+    private static final SharedFeatureValue<BxZone, BxPage> PAGE_WORD_COUNT =
+            new SharedFeatureValue<BxZone, BxPage>("PageWordCount", true) {
+
+        @Override
+        public double calculate(BxZone zone, BxPage page, FeatureEvaluationContext<BxZone, BxPage> evaluation) {
+            int pCount = 0;
+            for (BxZone pZone: page.getZones()) {
+                for (BxLine line : pZone.getLines()) {
+                    pCount += line.getWords().size();
+                }
+            }
+            return pCount;
+        }
+    };
 
     @Override
-    public double calculateFeatureValue(BxZone zone, BxPage page) {
+    public double calculateFeatureValue(BxZone zone, BxPage page, 
+            FeatureEvaluationContext<BxZone, BxPage> evaluation) {
         int count = 0;
         for (BxLine line : zone.getLines()) {
             count += line.getWords().size();
         }
-
-        int pCount = 0;
-        for (BxZone pZone: page.getZones()) {
-            for (BxLine line : pZone.getLines()) {
-                pCount += line.getWords().size();
-            }
-        }
-
-        return (double) count / (double) pCount;
+        return (double) count / evaluation.getValue(PAGE_WORD_COUNT);
     }
-
 }
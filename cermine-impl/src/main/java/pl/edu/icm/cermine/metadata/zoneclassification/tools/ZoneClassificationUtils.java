@@ -32,7 +32,7 @@ import pl.edu.icm.cermine.structure.tools.BxBoundsBuilder;
  */
 public class ZoneClassificationUtils {
 
-    private static String[] conjunctions = {"and", "or", "for", "or", "nor"};
+    private static final String[] conjunctions = {"and", "or", "for", "or", "nor"};
 
     public static boolean isConjunction(String word) {
         for (String conjunction : conjunctions) {
@@ -0,0 +1,316 @@
+package pl.edu.icm.cermine.parsing.tools;
+
+import edu.umass.cs.mallet.base.pipe.iterator.LineGroupIterator;
+import edu.umass.cs.mallet.base.types.*;
+import edu.umass.cs.mallet.grmm.learning.ACRF;
+import java.io.*;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import pl.edu.icm.cermine.exception.AnalysisException;
+
+/**
+ * Thread-safe wrapper of an ACRF model.
+ *
+ * ACRF keeps the state of its inferencers and the alphabets grown by its input
+ * pipe in the model object, so a model object cannot be used by several threads
+ * at the same time. The wrapper keeps a pool of copies of the model, each
+ * deserialized separately from the serialized model read once. Piping the GRMM
+ * input and finding the best labels borrow a copy not used by any other thread,
+ * a new copy is deserialized only if all the copies are in use, so the pool 
+ * grows to the number of threads using the model at the same time. Everything
+ * else (tokenizing, computing features, building instances) is done
+ * by the calling threads without borrowing a copy.
+ *
+ * Models loaded from resources are cached, so each resource is deserialized
+ * only once per JVM (see {@link #getInstance(URL)}).
+ */
+public final class ACRFModel {
+
+	private static final Map<String, ACRFModel> INSTANCES = new HashMap<String, ACRFModel>();
+
+	private static final String LABEL_PROBE = "TEXT ----";
+
+	private static final int BUFFER_SIZE = 65536;
+
+	/** the model serialized, deserialized again for every copy */
+	private final byte[] serializedModel;
+
+	/** copies of the model not used by any thread */
+	private final List<ACRF> idleModels = new ArrayList<ACRF>();
+
+	/**
+	 * @param modelInputStream the stream representing the gzipped, serialized ACRF model
+	 * @throws AnalysisException if the model cannot be loaded
+	 */
+	public ACRFModel(InputStream modelInputStream) throws AnalysisException {
+		System.setProperty("java.util.logging.config.file",
+				"edu/umass/cs/mallet/base/util/resources/logging.properties");
+		if (modelInputStream == null) {
+			throw new AnalysisException("Cannot set model, input stream is null!");
+		}
+		InputStream is = null;
+		try {
+			is = new GZIPInputStream(modelInputStream);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = is.read(buffer)) != -1) {
+				bytes.write(buffer, 0, count);
+			}
+			serializedModel = bytes.toByteArray();
+			idleModels.add(deserializeModel(serializedModel));
+		} catch (IOException ex) {
+			throw new AnalysisException("Cannot set model!", ex);
+		} catch (ClassNotFoundException ex) {
+			throw new AnalysisException("Cannot set model!", ex);
+		} finally {
+			try {
+				if (is != null) {
+					is.close();
+				} else {
+					modelInputStream.close();
+				}
+			} catch (IOException ex) {
+				throw new AnalysisException("Cannot set model!", ex);
+			}
+		}
+	}
+
+	private static ACRF deserializeModel(byte[] serializedModel) throws IOException, ClassNotFoundException {
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serializedModel));
+		try {
+			return (ACRF) ois.readObject();
+		} finally {
+			ois.close();
+		}
+	}
+
+	/**
+	 * Borrows a copy of the model not used by any other thread, deserializing
+	 * a new copy if there is none. The copy has to be returned with 
+	 * {@link #releaseModel(ACRF)}.
+	 */
+	private ACRF obtainModel() {
+		synchronized (idleModels) {
+			if (!idleModels.isEmpty()) {
+				return idleModels.remove(idleModels.size() - 1);
+			}
+		}
+		try {
+			return deserializeModel(serializedModel);
+		} catch (IOException ex) {
+			throw new IllegalStateException("Cannot copy model!", ex);
+		} catch (ClassNotFoundException ex) {
+			throw new IllegalStateException("Cannot copy model!", ex);
+		}
+	}
+
+	private void releaseModel(ACRF model) {
+		synchronized (idleModels) {
+			idleModels.add(model);
+		}
+	}
+
+	/**
+	 * @param modelFile the file containing the gzipped, serialized ACRF model
+	 * @throws AnalysisException if the model cannot be loaded
+	 */
+	public ACRFModel(File modelFile) throws AnalysisException {
+		this(openFile(modelFile));
+	}
+
+	private static InputStream openFile(File modelFile) throws AnalysisException {
+		try {
+			return new FileInputStream(modelFile);
+		} catch (FileNotFoundException ex) {
+			throw new AnalysisException("Cannot set model!", ex);
+		}
+	}
+
+	/**
+	 * Returns the shared model loaded from the resource. The resource is
+	 * deserialized on the first call only.
+	 *
+	 * @param resource the URL of the gzipped, serialized ACRF model
+	 * @return the shared model
+	 * @throws AnalysisException if the model cannot be loaded
+	 */
+	public static ACRFModel getInstance(URL resource) throws AnalysisException {
+		if (resource == null) {
+			throw new AnalysisException("Cannot set model, resource not found!");
+		}
+		synchronized (INSTANCES) {
+			ACRFModel instance = INSTANCES.get(resource.toString());
+			if (instance == null) {
+				try {
+					instance = new ACRFModel(resource.openStream());
+				} catch (IOException ex) {
+					throw new AnalysisException("Cannot set model!", ex);
+				}
+				INSTANCES.put(resource.toString(), instance);
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Exports the model to the linear-chain CRF format. Only models with
+	 * a single bigram template over the labels of the first (and only) level
+	 * can be exported. GRMM does not expose the weights of the templates,
+	 * so they are read from the fields of the template objects.
+	 *
+	 * @return linear-chain CRF equivalent to the model
+	 * @throws AnalysisException if the model cannot be exported
+	 */
+	public LinearChainCRF toLinearChainCRF() throws AnalysisException {
+		ACRF model = obtainModel();
+		try {
+			return toLinearChainCRF(model);
+		} finally {
+			releaseModel(model);
+		}
+	}
+
+	private static LinearChainCRF toLinearChainCRF(ACRF model) throws AnalysisException {
+		Object[] templates = (Object[]) getField(model, "templates");
+		if (templates.length != 1 || !templates[0].getClass().getName().endsWith("$BigramTemplate")
+				|| ((Integer) getField(templates[0], "factor")) != 0
+				|| ((Boolean) getField(templates[0], "supportedOnly"))) {
+			throw new AnalysisException("Cannot export model, a single bigram template is required!");
+		}
+		Instance instance = pipe(model, LABEL_PROBE);
+		Alphabet alphabet = ((FeatureVectorSequence) instance.getData()).getAlphabet();
+		LabelAlphabet labelAlphabet = ((LabelsSequence) instance.getTarget()).getLabels(0).get(0).getLabelAlphabet();
+
+		List<String> labels = new ArrayList<String>();
+		for (int i = 0; i < labelAlphabet.size(); i++) {
+			labels.add(labelAlphabet.lookupObject(i).toString());
+		}
+		List<String> features = new ArrayList<String>();
+		for (int i = 0; i < alphabet.size(); i++) {
+			features.add(alphabet.lookupObject(i).toString());
+		}
+		int pairs = labels.size() * labels.size();
+
+		SparseVector defaultWeights = (SparseVector) getField(templates[0], "defaultWeights");
+		SparseVector[] weights = (SparseVector[]) getField(templates[0], "weights");
+		if (weights.length != pairs) {
+			throw new AnalysisException("Cannot export model, unexpected number of weight vectors!");
+		}
+		double[] transitions = new double[pairs];
+		for (int loc = 0; loc < defaultWeights.numLocations(); loc++) {
+			int index = defaultWeights.indexAtLocation(loc);
+			if (index < pairs) {
+				transitions[index] = defaultWeights.valueAtLocation(loc);
+			}
+		}
+		double[] featureWeights = new double[features.size() * pairs];
+		for (int pair = 0; pair < pairs; pair++) {
+			for (int loc = 0; loc < weights[pair].numLocations(); loc++) {
+				int feature = weights[pair].indexAtLocation(loc);
+				if (feature < features.size()) {
+					featureWeights[feature * pairs + pair] = weights[pair].valueAtLocation(loc);
+				}
+			}
+		}
+		return new LinearChainCRF(labels, features, transitions, featureWeights);
+	}
+
+	private static Object getField(Object object, String name) throws AnalysisException {
+		for (Class<?> c = object.getClass(); c != null; c = c.getSuperclass()) {
+			try {
+				Field field = c.getDeclaredField(name);
+				field.setAccessible(true);
+				return field.get(object);
+			} catch (NoSuchFieldException ex) {
+				// look in the superclass
+			} catch (IllegalAccessException ex) {
+				throw new AnalysisException("Cannot export model!", ex);
+			}
+		}
+		throw new AnalysisException("Cannot export model, field not found: " + name);
+	}
+
+	/**
+	 * Passes the data in GRMM input format through the input pipe of the model.
+	 *
+	 * @param data GRMM input, one token per line
+	 * @return Mallet instance
+	 */
+	public Instance pipe(String data) {
+		ACRF model = obtainModel();
+		try {
+			return pipe(model, data);
+		} finally {
+			releaseModel(model);
+		}
+	}
+
+	private static Instance pipe(ACRF model, String data) {
+		InstanceList instanceList = new InstanceList(model.getInputPipe());
+		instanceList.add(new LineGroupIterator(new StringReader(data), Pattern.compile("\\s*"), true));
+		return instanceList.getInstance(0);
+	}
+
+	/**
+	 * Finds the best label sequences of the instances. All the instances should
+	 * be created in the same way, i.e. all by {@link #pipe(String)}
+	 * or all without a pipe.
+	 *
+	 * A sequence shorter than two tokens does not contain any factor of the bigram
+	 * template, and GRMM inference fails on a graph without factors. A single token
+	 * gets the first label of the label alphabet instead, as in {@link LinearChainCRF}.
+	 *
+	 * @param instances Mallet instances
+	 * @return the best label sequences, in the order of the instances
+	 */
+	public List<LabelsSequence> getBestLabels(List<Instance> instances) {
+		LabelsSequence[] labels = new LabelsSequence[instances.size()];
+		InstanceList instanceList = null;
+		for (int i = 0; i < instances.size(); i++) {
+			Instance instance = instances.get(i);
+			if (((FeatureVectorSequence) instance.getData()).size() < 2) {
+				labels[i] = getFirstLabels((LabelsSequence) instance.getTarget());
+			} else {
+				if (instanceList == null) {
+					instanceList = new InstanceList(instance.getPipe());
+				}
+				instanceList.add(instance);
+			}
+		}
+		if (instanceList != null) {
+			List<?> bestLabels;
+			ACRF model = obtainModel();
+			try {
+				bestLabels = model.getBestLabels(instanceList);
+			} finally {
+				releaseModel(model);
+			}
+			Iterator<?> iterator = bestLabels.iterator();
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == null) {
+					labels[i] = (LabelsSequence) iterator.next();
+				}
+			}
+		}
+		return new ArrayList<LabelsSequence>(Arrays.asList(labels));
+	}
+
+	private static LabelsSequence getFirstLabels(LabelsSequence target) {
+		Labels[] labels = new Labels[target.size()];
+		for (int i = 0; i < labels.length; i++) {
+			LabelAlphabet labelAlphabet = target.getLabels(i).get(0).getLabelAlphabet();
+			labels[i] = new Labels(new Label[]{labelAlphabet.lookupLabel(0)});
+		}
+		return new LabelsSequence(labels);
+	}
+
+}
@@ -0,0 +1,281 @@
+package pl.edu.icm.cermine.parsing.tools;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.cli.*;
+import pl.edu.icm.cermine.exception.AnalysisException;
+
+/**
+ * Linear-chain CRF with a single bigram template, decoded with the Viterbi
+ * algorithm on primitive arrays.
+ *
+ * The model is equivalent to an ACRF with one bigram template (see
+ * {@link ACRFModel#toLinearChainCRF()}): the factor between the labels
+ * of tokens i and i+1 depends on the features of token i, and its log value
+ * for the labels (prev, cur) is the sum of the default weight of (prev, cur)
+ * and the weights of (prev, cur) for all the active features of token i.
+ *
+ * The parameters are immutable and all the state of the decoding is local
+ * to {@link #getBestLabels(int[][])}, so one instance can be used by many
+ * threads at the same time.
+ *
+ * The model is stored in a gzipped binary format: magic number, version,
+ * the labels, the features, the default weights and the feature weights.
+ */
+public final class LinearChainCRF {
+
+	private static final int MAGIC = 0x4c435246;
+	private static final int VERSION = 1;
+
+	private static final Map<String, LinearChainCRF> INSTANCES = new HashMap<String, LinearChainCRF>();
+
+	private final String[] labels;
+
+	private final String[] features;
+
+	private final Map<String, Integer> featureIndices;
+
+	/** default weights, indexed by prev * labels + cur */
+	private final double[] transitions;
+
+	/** feature weights, indexed by (feature * labels + prev) * labels + cur */
+	private final double[] weights;
+
+	/**
+	 * @param labels the labels
+	 * @param features the features
+	 * @param transitions the default weights of the pairs of labels, indexed
+	 * by prev * labels + cur
+	 * @param weights the weights of the features, indexed
+	 * by (feature * labels + prev) * labels + cur
+	 */
+	public LinearChainCRF(List<String> labels, List<String> features, double[] transitions, double[] weights) {
+		int pairs = labels.size() * labels.size();
+		if (transitions.length != pairs || weights.length != features.size() * pairs) {
+			throw new IllegalArgumentException("Weight arrays do not match the labels and the features!");
+		}
+		this.labels = labels.toArray(new String[labels.size()]);
+		this.features = features.toArray(new String[features.size()]);
+		this.featureIndices = new HashMap<String, Integer>();
+		for (int i = 0; i < this.features.length; i++) {
+			featureIndices.put(this.features[i], i);
+		}
+		this.transitions = transitions;
+		this.weights = weights;
+	}
+
+	public List<String> getLabels() {
+		return Collections.unmodifiableList(Arrays.asList(labels));
+	}
+
+	public int getFeatureCount() {
+		return features.length;
+	}
+
+	/**
+	 * @param feature feature name
+	 * @return the index of the feature, or -1 if the model does not have it
+	 */
+	public int getFeatureIndex(String feature) {
+		Integer index = featureIndices.get(feature);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Finds the best label sequence. A single token, which does not belong
+	 * to any factor, gets the first label.
+	 *
+	 * @param tokenFeatures the indices of the active features of the tokens
+	 * @return the indices of the best labels of the tokens
+	 */
+	public int[] getBestLabels(int[][] tokenFeatures) {
+		int length = tokenFeatures.length;
+		int[] best = new int[length];
+		if (length < 2) {
+			return best;
+		}
+		int labelCount = labels.length;
+		int pairs = labelCount * labelCount;
+
+		double[] scores = new double[labelCount];
+		double[] nextScores = new double[labelCount];
+		double[] potential = new double[pairs];
+		int[] backPointers = new int[(length - 1) * labelCount];
+
+		for (int i = 0; i < length - 1; i++) {
+			System.arraycopy(transitions, 0, potential, 0, pairs);
+			for (int feature : tokenFeatures[i]) {
+				int base = feature * pairs;
+				for (int j = 0; j < pairs; j++) {
+					potential[j] += weights[base + j];
+				}
+			}
+			for (int cur = 0; cur < labelCount; cur++) {
+				double bestScore = Double.NEGATIVE_INFINITY;
+				int bestPrev = 0;
+				for (int prev = 0; prev < labelCount; prev++) {
+					double score = scores[prev] + potential[prev * labelCount + cur];
+					if (score > bestScore) {
+						bestScore = score;
+						bestPrev = prev;
+					}
+				}
+				nextScores[cur] = bestScore;
+				backPointers[i * labelCount + cur] = bestPrev;
+			}
+			double[] tmp = scores;
+			scores = nextScores;
+			nextScores = tmp;
+		}
+
+		int last = 0;
+		for (int cur = 1; cur < labelCount; cur++) {
+			if (scores[cur] > scores[last]) {
+				last = cur;
+			}
+		}
+		best[length - 1] = last;
+		for (int i = length - 2; i >= 0; i--) {
+			best[i] = backPointers[i * labelCount + best[i + 1]];
+		}
+		return best;
+	}
+
+	/**
+	 * Writes the model in the gzipped binary format.
+	 *
+	 * @param os output stream
+	 * @throws IOException
+	 */
+	public void write(OutputStream os) throws IOException {
+		GZIPOutputStream gos = new GZIPOutputStream(os);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gos));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(labels.length);
+		for (String label : labels) {
+			out.writeUTF(label);
+		}
+		out.writeInt(features.length);
+		for (String feature : features) {
+			out.writeUTF(feature);
+		}
+		for (double transition : transitions) {
+			out.writeDouble(transition);
+		}
+		for (double weight : weights) {
+			out.writeDouble(weight);
+		}
+		out.flush();
+		gos.finish();
+	}
+
+	/**
+	 * Reads the model in the gzipped binary format.
+	 *
+	 * @param is input stream
+	 * @return the model
+	 * @throws IOException if the stream cannot be read or does not contain a model
+	 */
+	public static LinearChainCRF read(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(is)));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a linear-chain CRF model!");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported linear-chain CRF model version: " + version);
+		}
+		int labelCount = in.readInt();
+		List<String> labels = new ArrayList<String>(labelCount);
+		for (int i = 0; i < labelCount; i++) {
+			labels.add(in.readUTF());
+		}
+		int featureCount = in.readInt();
+		List<String> features = new ArrayList<String>(featureCount);
+		for (int i = 0; i < featureCount; i++) {
+			features.add(in.readUTF());
+		}
+		double[] transitions = readDoubles(in, labelCount * labelCount);
+		double[] weights = readDoubles(in, featureCount * transitions.length);
+		return new LinearChainCRF(labels, features, transitions, weights);
+	}
+
+	private static double[] readDoubles(DataInputStream in, int count) throws IOException {
+		byte[] bytes = new byte[count * 8];
+		in.readFully(bytes);
+		double[] values = new double[count];
+		ByteBuffer.wrap(bytes).asDoubleBuffer().get(values);
+		return values;
+	}
+
+	/**
+	 * Returns the shared model loaded from the resource. The resource is
+	 * read on the first call only.
+	 *
+	 * @param resource the URL of the model
+	 * @return the shared model
+	 * @throws AnalysisException if the model cannot be loaded
+	 */
+	public static LinearChainCRF getInstance(URL resource) throws AnalysisException {
+		if (resource == null) {
+			throw new AnalysisException("Cannot set model, resource not found!");
+		}
+		synchronized (INSTANCES) {
+			LinearChainCRF instance = INSTANCES.get(resource.toString());
+			if (instance == null) {
+				InputStream is = null;
+				try {
+					is = resource.openStream();
+					instance = read(is);
+				} catch (IOException ex) {
+					throw new AnalysisException("Cannot set model!", ex);
+				} finally {
+					try {
+						if (is != null) {
+							is.close();
+						}
+					} catch (IOException ex) {
+						throw new AnalysisException("Cannot set model!", ex);
+					}
+				}
+				INSTANCES.put(resource.toString(), instance);
+			}
+			return instance;
+		}
+	}
+
+	public static void main(String[] args) throws ParseException, AnalysisException, IOException {
+		Options options = new Options();
+		options.addOption("acrf", true, "ACRF model file");
+		options.addOption("out", true, "output file");
+
+		CommandLineParser clParser = new GnuParser();
+		CommandLine line = clParser.parse(options, args);
+		String acrfFile = line.getOptionValue("acrf");
+		String outFile = line.getOptionValue("out");
+
+		if (acrfFile == null || outFile == null) {
+			System.err.println("Usage: LinearChainCRF -acrf <ACRF model file> -out <output file>\n\n"
+					+ "Tool for exporting ACRF models with a single bigram template\n"
+					+ "to the compact linear-chain CRF format.\n\n"
+					+ "Arguments:\n"
+					+ "  -acrf            the gzipped, serialized ACRF model\n"
+					+ "  -out             the output file");
+			System.exit(1);
+		}
+
+		LinearChainCRF crf = new ACRFModel(new File(acrfFile)).toLinearChainCRF();
+		OutputStream os = new FileOutputStream(outFile);
+		try {
+			crf.write(os);
+		} finally {
+			os.close();
+		}
+	}
+
+}
@@ -24,6 +24,7 @@ import java.util.List;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.metadata.zoneclassification.tools.ZoneClassificationUtils;
 import pl.edu.icm.cermine.structure.model.*;
+import pl.edu.icm.cermine.tools.classification.features.ContextValueCache;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
 import pl.edu.icm.cermine.tools.classification.hmm.HMMService;
@@ -76,9 +77,10 @@ public class HMMZoneClassifier implements ZoneClassifier {
         ZoneClassificationUtils.correctPagesBounds(document);
         
         List<FeatureVector> featureVectors = new ArrayList<FeatureVector>();
+        ContextValueCache<BxPage> cache = new ContextValueCache<BxPage>();
         for (BxPage page : document.getPages()) {
             for (BxZone zone : page.getZones()) {
-                featureVectors.add(featureVectorBuilder.getFeatureVector(zone, page));
+                featureVectors.add(featureVectorBuilder.getFeatureVector(zone, page, cache));
             }
         }
 
@@ -20,13 +20,14 @@ package pl.edu.icm.cermine.structure;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.metadata.zoneclassification.features.*;
 import pl.edu.icm.cermine.structure.model.BxDocument;
 import pl.edu.icm.cermine.structure.model.BxPage;
 import pl.edu.icm.cermine.structure.model.BxZone;
-import pl.edu.icm.cermine.structure.model.BxZoneLabel;
 import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
 import pl.edu.icm.cermine.tools.classification.svm.SVMZoneClassifier;
@@ -148,6 +149,40 @@ public class SVMInitialZoneClassifier extends SVMZoneClassifier {
         return vectorBuilder;
 	}
 	
+    /**
+     * Returns the feature vector builder of a cascade first-stage classifier
+     * (see {@link SVMZoneClassifier#setFirstStage(SVMZoneClassifier, double)}).
+     * It uses only features computed from the zone itself, without looking
+     * at other zones of the page or document.
+     * 
+     * @return feature vector builder
+     */
+    public static FeatureVectorBuilder<BxZone, BxPage> getFirstStageFeatureVectorBuilder() {
+        FeatureVectorBuilder<BxZone, BxPage> vectorBuilder = new FeatureVectorBuilder<BxZone, BxPage>();
+        vectorBuilder.setFeatureCalculators(Arrays.<FeatureCalculator<BxZone, BxPage>>asList(
+                new IsFirstPageFeature(),
+                new IsLastPageFeature(),
+                new IsPageNumberFeature(),
+                new CharCountFeature(),
+                new DigitRelativeCountFeature(),
+                new FontHeightMeanFeature(),
+                new HeightFeature(),
+                new HeightRelativeFeature(),
+                new LetterRelativeCountFeature(),
+                new LineCountFeature(),
+                new PunctuationRelativeCountFeature(),
+                new ReferencesFeature(),
+                new StartsWithDigitFeature(),
+                new UppercaseRelativeCountFeature(),
+                new WidthFeature(),
+                new WidthRelativeFeature(),
+                new WordCountFeature(),
+                new XPositionRelativeFeature(),
+                new YPositionRelativeFeature()
+                ));
+        return vectorBuilder;
+    }
+    
     public static SVMInitialZoneClassifier getDefaultInstance() throws AnalysisException, IOException {
         if (defaultInstance == null) {
             defaultInstance = new SVMInitialZoneClassifier();
@@ -156,14 +191,14 @@ public class SVMInitialZoneClassifier extends SVMZoneClassifier {
     }
     
     @Override
-	public BxDocument classifyZones(BxDocument document) throws AnalysisException {
+    protected List<BxZone> getZonesToClassify(BxDocument document) {
+        List<BxZone> zones = new ArrayList<BxZone>();
         for (BxZone zone : document.asZones()) {
             if (zone.getLabel() == null) {
-                BxZoneLabel predicted = predictLabel(zone, zone.getParent());
-                zone.setLabel(predicted);
+                zones.add(zone);
             }
         }
-        return document;
+        return zones;
 	}
     
 }
\ No newline at end of file
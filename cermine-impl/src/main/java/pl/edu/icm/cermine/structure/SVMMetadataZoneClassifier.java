@@ -20,7 +20,9 @@ package pl.edu.icm.cermine.structure;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.metadata.zoneclassification.features.*;
 import pl.edu.icm.cermine.structure.model.BxDocument;
@@ -143,6 +145,40 @@ public class SVMMetadataZoneClassifier extends SVMZoneClassifier {
 		return vectorBuilder;
 	}
     
+    /**
+     * Returns the feature vector builder of a cascade first-stage classifier
+     * (see {@link SVMZoneClassifier#setFirstStage(SVMZoneClassifier, double)}).
+     * It uses only features computed from the zone itself, without looking
+     * at other zones of the page or document.
+     * 
+     * @return feature vector builder
+     */
+    public static FeatureVectorBuilder<BxZone, BxPage> getFirstStageFeatureVectorBuilder() {
+        FeatureVectorBuilder<BxZone, BxPage> vectorBuilder = new FeatureVectorBuilder<BxZone, BxPage>();
+        vectorBuilder.setFeatureCalculators(Arrays.<FeatureCalculator<BxZone, BxPage>>asList(
+                new AbstractFeature(),
+                new AffiliationFeature(),
+                new KeywordsFeature(),
+                new CharCountFeature(),
+                new DigitRelativeCountFeature(),
+                new FontHeightMeanFeature(),
+                new HeightFeature(),
+                new HeightRelativeFeature(),
+                new LetterRelativeCountFeature(),
+                new LineCountFeature(),
+                new PunctuationRelativeCountFeature(),
+                new ReferencesFeature(),
+                new StartsWithDigitFeature(),
+                new UppercaseRelativeCountFeature(),
+                new WidthFeature(),
+                new WidthRelativeFeature(),
+                new WordCountFeature(),
+                new XPositionRelativeFeature(),
+                new YPositionRelativeFeature()
+                ));
+        return vectorBuilder;
+    }
+    
     public static SVMMetadataZoneClassifier getDefaultInstance() throws AnalysisException, IOException {
         if (defaultInstance == null) {
             defaultInstance = new SVMMetadataZoneClassifier();
@@ -151,18 +187,19 @@ public class SVMMetadataZoneClassifier extends SVMZoneClassifier {
     }
     
     @Override
-    public BxDocument classifyZones(BxDocument document) throws AnalysisException {
+    protected List<BxZone> getZonesToClassify(BxDocument document) {
         for (BxPage page : document.getPages()) {
             for (BxZone zone : page.getZones()) {
                 zone.setParent(page);
             }
         }
+        List<BxZone> zones = new ArrayList<BxZone>();
         for (BxZone zone: document.asZones()) {
             if (zone.getLabel().isOfCategoryOrGeneral(BxZoneLabelCategory.CAT_METADATA)) {
-                zone.setLabel(predictLabel(zone, zone.getParent()));
+                zones.add(zone);
             }
 		}
-        return document;
+        return zones;
     }
 
 }
@@ -22,6 +22,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import pl.edu.icm.cermine.structure.tools.BxZoneSpatialIndex;
 
 /**
  * Models a single page of a document. A page is either segmented (divided into zones)
@@ -32,11 +33,17 @@ public final class BxPage extends BxObject<BxPage, BxDocument> implements Serial
     private static final long serialVersionUID = 8981043716257046347L;
     
     /** list of page's zones (if the page is segmented) */
-    private final List<BxZone> zones = new ArrayList<BxZone>();
+    private final ZoneList zones = new ZoneList();
 
     /** list of page's text chunks (if the page is not segmented) */
     private final List<BxChunk> chunks = new ArrayList<BxChunk>();
 
+    /** number of changes of the zones' bounds */
+    private transient volatile int zoneBoundsModifications;
+
+    /** spatial index of page's zones, built on demand */
+    private transient volatile ZoneIndex zoneIndex;
+
     public List<BxZone> getZones() {
         return zones;
     }
@@ -61,6 +68,34 @@ public final class BxPage extends BxObject<BxPage, BxDocument> implements Serial
         return this;
     }
 
+    /**
+     * Returns the spatial index of the page's zones. The index is built
+     * lazily and rebuilt whenever the list of zones or their bounds have
+     * changed.
+     *
+     * @return zone index
+     */
+    public BxZoneSpatialIndex getZoneSpatialIndex() {
+        long version = getZonesVersion();
+        ZoneIndex index = zoneIndex;
+        if (index == null || index.version != version) {
+            index = new ZoneIndex(new BxZoneSpatialIndex(this), version);
+            zoneIndex = index;
+        }
+        return index.index;
+    }
+
+    void zoneBoundsChanged() {
+        zoneBoundsModifications++;
+    }
+
+    /**
+     * Both counters only grow, so their sum changes on every modification.
+     */
+    private long getZonesVersion() {
+        return (long) zones.getModifications() + zoneBoundsModifications;
+    }
+
     public List<BxChunk> getChunks() {
         return chunks;
     }
@@ -98,4 +133,35 @@ public final class BxPage extends BxObject<BxPage, BxDocument> implements Serial
         }
         return getText();
     }
+
+    /**
+     * List of zones counting all its structural and element modifications.
+     */
+    private static final class ZoneList extends ArrayList<BxZone> {
+
+        private static final long serialVersionUID = -3416254781720950185L;
+
+        private transient int elementModifications;
+
+        @Override
+        public BxZone set(int index, BxZone element) {
+            elementModifications++;
+            return super.set(index, element);
+        }
+
+        public int getModifications() {
+            return modCount + elementModifications;
+        }
+    }
+
+    private static final class ZoneIndex {
+
+        private final BxZoneSpatialIndex index;
+        private final long version;
+
+        ZoneIndex(BxZoneSpatialIndex index, long version) {
+            this.index = index;
+            this.version = version;
+        }
+    }
 }
@@ -38,6 +38,15 @@ public final class BxZone extends BxObject<BxZone, BxPage> implements Serializab
     /** list of zone's text chunks (if the zone is not segmented) */
     private final List<BxChunk> chunks = new ArrayList<BxChunk>();
     
+    @Override
+    public BxZone setBounds(BxBounds bounds) {
+        super.setBounds(bounds);
+        if (getParent() != null) {
+            getParent().zoneBoundsChanged();
+        }
+        return this;
+    }
+
 	public BxZoneLabel getLabel() {
         return label;
     }
@@ -0,0 +1,285 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.structure.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import pl.edu.icm.cermine.structure.model.BxBounds;
+import pl.edu.icm.cermine.structure.model.BxPage;
+import pl.edu.icm.cermine.structure.model.BxZone;
+
+/**
+ * Uniform grid index of the zones of a single page, answering nearest-zone
+ * and fixed-radius queries without comparing the query zone against every
+ * other zone of the page.
+ *
+ * The distance between two zones is the length of the shortest segment
+ * joining their bounding boxes. Zones whose bounding boxes overlap (i.e. are
+ * separated neither horizontally nor vertically) are not neighbours of each
+ * other and are never returned.
+ *
+ * The index is immutable once built and can be queried concurrently.
+ * It is a snapshot of the page; {@link BxPage#getZoneSpatialIndex()} keeps
+ * track of the page's modifications and rebuilds the index when needed.
+ */
+public class BxZoneSpatialIndex {
+
+    private final BxZone[] zones;
+    private final BxBounds[] bounds;
+
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+
+    /** zone indices registered in each cell, row-major */
+    private final int[][] cells;
+
+    public BxZoneSpatialIndex(BxPage page) {
+        List<BxZone> pageZones = page.getZones();
+        zones = pageZones.toArray(new BxZone[pageZones.size()]);
+        bounds = new BxBounds[zones.length];
+
+        BxBoundsBuilder builder = new BxBoundsBuilder();
+        for (int i = 0; i < zones.length; i++) {
+            bounds[i] = zones[i].getBounds();
+            builder.expand(bounds[i]);
+        }
+
+        if (zones.length == 0) {
+            minX = minY = 0;
+            cellWidth = cellHeight = 1;
+            columns = rows = 0;
+            cells = new int[0][];
+            return;
+        }
+
+        BxBounds pageBounds = builder.getBounds();
+        int gridSize = Math.max(1, (int) Math.ceil(Math.sqrt(zones.length)));
+        minX = pageBounds.getX();
+        minY = pageBounds.getY();
+        cellWidth = Math.max(pageBounds.getWidth() / gridSize, Double.MIN_NORMAL);
+        cellHeight = Math.max(pageBounds.getHeight() / gridSize, Double.MIN_NORMAL);
+        columns = gridSize;
+        rows = gridSize;
+
+        int[] counts = new int[columns * rows];
+        for (BxBounds b : bounds) {
+            for (int r = row(b.getY()); r <= row(b.getY() + b.getHeight()); r++) {
+                for (int c = column(b.getX()); c <= column(b.getX() + b.getWidth()); c++) {
+                    counts[r * columns + c]++;
+                }
+            }
+        }
+        cells = new int[columns * rows][];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < bounds.length; i++) {
+            BxBounds b = bounds[i];
+            for (int r = row(b.getY()); r <= row(b.getY() + b.getHeight()); r++) {
+                for (int c = column(b.getX()); c <= column(b.getX() + b.getWidth()); c++) {
+                    int cell = r * columns + c;
+                    cells[cell][counts[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the zone nearest to the given one.
+     *
+     * @param zone query zone
+     * @return the nearest zone, or null if there is no zone not overlapping
+     * the query zone
+     */
+    public BxZone getNearestZone(BxZone zone) {
+        int nearest = findNearest(zone);
+        return nearest < 0 ? null : zones[nearest];
+    }
+
+    /**
+     * Computes the distance from the given zone to the nearest zone.
+     *
+     * @param zone query zone
+     * @return the distance, or Double.MAX_VALUE if there is no zone not
+     * overlapping the query zone
+     */
+    public double getNearestZoneDistance(BxZone zone) {
+        int nearest = findNearest(zone);
+        return nearest < 0 ? Double.MAX_VALUE : distance(zone.getBounds(), bounds[nearest]);
+    }
+
+    /**
+     * Finds all zones whose distance to the given one does not exceed
+     * the given limit.
+     *
+     * @param zone query zone
+     * @param maxDistance maximum distance
+     * @return the list of zones, in the page order
+     */
+    public List<BxZone> getZonesWithin(BxZone zone, double maxDistance) {
+        List<BxZone> ret = new ArrayList<BxZone>();
+        if (zones.length == 0) {
+            return ret;
+        }
+        BxBounds b = zone.getBounds();
+        int r0 = row(b.getY() - maxDistance);
+        int r1 = row(b.getY() + b.getHeight() + maxDistance);
+        int c0 = column(b.getX() - maxDistance);
+        int c1 = column(b.getX() + b.getWidth() + maxDistance);
+
+        boolean[] matching = new boolean[zones.length];
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                for (int i : cells[r * columns + c]) {
+                    if (matching[i] || zones[i] == zone) {
+                        continue;
+                    }
+                    double dist = distance(b, bounds[i]);
+                    matching[i] = dist >= 0 && dist <= maxDistance;
+                }
+            }
+        }
+        for (int i = 0; i < zones.length; i++) {
+            if (matching[i]) {
+                ret.add(zones[i]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Finds all zones whose bounding boxes intersect or touch the given area.
+     *
+     * @param area area
+     * @return the list of zones, in the page order
+     */
+    public List<BxZone> getZonesIntersecting(BxBounds area) {
+        List<BxZone> ret = new ArrayList<BxZone>();
+        if (zones.length == 0) {
+            return ret;
+        }
+        double x0 = area.getX();
+        double y0 = area.getY();
+        double x1 = x0 + area.getWidth();
+        double y1 = y0 + area.getHeight();
+
+        boolean[] matching = new boolean[zones.length];
+        for (int r = row(y0); r <= row(y1); r++) {
+            for (int c = column(x0); c <= column(x1); c++) {
+                for (int i : cells[r * columns + c]) {
+                    BxBounds b = bounds[i];
+                    matching[i] = matching[i] || (b.getX() <= x1 && x0 <= b.getX() + b.getWidth()
+                            && b.getY() <= y1 && y0 <= b.getY() + b.getHeight());
+                }
+            }
+        }
+        for (int i = 0; i < zones.length; i++) {
+            if (matching[i]) {
+                ret.add(zones[i]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Computes the length of the shortest segment joining two bounding boxes.
+     *
+     * @param b1 bounds
+     * @param b2 bounds
+     * @return the distance, or -1 if the boxes overlap
+     */
+    public static double distance(BxBounds b1, BxBounds b2) {
+        double dx = Math.max(b2.getX() - (b1.getX() + b1.getWidth()), b1.getX() - (b2.getX() + b2.getWidth()));
+        double dy = Math.max(b2.getY() - (b1.getY() + b1.getHeight()), b1.getY() - (b2.getY() + b2.getHeight()));
+        if (dx < 0 && dy < 0) {
+            return -1;
+        }
+        dx = Math.max(dx, 0);
+        dy = Math.max(dy, 0);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Searches the grid in rings of cells around the query zone. Every zone
+     * not found after ring k is at least k * min(cellWidth, cellHeight) away,
+     * so the search stops as soon as the best candidate is closer than that.
+     */
+    private int findNearest(BxZone zone) {
+        if (zones.length == 0) {
+            return -1;
+        }
+        BxBounds b = zone.getBounds();
+        int r0 = row(b.getY());
+        int r1 = row(b.getY() + b.getHeight());
+        int c0 = column(b.getX());
+        int c1 = column(b.getX() + b.getWidth());
+        double step = Math.min(cellWidth, cellHeight);
+        int maxRing = Math.max(rows, columns);
+
+        int best = -1;
+        double bestDist = Double.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int r = r0 - ring; r <= r1 + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                boolean edgeRow = ring == 0 || r == r0 - ring || r == r1 + ring;
+                for (int c = c0 - ring; c <= c1 + ring; c++) {
+                    if (c < 0 || c >= columns) {
+                        continue;
+                    }
+                    if (!edgeRow && c != c0 - ring && c != c1 + ring) {
+                        c = c1 + ring - 1;
+                        continue;
+                    }
+                    for (int i : cells[r * columns + c]) {
+                        if (zones[i] == zone) {
+                            continue;
+                        }
+                        double dist = distance(b, bounds[i]);
+                        if (dist >= 0 && (dist < bestDist || (dist == bestDist && i < best))) {
+                            best = i;
+                            bestDist = dist;
+                        }
+                    }
+                }
+            }
+            if (best >= 0 && bestDist < ring * step) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    private int column(double x) {
+        int c = (int) Math.floor((x - minX) / cellWidth);
+        return Math.min(Math.max(c, 0), columns - 1);
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor((y - minY) / cellHeight);
+        return Math.min(Math.max(r, 0), rows - 1);
+    }
+
+}
@@ -0,0 +1,573 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.structure.transformers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import org.apache.commons.io.IOUtils;
+import pl.edu.icm.cermine.structure.model.*;
+
+/**
+ * Compact binary form of BxDocument, used to store documents between 
+ * processing steps, for example after structure extraction, so that further
+ * extraction can be run again without parsing PDF files.
+ * 
+ * The document keeps the structure of pages, zones, lines, words and chunks,
+ * their ids, next ids and next/previous links, bounds, zone labels, chunk
+ * texts and font names. Bounds are stored with float precision, as 
+ * differences between the bits of the coordinates of subsequent objects
+ * of the same type. Texts, font names and ids are stored in a string table.
+ * Pages are stored separately, so that a memory-mapped document can read 
+ * single pages without reading the whole document.
+ */
+public final class BinaryBxDocument {
+
+    /** "CBXD" */
+    private static final int MAGIC = 0x43425844;
+    private static final int VERSION = 1;
+
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    
+    private static final int HAS_BOUNDS = 1;
+    
+    private static final int PAGE = 0;
+    private static final int ZONE = 1;
+    private static final int LINE = 2;
+    private static final int WORD = 3;
+    private static final int CHUNK = 4;
+    private static final int LEVELS = 5;
+
+    private final ByteBuffer buffer;
+    private final String filename;
+    private final BxZoneLabel[] labels;
+    private final int[] stringOffsets;
+    private final String[] strings;
+    private final int[] pageOffsets;
+
+    private BinaryBxDocument(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.duplicate().order(BYTE_ORDER);
+        ByteBuffer in = this.buffer.duplicate().order(BYTE_ORDER);
+        if (in.remaining() < 24 || in.getInt() != MAGIC) {
+            throw new IOException("Not a binary BxDocument!");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary BxDocument version: " + version);
+        }
+        int filenameRef = in.getInt();
+        int labelCount = in.getInt();
+        int stringCount = in.getInt();
+        int pageCount = in.getInt();
+        
+        pageOffsets = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pageOffsets[i] = in.getInt();
+        }
+        labels = new BxZoneLabel[labelCount];
+        for (int i = 0; i < labelCount; i++) {
+            String name = readString(in, readVarint(in));
+            try {
+                labels[i] = BxZoneLabel.valueOf(name);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Unknown zone label: " + name);
+            }
+        }
+        stringOffsets = new int[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            stringOffsets[i] = in.position();
+            int length = readVarint(in);
+            in.position(in.position() + length);
+        }
+        strings = new String[stringCount];
+        filename = getString(filenameRef);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int getPageCount() {
+        return pageOffsets.length;
+    }
+
+    /**
+     * Reads a single page. The page is read again on every call. Links
+     * to objects from other pages, such as the next zone of the last zone 
+     * on the page, are not set, but their next ids are.
+     * 
+     * @param index page index
+     * @return page
+     * @throws IOException 
+     */
+    public BxPage getPage(int index) throws IOException {
+        Links links = new Links();
+        BxPage page = readPage(index, links);
+        links.link();
+        return page;
+    }
+
+    /**
+     * Reads the whole document.
+     * 
+     * @return document
+     * @throws IOException 
+     */
+    public BxDocument getDocument() throws IOException {
+        Links links = new Links();
+        BxDocument document = new BxDocument();
+        document.setFilename(filename);
+        for (int i = 0; i < pageOffsets.length; i++) {
+            BxPage page = readPage(i, links);
+            String id = page.getId();
+            document.addPage(page);
+            page.setId(id);
+        }
+        links.link();
+        return document;
+    }
+
+    public static BinaryBxDocument read(InputStream is) throws IOException {
+        return new BinaryBxDocument(ByteBuffer.wrap(IOUtils.toByteArray(is)));
+    }
+
+    /**
+     * Maps the file into memory. Pages are read from the mapped file
+     * when requested.
+     * 
+     * @param file binary document file
+     * @return binary document
+     * @throws IOException 
+     */
+    public static BinaryBxDocument map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new BinaryBxDocument(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private String getString(int ref) throws IOException {
+        if (ref < 0) {
+            return null;
+        }
+        if (ref >= strings.length) {
+            throw new IOException("Invalid string reference: " + ref);
+        }
+        String string = strings[ref];
+        if (string == null) {
+            ByteBuffer in = buffer.duplicate();
+            in.position(stringOffsets[ref]);
+            string = readString(in, readVarint(in));
+            strings[ref] = string;
+        }
+        return string;
+    }
+
+    private BxPage readPage(int index, Links links) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        in.position(pageOffsets[index]);
+        int[][] prevBounds = new int[LEVELS][4];
+        
+        BxPage page = new BxPage();
+        readObject(in, page, PAGE, index, links, prevBounds);
+        int zoneIndex = readVarint(in);
+        int lineIndex = readVarint(in);
+        int wordIndex = readVarint(in);
+        int chunkIndex = readVarint(in);
+        
+        BxChunk[] chunks = new BxChunk[readVarint(in)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new BxChunk(null, getString(readVarint(in) - 1));
+            chunks[i].setFontName(getString(readVarint(in) - 1));
+            readObject(in, chunks[i], CHUNK, chunkIndex + i, links, prevBounds);
+        }
+        for (BxChunk chunk : readChunks(in, chunks)) {
+            page.addChunk(chunk);
+        }
+        
+        int zoneCount = readVarint(in);
+        for (int i = 0; i < zoneCount; i++) {
+            BxZone zone = new BxZone();
+            readObject(in, zone, ZONE, zoneIndex++, links, prevBounds);
+            int label = readVarint(in) - 1;
+            if (label >= labels.length) {
+                throw new IOException("Invalid label reference: " + label);
+            }
+            zone.setLabel(label < 0 ? null : labels[label]);
+            for (BxChunk chunk : readChunks(in, chunks)) {
+                zone.addChunk(chunk);
+            }
+            int lineCount = readVarint(in);
+            for (int j = 0; j < lineCount; j++) {
+                BxLine line = new BxLine();
+                readObject(in, line, LINE, lineIndex++, links, prevBounds);
+                int wordCount = readVarint(in);
+                for (int k = 0; k < wordCount; k++) {
+                    BxWord word = new BxWord();
+                    readObject(in, word, WORD, wordIndex++, links, prevBounds);
+                    for (BxChunk chunk : readChunks(in, chunks)) {
+                        word.addChunk(chunk);
+                    }
+                    line.addWord(word);
+                }
+                zone.addLine(line);
+            }
+            page.addZone(zone);
+        }
+        return page;
+    }
+
+    private List<BxChunk> readChunks(ByteBuffer in, BxChunk[] chunks) throws IOException {
+        int count = readVarint(in);
+        List<BxChunk> list = new ArrayList<BxChunk>(count);
+        int index = -1;
+        for (int i = 0; i < count; i++) {
+            index += fromZigZag(readVarint(in));
+            if (index < 0 || index >= chunks.length) {
+                throw new IOException("Invalid chunk reference: " + index);
+            }
+            list.add(chunks[index]);
+        }
+        return list;
+    }
+
+    private <A extends BxObject<A, ?>> void readObject(ByteBuffer in, A object, int level, int index, 
+            Links links, int[][] prevBounds) throws IOException {
+        object.setId(getString(readVarint(in) - 1));
+        object.setNextId(getString(readVarint(in) - 1));
+        int flags = readVarint(in);
+        if ((flags & HAS_BOUNDS) != 0) {
+            int[] prev = prevBounds[level];
+            for (int i = 0; i < prev.length; i++) {
+                prev[i] += fromZigZag(readVarint(in));
+            }
+            object.setBounds(new BxBounds(Float.intBitsToFloat(prev[0]), Float.intBitsToFloat(prev[1]),
+                    Float.intBitsToFloat(prev[2]), Float.intBitsToFloat(prev[3])));
+        }
+        links.add(level, index, object, readLink(in, index), readLink(in, index));
+    }
+
+    private static int readLink(ByteBuffer in, int index) {
+        int value = readVarint(in);
+        return value == 0 ? -1 : index + fromZigZag(value - 1);
+    }
+
+    /**
+     * Writes the document in the binary form.
+     * 
+     * @param document document
+     * @param os output stream
+     * @throws IOException 
+     */
+    public static void write(BxDocument document, OutputStream os) throws IOException {
+        new Writer(document).write(os);
+    }
+
+    /**
+     * Objects read and the indexes of their next and previous objects,
+     * resolved when all the objects are read.
+     */
+    private static final class Links {
+
+        private final List<Map<Integer, BxObject<?, ?>>> objects = new ArrayList<Map<Integer, BxObject<?, ?>>>();
+        private final List<BxObject<?, ?>> linked = new ArrayList<BxObject<?, ?>>();
+        private final List<Integer> targets = new ArrayList<Integer>();
+        private final List<Integer> levels = new ArrayList<Integer>();
+
+        Links() {
+            for (int i = 0; i < LEVELS; i++) {
+                objects.add(new HashMap<Integer, BxObject<?, ?>>());
+            }
+        }
+
+        void add(int level, int index, BxObject<?, ?> object, int next, int prev) {
+            objects.get(level).put(index, object);
+            if (next >= 0) {
+                linked.add(object);
+                targets.add(next);
+                levels.add(level);
+            }
+            if (prev >= 0) {
+                linked.add(object);
+                targets.add(-prev - 1);
+                levels.add(level);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void link() {
+            for (int i = 0; i < linked.size(); i++) {
+                int target = targets.get(i);
+                Indexable<Object> object = (Indexable<Object>) linked.get(i);
+                Object other = objects.get(levels.get(i)).get(target < 0 ? -target - 1 : target);
+                if (other == null) {
+                    continue;
+                }
+                if (target < 0) {
+                    object.setPrev(other);
+                } else {
+                    object.setNext(other);
+                }
+            }
+        }
+    }
+
+    private static final class Writer {
+
+        private final BxDocument document;
+        private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        private final Map<BxZoneLabel, Integer> labels = new LinkedHashMap<BxZoneLabel, Integer>();
+        private final List<Map<Object, Integer>> indexes = new ArrayList<Map<Object, Integer>>();
+        private final List<List<BxChunk>> pageChunks = new ArrayList<List<BxChunk>>();
+        private final int[] counts = new int[LEVELS];
+        private final int[][] pageStarts;
+
+        Writer(BxDocument document) {
+            this.document = document;
+            for (int i = 0; i < LEVELS; i++) {
+                indexes.add(new IdentityHashMap<Object, Integer>());
+            }
+            pageStarts = new int[document.getPages().size()][];
+            addString(document.getFilename());
+            for (int p = 0; p < document.getPages().size(); p++) {
+                BxPage page = document.getPages().get(p);
+                pageStarts[p] = counts.clone();
+                Map<BxChunk, Integer> chunks = new IdentityHashMap<BxChunk, Integer>();
+                List<BxChunk> chunkList = new ArrayList<BxChunk>();
+                addObject(PAGE, page);
+                for (BxZone zone : page.getZones()) {
+                    addObject(ZONE, zone);
+                    if (zone.getLabel() != null && !labels.containsKey(zone.getLabel())) {
+                        labels.put(zone.getLabel(), labels.size());
+                    }
+                    for (BxLine line : zone.getLines()) {
+                        addObject(LINE, line);
+                        for (BxWord word : line.getWords()) {
+                            addObject(WORD, word);
+                            addChunks(word.getChunks(), chunks, chunkList);
+                        }
+                    }
+                }
+                for (BxZone zone : page.getZones()) {
+                    addChunks(zone.getChunks(), chunks, chunkList);
+                }
+                addChunks(page.getChunks(), chunks, chunkList);
+                pageChunks.add(chunkList);
+            }
+        }
+
+        private void addObject(int level, BxObject<?, ?> object) {
+            Map<Object, Integer> levelIndexes = indexes.get(level);
+            if (!levelIndexes.containsKey(object)) {
+                levelIndexes.put(object, counts[level]);
+            }
+            counts[level]++;
+            addString(object.getId());
+            addString(object.getNextId());
+        }
+
+        private void addChunks(List<BxChunk> list, Map<BxChunk, Integer> chunks, List<BxChunk> chunkList) {
+            for (BxChunk chunk : list) {
+                if (!chunks.containsKey(chunk)) {
+                    chunks.put(chunk, chunkList.size());
+                    chunkList.add(chunk);
+                    addObject(CHUNK, chunk);
+                    addString(chunk.toText());
+                    addString(chunk.getFontName());
+                }
+            }
+        }
+
+        private void addString(String string) {
+            if (string != null && !strings.containsKey(string)) {
+                strings.put(string, strings.size());
+            }
+        }
+
+        void write(OutputStream os) throws IOException {
+            List<byte[]> pages = new ArrayList<byte[]>();
+            for (int p = 0; p < document.getPages().size(); p++) {
+                pages.add(writePage(p));
+            }
+            
+            ByteArrayOutputStream tables = new ByteArrayOutputStream();
+            for (BxZoneLabel label : labels.keySet()) {
+                writeString(tables, label.name());
+            }
+            for (String string : strings.keySet()) {
+                writeString(tables, string);
+            }
+            
+            int headerSize = 4 * 6 + 4 * pages.size();
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(BYTE_ORDER);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(getStringRef(document.getFilename()));
+            header.putInt(labels.size());
+            header.putInt(strings.size());
+            header.putInt(pages.size());
+            long offset = headerSize + tables.size();
+            for (byte[] page : pages) {
+                if (offset > Integer.MAX_VALUE) {
+                    throw new IOException("Document too large!");
+                }
+                header.putInt((int) offset);
+                offset += page.length;
+            }
+            
+            os.write(header.array());
+            tables.writeTo(os);
+            for (byte[] page : pages) {
+                os.write(page);
+            }
+            os.flush();
+        }
+
+        private byte[] writePage(int p) throws IOException {
+            BxPage page = document.getPages().get(p);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int[][] prevBounds = new int[LEVELS][4];
+            int[] indexes = pageStarts[p].clone();
+            List<BxChunk> chunkList = pageChunks.get(p);
+            Map<BxChunk, Integer> chunks = new IdentityHashMap<BxChunk, Integer>();
+            for (BxChunk chunk : chunkList) {
+                chunks.put(chunk, chunks.size());
+            }
+            
+            writeObject(out, PAGE, page, indexes, prevBounds);
+            for (int level = ZONE; level < LEVELS; level++) {
+                writeVarint(out, pageStarts[p][level]);
+            }
+            
+            writeVarint(out, chunkList.size());
+            for (BxChunk chunk : chunkList) {
+                writeVarint(out, getStringRef(chunk.toText()) + 1);
+                writeVarint(out, getStringRef(chunk.getFontName()) + 1);
+                writeObject(out, CHUNK, chunk, indexes, prevBounds);
+            }
+            writeChunks(out, page.getChunks(), chunks);
+            
+            writeVarint(out, page.getZones().size());
+            for (BxZone zone : page.getZones()) {
+                writeObject(out, ZONE, zone, indexes, prevBounds);
+                writeVarint(out, zone.getLabel() == null ? 0 : labels.get(zone.getLabel()) + 1);
+                writeChunks(out, zone.getChunks(), chunks);
+                writeVarint(out, zone.getLines().size());
+                for (BxLine line : zone.getLines()) {
+                    writeObject(out, LINE, line, indexes, prevBounds);
+                    writeVarint(out, line.getWords().size());
+                    for (BxWord word : line.getWords()) {
+                        writeObject(out, WORD, word, indexes, prevBounds);
+                        writeChunks(out, word.getChunks(), chunks);
+                    }
+                }
+            }
+            return out.toByteArray();
+        }
+
+        private void writeChunks(ByteArrayOutputStream out, List<BxChunk> list, Map<BxChunk, Integer> chunks) {
+            writeVarint(out, list.size());
+            int prev = -1;
+            for (BxChunk chunk : list) {
+                int index = chunks.get(chunk);
+                writeVarint(out, toZigZag(index - prev));
+                prev = index;
+            }
+        }
+
+        private void writeObject(ByteArrayOutputStream out, int level, BxObject<?, ?> object, 
+                int[] indexes, int[][] prevBounds) {
+            writeVarint(out, getStringRef(object.getId()) + 1);
+            writeVarint(out, getStringRef(object.getNextId()) + 1);
+            BxBounds bounds = object.getBounds();
+            writeVarint(out, bounds == null ? 0 : HAS_BOUNDS);
+            if (bounds != null) {
+                int[] bits = {
+                    Float.floatToRawIntBits((float) bounds.getX()), 
+                    Float.floatToRawIntBits((float) bounds.getY()),
+                    Float.floatToRawIntBits((float) bounds.getWidth()),
+                    Float.floatToRawIntBits((float) bounds.getHeight())
+                };
+                int[] prev = prevBounds[level];
+                for (int i = 0; i < bits.length; i++) {
+                    writeVarint(out, toZigZag(bits[i] - prev[i]));
+                    prev[i] = bits[i];
+                }
+            }
+            Map<Object, Integer> levelIndexes = this.indexes.get(level);
+            int index = indexes[level]++;
+            writeLink(out, index, levelIndexes.get(object.getNext()));
+            writeLink(out, index, levelIndexes.get(object.getPrev()));
+        }
+
+        private void writeLink(ByteArrayOutputStream out, int index, Integer target) {
+            writeVarint(out, target == null ? 0 : toZigZag(target - index) + 1);
+        }
+
+        private int getStringRef(String string) {
+            return string == null ? -1 : strings.get(string);
+        }
+
+        private static void writeString(ByteArrayOutputStream out, String string) throws IOException {
+            byte[] bytes = string.getBytes("UTF-8");
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static int toZigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int fromZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static String readString(ByteBuffer in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+}
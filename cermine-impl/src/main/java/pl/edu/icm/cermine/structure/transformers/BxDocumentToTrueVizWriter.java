@@ -18,25 +18,27 @@
 
 package pl.edu.icm.cermine.structure.transformers;
 
+import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.*;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 import pl.edu.icm.cermine.exception.TransformationException;
 import pl.edu.icm.cermine.structure.model.*;
 
 /**
- * Writes BxDocument model pages to TrueViz format.
+ * Writes BxDocument model pages to TrueViz format. The output is written
+ * incrementally, page by page, as SAX events passed to the identity transformer,
+ * without building a DOM tree.
  *
  * @author krusek
  */
@@ -91,181 +93,188 @@ public class BxDocumentToTrueVizWriter {
         ZONE_LABEL_MAP.put(BxZoneLabel.REFERENCES,            "references");
     }
 
-    private void appendProperty(Document doc, Element parent, String name, String value) {
-        Element node = doc.createElement(name);
-        node.setAttribute("Value", value);
-        parent.appendChild(node);
+    private void appendProperty(TrueVizOutput out, String name, String value) throws SAXException {
+        out.startElement(name);
+        out.attribute("Value", value);
+        out.endEmptyElement();
     }
     
-    private void appendPropertyIfNotNull(Document doc, Element parent, String name, String value) {
+    private void appendPropertyIfNotNull(TrueVizOutput out, String name, String value) throws SAXException {
         if(value == null) {
-        	appendProperty(doc, parent, name, "");
+        	appendProperty(out, name, "");
         } else {
-        	appendProperty(doc, parent, name, value);
+        	appendProperty(out, name, value);
         }
     }
     
-    private void appendVertex(Document doc, Element parent, double x, double y, Object... hints) {
-        DecimalFormat format = new DecimalFormat("0.000", new DecimalFormatSymbols(Locale.US));
-        if (Arrays.asList(hints).contains(MINIMAL_OUTPUT_SIZE)) {
-            format = new DecimalFormat("0.0", new DecimalFormatSymbols(Locale.US));
-        }
-        Element node = doc.createElement("Vertex");
-        node.setAttribute("x", format.format(x));
-        node.setAttribute("y", format.format(y));
-        parent.appendChild(node);
+    private void appendVertex(TrueVizOutput out, double x, double y) throws SAXException {
+        out.startElement("Vertex");
+        out.attribute("x", out.format.format(x));
+        out.attribute("y", out.format.format(y));
+        out.endEmptyElement();
     }
 
-    private void appendBounds(Document doc, Element parent, String name, BxBounds bounds, Object... hints) {
+    private void appendBounds(TrueVizOutput out, String name, BxBounds bounds) throws SAXException {
         if (bounds == null) {
             bounds = new BxBounds();
         }
-        Element node = doc.createElement(name);
-        appendVertex(doc, node, bounds.getX(), bounds.getY(), hints);
-        if (!Arrays.asList(hints).contains(MINIMAL_OUTPUT_SIZE)) {
-            appendVertex(doc, node, bounds.getX() + bounds.getWidth(), bounds.getY(), hints);
+        out.startElement(name);
+        out.endStartElement();
+        appendVertex(out, bounds.getX(), bounds.getY());
+        if (!out.minimal) {
+            appendVertex(out, bounds.getX() + bounds.getWidth(), bounds.getY());
         }
-        appendVertex(doc, node, bounds.getX() + bounds.getWidth(), bounds.getY() + bounds.getHeight(), hints);
-        if (!Arrays.asList(hints).contains(MINIMAL_OUTPUT_SIZE)) {
-            appendVertex(doc, node, bounds.getX(), bounds.getY() + bounds.getHeight(), hints);
+        appendVertex(out, bounds.getX() + bounds.getWidth(), bounds.getY() + bounds.getHeight());
+        if (!out.minimal) {
+            appendVertex(out, bounds.getX(), bounds.getY() + bounds.getHeight());
         }
-        parent.appendChild(node);
+        out.endElement(name);
     }
 
-    private void appendCharacter(Document doc, Element parent, BxChunk chunk, Object... hints) {
-        Element node = doc.createElement("Character");
-        appendPropertyIfNotNull(doc, node, "CharacterID", chunk.getId());
-        appendBounds(doc, node, "CharacterCorners", chunk.getBounds(), hints);
-        appendPropertyIfNotNull(doc, node, "CharacterNext", chunk.getNextId());
-        Element font = doc.createElement("Font");
-        font.setAttribute("Size", "");
-        font.setAttribute("Spacing", "");
-        font.setAttribute("Style", "");
-        font.setAttribute("Type", chunk.getFontName());
-        node.appendChild(font);
-        appendProperty(doc, node, "GT_Text", chunk.toText());
-        parent.appendChild(node);
+    private void appendCharacter(TrueVizOutput out, BxChunk chunk) throws SAXException {
+        out.startElement("Character");
+        out.endStartElement();
+        appendPropertyIfNotNull(out, "CharacterID", chunk.getId());
+        appendBounds(out, "CharacterCorners", chunk.getBounds());
+        appendPropertyIfNotNull(out, "CharacterNext", chunk.getNextId());
+        appendFont(out, chunk.getFontName(), "", "", "");
+        appendProperty(out, "GT_Text", chunk.toText());
+        out.endElement("Character");
     }
 
-    private void appendWord(Document doc, Element parent, BxWord word, Object... hints) {
-        Element node = doc.createElement("Word");
-        appendPropertyIfNotNull(doc, node, "WordID", word.getId());
-        appendBounds(doc, node, "WordCorners", word.getBounds(), hints);
-        appendPropertyIfNotNull(doc, node, "WordNext", word.getNextId());
-        appendProperty(doc, node, "WordNumChars", "");
+    private void appendWord(TrueVizOutput out, BxWord word) throws SAXException {
+        out.startElement("Word");
+        out.endStartElement();
+        appendPropertyIfNotNull(out, "WordID", word.getId());
+        appendBounds(out, "WordCorners", word.getBounds());
+        appendPropertyIfNotNull(out, "WordNext", word.getNextId());
+        appendProperty(out, "WordNumChars", "");
         for (BxChunk chunk: word.getChunks()) {
-            appendCharacter(doc, node, chunk, hints);
+            appendCharacter(out, chunk);
         }
-        parent.appendChild(node);
+        out.endElement("Word");
     }
 
-    private void appendLine(Document doc, Element parent, BxLine line, Object... hints) {
-        Element node = doc.createElement("Line");
-        appendPropertyIfNotNull(doc, node, "LineID", line.getId());
-        appendBounds(doc, node, "LineCorners", line.getBounds(), hints);
-        appendPropertyIfNotNull(doc, node, "LineNext", line.getNextId());
-        appendProperty(doc, node, "LineNumChars", "");
+    private void appendLine(TrueVizOutput out, BxLine line) throws SAXException {
+        out.startElement("Line");
+        out.endStartElement();
+        appendPropertyIfNotNull(out, "LineID", line.getId());
+        appendBounds(out, "LineCorners", line.getBounds());
+        appendPropertyIfNotNull(out, "LineNext", line.getNextId());
+        appendProperty(out, "LineNumChars", "");
         for (BxWord word: line.getWords()) {
-            appendWord(doc, node, word, hints);
+            appendWord(out, word);
         }
-        parent.appendChild(node);
+        out.endElement("Line");
     }
 
-    private void appendClassification(Document doc, Element parent, String category, String type) {
-        Element node = doc.createElement("Classification");
-        appendProperty(doc, node, "Category", category);
-        appendProperty(doc, node, "Type", type);
-        parent.appendChild(node);
+    private void appendClassification(TrueVizOutput out, String category, String type) throws SAXException {
+        out.startElement("Classification");
+        out.endStartElement();
+        appendProperty(out, "Category", category);
+        appendProperty(out, "Type", type);
+        out.endElement("Classification");
     }
 
-    private void appendZone(Document doc, Element parent, BxZone zone, Object... hints) throws TransformationException {
-        Element node = doc.createElement("Zone");
-        appendPropertyIfNotNull(doc, node, "ZoneID", zone.getId());
-        appendBounds(doc, node, "ZoneCorners", zone.getBounds(), hints);
-        appendPropertyIfNotNull(doc, node, "ZoneNext", zone.getNextId());
-        Element insetsNode = doc.createElement("ZoneInsets");
-        insetsNode.setAttribute("Top", "");
-        insetsNode.setAttribute("Bottom", "");
-        insetsNode.setAttribute("Left", "");
-        insetsNode.setAttribute("Right", "");
-        node.appendChild(insetsNode);
-        appendProperty(doc, node, "ZoneLines", "");
+    private void appendZone(TrueVizOutput out, BxZone zone) throws SAXException {
+        out.startElement("Zone");
+        out.endStartElement();
+        appendPropertyIfNotNull(out, "ZoneID", zone.getId());
+        appendBounds(out, "ZoneCorners", zone.getBounds());
+        appendPropertyIfNotNull(out, "ZoneNext", zone.getNextId());
+        out.startElement("ZoneInsets");
+        out.attribute("Bottom", "");
+        out.attribute("Left", "");
+        out.attribute("Right", "");
+        out.attribute("Top", "");
+        out.endEmptyElement();
+        appendProperty(out, "ZoneLines", "");
         if (zone.getLabel() != null) {
-            if (ZONE_LABEL_MAP.get(zone.getLabel()) != null && !ZONE_LABEL_MAP.get(zone.getLabel()).isEmpty()) {
-                appendClassification(doc, node, ZONE_LABEL_MAP.get(zone.getLabel()).toUpperCase(), "");
-            } else {
-            	throw new TransformationException("Writing down an unknown zone label: " + zone.getLabel());
-            }
+            appendClassification(out, ZONE_LABEL_MAP.get(zone.getLabel()).toUpperCase(), "");
         }
         for (BxLine line: zone.getLines()) {
-            appendLine(doc, node, line, hints);
+            appendLine(out, line);
         }
-        parent.appendChild(node);
+        out.endElement("Zone");
     }
 
-    private void appendPage(Document doc, Element parent, BxPage page, Object... hints) throws TransformationException {
-        Element node = doc.createElement("Page");
-        appendPropertyIfNotNull(doc, node, "PageID", page.getId());
-        appendProperty(doc, node, "PageType", "");
-        appendProperty(doc, node, "PageNumber", "");
-        appendProperty(doc, node, "PageColumns", "");
-        appendPropertyIfNotNull(doc, node, "PageNext", page.getNextId());
-        appendProperty(doc, node, "PageZones", "");
+    private void appendPage(TrueVizOutput out, BxPage page) throws SAXException {
+        out.startElement("Page");
+        out.endStartElement();
+        appendPropertyIfNotNull(out, "PageID", page.getId());
+        appendProperty(out, "PageType", "");
+        appendProperty(out, "PageNumber", "");
+        appendProperty(out, "PageColumns", "");
+        appendPropertyIfNotNull(out, "PageNext", page.getNextId());
+        appendProperty(out, "PageZones", "");
         for (BxZone zone: page.getZones()) {
-            appendZone(doc, node, zone, hints);
+            appendZone(out, zone);
         }
-        parent.appendChild(node);
+        out.endElement("Page");
     }
 
-    private void appendLanguage(Document doc, Element parent, String type, String script, String codeset) {
-        Element node = doc.createElement("Language");
-        node.setAttribute("Type", type);
-        node.setAttribute("Script", script);
-        node.setAttribute("Codeset", codeset);
-        parent.appendChild(node);
+    private void appendLanguage(TrueVizOutput out, String type, String script, String codeset) throws SAXException {
+        out.startElement("Language");
+        out.attribute("Codeset", codeset);
+        out.attribute("Script", script);
+        out.attribute("Type", type);
+        out.endEmptyElement();
     }
 
-    private void appendFont(Document doc, Element parent, String type, String style, String spacing, String size) {
-        Element node = doc.createElement("Font");
-        node.setAttribute("Type", type);
-        node.setAttribute("Style", style);
-        node.setAttribute("Spacing", spacing);
-        node.setAttribute("Size", size);
-        parent.appendChild(node);
+    private void appendFont(TrueVizOutput out, String type, String style, String spacing, String size) throws SAXException {
+        out.startElement("Font");
+        out.attribute("Size", size);
+        out.attribute("Spacing", spacing);
+        out.attribute("Style", style);
+        out.attribute("Type", type);
+        out.endEmptyElement();
     }
 
-    private Document createDocument(List<BxPage> pages, Object... hints) throws ParserConfigurationException, TransformationException {
-        Document doc = TrueVizUtils.newDocumentBuilder().newDocument();
-        Element root = doc.createElement("Document");
-        appendProperty(doc, root, "DocID", "");
-        appendProperty(doc, root, "DocTitle", "");
-        appendProperty(doc, root, "DocPubName", "");
-        appendProperty(doc, root, "DocVolNum", "");
-        appendProperty(doc, root, "DocIssueNum", "");
-        appendProperty(doc, root, "DocMargins", "");
-        appendProperty(doc, root, "DocDate", "");
-        appendProperty(doc, root, "DocPages", "");
-        Element imageNode = doc.createElement("DocImage");
-        appendProperty(doc, imageNode, "Name", "");
-        appendProperty(doc, imageNode, "Format", "");
-        appendProperty(doc, imageNode, "Depth", "");
-        appendProperty(doc, imageNode, "Compression", "");
-        appendProperty(doc, imageNode, "Capture", "");
-        appendProperty(doc, imageNode, "Quality", "");
-        root.appendChild(imageNode);
-        appendLanguage(doc, root, "", "", "");
-        appendFont(doc, root, "", "", "", "");
-        appendProperty(doc, root, "ReadingDir", "");
-        appendProperty(doc, root, "CharOrient", "");
-        appendClassification(doc, root, "", "");
-        appendProperty(doc, root, "GT_Text", "");
+    private void appendDocument(TrueVizOutput out, List<BxPage> pages) throws SAXException {
+        out.startDocument();
+        out.startElement("Document");
+        out.endStartElement();
+        appendProperty(out, "DocID", "");
+        appendProperty(out, "DocTitle", "");
+        appendProperty(out, "DocPubName", "");
+        appendProperty(out, "DocVolNum", "");
+        appendProperty(out, "DocIssueNum", "");
+        appendProperty(out, "DocMargins", "");
+        appendProperty(out, "DocDate", "");
+        appendProperty(out, "DocPages", "");
+        out.startElement("DocImage");
+        out.endStartElement();
+        appendProperty(out, "Name", "");
+        appendProperty(out, "Format", "");
+        appendProperty(out, "Depth", "");
+        appendProperty(out, "Compression", "");
+        appendProperty(out, "Capture", "");
+        appendProperty(out, "Quality", "");
+        out.endElement("DocImage");
+        appendLanguage(out, "", "", "");
+        appendFont(out, "", "", "", "");
+        appendProperty(out, "ReadingDir", "");
+        appendProperty(out, "CharOrient", "");
+        appendClassification(out, "", "");
+        appendProperty(out, "GT_Text", "");
 
         for (BxPage page: pages) {
-            appendPage(doc, root, page, hints);
+            appendPage(out, page);
+            out.flush();
         }
-        doc.appendChild(root);
+        out.endElement("Document");
+        out.endDocument();
+    }
 
-        return doc;
+    private void checkLabels(List<BxPage> pages) throws TransformationException {
+        for (BxPage page : pages) {
+            for (BxZone zone : page.getZones()) {
+                if (zone.getLabel() != null
+                        && (ZONE_LABEL_MAP.get(zone.getLabel()) == null || ZONE_LABEL_MAP.get(zone.getLabel()).isEmpty())) {
+                    throw new TransformationException("Writing down an unknown zone label: " + zone.getLabel());
+                }
+            }
+        }
     }
 
     public String write(List<BxPage> objects, Object... hints) throws TransformationException {
@@ -275,16 +284,92 @@ public class BxDocumentToTrueVizWriter {
         return sw.toString();
     }
 
+    /**
+     * Writes the pages to the writer. The output is produced incrementally, 
+     * page by page, without building the whole document in memory.
+     * The writer is flushed, but not closed.
+     * 
+     * @param writer writer
+     * @param objects pages
+     * @param hints {@link #MINIMAL_OUTPUT_SIZE} to write only two corners
+     * of every bounding box, with one decimal place
+     * @throws TransformationException 
+     */
     public void write(Writer writer, List<BxPage> objects, Object... hints) throws TransformationException {
+        checkLabels(objects);
         try {
-            Document doc = createDocument(objects, hints);
-            Transformer t = TransformerFactory.newInstance().newTransformer();
-            t.setOutputProperties(OUTPUT_PROPERTIES);
-            t.transform(new DOMSource(doc), new StreamResult(writer));
-        } catch (TransformerException ex) {
+            TransformerFactory factory = TransformerFactory.newInstance();
+            if (!factory.getFeature(SAXTransformerFactory.FEATURE)) {
+                throw new TransformationException("Cannot create SAX transformer!");
+            }
+            TransformerHandler handler = ((SAXTransformerFactory) factory).newTransformerHandler();
+            handler.getTransformer().setOutputProperties(OUTPUT_PROPERTIES);
+            handler.setResult(new StreamResult(writer));
+            appendDocument(new TrueVizOutput(handler, writer, Arrays.asList(hints).contains(MINIMAL_OUTPUT_SIZE)), objects);
+        } catch (TransformerConfigurationException ex) {
             throw new TransformationException(ex);
-        } catch (ParserConfigurationException ex) {
+        } catch (SAXException ex) {
             throw new TransformationException(ex);
         }
     }
+
+    /**
+     * Element-by-element output to the transformer. Attributes are passed
+     * in the order given, which is expected to be alphabetical, as in DOM.
+     */
+    private static final class TrueVizOutput {
+
+        private final TransformerHandler handler;
+        private final Writer writer;
+        private final boolean minimal;
+        private final DecimalFormat format;
+        private final AttributesImpl attributes = new AttributesImpl();
+        private String element;
+
+        TrueVizOutput(TransformerHandler handler, Writer writer, boolean minimal) {
+            this.handler = handler;
+            this.writer = writer;
+            this.minimal = minimal;
+            this.format = new DecimalFormat(minimal ? "0.0" : "0.000", new DecimalFormatSymbols(Locale.US));
+        }
+
+        void startDocument() throws SAXException {
+            handler.startDocument();
+        }
+
+        void endDocument() throws SAXException {
+            handler.endDocument();
+            flush();
+        }
+
+        void startElement(String name) {
+            element = name;
+            attributes.clear();
+        }
+
+        void attribute(String name, String value) {
+            attributes.addAttribute("", name, name, "CDATA", value == null ? "" : value);
+        }
+
+        void endStartElement() throws SAXException {
+            handler.startElement("", element, element, attributes);
+        }
+
+        void endEmptyElement() throws SAXException {
+            endStartElement();
+            endElement(element);
+        }
+
+        void endElement(String name) throws SAXException {
+            handler.endElement("", name, name);
+        }
+
+        void flush() throws SAXException {
+            try {
+                writer.flush();
+            } catch (IOException ex) {
+                throw new SAXException(ex);
+            }
+        }
+    }
 }
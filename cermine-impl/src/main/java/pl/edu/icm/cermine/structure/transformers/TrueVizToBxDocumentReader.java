@@ -18,27 +18,23 @@
 
 package pl.edu.icm.cermine.structure.transformers;
 
-import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import pl.edu.icm.cermine.exception.TransformationException;
 import pl.edu.icm.cermine.structure.model.*;
 import pl.edu.icm.cermine.structure.tools.BxBoundsBuilder;
 import pl.edu.icm.cermine.structure.tools.BxModelUtils;
 
 /**
- * Reads BxDocument model pages from TrueViz format.
+ * Reads BxDocument model pages from TrueViz format. The document is streamed
+ * and the model is built directly, without an intermediate DOM tree.
  *
  * @author kura
  * @author krusek
@@ -92,16 +88,27 @@ public class TrueVizToBxDocumentReader {
     public List<BxPage> read(Reader reader, Object... hints) throws TransformationException {
         try {
             areIdsSet = true;
-            Document doc = TrueVizUtils.newDocumentBuilder().parse(new InputSource(reader));
+            XMLStreamReader xml = TrueVizUtils.newXMLInputFactory().createXMLStreamReader(reader);
             List<BxPage> pages = new ArrayList<BxPage>();
-
-            if ("Page".equalsIgnoreCase(doc.getDocumentElement().getTagName())) {
-                pages.add(parsePageNode(doc.getDocumentElement()));
-            } else if ("Document".equalsIgnoreCase(doc.getDocumentElement().getTagName())) {
-                for (Element pageElement : getChildren("Page", doc.getDocumentElement())) {
-                    BxPage page = parsePageNode(pageElement);
-                    pages.add(page);
+            try {
+                if (nextElement(xml)) {
+                    if ("Page".equalsIgnoreCase(xml.getLocalName())) {
+                        pages.add(parsePageNode(xml));
+                    } else if ("Document".equalsIgnoreCase(xml.getLocalName())) {
+                        while (nextElement(xml)) {
+                            if ("Page".equalsIgnoreCase(xml.getLocalName())) {
+                                pages.add(parsePageNode(xml));
+                            } else {
+                                skipElement(xml);
+                            }
+                        }
+                    }
                 }
+                while (xml.hasNext()) {
+                    xml.next();
+                }
+            } finally {
+                xml.close();
             }
             setIdsAndLinkPages(pages);
             if (areIdsSet) {
@@ -111,13 +118,7 @@ public class TrueVizToBxDocumentReader {
                 BxModelUtils.setParents(page);
             }
             return pages;
-        } catch (IOException ex) {
-        	System.err.println(ex.getMessage());
-            throw new TransformationException(ex);
-        } catch (ParserConfigurationException ex) {
-        	System.err.println(ex.getMessage());
-            throw new TransformationException(ex);
-        } catch (SAXException ex) {
+        } catch (XMLStreamException ex) {
         	System.err.println(ex.getMessage());
             throw new TransformationException(ex);
         }
@@ -261,71 +262,121 @@ public class TrueVizToBxDocumentReader {
         }
     }
 
-    private List<Element> getChildren(String name, Element el) {
-        ArrayList<Element> list = new ArrayList<Element>();
-        NodeList nl = el.getChildNodes();
-        for (int i = 0; i < nl.getLength(); i++) {
-            Node n = nl.item(i);
-            if (n instanceof Element) {
-                Element e = (Element) n;
-                if (e.getTagName().equalsIgnoreCase(name)) {
-                    list.add(e);
-                }
+    /**
+     * Moves the reader to the start of the next child element of the current
+     * element, skipping text and other events.
+     *
+     * @param xml the reader, positioned at the start of an element or the end 
+     * of one of its children
+     * @return true if the reader is at the start of a child element, false if
+     * it is at the end of the current element
+     */
+    private boolean nextElement(XMLStreamReader xml) throws XMLStreamException {
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
             }
         }
-        return list;
+        return false;
     }
 
     /**
-     * Function for obtaining value for optional children (that can appear in the XML, but doesn't have to).
-     *
-     * @param name is a name of the node
-     * @param el is the root node for the child
-     * @return value of the child, if present and not empty. Otherwise equals to null
+     * Skips the current element with all its content.
      */
-    private String getOptionalChildValue(String name, Element el) {
-        List<Element> children = getChildren(name, el);
-        if (!children.isEmpty()) {
-            String val = children.get(0).getAttribute("Value");
-            if (val.equals("")) {
-                return null;
-            } else {
-                return val;
+    private void skipElement(XMLStreamReader xml) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
             }
-        } else {
-            return null;
         }
+    }
+
+    /**
+     * Returns the value of the attribute of the current element, or an empty
+     * string if the attribute is missing.
+     */
+    private String getAttribute(XMLStreamReader xml, String name) {
+        for (int i = 0; i < xml.getAttributeCount(); i++) {
+            if (name.equals(xml.getAttributeLocalName(i))) {
+                return xml.getAttributeValue(i);
+            }
+        }
+        return "";
+    }
 
+    /**
+     * Reads the value of an optional element and skips the element.
+     *
+     * @return value of the element, if not empty. Otherwise equals to null
+     */
+    private String parseOptionalValue(XMLStreamReader xml) throws XMLStreamException {
+        String val = getAttribute(xml, "Value");
+        skipElement(xml);
+        if (val.equals("")) {
+            return null;
+        } else {
+            return val;
+        }
     }
 
-    private BxBounds parseElementContainingVertexes(Element el) {
-        List<Element> vs = getChildren("Vertex", el);
+    private BxBounds parseElementContainingVertexes(XMLStreamReader xml) throws XMLStreamException {
         BxBoundsBuilder builder = new BxBoundsBuilder();
-        for (Element v : vs) {
-            double x = Double.parseDouble(v.getAttribute("x"));
-            double y = Double.parseDouble(v.getAttribute("y"));
-            builder.expand(x, y);
+        while (nextElement(xml)) {
+            if ("Vertex".equalsIgnoreCase(xml.getLocalName())) {
+                double x = Double.parseDouble(getAttribute(xml, "x"));
+                double y = Double.parseDouble(getAttribute(xml, "y"));
+                builder.expand(x, y);
+            }
+            skipElement(xml);
         }
         return builder.getBounds();
     }
 
-    private BxChunk parseCharacterElement(Element charE) {
+    private BxChunk parseCharacterElement(XMLStreamReader xml) throws XMLStreamException {
         BxBounds bou = null;
         String text = null;
-        if (!getChildren("CharacterCorners", charE).isEmpty()) {
-            bou = (parseElementContainingVertexes(getChildren("CharacterCorners", charE).get(0)));
-        }
-        if (!(getChildren("GT_Text", charE).isEmpty())) {
-            text = getChildren("GT_Text", charE).get(0).getAttribute("Value");
+        String id = null;
+        String nextId = null;
+        String fontName = null;
+        boolean boundsSet = false, textSet = false, idSet = false, nextIdSet = false, fontSet = false;
+        
+        while (nextElement(xml)) {
+            String name = xml.getLocalName();
+            if (!boundsSet && "CharacterCorners".equalsIgnoreCase(name)) {
+                boundsSet = true;
+                bou = parseElementContainingVertexes(xml);
+            } else if (!textSet && "GT_Text".equalsIgnoreCase(name)) {
+                textSet = true;
+                text = getAttribute(xml, "Value");
+                skipElement(xml);
+            } else if (!idSet && "CharacterId".equalsIgnoreCase(name)) {
+                idSet = true;
+                id = parseOptionalValue(xml);
+            } else if (!nextIdSet && "CharacterNext".equalsIgnoreCase(name)) {
+                nextIdSet = true;
+                nextId = parseOptionalValue(xml);
+            } else if (!fontSet && "Font".equalsIgnoreCase(name)) {
+                fontSet = true;
+                fontName = getAttribute(xml, "Type");
+                skipElement(xml);
+            } else {
+                skipElement(xml);
+            }
         }
 
         BxChunk chunk = new BxChunk(bou, text);
-        chunk.setId(getOptionalChildValue("CharacterId", charE));
-        chunk.setNextId(getOptionalChildValue("CharacterNext", charE));
-
-        List<Element> fonts = getChildren("Font", charE);
-        if (!fonts.isEmpty()) {
-            chunk.setFontName(fonts.get(0).getAttribute("Type"));
+        chunk.setId(id);
+        chunk.setNextId(nextId);
+        if (fontSet) {
+            chunk.setFontName(fontName);
         }
         
         if (areIdsSet && (chunk.getId() == null || chunk.getNextId() == null)) {
@@ -335,61 +386,79 @@ public class TrueVizToBxDocumentReader {
         return chunk;
     }
 
-    private BxWord parseWordElement(Element wordE) {
+    private BxWord parseWordElement(XMLStreamReader xml) throws XMLStreamException {
         BxWord word = new BxWord();
-        if (!(getChildren("WordCorners", wordE).isEmpty())) {
-            word.setBounds(parseElementContainingVertexes(getChildren("WordCorners", wordE).get(0)));
+        boolean boundsSet = false, idSet = false, nextIdSet = false;
+        
+        while (nextElement(xml)) {
+            String name = xml.getLocalName();
+            if ("Character".equalsIgnoreCase(name)) {
+                BxChunk ch = parseCharacterElement(xml);
+                ch.setParent(word);
+                word.addChunk(ch);
+            } else if (!boundsSet && "WordCorners".equalsIgnoreCase(name)) {
+                boundsSet = true;
+                word.setBounds(parseElementContainingVertexes(xml));
+            } else if (!idSet && "WordId".equalsIgnoreCase(name)) {
+                idSet = true;
+                word.setId(parseOptionalValue(xml));
+            } else if (!nextIdSet && "WordNext".equalsIgnoreCase(name)) {
+                nextIdSet = true;
+                word.setNextId(parseOptionalValue(xml));
+            } else {
+                skipElement(xml);
+            }
         }
 
-        word.setId(getOptionalChildValue("WordId", wordE));
-        word.setNextId(getOptionalChildValue("WordNext", wordE));
-
         if (areIdsSet && (word.getId() == null || word.getNextId() == null)) {
             areIdsSet = false;
         }
-
-        List<Element> e = getChildren("Character", wordE);
-        for (Element caE : e) {
-            BxChunk ch = parseCharacterElement(caE);
-            ch.setParent(word);
-            word.addChunk(ch);
-        }
         return word;
     }
 
-    private BxLine parseLineElement(Element lineE) {
+    private BxLine parseLineElement(XMLStreamReader xml) throws XMLStreamException {
         BxLine line = new BxLine();
-        if (!(getChildren("LineCorners", lineE).isEmpty())) {
-            line.setBounds(parseElementContainingVertexes(getChildren("LineCorners", lineE).get(0)));
+        boolean boundsSet = false, idSet = false, nextIdSet = false;
+        
+        while (nextElement(xml)) {
+            String name = xml.getLocalName();
+            if ("Word".equalsIgnoreCase(name)) {
+                BxWord wo = parseWordElement(xml);
+                wo.setParent(line);
+                line.addWord(wo);
+            } else if (!boundsSet && "LineCorners".equalsIgnoreCase(name)) {
+                boundsSet = true;
+                line.setBounds(parseElementContainingVertexes(xml));
+            } else if (!idSet && "LineId".equalsIgnoreCase(name)) {
+                idSet = true;
+                line.setId(parseOptionalValue(xml));
+            } else if (!nextIdSet && "LineNext".equalsIgnoreCase(name)) {
+                nextIdSet = true;
+                line.setNextId(parseOptionalValue(xml));
+            } else {
+                skipElement(xml);
+            }
         }
 
-        line.setId(getOptionalChildValue("LineId", lineE));
-        line.setNextId(getOptionalChildValue("LineNext", lineE));
-
         if (areIdsSet && (line.getId() == null || line.getNextId() == null)) {
             areIdsSet = false;
         }
-
-        List<Element> e = getChildren("Word", lineE);
-        for (Element we : e) {
-            BxWord wo = parseWordElement(we);
-            wo.setParent(line);
-            line.addWord(wo);
-        }
         return line;
     }
 
-    private BxZoneLabel parseClassification(Element elClassicfication) throws TransformationException {
-        List<Element> eli = getChildren("Category", elClassicfication);
-        Element catEl = eli.isEmpty() ? null : eli.get(0);
-        if (catEl == null) {
-            eli = getChildren("Type", elClassicfication);
-            catEl = eli.isEmpty() ? null : eli.get(0);
-        }
-        if (catEl == null) {
-            return null;
+    private BxZoneLabel parseClassification(XMLStreamReader xml) throws XMLStreamException {
+        String category = null;
+        String type = null;
+        while (nextElement(xml)) {
+            String name = xml.getLocalName();
+            if (category == null && "Category".equalsIgnoreCase(name)) {
+                category = getAttribute(xml, "Value");
+            } else if (type == null && "Type".equalsIgnoreCase(name)) {
+                type = getAttribute(xml, "Value");
+            }
+            skipElement(xml);
         }
-        String val = catEl.getAttribute("Value");
+        String val = category == null ? type : category;
         if (val == null) {
             return null;
         }
@@ -404,50 +473,66 @@ public class TrueVizToBxDocumentReader {
         }
     }
 
-    private BxZone parseZoneNode(Element zoneE) throws TransformationException {
+    private BxZone parseZoneNode(XMLStreamReader xml) throws XMLStreamException {
         BxZone zone = new BxZone();
         zone.setLabel(BxZoneLabel.OTH_UNKNOWN);
-        if (!getChildren("Classification", zoneE).isEmpty()) {
-            zone.setLabel(parseClassification(getChildren("Classification", zoneE).get(0)));
-        }
-        if (!getChildren("ZoneCorners", zoneE).isEmpty()) {
-            zone.setBounds(parseElementContainingVertexes(getChildren("ZoneCorners", zoneE).get(0)));
+        boolean labelSet = false, boundsSet = false, idSet = false, nextIdSet = false;
+        
+        while (nextElement(xml)) {
+            String name = xml.getLocalName();
+            if ("Line".equalsIgnoreCase(name)) {
+                BxLine li = parseLineElement(xml);
+                li.setParent(zone);
+                zone.addLine(li);
+            } else if (!labelSet && "Classification".equalsIgnoreCase(name)) {
+                labelSet = true;
+                zone.setLabel(parseClassification(xml));
+            } else if (!boundsSet && "ZoneCorners".equalsIgnoreCase(name)) {
+                boundsSet = true;
+                zone.setBounds(parseElementContainingVertexes(xml));
+            } else if (!idSet && "ZoneId".equalsIgnoreCase(name)) {
+                idSet = true;
+                zone.setId(parseOptionalValue(xml));
+            } else if (!nextIdSet && "ZoneNext".equalsIgnoreCase(name)) {
+                nextIdSet = true;
+                zone.setNextId(parseOptionalValue(xml));
+            } else {
+                skipElement(xml);
+            }
         }
 
-        zone.setId(getOptionalChildValue("ZoneId", zoneE));
-        zone.setNextId(getOptionalChildValue("ZoneNext", zoneE));
-
         if (areIdsSet && (zone.getId() == null || zone.getNextId() == null)) {
             areIdsSet = false;
         }
-
-        List<Element> e = getChildren("Line", zoneE);
-        for (Element lin : e) {
-            BxLine li = parseLineElement(lin);
-            li.setParent(zone);
-            zone.addLine(li);
-        }
         return zone;
-
     }
 
-    private BxPage parsePageNode(Element elem) throws TransformationException {
+    private BxPage parsePageNode(XMLStreamReader xml) throws XMLStreamException {
         BxPage page = new BxPage();
-        page.setId(getOptionalChildValue("PageId", elem));
-        page.setNextId(getOptionalChildValue("PageNext", elem));
+        boolean idSet = false, nextIdSet = false;
+        
+        while (nextElement(xml)) {
+            String name = xml.getLocalName();
+            if ("Zone".equalsIgnoreCase(name)) {
+                BxZone zon = parseZoneNode(xml);
+                zon.setParent(page);
+                page.addZone(zon);
+            } else if (!idSet && "PageId".equalsIgnoreCase(name)) {
+                idSet = true;
+                page.setId(parseOptionalValue(xml));
+            } else if (!nextIdSet && "PageNext".equalsIgnoreCase(name)) {
+                nextIdSet = true;
+                page.setNextId(parseOptionalValue(xml));
+            } else {
+                skipElement(xml);
+            }
+        }
 
         if (areIdsSet && (page.getId() == null || page.getNextId() == null)) {
             areIdsSet = false;
         }
-
-        List<Element> e = getChildren("Zone", elem);
-        for (Element zo : e) {
-            BxZone zon = parseZoneNode(zo);
-            zon.setParent(page);
-            page.addZone(zon);
-        }
         BxBoundsBuilder.setBounds(page);
 
         return page;
     }
-}
+}
\ No newline at end of file
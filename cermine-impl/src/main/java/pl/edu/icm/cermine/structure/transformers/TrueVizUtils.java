@@ -21,6 +21,9 @@ package pl.edu.icm.cermine.structure.transformers;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -64,6 +67,29 @@ public final class TrueVizUtils {
         return builder;
     }
 
+    /**
+     * Returns new input factory for streaming TrueViz/Marg documents. 
+     * The factory is not namespace aware, as is the document builder,
+     * and resolves the TrueViz DTD from the classpath.
+     */
+    public static XMLInputFactory newXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setXMLResolver(new XMLResolver() {
+
+            @Override
+            public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) 
+                    throws XMLStreamException {
+                if (systemID != null && (systemID.equals("Trueviz.dtd") || systemID.endsWith("/Trueviz.dtd"))) {
+                    return MargToTextrImporter.class.getClassLoader().getResourceAsStream(TRUEVIZ_DTD);
+                }
+                return null;
+            }
+        });
+        return factory;
+    }
+
     private TrueVizUtils() {}
     
 }
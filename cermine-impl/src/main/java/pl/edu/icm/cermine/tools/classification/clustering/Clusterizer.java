@@ -26,6 +26,15 @@ package pl.edu.icm.cermine.tools.classification.clustering;
 public interface Clusterizer {
     
     int[] clusterize(double distanceMatrix[][], double maxDistance);
+    
+    /**
+     * Clusters the elements without building the full distance matrix.
+     * 
+     * @param distanceMatrix condensed distance matrix
+     * @param maxDistance maximum distance
+     * @return the cluster indexes of the elements
+     */
+    int[] clusterize(CondensedDistanceMatrix distanceMatrix, double maxDistance);
    
 }
 
@@ -18,13 +18,22 @@
 
 package pl.edu.icm.cermine.tools.classification.clustering;
 
-import com.google.common.collect.Sets;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * Complete linkage clusterizer.
  * 
+ * The clusters are merged in the order of increasing complete linkage distance,
+ * as long as the distance of the next merge is smaller than the maximum 
+ * distance, or the evaluator (if set) does not accept the current clusters.
+ * 
+ * The dendrogram is built with the nearest-neighbour chain algorithm 
+ * on a condensed distance matrix updated with the Lance-Williams formula,
+ * which takes O(n<sup>2</sup>) time and memory. The merges are then replayed 
+ * in the order of their distances. The distance matrix is assumed 
+ * to be symmetric.
+ * 
  * @author Dominika Tkaczyk
  */
 public class CompleteLinkageClusterizer implements Clusterizer {
@@ -38,66 +47,117 @@ public class CompleteLinkageClusterizer implements Clusterizer {
         this.evaluator = evaluator;
     }
     
+    /**
+     * @param distanceMatrix distances between the elements
+     * @param maxDistance maximum distance of merged clusters (exclusive),
+     * unless the clusters are not accepted by the evaluator
+     * @return the cluster indexes of the elements, numbered in the order 
+     * of the first elements of the clusters
+     */
     @Override
     public int[] clusterize(double distanceMatrix[][], double maxDistance) {
-        Set<Set<Integer>> clusters = new HashSet<Set<Integer>>();
-        for (int i = 0; i < distanceMatrix.length; i++) {
-            clusters.add(Sets.newHashSet(i));
+        return clusterize(new CondensedDistanceMatrix(distanceMatrix), maxDistance);
+    }
+    
+    @Override
+    public int[] clusterize(CondensedDistanceMatrix distanceMatrix, double maxDistance) {
+        int size = distanceMatrix.size();
+        double[] distances = distanceMatrix.toArray();
+        
+        final double[] heights = new double[Math.max(size - 1, 0)];
+        int[] merged1 = new int[heights.length];
+        int[] merged2 = new int[heights.length];
+        buildDendrogram(size, distances, heights, merged1, merged2);
+        
+        Integer[] order = new Integer[heights.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer merge1, Integer merge2) {
+                return Double.compare(heights[merge1], heights[merge2]);
+            }
+        });
+        
+        DisjointSets clusters = new DisjointSets(size);
+        for (Integer merge : order) {
+            if (!(heights[merge] < maxDistance)
+                    && (evaluator == null || evaluator.isAcceptable(clusters.getClusterArray()))) {
+                break;
+            }
+            clusters.union(merged1[merge], merged2[merge]);
         }
         
-        while (true) {
-            double mind = Double.POSITIVE_INFINITY;
-            Set<Integer> minClust1 = null;
-            Set<Integer> minClust2 = null;
-            for (Set<Integer> clust1 : clusters) {
-                for (Set<Integer> clust2 : clusters) {
-                    if (clust1.equals(clust2)) {
+        return clusters.getClusterArray();
+    }
+    
+    /**
+     * Builds the complete linkage dendrogram with the nearest-neighbour chain
+     * algorithm. A cluster is represented by one of its elements.
+     * 
+     * @param size number of elements
+     * @param distances condensed distance matrix, overwritten
+     * @param heights distances of the merges, filled in the order of merging
+     * @param merged1 representatives of the first merged clusters
+     * @param merged2 representatives of the second merged clusters
+     */
+    private void buildDendrogram(int size, double[] distances, double[] heights, int[] merged1, int[] merged2) {
+        boolean[] active = new boolean[size];
+        Arrays.fill(active, true);
+        int[] chain = new int[size];
+        int chainSize = 0;
+        
+        for (int merge = 0; merge < heights.length; merge++) {
+            if (chainSize == 0) {
+                int first = 0;
+                while (!active[first]) {
+                    first++;
+                }
+                chain[chainSize++] = first;
+            }
+            
+            int current;
+            int nearest;
+            double nearestDistance;
+            while (true) {
+                current = chain[chainSize - 1];
+                int previous = chainSize > 1 ? chain[chainSize - 2] : -1;
+                nearest = previous;
+                nearestDistance = previous < 0 ? Double.NaN 
+                        : distances[CondensedDistanceMatrix.getIndex(size, current, previous)];
+                for (int k = 0; k < size; k++) {
+                    if (!active[k] || k == current) {
                         continue;
                     }
-                    double maxd = Double.NEGATIVE_INFINITY;
-                    for (int i : clust1) {
-                        for (int j : clust2) {
-                            if (distanceMatrix[i][j] > maxd) {
-                                maxd = distanceMatrix[i][j];
-                            }
-                        }
-                    }
-                    if (maxd < mind) {
-                        mind = maxd;
-                        minClust1 = clust1;
-                        minClust2 = clust2;
+                    double distance = distances[CondensedDistanceMatrix.getIndex(size, current, k)];
+                    if (nearest < 0 || distance < nearestDistance) {
+                        nearest = k;
+                        nearestDistance = distance;
                     }
                 }
+                if (nearest == previous) {
+                    break;
+                }
+                chain[chainSize++] = nearest;
             }
+            chainSize -= 2;
             
-            int[] clusterArray = createClusterArray(distanceMatrix.length, clusters);
-            
-            if (mind < maxDistance || (evaluator != null && !evaluator.isAcceptable(clusterArray))) {
-                clusters.remove(minClust1);
-                clusters.remove(minClust2);
-                minClust1.addAll(minClust2);
-                clusters.add(minClust1);
-            } else {
-                break;
+            heights[merge] = nearestDistance;
+            merged1[merge] = current;
+            merged2[merge] = nearest;
+            active[nearest] = false;
+            for (int k = 0; k < size; k++) {
+                if (active[k] && k != current) {
+                    int index = CondensedDistanceMatrix.getIndex(size, current, k);
+                    distances[index] = Math.max(distances[index], 
+                            distances[CondensedDistanceMatrix.getIndex(size, nearest, k)]);
+                }
             }
         }
-        
-        return createClusterArray(distanceMatrix.length, clusters);
     }
     
-    private int[] createClusterArray(int length, Set<Set<Integer>> clusters) {
-        int[] clusterArray = new int[length];
-        int clusterIndex = 0;
-        for (Set<Integer> cluster : clusters) {
-            for (int element : cluster) {
-                clusterArray[element] = clusterIndex;
-            }
-            clusterIndex++;
-        }
-        
-        return clusterArray;
-    }
-
     public ClusteringEvaluator getEvaluator() {
         return evaluator;
     }
@@ -107,4 +167,3 @@ public class CompleteLinkageClusterizer implements Clusterizer {
     }
     
 }
-
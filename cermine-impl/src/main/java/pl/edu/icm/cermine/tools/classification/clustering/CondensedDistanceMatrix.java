@@ -0,0 +1,104 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.icm.cermine.tools.classification.clustering;
+
+/**
+ * Symmetric distance matrix, storing only the distances above the diagonal
+ * in a single array, row by row. The distances on the diagonal are zero.
+ */
+public class CondensedDistanceMatrix {
+    
+    private final int size;
+    
+    private final double[] distances;
+
+    /**
+     * Creates the matrix with all the distances equal to zero.
+     * 
+     * @param size number of elements
+     */
+    public CondensedDistanceMatrix(int size) {
+        long length = Math.max((long) size * (size - 1) / 2, 0);
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many elements: " + size);
+        }
+        this.size = size;
+        this.distances = new double[(int) length];
+    }
+    
+    /**
+     * Creates the matrix from the full distance matrix. The distance between 
+     * two elements is the smaller of the two distances in the full matrix.
+     * 
+     * @param distanceMatrix square distance matrix
+     */
+    public CondensedDistanceMatrix(double[][] distanceMatrix) {
+        this(distanceMatrix.length);
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                distances[getIndex(size, i, j)] = Math.min(distanceMatrix[i][j], distanceMatrix[j][i]);
+            }
+        }
+    }
+
+    /**
+     * @return number of elements
+     */
+    public int size() {
+        return size;
+    }
+    
+    public double get(int i, int j) {
+        if (i == j) {
+            return 0;
+        }
+        return distances[getIndex(size, i, j)];
+    }
+    
+    public void set(int i, int j, double distance) {
+        if (i == j) {
+            throw new IllegalArgumentException("Cannot set the distance of an element to itself!");
+        }
+        distances[getIndex(size, i, j)] = distance;
+    }
+
+    /**
+     * @return copy of the distances above the diagonal, row by row
+     */
+    double[] toArray() {
+        return distances.clone();
+    }
+    
+    /**
+     * @param size number of elements
+     * @param i first element
+     * @param j second element, different from the first one
+     * @return the index of the distance between the elements in the condensed array
+     */
+    static int getIndex(int size, int i, int j) {
+        if (i > j) {
+            int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        return (int) ((long) i * size - (long) i * (i + 1) / 2 + j - i - 1);
+    }
+    
+}
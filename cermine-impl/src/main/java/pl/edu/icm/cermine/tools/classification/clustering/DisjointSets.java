@@ -0,0 +1,102 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.icm.cermine.tools.classification.clustering;
+
+import java.util.Arrays;
+
+/**
+ * Disjoint sets of elements, with path compression and union by size.
+ */
+class DisjointSets {
+    
+    private final int[] parents;
+    
+    private final int[] sizes;
+    
+    private int count;
+    
+    DisjointSets(int size) {
+        parents = new int[size];
+        sizes = new int[size];
+        for (int i = 0; i < size; i++) {
+            parents[i] = i;
+            sizes[i] = 1;
+        }
+        count = size;
+    }
+    
+    int find(int element) {
+        int root = element;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[element] != root) {
+            int next = parents[element];
+            parents[element] = root;
+            element = next;
+        }
+        return root;
+    }
+    
+    void union(int element1, int element2) {
+        int root1 = find(element1);
+        int root2 = find(element2);
+        if (root1 == root2) {
+            return;
+        }
+        if (sizes[root1] < sizes[root2]) {
+            int tmp = root1;
+            root1 = root2;
+            root2 = tmp;
+        }
+        parents[root2] = root1;
+        sizes[root1] += sizes[root2];
+        count--;
+    }
+    
+    /**
+     * @return the number of sets
+     */
+    int getCount() {
+        return count;
+    }
+    
+    /**
+     * Creates the array of set indexes of the elements. The sets are numbered
+     * in the order of their first elements.
+     * 
+     * @return the set indexes of the elements
+     */
+    int[] getClusterArray() {
+        int[] indexes = new int[parents.length];
+        Arrays.fill(indexes, -1);
+        int[] clusters = new int[parents.length];
+        int next = 0;
+        for (int i = 0; i < parents.length; i++) {
+            int root = find(i);
+            if (indexes[root] < 0) {
+                indexes[root] = next++;
+            }
+            clusters[i] = indexes[root];
+        }
+        return clusters;
+    }
+    
+}
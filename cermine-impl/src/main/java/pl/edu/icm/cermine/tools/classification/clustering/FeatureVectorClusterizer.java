@@ -18,36 +18,196 @@
 
 package pl.edu.icm.cermine.tools.classification.clustering;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import pl.edu.icm.cermine.PdfNLMContentExtractor;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
 import pl.edu.icm.cermine.tools.classification.metrics.FeatureVectorDistanceMetric;
+import pl.edu.icm.cermine.tools.classification.metrics.FeatureVectorEuclideanMetric;
 
 /**
+ * Clusters feature vectors. The distances between the vectors are computed
+ * once per pair into a condensed distance matrix 
+ * (see {@link CondensedDistanceMatrix}). Euclidean distances between vectors
+ * with the same features are computed directly from the arrays of feature 
+ * values. The rows of large matrices are computed in parallel blocks, using
+ * the executor supplied with {@link #setExecutor(ExecutorService)}, or else 
+ * a temporary pool of {@link PdfNLMContentExtractor#THREADS_NUMBER} threads.
  *
  * @author Dominika Tkaczyk
  */
 public class FeatureVectorClusterizer {
+    
+    /** minimum number of distances computed by a parallel task */
+    private static final int PARALLEL_BLOCK_SIZE = 1 << 14;
    
     private Clusterizer clusterizer;
     
+    private ExecutorService executor;
+    
     public int[] clusterize(FeatureVector[] vectors, FeatureVectorBuilder builder, FeatureVectorDistanceMetric metric, 
             double maxDistance, boolean normalize) {
         if (normalize){
             FeatureVectorsNormalizer.normalize(vectors, builder);
         }
-        double distanceMatrix[][] = new double[vectors.length][vectors.length];
-        for (int i = 0; i < vectors.length; i++) {
-            for (int j = 0; j < vectors.length; j++) {
-                distanceMatrix[i][j] = metric.getDistance(vectors[i], vectors[j]);
-                distanceMatrix[j][i] = metric.getDistance(vectors[i], vectors[j]);
+        return clusterizer.clusterize(getDistanceMatrix(vectors, metric), maxDistance);
+    }
+    
+    /**
+     * Computes the distances between the vectors.
+     * 
+     * @param vectors feature vectors
+     * @param metric distance metric
+     * @return condensed distance matrix
+     */
+    public CondensedDistanceMatrix getDistanceMatrix(FeatureVector[] vectors, FeatureVectorDistanceMetric metric) {
+        final CondensedDistanceMatrix distanceMatrix = new CondensedDistanceMatrix(vectors.length);
+        final DistanceCalculator calculator = new DistanceCalculator(vectors, metric);
+        int size = vectors.length;
+        
+        List<DistanceTask> tasks = new ArrayList<DistanceTask>();
+        int from = 0;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += size - i - 1;
+            if (count >= PARALLEL_BLOCK_SIZE || i == size - 1) {
+                tasks.add(new DistanceTask(calculator, distanceMatrix, from, i + 1));
+                from = i + 1;
+                count = 0;
             }
         }
         
-        return clusterizer.clusterize(distanceMatrix, maxDistance);
+        int threads = Math.min(PdfNLMContentExtractor.THREADS_NUMBER, tasks.size());
+        if (tasks.size() <= 1 || (executor == null && threads <= 1)) {
+            for (DistanceTask task : tasks) {
+                task.call();
+            }
+            return distanceMatrix;
+        }
+        
+        ExecutorService exec = executor;
+        if (exec == null) {
+            exec = Executors.newFixedThreadPool(threads);
+        }
+        try {
+            for (Future<Void> result : exec.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Cannot compute distances!", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Cannot compute distances!", ex);
+        } finally {
+            if (exec != executor) {
+                exec.shutdown();
+            }
+        }
+        return distanceMatrix;
     }
 
     public void setClusterizer(Clusterizer clusterizer) {
         this.clusterizer = clusterizer;
     }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to compute the distances in parallel. 
+     * The executor is not shut down by the clusterizer.
+     * 
+     * @param executor executor, or null to use a temporary thread pool
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * Computes the distances between the vectors. If the metric is Euclidean
+     * and all the vectors have the same feature names, the values of the vectors
+     * are extracted once, in the order of the feature names, as used by
+     * the metric.
+     */
+    private static final class DistanceCalculator {
+        
+        private final FeatureVector[] vectors;
+        
+        private final FeatureVectorDistanceMetric metric;
+        
+        private final double[][] values;
+        
+        DistanceCalculator(FeatureVector[] vectors, FeatureVectorDistanceMetric metric) {
+            this.vectors = vectors;
+            this.metric = metric;
+            this.values = getValues(vectors, metric);
+        }
+        
+        private static double[][] getValues(FeatureVector[] vectors, FeatureVectorDistanceMetric metric) {
+            if (!(metric instanceof FeatureVectorEuclideanMetric) || vectors.length == 0) {
+                return null;
+            }
+            List<String> names = vectors[0].getFeatureNames();
+            for (FeatureVector vector : vectors) {
+                if (!names.equals(vector.getFeatureNames())) {
+                    return null;
+                }
+            }
+            int[] indexes = new int[names.size()];
+            for (int k = 0; k < indexes.length; k++) {
+                indexes[k] = names.indexOf(names.get(k));
+            }
+            double[][] values = new double[vectors.length][indexes.length];
+            for (int i = 0; i < vectors.length; i++) {
+                double[] vectorValues = vectors[i].getValues();
+                for (int k = 0; k < indexes.length; k++) {
+                    values[i][k] = vectorValues[indexes[k]];
+                }
+            }
+            return values;
+        }
+        
+        double getDistance(int i, int j) {
+            if (values != null) {
+                return FeatureVectorEuclideanMetric.getDistance(values[i], values[j]);
+            }
+            return metric.getDistance(vectors[j], vectors[i]);
+        }
+    }
+    
+    private static final class DistanceTask implements Callable<Void> {
+        
+        private final DistanceCalculator calculator;
+        
+        private final CondensedDistanceMatrix distanceMatrix;
+        
+        private final int fromRow;
+        
+        private final int toRow;
+
+        DistanceTask(DistanceCalculator calculator, CondensedDistanceMatrix distanceMatrix, int fromRow, int toRow) {
+            this.calculator = calculator;
+            this.distanceMatrix = distanceMatrix;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        public Void call() {
+            for (int i = fromRow; i < toRow; i++) {
+                for (int j = i + 1; j < distanceMatrix.size(); j++) {
+                    distanceMatrix.set(i, j, calculator.getDistance(i, j));
+                }
+            }
+            return null;
+        }
+    }
     
 }
@@ -77,7 +77,13 @@ public class KMeansWithInitialCentroids {
     /**
      * The centroids of the different clusters.
      */
-    private FeatureVector[] centroids;
+    private double[][] centroids;
+
+    /**
+     * The names of the features, used to compute distances with metrics other
+     * than the Euclidean one.
+     */
+    private List<String> featureNames;
 
     /**
      * Constuct a default K-means clusterer with 100 iterations, 4 clusters, a
@@ -134,74 +140,87 @@ public class KMeansWithInitialCentroids {
     }
 
     public void setCentroids(FeatureVector[] centroids) {
-        this.centroids = new FeatureVector[centroids.length];
-        System.arraycopy(centroids, 0, this.centroids, 0, centroids.length);
+        this.centroids = new double[centroids.length][];
+        for (int i = 0; i < centroids.length; i++) {
+            this.centroids[i] = centroids[i].getValues();
+        }
+    }
+
+    public void setCentroids(double[][] centroids) {
+        this.centroids = new double[centroids.length][];
+        for (int i = 0; i < centroids.length; i++) {
+            this.centroids[i] = centroids[i].clone();
+        }
     }
     
     /**
-     * XXX add doc
+     * Clusters the feature vectors.
+     * 
+     * @param data feature vectors, all with the same features
+     * @return the vectors of the clusters
      */
     public List<FeatureVector>[] cluster(List<FeatureVector> data) {
         if (data.isEmpty())
             throw new RuntimeException("The dataset should not be empty");
+        double[][] values = new double[data.size()][];
+        for (int i = 0; i < data.size(); i++) {
+            values[i] = data.get(i).getValues();
+        }
+        featureNames = data.get(0).getFeatureNames();
+        int[] assignment = cluster(values);
+        
+        List<FeatureVector>[] output = new List[centroids.length];
+        for (int i = 0; i < centroids.length; i++)
+            output[i] = new ArrayList<FeatureVector>();
+        for (int i = 0; i < data.size(); i++) {
+            output[assignment[i]].add(data.get(i));
+        }
+        return output;
+    }
+
+    /**
+     * Clusters the instances given as rows of the feature value matrix.
+     * 
+     * @param data feature values, one row per instance
+     * @return the indexes of the clusters of the instances
+     */
+    public int[] cluster(double[][] data) {
+        if (data.length == 0)
+            throw new RuntimeException("The dataset should not be empty");
         if (numberOfClusters == 0)
             throw new RuntimeException("There should be at least one cluster");
         // Place K points into the space represented by the objects that are
         // being clustered. These points represent the initial group of
         // centroids.
-        // DatasetTools.
-        int instanceLength = data.get(0).size();
-        double[] min = new double[instanceLength];
-        double[] max = new double[instanceLength];
-        for (int i = 0; i < instanceLength; i++) {
-            min[i] = data.get(0).getValue(i);
-            max[i] = data.get(0).getValue(i);
-        }
-        for (FeatureVector fv : data) {
+        int instanceLength = data[0].length;
+        double[] min = data[0].clone();
+        double[] max = data[0].clone();
+        for (double[] instance : data) {
             for (int i = 0; i < instanceLength; i++) {
-                if (fv.getValue(i) < min[i]) {
-                    min[i] = fv.getValue(i);
+                if (instance[i] < min[i]) {
+                    min[i] = instance[i];
                 }
-                if (fv.getValue(i) > max[i]) {
-                    max[i] = fv.getValue(i);
+                if (instance[i] > max[i]) {
+                    max[i] = instance[i];
                 }
             }
         }
         
         if (this.centroids == null) {
-            this.centroids = new FeatureVector[numberOfClusters];
+            this.centroids = new double[numberOfClusters][];
             for (int j = 0; j < numberOfClusters; j++) {
-                double[] randomInstance = new double[instanceLength];
-                for (int i = 0; i < instanceLength; i++) {
-                    double dist = Math.abs(max[i] - min[i]);
-                    randomInstance[i] = (float) (min[i] + rg.nextDouble() * dist);
-
-                }
-                this.centroids[j] = data.get(0).copy();
-                this.centroids[j].setValues(randomInstance);
+                this.centroids[j] = getRandomInstance(min, max);
             }
         }
 
+        int[] assignment = new int[data.length];
         int iterationCount = 0;
         boolean centroidsChanged = true;
         boolean randomCentroids = true;
         while (randomCentroids || (iterationCount < this.numberOfIterations && centroidsChanged)) {
             iterationCount++;
             // Assign each object to the group that has the closest centroid.
-            int[] assignment = new int[data.size()];
-            for (int i = 0; i < data.size(); i++) {
-                int tmpCluster = 0;
-                double minDistance = dm.getDistance(centroids[0], data.get(i));
-                for (int j = 1; j < centroids.length; j++) {
-                    double dist = dm.getDistance(centroids[j], data.get(i));
-                    if (dist < minDistance) {
-                        minDistance = dist;
-                        tmpCluster = j;
-                    }
-                }
-                assignment[i] = tmpCluster;
-
-            }
+            assign(data, assignment);
 
             // When all objects have been assigned, recalculate the positions of
             // the K centroids and start over.
@@ -209,12 +228,10 @@ public class KMeansWithInitialCentroids {
             // current cluster.
             double[][] sumPosition = new double[this.numberOfClusters][instanceLength];
             int[] countPosition = new int[this.numberOfClusters];
-            for (int i = 0; i < data.size(); i++) {
-                FeatureVector in = data.get(i);
+            for (int i = 0; i < data.length; i++) {
+                double[] sum = sumPosition[assignment[i]];
                 for (int j = 0; j < instanceLength; j++) {
-
-                    sumPosition[assignment[i]][j] += in.getValue(j);
-
+                    sum[j] += data[i][j];
                 }
                 countPosition[assignment[i]]++;
             }
@@ -223,46 +240,63 @@ public class KMeansWithInitialCentroids {
             randomCentroids = false;
             for (int i = 0; i < this.numberOfClusters; i++) {
                 if (countPosition[i] > 0) {
-                    double[] tmp = new double[instanceLength];
+                    double[] newCentroid = new double[instanceLength];
                     for (int j = 0; j < instanceLength; j++) {
-                        tmp[j] = (float) sumPosition[i][j] / countPosition[i];
+                        newCentroid[j] = (float) sumPosition[i][j] / countPosition[i];
                     }
-                    FeatureVector newCentroid = data.get(0).copy();
-                    newCentroid.setValues(tmp);
-                    if (dm.getDistance(newCentroid, centroids[i]) > 0.0001) {
+                    if (getDistance(newCentroid, centroids[i]) > 0.0001) {
                         centroidsChanged = true;
                         centroids[i] = newCentroid;
                     }
                 } else {
-                    double[] randomInstance = new double[instanceLength];
-                    for (int j = 0; j < instanceLength; j++) {
-                        double dist = Math.abs(max[j] - min[j]);
-                        randomInstance[j] = (float) (min[j] + rg.nextDouble() * dist);
-
-                    }
                     randomCentroids = true;
-                    this.centroids[i] = data.get(0).copy();
-                    this.centroids[i].setValues(randomInstance);
+                    this.centroids[i] = getRandomInstance(min, max);
                 }
 
             }
         }
-        List<FeatureVector>[] output = new List[centroids.length];
-        for (int i = 0; i < centroids.length; i++)
-            output[i] = new ArrayList<FeatureVector>();
-        for (int i = 0; i < data.size(); i++) {
+        assign(data, assignment);
+        return assignment;
+    }
+
+    private double[] getRandomInstance(double[] min, double[] max) {
+        double[] randomInstance = new double[min.length];
+        for (int i = 0; i < min.length; i++) {
+            double dist = Math.abs(max[i] - min[i]);
+            randomInstance[i] = (float) (min[i] + rg.nextDouble() * dist);
+        }
+        return randomInstance;
+    }
+
+    private void assign(double[][] data, int[] assignment) {
+        for (int i = 0; i < data.length; i++) {
             int tmpCluster = 0;
-            double minDistance = dm.getDistance(centroids[0], data.get(i));
-            for (int j = 0; j < centroids.length; j++) {
-                double dist = dm.getDistance(centroids[j], data.get(i));
+            double minDistance = getDistance(centroids[0], data[i]);
+            for (int j = 1; j < centroids.length; j++) {
+                double dist = getDistance(centroids[j], data[i]);
                 if (dist < minDistance) {
                     minDistance = dist;
                     tmpCluster = j;
                 }
             }
-            output[tmpCluster].add(data.get(i));
+            assignment[i] = tmpCluster;
+        }
+    }
 
+    private double getDistance(double[] instance1, double[] instance2) {
+        if (dm instanceof FeatureVectorEuclideanMetric) {
+            return FeatureVectorEuclideanMetric.getDistance(instance1, instance2);
         }
-        return output;
+        return dm.getDistance(toFeatureVector(instance1), toFeatureVector(instance2));
+    }
+
+    private FeatureVector toFeatureVector(double[] instance) {
+        FeatureVector vector = new FeatureVector();
+        for (int i = 0; i < instance.length; i++) {
+            String name = featureNames != null && featureNames.size() == instance.length 
+                    ? featureNames.get(i) : String.valueOf(i);
+            vector.addFeature(name, instance[i]);
+        }
+        return vector;
     }
 }
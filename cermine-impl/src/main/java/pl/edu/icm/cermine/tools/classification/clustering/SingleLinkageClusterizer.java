@@ -20,43 +20,48 @@ package pl.edu.icm.cermine.tools.classification.clustering;
 
 /**
  * Single linkage clusterizer.
+ * 
+ * The elements closer than the maximum distance are linked, and the clusters
+ * are the connected components of the resulting graph. They are the same as 
+ * the clusters obtained by cutting the minimum spanning tree at the maximum 
+ * distance. All the pairs of elements are visited once, so the clustering 
+ * takes O(n<sup>2</sup>) time.
  *
  * @author Dominika Tkaczyk
  */
 public class SingleLinkageClusterizer implements Clusterizer {
     
+    /**
+     * @param distanceMatrix distances between the elements
+     * @param maxDistance maximum distance between linked elements (exclusive)
+     * @return the cluster indexes of the elements, numbered in the order 
+     * of the first elements of the clusters
+     */
     @Override
     public int[] clusterize(double distanceMatrix[][], double maxDistance) {
-        int[] clusters = new int[distanceMatrix.length];
-        for (int i = 0; i < clusters.length; i++) {
-            clusters[i] = i;
-        }
-        
-        while (true) {
-            int mini = -1;
-            int minj = -1;
-            for (int k = 0; k < distanceMatrix.length; k++) {
-                for (int l = 0; l < distanceMatrix.length; l++) {
-                    if (distanceMatrix[k][l] < maxDistance && clusters[k] != clusters[l]) {
-                        mini = k;
-                        minj = l;
-                    }
+        DisjointSets clusters = new DisjointSets(distanceMatrix.length);
+        for (int i = 0; i < distanceMatrix.length; i++) {
+            for (int j = i + 1; j < distanceMatrix.length; j++) {
+                if (distanceMatrix[i][j] < maxDistance || distanceMatrix[j][i] < maxDistance) {
+                    clusters.union(i, j);
                 }
             }
-            
-            if (mini == -1) {
-                return clusters;
-            }
-            
-            int old = clusters[mini];
+        }
+        return clusters.getClusterArray();
+    }
 
-            for (int i = 0; i < clusters.length; i++) {
-                if (clusters[i] == old) {
-                    clusters[i] = clusters[minj];
+    @Override
+    public int[] clusterize(CondensedDistanceMatrix distanceMatrix, double maxDistance) {
+        int size = distanceMatrix.size();
+        DisjointSets clusters = new DisjointSets(size);
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                if (distanceMatrix.get(i, j) < maxDistance) {
+                    clusters.union(i, j);
                 }
             }
         }
+        return clusters.getClusterArray();
     }
 
 }
-
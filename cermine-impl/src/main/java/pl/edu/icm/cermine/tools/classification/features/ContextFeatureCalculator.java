@@ -0,0 +1,40 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.features;
+
+/**
+ * Feature calculator whose value is calculated only within an evaluation
+ * context. Calculated outside of a context, the value is evaluated in 
+ * a new context of the object.
+ *
+ * @param <S> Type of objects whose feature value can be calculated.
+ * @param <T> Type of an additional context object that can be used
+ * for calculation.
+ */
+public abstract class ContextFeatureCalculator<S, T> extends FeatureCalculator<S, T> {
+
+    @Override
+    public double calculateFeatureValue(S object, T context) {
+        return calculateFeatureValue(object, context, new FeatureEvaluationContext<S, T>(object, context));
+    }
+
+    @Override
+    public abstract double calculateFeatureValue(S object, T context, FeatureEvaluationContext<S, T> evaluation);
+
+}
@@ -0,0 +1,58 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.features;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memoized context-scoped values (see {@link SharedFeatureValue}) of several
+ * context objects. A cache lets feature vectors calculated in separate calls
+ * share the values, so that a page-level aggregate is calculated once per page
+ * for a whole classification, and not once per call. The cache is thread-safe
+ * and can be shared by feature vectors calculated concurrently; a value 
+ * requested by two threads at the same time may be calculated by both.
+ * 
+ * Context objects are compared by identity. The cache should be used with
+ * a single feature vector builder, and should not outlive the classification,
+ * as the context objects may change afterwards.
+ *
+ * @param <T> Type of context objects.
+ */
+public class ContextValueCache<T> {
+
+    private final Map<T, Map<String, Double>> values = new IdentityHashMap<T, Map<String, Double>>();
+
+    /**
+     * Returns the values of the context object.
+     * 
+     * @param context context object
+     * @return modifiable, thread-safe map of the values, by name
+     */
+    public synchronized Map<String, Double> getValues(T context) {
+        Map<String, Double> contextValues = values.get(context);
+        if (contextValues == null) {
+            contextValues = new ConcurrentHashMap<String, Double>();
+            values.put(context, contextValues);
+        }
+        return contextValues;
+    }
+
+}
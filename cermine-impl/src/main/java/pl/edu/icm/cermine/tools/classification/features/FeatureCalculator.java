@@ -62,4 +62,46 @@ public abstract class FeatureCalculator<S, T> {
      */
     public abstract double calculateFeatureValue(S object, T context);
 
+    /**
+     * Calculates the value of a single feature within an evaluation context.
+     * Calculators that depend on other features or on shared intermediate
+     * values should override this method and obtain them from the evaluation
+     * context, which memoizes them (see {@link ContextFeatureCalculator}).
+     * By default the value is calculated with 
+     * {@link #calculateFeatureValue(Object, Object)}.
+     *
+     * @param object An object whose feature value will be calculated.
+     * @param context An additional context object used for calculation.
+     * @param evaluation Evaluation context of the object.
+     * @return Calculated feature value.
+     */
+    public double calculateFeatureValue(S object, T context, FeatureEvaluationContext<S, T> evaluation) {
+        return calculateFeatureValue(object, context);
+    }
+
+    /**
+     * Tells whether the feature value depends on the labels of other objects,
+     * such as the label of the previous zone. During classification such 
+     * labels are only known once the other objects are classified, so the 
+     * objects have to be labelled one by one, in order. Label-dependent 
+     * features should only depend on the labels of the preceding objects.
+     *
+     * @return true if the value depends on the labels of other objects
+     */
+    public boolean isLabelDependent() {
+        return false;
+    }
+
+    /**
+     * Returns the version of the calculator. The version is a part of 
+     * the schema of cached feature vectors (see 
+     * {@link pl.edu.icm.cermine.tools.classification.general.TrainingSampleCache}),
+     * so it has to be increased every time the calculated values change.
+     *
+     * @return calculator version
+     */
+    public int getVersion() {
+        return 1;
+    }
+
 }
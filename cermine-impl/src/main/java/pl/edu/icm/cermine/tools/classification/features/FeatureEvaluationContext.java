@@ -0,0 +1,120 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.features;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluation context of the features of a single object. The context memoizes
+ * the values of features and shared intermediate values, so that each of them
+ * is calculated at most once per object, or once per context object
+ * in the case of context-scoped values. This lets relative features reuse
+ * their absolute counterparts and page-level aggregates instead of recounting.
+ * 
+ * An evaluation context is not thread-safe and should not outlive
+ * the calculation of the object's feature vector.
+ *
+ * @param <S> Type of objects whose features are calculated.
+ * @param <T> Type of context objects.
+ */
+public class FeatureEvaluationContext<S, T> {
+
+    private final S object;
+    private final T context;
+
+    private final Map<String, Double> featureValues = new HashMap<String, Double>();
+    private final Map<String, Double> objectValues = new HashMap<String, Double>();
+    private final Map<String, Double> contextValues;
+
+    /** names of the values being calculated, used to detect cyclic dependencies */
+    private final Set<String> pending = new HashSet<String>();
+
+    public FeatureEvaluationContext(S object, T context) {
+        this(object, context, new HashMap<String, Double>());
+    }
+
+    /**
+     * @param object object whose features are calculated
+     * @param context context object
+     * @param contextValues memoized context-scoped values, shared by the evaluation
+     * contexts of all the objects with the same context
+     */
+    public FeatureEvaluationContext(S object, T context, Map<String, Double> contextValues) {
+        this.object = object;
+        this.context = context;
+        this.contextValues = contextValues;
+    }
+
+    public S getObject() {
+        return object;
+    }
+
+    public T getContext() {
+        return context;
+    }
+
+    /**
+     * Returns the value of the given feature of the object, calculating it
+     * if it was not calculated before. Features are identified by their names.
+     *
+     * @param calculator feature calculator
+     * @return feature value
+     */
+    public double getFeatureValue(FeatureCalculator<S, T> calculator) {
+        String name = calculator.getFeatureName();
+        Double value = featureValues.get(name);
+        if (value == null) {
+            startCalculation("feature " + name);
+            value = calculator.calculateFeatureValue(object, context, this);
+            pending.remove("feature " + name);
+            featureValues.put(name, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the given intermediate value, calculating it if it was not
+     * calculated before.
+     *
+     * @param sharedValue intermediate value
+     * @return value
+     */
+    public double getValue(SharedFeatureValue<S, T> sharedValue) {
+        Map<String, Double> values = sharedValue.isContextScoped() ? contextValues : objectValues;
+        String name = sharedValue.getName();
+        Double value = values.get(name);
+        if (value == null) {
+            startCalculation("value " + name);
+            value = sharedValue.calculate(object, context, this);
+            pending.remove("value " + name);
+            values.put(name, value);
+        }
+        return value;
+    }
+
+    private void startCalculation(String key) {
+        if (!pending.add(key)) {
+            throw new IllegalStateException("Cyclic dependency detected while calculating " + key + "!");
+        }
+    }
+
+}
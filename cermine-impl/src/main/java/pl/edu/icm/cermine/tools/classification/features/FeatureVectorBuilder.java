@@ -18,8 +18,8 @@
 
 package pl.edu.icm.cermine.tools.classification.features;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Feature vector builder (GoF factory pattern). The builder calculates feature
@@ -37,14 +37,211 @@ public class FeatureVectorBuilder<S, T> {
 
 	private List<FeatureCalculator<S, T>> featureCalculators = new ArrayList<FeatureCalculator<S, T>>();
 
+    /** cumulative calculation times in nanoseconds, null if profiling is disabled */
+    private volatile AtomicLongArray calculationTimes;
+    
+    /** numbers of calculations, null if profiling is disabled */
+    private volatile AtomicLongArray calculationCounts;
+    
 	public FeatureVector getFeatureVector(S object, T context) {
+        return getFeatureVector(new FeatureEvaluationContext<S, T>(object, context));
+	}
+    
+    /**
+     * Calculates the feature vector of an object, taking context-scoped 
+     * intermediate values from the cache, so that the objects of the same 
+     * context calculated one by one share them.
+     * 
+     * @param object object
+     * @param context context object
+     * @param cache cache of context-scoped values
+     * @return feature vector
+     */
+	public FeatureVector getFeatureVector(S object, T context, ContextValueCache<T> cache) {
+        return getFeatureVector(new FeatureEvaluationContext<S, T>(object, context, cache.getValues(context)));
+	}
+    
+    /**
+     * Calculates the feature vectors of a list of objects. Context-scoped
+     * intermediate values are calculated once per context object and shared
+     * by all the objects with the same context.
+     * 
+     * @param objects objects
+     * @param contexts context objects, in the same order
+     * @return feature vectors, in the order of the objects
+     */
+    public List<FeatureVector> getFeatureVectors(List<S> objects, List<T> contexts) {
+        return getFeatureVectors(objects, contexts, new ContextValueCache<T>(), true);
+    }
+    
+    /**
+     * Calculates the feature vectors of a list of objects, taking context-scoped
+     * intermediate values from the cache, which can be shared by several calls, 
+     * also made concurrently.
+     * 
+     * @param objects objects
+     * @param contexts context objects, in the same order
+     * @param cache cache of context-scoped values
+     * @return feature vectors, in the order of the objects
+     */
+    public List<FeatureVector> getFeatureVectors(List<S> objects, List<T> contexts, ContextValueCache<T> cache) {
+        return getFeatureVectors(objects, contexts, cache, true);
+    }
+    
+    /**
+     * Calculates the feature vectors of a list of objects, leaving out 
+     * the values of label-dependent features (see {@link #isLabelDependent()}), 
+     * which are set to 0. The vectors can be calculated before the labels 
+     * of the objects are known, and completed one by one with 
+     * {@link #updateLabelDependentFeatures(FeatureVector, Object, Object)} 
+     * once the labels the features depend on are set.
+     * 
+     * @param objects objects
+     * @param contexts context objects, in the same order
+     * @return feature vectors, in the order of the objects
+     */
+    public List<FeatureVector> getLabelIndependentFeatureVectors(List<S> objects, List<T> contexts) {
+        return getFeatureVectors(objects, contexts, new ContextValueCache<T>(), false);
+    }
+    
+    /**
+     * Calculates the feature vectors of a list of objects without the values
+     * of label-dependent features (see {@link #getLabelIndependentFeatureVectors(List, List)}),
+     * taking context-scoped intermediate values from the cache.
+     * 
+     * @param objects objects
+     * @param contexts context objects, in the same order
+     * @param cache cache of context-scoped values
+     * @return feature vectors, in the order of the objects
+     */
+    public List<FeatureVector> getLabelIndependentFeatureVectors(List<S> objects, List<T> contexts, 
+            ContextValueCache<T> cache) {
+        return getFeatureVectors(objects, contexts, cache, false);
+    }
+    
+    /**
+     * Calculates the values of label-dependent features of the object 
+     * and sets them in its feature vector.
+     * 
+     * @param featureVector feature vector of the object
+     * @param object object
+     * @param context context object
+     */
+    public void updateLabelDependentFeatures(FeatureVector featureVector, S object, T context) {
+        FeatureEvaluationContext<S, T> evaluation = new FeatureEvaluationContext<S, T>(object, context);
+        for (int i = 0; i < featureCalculators.size(); i++) {
+            FeatureCalculator<S, T> fc = featureCalculators.get(i);
+            if (fc.isLabelDependent()) {
+                featureVector.setValue(i, evaluation.getFeatureValue(fc));
+            }
+        }
+    }
+    
+    private List<FeatureVector> getFeatureVectors(List<S> objects, List<T> contexts, ContextValueCache<T> cache,
+            boolean withLabelDependent) {
+        List<FeatureVector> featureVectors = new ArrayList<FeatureVector>(objects.size());
+        T previousContext = null;
+        Map<String, Double> values = null;
+        for (int i = 0; i < objects.size(); i++) {
+            T context = contexts.get(i);
+            if (values == null || context != previousContext) {
+                values = cache.getValues(context);
+                previousContext = context;
+            }
+            featureVectors.add(getFeatureVector(new FeatureEvaluationContext<S, T>(objects.get(i), context, values),
+                    withLabelDependent));
+        }
+        return featureVectors;
+    }
+    
+    private FeatureVector getFeatureVector(FeatureEvaluationContext<S, T> evaluation) {
+        return getFeatureVector(evaluation, true);
+    }
+    
+    private FeatureVector getFeatureVector(FeatureEvaluationContext<S, T> evaluation, boolean withLabelDependent) {
+        AtomicLongArray times = calculationTimes;
+        AtomicLongArray counts = calculationCounts;
+        if (times != null && counts != null && times.length() == featureCalculators.size()
+                && counts.length() == times.length()) {
+            return getProfiledFeatureVector(evaluation, withLabelDependent, times, counts);
+        }
 		FeatureVector featureVector = new FeatureVector();
 		for (FeatureCalculator<S, T> fc : featureCalculators) {
-			featureVector.addFeature(fc.getFeatureName(),
-					fc.calculateFeatureValue(object, context));
+            if (withLabelDependent || !fc.isLabelDependent()) {
+                featureVector.addFeature(fc.getFeatureName(), evaluation.getFeatureValue(fc));
+            } else {
+                featureVector.addFeature(fc.getFeatureName(), 0);
+            }
 		}
 		return featureVector;
-	}
+    }
+    
+    private FeatureVector getProfiledFeatureVector(FeatureEvaluationContext<S, T> evaluation,
+            boolean withLabelDependent, AtomicLongArray times, AtomicLongArray counts) {
+        FeatureVector featureVector = new FeatureVector();
+        for (int i = 0; i < featureCalculators.size(); i++) {
+            FeatureCalculator<S, T> fc = featureCalculators.get(i);
+            if (!withLabelDependent && fc.isLabelDependent()) {
+                featureVector.addFeature(fc.getFeatureName(), 0);
+                continue;
+            }
+            long start = System.nanoTime();
+            double value = evaluation.getFeatureValue(fc);
+            times.addAndGet(i, System.nanoTime() - start);
+            counts.incrementAndGet(i);
+            featureVector.addFeature(fc.getFeatureName(), value);
+        }
+        return featureVector;
+    }
+    
+    /**
+     * Enables or disables recording of cumulative calculation times and call
+     * counts of every feature calculator. Enabling profiling resets
+     * the recorded values. Calculators sharing cached intermediate results
+     * (such as zone texts or memoized values, see {@link FeatureEvaluationContext})
+     * are charged in the order they are called, so the costs are approximate.
+     * 
+     * @param profiling whether the calculations should be profiled
+     */
+    public void setProfiling(boolean profiling) {
+        if (profiling) {
+            calculationCounts = new AtomicLongArray(featureCalculators.size());
+            calculationTimes = new AtomicLongArray(featureCalculators.size());
+        } else {
+            calculationTimes = null;
+            calculationCounts = null;
+        }
+    }
+    
+    public boolean isProfiling() {
+        return calculationTimes != null;
+    }
+    
+    /**
+     * @return cumulative calculation times in nanoseconds, by feature name,
+     * in the order of the calculators; empty if profiling is disabled
+     */
+    public Map<String, Long> getCalculationTimes() {
+        return getProfile(calculationTimes);
+    }
+    
+    /**
+     * @return numbers of calculations, by feature name, in the order
+     * of the calculators; empty if profiling is disabled
+     */
+    public Map<String, Long> getCalculationCounts() {
+        return getProfile(calculationCounts);
+    }
+    
+    private Map<String, Long> getProfile(AtomicLongArray values) {
+        Map<String, Long> profile = new LinkedHashMap<String, Long>();
+        if (values != null && values.length() == featureCalculators.size()) {
+            for (int i = 0; i < featureCalculators.size(); i++) {
+                profile.put(featureCalculators.get(i).getFeatureName(), values.get(i));
+            }
+        }
+        return profile;
+    }
 
 	public List<String> getFeatureNames() {
 		List<String> ret = new ArrayList<String>();
@@ -58,6 +255,19 @@ public class FeatureVectorBuilder<S, T> {
 		return featureCalculators.size();
 	}
 
+    /**
+     * @return true if any of the features depends on the labels of other
+     * objects, see {@link FeatureCalculator#isLabelDependent()}
+     */
+    public boolean isLabelDependent() {
+        for (FeatureCalculator<S, T> fc : featureCalculators) {
+            if (fc.isLabelDependent()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 	public List<FeatureCalculator<S, T>> getFeatureCalculators() {
 		return featureCalculators;
 	}
@@ -65,6 +275,9 @@ public class FeatureVectorBuilder<S, T> {
 	public void setFeatureCalculators(
 			List<FeatureCalculator<S, T>> featureCalculators) {
 		this.featureCalculators = featureCalculators;
+        if (isProfiling()) {
+            setProfiling(true);
+        }
 	}
 
 }
@@ -0,0 +1,67 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.features;
+
+/**
+ * Named intermediate value shared by feature calculators and memoized
+ * in {@link FeatureEvaluationContext}. A value can be object-scoped, that is
+ * calculated once per object, or context-scoped, that is calculated once per
+ * context object and shared by all the objects with that context (for example
+ * a page-level aggregate shared by all the zones of the page). Context-scoped
+ * values must depend on the context object only.
+ *
+ * Values can depend on features and other values, obtained from the evaluation
+ * context passed to {@link #calculate(Object, Object, FeatureEvaluationContext)}.
+ *
+ * @param <S> Type of objects whose features are calculated.
+ * @param <T> Type of context objects.
+ */
+public abstract class SharedFeatureValue<S, T> {
+
+    private final String name;
+    private final boolean contextScoped;
+
+    /**
+     * @param name value name, unique among the values used with the same builder
+     * @param contextScoped whether the value depends on the context object only
+     */
+    protected SharedFeatureValue(String name, boolean contextScoped) {
+        this.name = name;
+        this.contextScoped = contextScoped;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isContextScoped() {
+        return contextScoped;
+    }
+
+    /**
+     * Calculates the value.
+     *
+     * @param object object whose features are calculated
+     * @param context context object
+     * @param evaluation evaluation context providing other features and values
+     * @return value
+     */
+    public abstract double calculate(S object, T context, FeatureEvaluationContext<S, T> evaluation);
+
+}
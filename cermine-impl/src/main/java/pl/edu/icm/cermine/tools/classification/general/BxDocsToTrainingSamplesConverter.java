@@ -19,6 +19,7 @@
 package pl.edu.icm.cermine.tools.classification.general;
 
 import java.util.*;
+import java.util.concurrent.*;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.metadata.zoneclassification.tools.ZoneClassificationUtils;
 import pl.edu.icm.cermine.structure.model.*;
@@ -33,26 +34,107 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
  */
 public abstract class BxDocsToTrainingSamplesConverter {
 
+    /** number of documents in progress per thread in parallel conversion */
+    private static final int DOCUMENTS_PER_THREAD = 4;
+    
+    /** number of documents between progress messages in parallel conversion */
+    private static final int PROGRESS_INTERVAL = 100;
+
     public static List<TrainingSample<BxZoneLabel>> getZoneTrainingSamples(Iterator<BxDocument> documents, 
             FeatureVectorBuilder<BxZone, BxPage> vectorBuilder, Map<BxZoneLabel, BxZoneLabel> labelMap) throws AnalysisException {
         List<TrainingSample<BxZoneLabel>> trainingList = new ArrayList<TrainingSample<BxZoneLabel>>();
 
         int i = 0;
         while (documents.hasNext()) {
-            BxDocument doc  = documents.next();
-            if (labelMap != null) {
-                ZoneClassificationUtils.mapZoneLabels(doc, labelMap);
-            }
+            trainingList.addAll(getDocumentZoneTrainingSamples(documents.next(), vectorBuilder, labelMap));
+            System.out.println("Converting document: "+(++i));
+        }
+        return trainingList;
+    }
+    
+    /**
+     * Converts documents into zone training samples in parallel. Documents
+     * are read from the iterator by the calling thread and converted 
+     * by a pool of worker threads. At most a few documents per thread are 
+     * in progress at any time, and every document is dropped as soon as 
+     * its samples are calculated, so with a lazy iterator (see 
+     * {@link DocumentsExtractor}) only the samples have to fit in memory.
+     * The samples are returned in the order of the documents. Null documents
+     * returned by the iterator are skipped.
+     * 
+     * Feature calculators used by the builder must not share mutable state
+     * between calls.
+     * 
+     * @param documents documents
+     * @param vectorBuilder feature vector builder
+     * @param labelMap label map, or null
+     * @param threads number of worker threads
+     * @return training samples
+     * @throws AnalysisException 
+     */
+    public static List<TrainingSample<BxZoneLabel>> getZoneTrainingSamples(Iterator<BxDocument> documents, 
+            final FeatureVectorBuilder<BxZone, BxPage> vectorBuilder, final Map<BxZoneLabel, BxZoneLabel> labelMap,
+            int threads) throws AnalysisException {
+        List<TrainingSample<BxZoneLabel>> trainingList = new ArrayList<TrainingSample<BxZoneLabel>>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Queue<Future<List<TrainingSample<BxZoneLabel>>>> pending = new LinkedList<Future<List<TrainingSample<BxZoneLabel>>>>();
+        int maxPending = threads * DOCUMENTS_PER_THREAD;
+        int converted = 0;
+        try {
+            while (documents.hasNext()) {
+                final BxDocument doc = documents.next();
+                if (doc == null) {
+                    System.err.println("Skipping unreadable document");
+                    continue;
+                }
+                pending.add(executor.submit(new Callable<List<TrainingSample<BxZoneLabel>>>() {
 
-            for (BxPage page : doc.getPages()) {
-                for (BxZone zone : page.getZones()) {
-                    FeatureVector featureVector = vectorBuilder.getFeatureVector(zone, page);
-                    TrainingSample<BxZoneLabel> element = new TrainingSample<BxZoneLabel>(featureVector, zone.getLabel());
-                    element.setData(zone.toText());
-                    trainingList.add(element);
+                    @Override
+                    public List<TrainingSample<BxZoneLabel>> call() {
+                        return getDocumentZoneTrainingSamples(doc, vectorBuilder, labelMap);
+                    }
+                }));
+                while (pending.size() >= maxPending) {
+                    trainingList.addAll(pending.remove().get());
+                    converted = reportProgress(converted);
                 }
             }
-            System.out.println("Converting document: "+(++i));
+            while (!pending.isEmpty()) {
+                trainingList.addAll(pending.remove().get());
+                converted = reportProgress(converted);
+            }
+        } catch (ExecutionException ex) {
+            throw new AnalysisException("Cannot convert documents!", ex);
+        } catch (InterruptedException ex) {
+            throw new AnalysisException("Cannot convert documents!", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+        return trainingList;
+    }
+    
+    private static int reportProgress(int converted) {
+        converted++;
+        if (converted % PROGRESS_INTERVAL == 0) {
+            System.out.println("Converted documents: " + converted);
+        }
+        return converted;
+    }
+    
+    private static List<TrainingSample<BxZoneLabel>> getDocumentZoneTrainingSamples(BxDocument doc, 
+            FeatureVectorBuilder<BxZone, BxPage> vectorBuilder, Map<BxZoneLabel, BxZoneLabel> labelMap) {
+        if (labelMap != null) {
+            ZoneClassificationUtils.mapZoneLabels(doc, labelMap);
+        }
+        List<TrainingSample<BxZoneLabel>> trainingList = new ArrayList<TrainingSample<BxZoneLabel>>();
+        for (BxPage page : doc.getPages()) {
+            for (BxZone zone : page.getZones()) {
+                FeatureVector featureVector = vectorBuilder.getFeatureVector(zone, page);
+                TrainingSample<BxZoneLabel> element = new TrainingSample<BxZoneLabel>(featureVector, zone.getLabel());
+                element.setDocumentId(doc.getFilename());
+                element.setData(zone.toText());
+                trainingList.add(element);
+            }
         }
         return trainingList;
     }
@@ -70,6 +152,7 @@ public abstract class BxDocsToTrainingSamplesConverter {
                 for (BxZone zone : page.getZones()) {
                     FeatureVector featureVector = vectorBuilder.getFeatureVector(zone, page);
                     TrainingSample<BxZoneLabel> element = new TrainingSample<BxZoneLabel>(featureVector, zone.getLabel());
+                    element.setDocumentId(doc.getFilename());
                     trainingList.add(element);
                 }
             }
@@ -106,6 +189,7 @@ public abstract class BxDocsToTrainingSamplesConverter {
                     for (BxLine line : zone.getLines()) {
                         FeatureVector featureVector = vectorBuilder.getFeatureVector(line, page);
                         TrainingSample<BxZoneLabel> element = new TrainingSample<BxZoneLabel>(featureVector, zone.getLabel());
+                        element.setDocumentId(doc.getFilename());
                         trainingList.add(element);
                     }
                 }
@@ -20,6 +20,7 @@ package pl.edu.icm.cermine.tools.classification.general;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import pl.edu.icm.cermine.exception.TransformationException;
 import pl.edu.icm.cermine.structure.model.BxDocument;
@@ -45,46 +46,78 @@ public class DirExtractor implements DocumentsExtractor
 	
     @Override
 	public List<BxDocument> getDocuments() throws TransformationException {
-		String dirPath = directory.getPath();
-		TrueVizToBxDocumentReader tvReader = new TrueVizToBxDocumentReader();
 		List<BxDocument> documents = new ArrayList<BxDocument>();
-		
-		if(!dirPath.endsWith(File.separator)) {
-			dirPath += File.separator;
-		}
+        for (File file : getFiles()) {
+            documents.add(readDocument(file));
+    	}
+		return documents;
+	}
+
+    @Override
+    public Iterator<BxDocument> iterator() {
+        final Iterator<File> files = getFiles().iterator();
+        return new Iterator<BxDocument>() {
+
+            @Override
+            public boolean hasNext() {
+                return files.hasNext();
+            }
+
+            @Override
+            public BxDocument next() {
+                File file = files.next();
+                try {
+                    return readDocument(file);
+                } catch (TransformationException ex) {
+                    throw new IllegalStateException("Cannot read document " + file.getPath() + "!", ex);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Documents cannot be removed!");
+            }
+        };
+    }
+    
+    private List<File> getFiles() {
+        List<File> files = new ArrayList<File>();
         for (String filename : directory.list()) {
-            if (!new File(dirPath + filename).isFile()) {
-                continue;
+            File file = new File(directory, filename);
+    		if (file.isFile() && filename.endsWith("xml")) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+    
+    private BxDocument readDocument(File file) throws TransformationException {
+		TrueVizToBxDocumentReader tvReader = new TrueVizToBxDocumentReader();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            List<BxPage> pages = tvReader.read(new InputStreamReader(is));
+            BxDocument newDoc = new BxDocument();
+            for(BxPage page: pages) {
+                page.setParent(newDoc);
             }
-    		if (filename.endsWith("xml")) {
-                InputStream is = null;
+            newDoc.setFilename(file.getName());
+            newDoc.setPages(pages);
+            return newDoc;
+        } catch (IllegalStateException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(file.getPath());
+            throw ex;
+        } catch (FileNotFoundException ex) {
+            throw new TransformationException("File not found!", ex);
+        } finally {
+            if (is != null) {
                 try {
-                    is = new FileInputStream(dirPath + filename);
-                    List<BxPage> pages = tvReader.read(new InputStreamReader(is));
-                    BxDocument newDoc = new BxDocument();
-                    for(BxPage page: pages) {
-                        page.setParent(newDoc);
-                    }
-                    newDoc.setFilename(filename);
-                    newDoc.setPages(pages);
-                    documents.add(newDoc);
-                } catch (IllegalStateException ex) {
-                	System.err.println(ex.getMessage());
-                	System.err.println(dirPath + filename);
-                	throw ex;
-                } catch (FileNotFoundException ex) {
-                    throw new TransformationException("File not found!", ex);
-                } finally {
-                    if (is != null) {
-                        try {
-                            is.close();
-                        } catch (IOException ex) {
-                            throw new TransformationException("Cannot close stream!", ex);
-                        }
-                    }
+                    is.close();
+                } catch (IOException ex) {
+                    throw new TransformationException("Cannot close stream!", ex);
                 }
-    		}
-    	}
-		return documents;
-	}
+            }
+        }
+    }
 }
@@ -23,11 +23,14 @@ import pl.edu.icm.cermine.exception.TransformationException;
 import pl.edu.icm.cermine.structure.model.BxDocument;
 
 /**
- * Documents extractor interface.
+ * Documents extractor interface. Documents can be extracted all at once 
+ * with {@link #getDocuments()}, or iterated over, in which case they are read 
+ * lazily, one at a time, so that only the current document is held in memory.
+ * Errors encountered by the iterator are reported with IllegalStateException.
  * 
  * @author Paweł Szostek
  */
-public interface DocumentsExtractor {
+public interface DocumentsExtractor extends Iterable<BxDocument> {
     
     /**
      * Extracts documents.
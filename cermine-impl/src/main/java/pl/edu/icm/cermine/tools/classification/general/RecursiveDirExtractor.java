@@ -20,6 +20,7 @@ package pl.edu.icm.cermine.tools.classification.general;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import org.apache.commons.io.FileUtils;
 import pl.edu.icm.cermine.exception.TransformationException;
@@ -44,32 +45,61 @@ public class RecursiveDirExtractor implements DocumentsExtractor {
 
     @Override
     public List<BxDocument> getDocuments() throws TransformationException {
-        TrueVizToBxDocumentReader tvReader = new TrueVizToBxDocumentReader();
         List<BxDocument> documents = new ArrayList<BxDocument>();
-
         for (File file : FileUtils.listFiles(directory, new String[]{"xml"}, true)) {
-            InputStream is = null;
-            try {
-                is = new FileInputStream(file);
-                List<BxPage> pages = tvReader.read(new InputStreamReader(is));
-                BxDocument doc = new BxDocument();
-                doc.setFilename(file.getName());
-                doc.setPages(pages);
-                documents.add(doc);
-            } catch (FileNotFoundException ex) {
-                throw new TransformationException(ex);
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (IOException ex) {
-                        throw new TransformationException("Cannot close stream!", ex);
-                    }
+            documents.add(readDocument(file));
+        }
+        return documents;
+    }
+
+    @Override
+    public Iterator<BxDocument> iterator() {
+        final Iterator<File> files = FileUtils.listFiles(directory, new String[]{"xml"}, true).iterator();
+        return new Iterator<BxDocument>() {
+
+            @Override
+            public boolean hasNext() {
+                return files.hasNext();
+            }
+
+            @Override
+            public BxDocument next() {
+                File file = files.next();
+                try {
+                    return readDocument(file);
+                } catch (TransformationException ex) {
+                    throw new IllegalStateException("Cannot read document " + file.getPath() + "!", ex);
                 }
             }
-        }
 
-        return documents;
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Documents cannot be removed!");
+            }
+        };
+    }
+
+    private BxDocument readDocument(File file) throws TransformationException {
+        TrueVizToBxDocumentReader tvReader = new TrueVizToBxDocumentReader();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            List<BxPage> pages = tvReader.read(new InputStreamReader(is));
+            BxDocument doc = new BxDocument();
+            doc.setFilename(file.getName());
+            doc.setPages(pages);
+            return doc;
+        } catch (FileNotFoundException ex) {
+            throw new TransformationException(ex);
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ex) {
+                    throw new TransformationException("Cannot close stream!", ex);
+                }
+            }
+        }
     }
 
 }
@@ -30,6 +30,9 @@ public class TrainingSample<S> implements Cloneable {
     private S label;
     
     private String data;
+    
+    /** identifier of the document the sample comes from, such as its file name */
+    private String documentId;
   
     public TrainingSample(FeatureVector features, S label) {
         this.features = features;
@@ -67,5 +70,13 @@ public class TrainingSample<S> implements Cloneable {
     public void setData(String data) {
         this.data = data;
     }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(String documentId) {
+        this.documentId = documentId;
+    }
     
 }
@@ -0,0 +1,371 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.general;
+
+import java.io.*;
+import java.util.*;
+import pl.edu.icm.cermine.exception.AnalysisException;
+import pl.edu.icm.cermine.structure.model.BxZoneLabel;
+import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
+
+/**
+ * Binary cache of zone training samples, used to avoid recalculating feature
+ * vectors from TrueViz files in repeated training and evaluation runs.
+ * The cache is written once and read sequentially.
+ *
+ * The cache stores the hash of the feature schema, that is the names,
+ * calculator classes and versions of the builder's features together with
+ * the description of the sample source, and is treated as invalid if it does not match 
+ * the builder and the source it is used with. When the samples are obtained
+ * with {@link #getSamples(File, FeatureVectorBuilder, String, String, String, Map, SampleProvider)},
+ * the source includes the input directory, the paths, sizes and modification 
+ * times of its documents, the document file extension and the label map.
+ * Changes in the code of a calculator are detected only through its version
+ * (see {@link FeatureCalculator#getVersion()}), which has to be increased
+ * whenever the calculated values change.
+ *
+ * The file is big-endian and stored column by column:
+ * <ul>
+ * <li>magic number, format version, schema hash, number of features,
+ * number of samples and number of documents,</li>
+ * <li>label ordinals of the samples, -1 for no label,</li>
+ * <li>document indexes of the samples, -1 for no document,</li>
+ * <li>feature values, one column of all the samples per feature,</li>
+ * <li>document names,</li>
+ * <li>sample data (zone texts), each string preceded by the number 
+ * of its UTF-8 bytes, or -1 for null.</li>
+ * </ul>
+ */
+public class TrainingSampleCache {
+
+    /** "CFVC" */
+    private static final int MAGIC = 0x43465643;
+    private static final int VERSION = 2;
+    
+    /** magic number and version, schema hash, feature, sample and document counts */
+    private static final int HEADER_SIZE = 4 * 2 + 8 + 4 * 3;
+
+    private final File file;
+    private final List<String> featureNames;
+    private final long schemaHash;
+
+    /**
+     * @param file cache file
+     * @param vectorBuilder builder the feature vectors are calculated with
+     * @param source name of the way the samples are obtained, such as the class
+     * of the evaluator, as label mapping and filtering are applied before caching
+     */
+    public TrainingSampleCache(File file, FeatureVectorBuilder<?, ?> vectorBuilder, String source) {
+        this.file = file;
+        this.featureNames = vectorBuilder.getFeatureNames();
+        this.schemaHash = getSchemaHash(vectorBuilder, source);
+    }
+
+    /**
+     * Calculates the 64-bit FNV-1a hash of the sample source and the feature 
+     * names, calculator classes and calculator versions of the builder.
+     * 
+     * @param vectorBuilder feature vector builder
+     * @param source name of the sample source
+     * @return schema hash
+     */
+    public static long getSchemaHash(FeatureVectorBuilder<?, ?> vectorBuilder, String source) {
+        StringBuilder key = new StringBuilder(source).append('\n');
+        for (FeatureCalculator<?, ?> calculator : vectorBuilder.getFeatureCalculators()) {
+            key.append(calculator.getClass().getName()).append(':')
+                    .append(calculator.getFeatureName()).append(':')
+                    .append(calculator.getVersion()).append('\n');
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Obtains the samples of the documents in the input directory.
+     */
+    public interface SampleProvider {
+        
+        List<TrainingSample<BxZoneLabel>> getSamples(String inputFile, String ext) throws AnalysisException;
+    }
+
+    /**
+     * Reads the samples from the cache file if it is set and valid for
+     * the feature vector builder and the input documents, otherwise obtains 
+     * the samples from the provider and writes them to the cache file.
+     * 
+     * @param cacheFile cache file, or null if the cache is disabled
+     * @param vectorBuilder builder the feature vectors are calculated with
+     * @param source name of the way the samples are obtained
+     * @param inputFile input directory
+     * @param ext document file extension
+     * @param labelMap label map used with the samples
+     * @param provider provider of the samples
+     * @return training samples
+     * @throws AnalysisException 
+     */
+    public static List<TrainingSample<BxZoneLabel>> getSamples(File cacheFile, FeatureVectorBuilder<?, ?> vectorBuilder,
+            String source, String inputFile, String ext, Map<BxZoneLabel, BxZoneLabel> labelMap,
+            SampleProvider provider) throws AnalysisException {
+        if (cacheFile == null) {
+            return provider.getSamples(inputFile, ext);
+        }
+        try {
+            TrainingSampleCache cache = new TrainingSampleCache(cacheFile, vectorBuilder, 
+                    getSourceDescription(source, inputFile, ext, labelMap));
+            if (cache.isValid()) {
+                return cache.read();
+            }
+            List<TrainingSample<BxZoneLabel>> samples = provider.getSamples(inputFile, ext);
+            cache.write(samples);
+            return samples;
+        } catch (IOException ex) {
+            throw new AnalysisException("Cannot use training sample cache!", ex);
+        }
+    }
+
+    /**
+     * Describes the sample source together with the input documents,
+     * the extension and the label map.
+     * 
+     * @param source name of the way the samples are obtained
+     * @param inputFile input directory
+     * @param ext document file extension
+     * @param labelMap label map used with the samples
+     * @return source description
+     * @throws IOException 
+     */
+    public static String getSourceDescription(String source, String inputFile, String ext, 
+            Map<BxZoneLabel, BxZoneLabel> labelMap) throws IOException {
+        File input = new File(inputFile).getCanonicalFile();
+        StringBuilder sb = new StringBuilder(source).append('\n');
+        sb.append(input.getPath()).append('\n').append(ext).append('\n');
+        for (Map.Entry<BxZoneLabel, BxZoneLabel> entry : new TreeMap<BxZoneLabel, BxZoneLabel>(labelMap).entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        List<File> documents = new ArrayList<File>();
+        listDocuments(input, "." + ext, documents);
+        Collections.sort(documents);
+        for (File document : documents) {
+            sb.append(document.getPath()).append(':').append(document.length())
+                    .append(':').append(document.lastModified()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void listDocuments(File file, String suffix, List<File> documents) {
+        if (file.isFile()) {
+            if (file.getName().endsWith(suffix)) {
+                documents.add(file);
+            }
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                listDocuments(child, suffix, documents);
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true if the cache file exists and was written for the same 
+     * feature schema
+     */
+    public boolean isValid() {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                return in.readInt() == MAGIC && in.readInt() == VERSION
+                        && in.readLong() == schemaHash && in.readInt() == featureNames.size();
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the samples from the cache file.
+     * 
+     * @return training samples, in the order they were written
+     * @throws IOException if the file cannot be read or does not match
+     * the feature schema
+     */
+    public List<TrainingSample<BxZoneLabel>> read() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return read(in);
+        } catch (EOFException ex) {
+            throw new IOException("Truncated training sample cache: " + file, ex);
+        } finally {
+            in.close();
+        }
+    }
+
+    private List<TrainingSample<BxZoneLabel>> read(DataInputStream in) throws IOException {
+        if (file.length() < HEADER_SIZE || in.readInt() != MAGIC) {
+            throw new IOException("Not a training sample cache: " + file);
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported training sample cache version: " + version);
+        }
+        if (in.readLong() != schemaHash) {
+            throw new IOException("Training sample cache was written for different features: " + file);
+        }
+        int featureCount = in.readInt();
+        int sampleCount = in.readInt();
+        int documentCount = in.readInt();
+        if (featureCount != featureNames.size()) {
+            throw new IOException("Training sample cache was written for different features: " + file);
+        }
+
+        int[] labels = new int[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            labels[i] = in.readInt();
+        }
+        int[] documents = new int[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            documents[i] = in.readInt();
+        }
+
+        double[][] values = new double[sampleCount][featureCount];
+        for (int j = 0; j < featureCount; j++) {
+            for (int i = 0; i < sampleCount; i++) {
+                values[i][j] = in.readDouble();
+            }
+        }
+
+        String[] documentNames = new String[documentCount];
+        for (int i = 0; i < documentCount; i++) {
+            documentNames[i] = readString(in);
+        }
+
+        BxZoneLabel[] allLabels = BxZoneLabel.values();
+        List<TrainingSample<BxZoneLabel>> samples = new ArrayList<TrainingSample<BxZoneLabel>>(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            FeatureVector fv = new FeatureVector();
+            for (int j = 0; j < featureCount; j++) {
+                fv.addFeature(featureNames.get(j), values[i][j]);
+            }
+            TrainingSample<BxZoneLabel> sample = 
+                    new TrainingSample<BxZoneLabel>(fv, labels[i] < 0 ? null : allLabels[labels[i]]);
+            sample.setDocumentId(documents[i] < 0 ? null : documentNames[documents[i]]);
+            sample.setData(readString(in));
+            samples.add(sample);
+        }
+        return samples;
+    }
+
+    /**
+     * Writes the samples to the cache file, replacing its previous content.
+     * 
+     * @param samples training samples, with feature vectors calculated
+     * by the builder the cache was created with
+     * @throws IOException 
+     */
+    public void write(List<TrainingSample<BxZoneLabel>> samples) throws IOException {
+        Map<String, Integer> documentIndexes = new LinkedHashMap<String, Integer>();
+        for (TrainingSample<BxZoneLabel> sample : samples) {
+            String document = sample.getDocumentId();
+            if (document != null && !documentIndexes.containsKey(document)) {
+                documentIndexes.put(document, documentIndexes.size());
+            }
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(schemaHash);
+            out.writeInt(featureNames.size());
+            out.writeInt(samples.size());
+            out.writeInt(documentIndexes.size());
+            
+            for (TrainingSample<BxZoneLabel> sample : samples) {
+                out.writeInt(sample.getLabel() == null ? -1 : sample.getLabel().ordinal());
+            }
+            for (TrainingSample<BxZoneLabel> sample : samples) {
+                String document = sample.getDocumentId();
+                out.writeInt(document == null ? -1 : documentIndexes.get(document));
+            }
+            
+            for (int j = 0; j < featureNames.size(); j++) {
+                for (TrainingSample<BxZoneLabel> sample : samples) {
+                    if (sample.getFeatureVector().size() != featureNames.size()) {
+                        throw new IOException("Sample has " + sample.getFeatureVector().size() 
+                                + " features, expected " + featureNames.size());
+                    }
+                    out.writeDouble(sample.getFeatureVector().getValue(j));
+                }
+            }
+            
+            for (String document : documentIndexes.keySet()) {
+                writeString(out, document);
+            }
+            for (TrainingSample<BxZoneLabel> sample : samples) {
+                writeString(out, sample.getData());
+            }
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace training sample cache: " + file);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Cannot write training sample cache: " + file);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+}
@@ -26,7 +26,9 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import pl.edu.icm.cermine.exception.TransformationException;
@@ -55,26 +57,77 @@ public class ZipExtractor implements DocumentsExtractor {
     @Override
 	public List<BxDocument> getDocuments() throws TransformationException {
 		List<BxDocument> documents = new ArrayList<BxDocument>();
-
-		TrueVizToBxDocumentReader tvReader = new TrueVizToBxDocumentReader();
 		Enumeration<? extends ZipEntry> entries = zipFile.entries();
 		while (entries.hasMoreElements()) {
 			ZipEntry zipEntry = (ZipEntry) entries.nextElement();
 			if (zipEntry.getName().endsWith("xml")) {
-                try {
-                    List<BxPage> pages = tvReader.read(new InputStreamReader(zipFile.getInputStream(zipEntry)));
-                    BxDocument newDoc = new BxDocument();
-                    for(BxPage page: pages) {
-                        page.setParent(newDoc);
-                    }
-                    newDoc.setFilename(zipEntry.getName());
-                    newDoc.setPages(pages);
-                    documents.add(newDoc);
-                } catch (IOException ex) {
-                    throw new TransformationException("Cannot read file!", ex);
-                }
+                documents.add(readDocument(zipEntry));
 			}
 		}
 		return documents;
 	}
+
+    @Override
+    public Iterator<BxDocument> iterator() {
+        final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        return new Iterator<BxDocument>() {
+            
+            private ZipEntry nextEntry = findNext();
+
+            private ZipEntry findNext() {
+                while (entries.hasMoreElements()) {
+                    ZipEntry zipEntry = entries.nextElement();
+                    if (zipEntry.getName().endsWith("xml")) {
+                        return zipEntry;
+                    }
+                }
+                return null;
+            }
+            
+            @Override
+            public boolean hasNext() {
+                return nextEntry != null;
+            }
+
+            @Override
+            public BxDocument next() {
+                if (nextEntry == null) {
+                    throw new NoSuchElementException();
+                }
+                ZipEntry zipEntry = nextEntry;
+                nextEntry = findNext();
+                try {
+                    return readDocument(zipEntry);
+                } catch (TransformationException ex) {
+                    throw new IllegalStateException("Cannot read document " + zipEntry.getName() + "!", ex);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Documents cannot be removed!");
+            }
+        };
+    }
+    
+    private BxDocument readDocument(ZipEntry zipEntry) throws TransformationException {
+		TrueVizToBxDocumentReader tvReader = new TrueVizToBxDocumentReader();
+        try {
+            InputStreamReader reader = new InputStreamReader(zipFile.getInputStream(zipEntry));
+            try {
+                List<BxPage> pages = tvReader.read(reader);
+                BxDocument newDoc = new BxDocument();
+                for(BxPage page: pages) {
+                    page.setParent(newDoc);
+                }
+                newDoc.setFilename(zipEntry.getName());
+                newDoc.setPages(pages);
+                return newDoc;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ex) {
+            throw new TransformationException("Cannot read file!", ex);
+        }
+    }
 }
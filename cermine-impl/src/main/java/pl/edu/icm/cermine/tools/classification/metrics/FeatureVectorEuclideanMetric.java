@@ -39,11 +39,25 @@ public class FeatureVectorEuclideanMetric implements FeatureVectorDistanceMetric
                 sum += Math.pow(vector1.getValue(feature) - vector2.getValue(feature), 2);
             }
         } else {
-            for (int i = 0; i < vector1.size(); i++) {
-                sum += Math.pow(vector1.getValue(i) - vector2.getValue(i), 2);
-            }
+            return getDistance(vector1.getValues(), vector2.getValues());
         }
 
         return Math.sqrt(sum);
     }
+
+    /**
+     * Calculates the Euclidean distance between two vectors of feature values.
+     * 
+     * @param values1
+     * @param values2
+     * @return the distance
+     */
+    public static double getDistance(double[] values1, double[] values2) {
+        double sum = 0;
+        for (int i = 0; i < values1.length; i++) {
+            double diff = values1[i] - values2[i];
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum);
+    }
 }
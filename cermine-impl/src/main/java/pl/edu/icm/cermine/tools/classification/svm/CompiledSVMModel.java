@@ -0,0 +1,318 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.svm;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import libsvm.svm_model;
+import org.apache.commons.io.IOUtils;
+import pl.edu.icm.cermine.tools.classification.general.FeatureLimits;
+import pl.edu.icm.cermine.tools.classification.general.FeatureVectorScaler;
+import pl.edu.icm.cermine.tools.classification.general.FeatureVectorScalerImpl;
+import pl.edu.icm.cermine.tools.classification.general.FeatureVectorScalerNoOp;
+import pl.edu.icm.cermine.tools.classification.general.LinearScaling;
+
+/**
+ * SVM model precompiled into a binary form, together with its feature scaling
+ * limits. Reading it requires no parsing, so a model can be loaded in
+ * milliseconds, either onto the heap or by memory-mapping the model file.
+ * In the latter case the support vectors are read directly from the mapped
+ * pages, which are shared through the page cache by all processes using
+ * the same file.
+ *
+ * The file is little-endian and consists of:
+ * <ul>
+ * <li>magic number and format version,</li>
+ * <li>svm type, kernel type, degree, gamma and coef0,</li>
+ * <li>number of classes, number of support vectors and number of features,</li>
+ * <li>rho, labels, per-class support vector counts and probability parameters,
+ * each preceded by its length,</li>
+ * <li>support vector coefficients,</li>
+ * <li>scaling limits (min and max of every feature), preceded by their count,
+ * or -1 if the features are not scaled,</li>
+ * <li>support vectors, row-major, aligned to 8 bytes.</li>
+ * </ul>
+ *
+ * Models are converted from libsvm text files with {@link SVMModelConverter}.
+ */
+public class CompiledSVMModel {
+
+    /** "CSVM" */
+    private static final int MAGIC = 0x4353564D;
+    private static final int VERSION = 1;
+
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final DenseSVMModel model;
+    private final FeatureLimits[] limits;
+
+    private CompiledSVMModel(DenseSVMModel model, FeatureLimits[] limits) {
+        this.model = model;
+        this.limits = limits;
+    }
+
+    public DenseSVMModel getModel() {
+        return model;
+    }
+
+    /**
+     * @return feature scaling limits, or null if the features are not scaled
+     */
+    public FeatureLimits[] getLimits() {
+        return limits;
+    }
+
+    /**
+     * @return the feature scaler equivalent to the one read from a .range file
+     */
+    public FeatureVectorScaler getScaler() {
+        if (limits == null) {
+            return new FeatureVectorScalerNoOp();
+        }
+        List<FeatureLimits> limitList = new ArrayList<FeatureLimits>(limits.length);
+        for (FeatureLimits limit : limits) {
+            limitList.add(new FeatureLimits(limit.getMin(), limit.getMax()));
+        }
+        FeatureVectorScalerImpl scaler = new FeatureVectorScalerImpl(limits.length, 0.0, 1.0);
+        scaler.setStrategy(new LinearScaling());
+        scaler.setFeatureLimits(limitList);
+        return scaler;
+    }
+
+    /**
+     * Reads a compiled model onto the heap.
+     *
+     * @param stream input stream, not closed by the method
+     * @return compiled model
+     * @throws IOException
+     */
+    public static CompiledSVMModel read(InputStream stream) throws IOException {
+        return read(ByteBuffer.wrap(IOUtils.toByteArray(stream)), true);
+    }
+
+    /**
+     * Memory-maps a compiled model file. The support vectors are not copied
+     * onto the heap.
+     *
+     * @param file compiled model file
+     * @return compiled model
+     * @throws IOException
+     */
+    public static CompiledSVMModel map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), false);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a compiled model from a buffer.
+     *
+     * @param buffer buffer
+     * @param copy whether the support vectors should be copied onto the heap
+     * or read directly from the buffer
+     * @return compiled model
+     * @throws IOException
+     */
+    public static CompiledSVMModel read(ByteBuffer buffer, boolean copy) throws IOException {
+        ByteBuffer in = buffer.duplicate().order(BYTE_ORDER);
+        int start = in.position();
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException("Not a compiled SVM model!");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported compiled SVM model version: " + version);
+        }
+
+        int svmType = in.getInt();
+        int kernelType = in.getInt();
+        int degree = in.getInt();
+        double gamma = in.getDouble();
+        double coef0 = in.getDouble();
+        int classCount = in.getInt();
+        int svCount = in.getInt();
+        int dimension = in.getInt();
+
+        double[] rho = readDoubles(in);
+        int[] labels = readInts(in);
+        int[] svClassCount = readInts(in);
+        double[] probA = readDoubles(in);
+        double[] probB = readDoubles(in);
+        double[] coefficients = readDoubles(in);
+
+        FeatureLimits[] limits = null;
+        int limitsCount = in.getInt();
+        if (limitsCount >= 0) {
+            limits = new FeatureLimits[limitsCount];
+            for (int i = 0; i < limitsCount; i++) {
+                limits[i] = new FeatureLimits(in.getDouble(), in.getDouble());
+            }
+        }
+
+        skipPadding(in, start);
+        int svValues = svCount * dimension;
+        if (in.remaining() < 8 * svValues) {
+            throw new IOException("Compiled SVM model is truncated!");
+        }
+        ByteBuffer svBytes = in.slice().order(BYTE_ORDER);
+        svBytes.limit(8 * svValues);
+        DoubleBuffer supportVectors = svBytes.asDoubleBuffer();
+        if (copy) {
+            double[] values = new double[svValues];
+            supportVectors.get(values);
+            supportVectors = DoubleBuffer.wrap(values);
+        }
+
+        DenseSVMModel model = new DenseSVMModel(svmType, kernelType, degree, gamma, coef0,
+                classCount, svCount, dimension, supportVectors, coefficients, rho,
+                labels, svClassCount, probA, probB);
+        return new CompiledSVMModel(model, limits);
+    }
+
+    /**
+     * Writes a model and its scaling limits in the compiled form.
+     *
+     * @param svmModel libsvm model
+     * @param scaler feature scaler used with the model
+     * @param stream output stream, not closed by the method
+     * @throws IOException
+     */
+    public static void write(svm_model svmModel, FeatureVectorScaler scaler, OutputStream stream) throws IOException {
+        DenseSVMModel model = new DenseSVMModel(svmModel);
+        FeatureLimits[] limits = null;
+        if (scaler instanceof FeatureVectorScalerImpl) {
+            limits = ((FeatureVectorScalerImpl) scaler).getLimits();
+        }
+
+        int svValues = model.getSupportVectorCount() * model.getDimension();
+        // 9 int fields, 2 double fields, 6 array lengths and the arrays
+        int headerSize = 4 * 9 + 8 * 2 + 4 * 6
+                + 8 * (lengthOf(model.getRho()) + lengthOf(model.getProbA()) + lengthOf(model.getProbB())
+                + lengthOf(model.getCoefficients()))
+                + 4 * (lengthOf(model.getLabels()) + lengthOf(model.getSupportVectorClassCounts()))
+                + (limits == null ? 0 : 16 * limits.length);
+        int padding = (8 - headerSize % 8) % 8;
+        ByteBuffer out = ByteBuffer.allocate(headerSize + padding + 8 * svValues).order(BYTE_ORDER);
+
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(model.getSvmType());
+        out.putInt(model.getKernelType());
+        out.putInt(model.getDegree());
+        out.putDouble(model.getGamma());
+        out.putDouble(model.getCoef0());
+        out.putInt(model.getClassCount());
+        out.putInt(model.getSupportVectorCount());
+        out.putInt(model.getDimension());
+
+        writeDoubles(out, model.getRho());
+        writeInts(out, model.getLabels());
+        writeInts(out, model.getSupportVectorClassCounts());
+        writeDoubles(out, model.getProbA());
+        writeDoubles(out, model.getProbB());
+        writeDoubles(out, model.getCoefficients());
+
+        if (limits == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(limits.length);
+            for (FeatureLimits limit : limits) {
+                out.putDouble(limit.getMin());
+                out.putDouble(limit.getMax());
+            }
+        }
+
+        for (int i = 0; i < padding; i++) {
+            out.put((byte) 0);
+        }
+        DoubleBuffer supportVectors = model.getSupportVectors();
+        for (int i = 0; i < svValues; i++) {
+            out.putDouble(supportVectors.get(i));
+        }
+
+        stream.write(out.array());
+    }
+
+    private static int lengthOf(double[] array) {
+        return array == null ? 0 : array.length;
+    }
+
+    private static int lengthOf(int[] array) {
+        return array == null ? 0 : array.length;
+    }
+
+    private static void writeDoubles(ByteBuffer out, double[] values) {
+        if (values == null) {
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(values.length);
+        for (double value : values) {
+            out.putDouble(value);
+        }
+    }
+
+    private static void writeInts(ByteBuffer out, int[] values) {
+        if (values == null) {
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(values.length);
+        for (int value : values) {
+            out.putInt(value);
+        }
+    }
+
+    private static double[] readDoubles(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        double[] values = new double[length];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + 8 * length);
+        return values;
+    }
+
+    private static int[] readInts(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        int[] values = new int[length];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * length);
+        return values;
+    }
+
+    private static void skipPadding(ByteBuffer in, int start) {
+        int offset = in.position() - start;
+        in.position(in.position() + (8 - offset % 8) % 8);
+    }
+
+}
@@ -0,0 +1,504 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.svm;
+
+import java.nio.DoubleBuffer;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+/**
+ * Read-only, dense copy of a libsvm model used for fast prediction.
+ *
+ * Support vectors are stored row-major in a single buffer, so kernel values
+ * are computed with tight loops over contiguous memory instead of merging
+ * sparse svm_node arrays. The arithmetic is performed in the same order
+ * as in libsvm, so decision values and predicted labels are identical
+ * to those returned by svm.svm_predict_values.
+ *
+ * The model can be used concurrently, each thread gets its own scratch buffers.
+ */
+public class DenseSVMModel {
+
+    /** number of instances whose kernel values are computed together in batch prediction */
+    private static final int INSTANCE_BLOCK_SIZE = 32;
+
+    /** number of support vectors in a kernel tile in batch prediction */
+    private static final int SV_TILE_SIZE = 64;
+
+    private svm_model source;
+
+    private final int svmType;
+    private final int kernelType;
+    private final int degree;
+    private final double gamma;
+    private final double coef0;
+
+    private final int classCount;
+    private final int svCount;
+    private final int dimension;
+
+    /** support vectors, row-major: svCount x dimension */
+    private final DoubleBuffer supportVectors;
+    /** support vector coefficients, row-major: (classCount - 1) x svCount */
+    private final double[] coefficients;
+    private final double[] rho;
+    private final int[] labels;
+    private final int[] svClassCount;
+    private final double[] probA;
+    private final double[] probB;
+    private final int[] svStart;
+
+    private final ThreadLocal<double[]> kernelValues = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[svCount];
+        }
+    };
+
+    private final ThreadLocal<int[]> votes = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[classCount];
+        }
+    };
+
+    public DenseSVMModel(svm_model model) {
+        this(model.param.svm_type, model.param.kernel_type, model.param.degree, model.param.gamma,
+                model.param.coef0, model.nr_class, model.l, getDimension(model),
+                DoubleBuffer.wrap(getSupportVectors(model)), getCoefficients(model), model.rho.clone(),
+                model.label == null ? null : model.label.clone(),
+                model.nSV == null ? null : model.nSV.clone(),
+                model.probA == null ? null : model.probA.clone(),
+                model.probB == null ? null : model.probB.clone());
+        this.source = model;
+    }
+
+    /**
+     * Creates a model from its raw parts. The support vectors buffer is used
+     * directly, so it can be a view of a memory-mapped file.
+     */
+    DenseSVMModel(int svmType, int kernelType, int degree, double gamma, double coef0,
+            int classCount, int svCount, int dimension, DoubleBuffer supportVectors,
+            double[] coefficients, double[] rho, int[] labels, int[] svClassCount,
+            double[] probA, double[] probB) {
+        if (kernelType == svm_parameter.PRECOMPUTED) {
+            throw new IllegalArgumentException("Precomputed kernels are not supported!");
+        }
+        if (supportVectors.limit() != svCount * dimension) {
+            throw new IllegalArgumentException("Expected " + svCount * dimension 
+                    + " support vector values, got " + supportVectors.limit());
+        }
+        this.svmType = svmType;
+        this.kernelType = kernelType;
+        this.degree = degree;
+        this.gamma = gamma;
+        this.coef0 = coef0;
+        this.classCount = classCount;
+        this.svCount = svCount;
+        this.dimension = dimension;
+        this.supportVectors = supportVectors;
+        this.coefficients = coefficients;
+        this.rho = rho;
+        this.labels = labels;
+        this.svClassCount = svClassCount;
+        this.probA = probA;
+        this.probB = probB;
+
+        if (isClassification()) {
+            this.svStart = new int[classCount];
+            for (int i = 1; i < classCount; i++) {
+                svStart[i] = svStart[i - 1] + svClassCount[i - 1];
+            }
+        } else {
+            this.svStart = null;
+        }
+    }
+
+    private static int getDimension(svm_model model) {
+        int maxIndex = -1;
+        for (svm_node[] sv : model.SV) {
+            for (svm_node node : sv) {
+                maxIndex = Math.max(maxIndex, node.index);
+            }
+        }
+        return maxIndex + 1;
+    }
+
+    private static double[] getSupportVectors(svm_model model) {
+        int dimension = getDimension(model);
+        double[] supportVectors = new double[model.l * dimension];
+        for (int i = 0; i < model.l; i++) {
+            for (svm_node node : model.SV[i]) {
+                supportVectors[i * dimension + node.index] = node.value;
+            }
+        }
+        return supportVectors;
+    }
+
+    private static double[] getCoefficients(svm_model model) {
+        double[] coefficients = new double[model.sv_coef.length * model.l];
+        for (int i = 0; i < model.sv_coef.length; i++) {
+            System.arraycopy(model.sv_coef[i], 0, coefficients, i * model.l, model.l);
+        }
+        return coefficients;
+    }
+
+    /**
+     * Returns an equivalent libsvm model, needed for operations not supported
+     * by the dense model, such as probability estimates. The libsvm model
+     * is created on the first call.
+     *
+     * @return libsvm model
+     */
+    public synchronized svm_model toSvmModel() {
+        if (source == null) {
+            svm_model model = new svm_model();
+            model.param = new svm_parameter();
+            model.param.svm_type = svmType;
+            model.param.kernel_type = kernelType;
+            model.param.degree = degree;
+            model.param.gamma = gamma;
+            model.param.coef0 = coef0;
+            model.nr_class = classCount;
+            model.l = svCount;
+            model.SV = new svm_node[svCount][dimension];
+            for (int i = 0; i < svCount; i++) {
+                for (int j = 0; j < dimension; j++) {
+                    svm_node node = new svm_node();
+                    node.index = j;
+                    node.value = supportVectors.get(i * dimension + j);
+                    model.SV[i][j] = node;
+                }
+            }
+            model.sv_coef = new double[coefficients.length / svCount][svCount];
+            for (int i = 0; i < model.sv_coef.length; i++) {
+                System.arraycopy(coefficients, i * svCount, model.sv_coef[i], 0, svCount);
+            }
+            model.rho = rho.clone();
+            model.label = labels == null ? null : labels.clone();
+            model.nSV = svClassCount == null ? null : svClassCount.clone();
+            model.probA = probA == null ? null : probA.clone();
+            model.probB = probB == null ? null : probB.clone();
+            source = model;
+        }
+        return source;
+    }
+
+    /**
+     * @param model libsvm model
+     * @return true if this model is a copy of the given libsvm model
+     */
+    public synchronized boolean isBuiltFrom(svm_model model) {
+        return source == model;
+    }
+
+    /**
+     * @return the number of features, that is the highest feature index
+     * used by the support vectors plus one
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the number of decision values computed for a single prediction
+     */
+    public int getDecisionValuesCount() {
+        return isClassification() ? classCount * (classCount - 1) / 2 : 1;
+    }
+
+    /**
+     * Predicts the label of the given instance.
+     *
+     * @param instance feature values indexed as in the support vectors,
+     * absent features are treated as zeros
+     * @return predicted label, the same as returned by svm.svm_predict
+     */
+    public double predict(double[] instance) {
+        return predictValues(instance, new double[getDecisionValuesCount()]);
+    }
+
+    /**
+     * Predicts the label and the decision values of the given instance.
+     *
+     * @param instance feature values indexed as in the support vectors,
+     * absent features are treated as zeros
+     * @param decisionValues array for getDecisionValuesCount() decision values
+     * @return predicted label, the same as returned by svm.svm_predict_values
+     */
+    public double predictValues(double[] instance, double[] decisionValues) {
+        double[] kvalue = kernelValues.get();
+        for (int i = 0; i < svCount; i++) {
+            kvalue[i] = kernel(instance, i * dimension);
+        }
+        return decide(kvalue, 0, decisionValues);
+    }
+
+    /**
+     * Predicts the labels and the decision values of a block of instances.
+     * Kernel values are computed in tiles: a tile of support vectors is
+     * evaluated against a block of instances before moving to the next tile,
+     * so that the support vectors are read from memory once per block instead 
+     * of once per instance. Every kernel value is computed exactly as in
+     * {@link #predictValues(double[], double[])}, so the results are identical.
+     *
+     * @param instances feature values of the instances, one row per instance,
+     * indexed as in the support vectors
+     * @param decisionValues matrix with a row of getDecisionValuesCount() 
+     * decision values for every instance, or null
+     * @return predicted labels, in the order of the instances
+     */
+    public double[] predictValues(double[][] instances, double[][] decisionValues) {
+        double[] predicted = new double[instances.length];
+        double[] kvalues = new double[Math.min(INSTANCE_BLOCK_SIZE, instances.length) * svCount];
+        double[] scratch = new double[getDecisionValuesCount()];
+        for (int from = 0; from < instances.length; from += INSTANCE_BLOCK_SIZE) {
+            int to = Math.min(from + INSTANCE_BLOCK_SIZE, instances.length);
+            for (int tileStart = 0; tileStart < svCount; tileStart += SV_TILE_SIZE) {
+                int tileEnd = Math.min(tileStart + SV_TILE_SIZE, svCount);
+                for (int i = from; i < to; i++) {
+                    int row = (i - from) * svCount;
+                    for (int j = tileStart; j < tileEnd; j++) {
+                        kvalues[row + j] = kernel(instances[i], j * dimension);
+                    }
+                }
+            }
+            for (int i = from; i < to; i++) {
+                predicted[i] = decide(kvalues, (i - from) * svCount,
+                        decisionValues == null ? scratch : decisionValues[i]);
+            }
+        }
+        return predicted;
+    }
+
+    /**
+     * Computes the decision values and the predicted label from the kernel
+     * values of an instance.
+     */
+    private double decide(double[] kvalue, int offset, double[] decisionValues) {
+        if (!isClassification()) {
+            double sum = 0;
+            for (int i = 0; i < svCount; i++) {
+                sum += coefficients[i] * kvalue[offset + i];
+            }
+            sum -= rho[0];
+            decisionValues[0] = sum;
+            if (svmType == svm_parameter.ONE_CLASS) {
+                return (sum > 0) ? 1 : -1;
+            }
+            return sum;
+        }
+
+        int[] vote = votes.get();
+        for (int i = 0; i < classCount; i++) {
+            vote[i] = 0;
+        }
+        int p = 0;
+        for (int i = 0; i < classCount; i++) {
+            for (int j = i + 1; j < classCount; j++) {
+                double sum = 0;
+                int si = svStart[i];
+                int sj = svStart[j];
+                int ci = svClassCount[i];
+                int cj = svClassCount[j];
+                int coef1 = (j - 1) * svCount;
+                int coef2 = i * svCount;
+                for (int k = 0; k < ci; k++) {
+                    sum += coefficients[coef1 + si + k] * kvalue[offset + si + k];
+                }
+                for (int k = 0; k < cj; k++) {
+                    sum += coefficients[coef2 + sj + k] * kvalue[offset + sj + k];
+                }
+                sum -= rho[p];
+                decisionValues[p] = sum;
+                if (sum > 0) {
+                    ++vote[i];
+                } else {
+                    ++vote[j];
+                }
+                p++;
+            }
+        }
+
+        int maxIndex = 0;
+        for (int i = 1; i < classCount; i++) {
+            if (vote[i] > vote[maxIndex]) {
+                maxIndex = i;
+            }
+        }
+        return labels[maxIndex];
+    }
+
+    /**
+     * Returns the margin of a prediction, that is the smallest decision value
+     * of the pairwise classifiers involving the predicted class, signed so
+     * that it is positive when the predicted class wins. A negative margin
+     * means that the predicted class lost at least one pairwise vote.
+     * For regression models the absolute decision value is returned.
+     *
+     * @param decisionValues decision values computed by predictValues
+     * @param label label returned by predictValues
+     * @return prediction margin
+     */
+    public double getMargin(double[] decisionValues, double label) {
+        if (!isClassification()) {
+            return Math.abs(decisionValues[0]);
+        }
+        int winner = -1;
+        for (int i = 0; i < classCount; i++) {
+            if (labels[i] == (int) label) {
+                winner = i;
+            }
+        }
+        if (winner < 0) {
+            throw new IllegalArgumentException("Unknown label: " + label);
+        }
+        double margin = Double.POSITIVE_INFINITY;
+        int p = 0;
+        for (int i = 0; i < classCount; i++) {
+            for (int j = i + 1; j < classCount; j++) {
+                if (i == winner) {
+                    margin = Math.min(margin, decisionValues[p]);
+                } else if (j == winner) {
+                    margin = Math.min(margin, -decisionValues[p]);
+                }
+                p++;
+            }
+        }
+        return margin;
+    }
+
+    int getSvmType() {
+        return svmType;
+    }
+
+    int getKernelType() {
+        return kernelType;
+    }
+
+    int getDegree() {
+        return degree;
+    }
+
+    double getGamma() {
+        return gamma;
+    }
+
+    double getCoef0() {
+        return coef0;
+    }
+
+    int getClassCount() {
+        return classCount;
+    }
+
+    int getSupportVectorCount() {
+        return svCount;
+    }
+
+    DoubleBuffer getSupportVectors() {
+        return supportVectors.duplicate();
+    }
+
+    double[] getCoefficients() {
+        return coefficients;
+    }
+
+    double[] getRho() {
+        return rho;
+    }
+
+    int[] getLabels() {
+        return labels;
+    }
+
+    int[] getSupportVectorClassCounts() {
+        return svClassCount;
+    }
+
+    double[] getProbA() {
+        return probA;
+    }
+
+    double[] getProbB() {
+        return probB;
+    }
+
+    private boolean isClassification() {
+        return svmType == svm_parameter.C_SVC || svmType == svm_parameter.NU_SVC;
+    }
+
+    private double kernel(double[] x, int offset) {
+        switch (kernelType) {
+            case svm_parameter.LINEAR:
+                return dot(x, offset);
+            case svm_parameter.POLY:
+                return powi(gamma * dot(x, offset) + coef0, degree);
+            case svm_parameter.RBF:
+                return Math.exp(-gamma * squaredDistance(x, offset));
+            case svm_parameter.SIGMOID:
+                return Math.tanh(gamma * dot(x, offset) + coef0);
+            default:
+                throw new IllegalStateException("Unsupported kernel type: " + kernelType);
+        }
+    }
+
+    private double dot(double[] x, int offset) {
+        int length = Math.min(x.length, dimension);
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += x[i] * supportVectors.get(offset + i);
+        }
+        return sum;
+    }
+
+    private double squaredDistance(double[] x, int offset) {
+        int length = Math.min(x.length, dimension);
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            double d = x[i] - supportVectors.get(offset + i);
+            sum += d * d;
+        }
+        for (int i = length; i < dimension; i++) {
+            double d = supportVectors.get(offset + i);
+            sum += d * d;
+        }
+        for (int i = length; i < x.length; i++) {
+            sum += x[i] * x[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Same as libsvm's powi, so that polynomial kernel values are identical.
+     */
+    private static double powi(double base, int times) {
+        double tmp = base;
+        double ret = 1.0;
+        for (int t = times; t > 0; t /= 2) {
+            if (t % 2 == 1) {
+                ret *= tmp;
+            }
+            tmp = tmp * tmp;
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.svm;
+
+import java.util.ArrayList;
+import java.util.List;
+import pl.edu.icm.cermine.exception.AnalysisException;
+import pl.edu.icm.cermine.structure.ZoneClassifier;
+import pl.edu.icm.cermine.structure.model.BxDocument;
+
+/**
+ * Zone classifier pooling the documents classified concurrently by several
+ * threads into shared prediction batches. The first thread to submit
+ * a document to a batch waits while other requests are in progress, until 
+ * the pool holds the maximum number of documents or the maximum delay passes,
+ * then classifies the zones of all the pooled documents with a single 
+ * {@link SVMZoneClassifier#classifyDocuments(List)} call, while the other 
+ * threads wait for the result. A document submitted when no other request 
+ * is in progress is classified right away. For classifiers with features
+ * depending on the labels of preceding zones, only those features are 
+ * calculated and the zones labelled one by one, the remaining features
+ * of the whole batch are still calculated together.
+ * 
+ * If the batch classification fails, the documents of the batch are 
+ * classified one by one, so that every request gets the result or the error 
+ * of its own document.
+ */
+public class PooledZoneClassifier implements ZoneClassifier {
+
+    private final SVMZoneClassifier classifier;
+    
+    /** maximum number of documents in a batch */
+    private final int maxDocuments;
+    
+    /** maximum time in milliseconds the first document of a batch waits for others */
+    private final long maxDelay;
+    
+    /** batch accepting documents, null if there is none */
+    private Batch current;
+    
+    /** number of requests in progress, pooled or being classified */
+    private int requests;
+
+    public PooledZoneClassifier(SVMZoneClassifier classifier, int maxDocuments, long maxDelay) {
+        if (maxDocuments < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxDocuments);
+        }
+        this.classifier = classifier;
+        this.maxDocuments = maxDocuments;
+        this.maxDelay = maxDelay;
+    }
+
+    @Override
+    public BxDocument classifyZones(BxDocument document) throws AnalysisException {
+        Batch batch;
+        int index;
+        boolean leader;
+        synchronized (this) {
+            requests++;
+            leader = current == null;
+            if (leader) {
+                current = new Batch();
+            }
+            batch = current;
+            index = batch.documents.size();
+            batch.documents.add(document);
+            if (batch.documents.size() >= maxDocuments) {
+                current = null;
+            }
+            notifyAll();
+            if (leader) {
+                waitForDocuments(batch);
+            }
+        }
+        
+        Throwable error;
+        try {
+            if (leader) {
+                batch.classify(classifier);
+            } else {
+                batch.await();
+            }
+            error = batch.getError(index);
+        } finally {
+            synchronized (this) {
+                requests--;
+                notifyAll();
+            }
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        if (error != null) {
+            throw new AnalysisException("Cannot classify zones!", error);
+        }
+        return document;
+    }
+    
+    /**
+     * Waits until the batch is full, the maximum delay passes or all 
+     * the requests in progress are in the batch.
+     */
+    private void waitForDocuments(Batch batch) {
+        long deadline = System.currentTimeMillis() + maxDelay;
+        long remaining = maxDelay;
+        try {
+            while (current == batch && requests > batch.documents.size() && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (current == batch) {
+            current = null;
+        }
+    }
+
+    private static class Batch {
+        
+        private final List<BxDocument> documents = new ArrayList<BxDocument>();
+        
+        private boolean done;
+        
+        /** errors of the documents, null if the batch was classified */
+        private Throwable[] errors;
+        
+        private void classify(SVMZoneClassifier classifier) {
+            Throwable[] documentErrors = new Throwable[documents.size()];
+            try {
+                classifier.classifyDocuments(documents);
+                documentErrors = null;
+            } catch (Throwable batchError) {
+                if (documents.size() == 1) {
+                    documentErrors[0] = batchError;
+                } else {
+                    for (int i = 0; i < documents.size(); i++) {
+                        try {
+                            classifier.classifyZones(documents.get(i));
+                        } catch (Throwable ex) {
+                            documentErrors[i] = ex;
+                        }
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    errors = documentErrors;
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+        
+        private synchronized void await() {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        private synchronized Throwable getError(int index) {
+            return errors == null ? null : errors[index];
+        }
+    }
+    
+}
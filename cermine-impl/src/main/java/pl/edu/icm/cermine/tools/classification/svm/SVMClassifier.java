@@ -18,18 +18,15 @@
 
 package pl.edu.icm.cermine.tools.classification.svm;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 import libsvm.*;
 import org.apache.commons.collections.iterators.ArrayIterator;
+import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.structure.model.BxPage;
 import pl.edu.icm.cermine.structure.model.BxZone;
+import pl.edu.icm.cermine.tools.classification.features.ContextValueCache;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
 import pl.edu.icm.cermine.tools.classification.general.*;
@@ -76,6 +73,21 @@ public abstract class SVMClassifier<S, T, E extends Enum<E>> {
 	
 	protected Class<E> enumClassObj;
 	
+    /** extension of compiled models, which are preferred over libsvm text models when loading resources */
+    public static final String COMPILED_MODEL_EXTENSION = ".bin";
+	
+    /** number of objects whose feature vectors are computed by a single task */
+    private static final int PARALLEL_BATCH_SIZE = 16;
+    
+    /** executor used to compute feature vectors in parallel, null for sequential mode */
+    private ExecutorService executor;
+    
+    /**
+     * dense copy of the model used for prediction, built on demand;
+     * it has to be reset whenever the model is replaced
+     */
+    private volatile DenseSVMModel denseModel;
+    
 	public SVMClassifier(FeatureVectorBuilder<S, T> featureVectorBuilder, Class<E> enumClassObj) {
 		this.featureVectorBuilder = featureVectorBuilder;
 		this.enumClassObj = enumClassObj;
@@ -118,32 +130,235 @@ public abstract class SVMClassifier<S, T, E extends Enum<E>> {
 	}
 	
 	public void buildClassifier(List<TrainingSample<E>> trainingElements) {
+		buildClassifier(buildProblem(trainingElements), scaler);
+	}
+    
+    /**
+     * Calculates the scaling limits of the training samples and builds
+     * the scaled training problem, without training the model.
+     * 
+     * @param trainingElements training samples
+     * @return training problem
+     */
+    public svm_problem buildProblem(List<TrainingSample<E>> trainingElements) {
 		assert trainingElements.size() > 0;
 		scaler.calculateFeatureLimits(trainingElements);
 		problem = buildDatasetForTraining(trainingElements);
+        return problem;
+    }
+    
+    /**
+     * Trains the model on an already built problem. The problem is only read, 
+     * so one problem can be shared by classifiers trained concurrently with 
+     * different parameters.
+     * 
+     * @param problem training problem, scaled with the scaler
+     * @param scaler scaler used to build the problem
+     */
+    public void buildClassifier(svm_problem problem, FeatureVectorScaler scaler) {
+        this.problem = problem;
+        this.scaler = scaler;
 		model = libsvm.svm.svm_train(problem, param);
-	}
+        denseModel = null;
+    }
 	
 	public E predictLabel(S object, T context) {
-		svm_node[] instance = buildDatasetForClassification(object, context);
-		int predictedVal = (int)svm.svm_predict(model, instance);
-		return enumClassObj.getEnumConstants()[predictedVal];
+		return predictLabel(featureVectorBuilder.getFeatureVector(object, context));
 	}
 	
 	public E predictLabel(TrainingSample<E> sample) {
-		svm_node[] instance = buildDatasetForClassification(sample.getFeatureVector());
-		int predictedVal = (int)svm.svm_predict(model, instance);
-		return enumClassObj.getEnumConstants()[predictedVal];
+		return predictLabel(sample.getFeatureVector());
 	}
+    
+    protected E predictLabel(FeatureVector fv) {
+        double[] instance = scaler.scaleFeatureVector(fv).getValues();
+        int predictedVal = (int)getDenseModel().predict(instance);
+        return enumClassObj.getEnumConstants()[predictedVal];
+    }
+    
+    /**
+     * Returns the dense copy of the current model, which gives the same
+     * predictions as libsvm but faster.
+     * 
+     * @return dense model
+     */
+    protected DenseSVMModel getDenseModel() {
+        DenseSVMModel dense = denseModel;
+        if (dense == null) {
+            dense = new DenseSVMModel(model);
+            denseModel = dense;
+        }
+        return dense;
+    }
+    
+    /**
+     * Returns the libsvm model. If the classifier was loaded from a compiled
+     * model, the libsvm model is recreated from it on the first call.
+     * 
+     * @return libsvm model
+     */
+    protected svm_model getModel() {
+        if (model == null && denseModel != null) {
+            model = denseModel.toSvmModel();
+        }
+        return model;
+    }
 
+    /**
+     * Predicts the labels of a list of objects. Feature vectors of all the objects
+     * are calculated first, concurrently if an executor was supplied
+     * with {@link #setExecutor(ExecutorService)}, and then the labels are predicted.
+     * 
+     * Feature calculators used by the classifier must not modify the objects 
+     * or contexts, nor share mutable state between calls. Label-dependent
+     * features (see {@link FeatureVectorBuilder#isLabelDependent()}) see 
+     * the labels the objects had before the call, not the predicted ones.
+     * 
+     * @param objects classified objects
+     * @param contexts contexts of the objects, in the same order
+     * @return predicted labels, in the order of the objects
+     * @throws AnalysisException 
+     */
+    public List<E> predictLabels(List<S> objects, List<T> contexts) throws AnalysisException {
+        if (objects.size() != contexts.size()) {
+            throw new IllegalArgumentException("Got " + objects.size() + " objects and "
+                    + contexts.size() + " contexts!");
+        }
+        return predictLabels(getFeatureVectors(objects, contexts), null);
+    }
+    
+    /**
+     * Predicts the labels of already calculated feature vectors. The vectors
+     * are scaled and scored together as a single matrix, see 
+     * {@link DenseSVMModel#predictValues(double[][], double[][])}, so feature
+     * vectors of objects from several documents can be pooled into one batch.
+     * 
+     * @param featureVectors feature vectors
+     * @return predicted labels, in the order of the feature vectors
+     */
+    public List<E> predictLabels(List<FeatureVector> featureVectors) {
+        return predictLabels(featureVectors, null);
+    }
+    
+    /**
+     * Predicts the labels of already calculated feature vectors.
+     * 
+     * @param featureVectors feature vectors
+     * @param margins array filled with the margins of the predictions 
+     * (see {@link DenseSVMModel#getMargin(double[], double)}), or null
+     * @return predicted labels, in the order of the feature vectors
+     */
+    public List<E> predictLabels(List<FeatureVector> featureVectors, double[] margins) {
+        DenseSVMModel dense = getDenseModel();
+        double[][] instances = new double[featureVectors.size()][];
+        for (int i = 0; i < featureVectors.size(); i++) {
+            instances[i] = scaler.scaleFeatureVector(featureVectors.get(i)).getValues();
+        }
+        double[][] decisionValues = null;
+        if (margins != null) {
+            decisionValues = new double[instances.length][dense.getDecisionValuesCount()];
+        }
+        double[] predicted = dense.predictValues(instances, decisionValues);
+        
+        List<E> labels = new ArrayList<E>(featureVectors.size());
+        for (int i = 0; i < predicted.length; i++) {
+            if (margins != null) {
+                margins[i] = dense.getMargin(decisionValues[i], predicted[i]);
+            }
+            labels.add(enumClassObj.getEnumConstants()[(int) predicted[i]]);
+        }
+        return labels;
+    }
+    
+    protected List<FeatureVector> getFeatureVectors(List<S> objects, List<T> contexts) throws AnalysisException {
+        return getFeatureVectors(objects, contexts, true);
+    }
+    
+    /**
+     * Calculates the feature vectors of a list of objects without the values
+     * of label-dependent features, concurrently if an executor was supplied, 
+     * see {@link FeatureVectorBuilder#getLabelIndependentFeatureVectors(List, List)}.
+     * 
+     * @param objects objects
+     * @param contexts contexts of the objects, in the same order
+     * @return feature vectors, in the order of the objects
+     * @throws AnalysisException 
+     */
+    protected List<FeatureVector> getLabelIndependentFeatureVectors(List<S> objects, List<T> contexts) 
+            throws AnalysisException {
+        return getFeatureVectors(objects, contexts, false);
+    }
+    
+    /**
+     * Calculates the feature vectors. Context-scoped intermediate values are
+     * shared by all the tasks, so they are calculated once per context object
+     * for the whole call.
+     */
+    private List<FeatureVector> getFeatureVectors(List<S> objects, List<T> contexts, boolean withLabelDependent) 
+            throws AnalysisException {
+        ContextValueCache<T> cache = new ContextValueCache<T>();
+        if (executor == null || objects.size() <= PARALLEL_BATCH_SIZE) {
+            return new FeatureVectorsTask(objects, contexts, 0, objects.size(), cache, withLabelDependent).call();
+        }
+        
+        List<Callable<List<FeatureVector>>> tasks = new ArrayList<Callable<List<FeatureVector>>>();
+        for (int from = 0; from < objects.size(); from += PARALLEL_BATCH_SIZE) {
+            int to = Math.min(from + PARALLEL_BATCH_SIZE, objects.size());
+            tasks.add(new FeatureVectorsTask(objects, contexts, from, to, cache, withLabelDependent));
+        }
+        
+        List<FeatureVector> featureVectors = new ArrayList<FeatureVector>(objects.size());
+        try {
+            for (Future<List<FeatureVector>> result : executor.invokeAll(tasks)) {
+                featureVectors.addAll(result.get());
+            }
+        } catch (ExecutionException ex) {
+            throw new AnalysisException("Cannot calculate feature vectors!", ex);
+        } catch (InterruptedException ex) {
+            throw new AnalysisException("Cannot calculate feature vectors!", ex);
+        }
+        return featureVectors;
+    }
+    
+    private class FeatureVectorsTask implements Callable<List<FeatureVector>> {
+        
+        private final List<S> objects;
+        private final List<T> contexts;
+        private final int from;
+        private final int to;
+        private final ContextValueCache<T> cache;
+        private final boolean withLabelDependent;
+
+        public FeatureVectorsTask(List<S> objects, List<T> contexts, int from, int to, ContextValueCache<T> cache,
+                boolean withLabelDependent) {
+            this.objects = objects;
+            this.contexts = contexts;
+            this.from = from;
+            this.to = to;
+            this.cache = cache;
+            this.withLabelDependent = withLabelDependent;
+        }
+
+        @Override
+        public List<FeatureVector> call() {
+            if (withLabelDependent) {
+                return featureVectorBuilder.getFeatureVectors(objects.subList(from, to), contexts.subList(from, to),
+                        cache);
+            }
+            return featureVectorBuilder.getLabelIndependentFeatureVectors(objects.subList(from, to), 
+                    contexts.subList(from, to), cache);
+        }
+    }
+    
     public Map<E, Double> predictProbabilities(S object, T context) {
         svm_node[] instance = buildDatasetForClassification(object, context);
         double[] probEstimates = new double[enumClassObj.getEnumConstants().length];
-        svm.svm_predict_probability(model, instance, probEstimates);
+        svm_model svmModel = getModel();
+        svm.svm_predict_probability(svmModel, instance, probEstimates);
 
         Map<E, Double> result = new HashMap<E, Double>();
         for (int i = 0; i < probEstimates.length; ++i) {
-            result.put(enumClassObj.getEnumConstants()[model.label[i]], probEstimates[i]);
+            result.put(enumClassObj.getEnumConstants()[svmModel.label[i]], probEstimates[i]);
         }
         return result;
     }
@@ -190,25 +405,26 @@ public abstract class SVMClassifier<S, T, E extends Enum<E>> {
 	}
 
 	public double[] getWeights() {
-		double[][] coef = model.sv_coef;
+		svm_model svmModel = getModel();
+		double[][] coef = svmModel.sv_coef;
 
-		double[][] prob = new double[model.SV.length][featureVectorBuilder.size()];
-		for (int i = 0; i < model.SV.length; i++) {
-			for (int j = 0; j < model.SV[i].length; j++) {
-				prob[i][j] = model.SV[i][j].value;
+		double[][] prob = new double[svmModel.SV.length][featureVectorBuilder.size()];
+		for (int i = 0; i < svmModel.SV.length; i++) {
+			for (int j = 0; j < svmModel.SV[i].length; j++) {
+				prob[i][j] = svmModel.SV[i][j].value;
 			}
 		}
-		double w_list[][][] = new double[model.nr_class][model.nr_class - 1][model.SV[0].length];
+		double w_list[][][] = new double[svmModel.nr_class][svmModel.nr_class - 1][svmModel.SV[0].length];
 
-		for (int i = 0; i < model.SV[0].length; ++i) {
-			for (int j = 0; j < model.nr_class - 1; ++j) {
+		for (int i = 0; i < svmModel.SV[0].length; ++i) {
+			for (int j = 0; j < svmModel.nr_class - 1; ++j) {
 				int index = 0;
 				int end;
 				double acc;
-				for (int k = 0; k < model.nr_class; ++k) {
+				for (int k = 0; k < svmModel.nr_class; ++k) {
 					acc = 0.0;
-					index += (k == 0) ? 0 : model.nSV[k - 1];
-					end = index + model.nSV[k];
+					index += (k == 0) ? 0 : svmModel.nSV[k - 1];
+					end = index + svmModel.nSV[k];
 					for (int m = index; m < end; ++m) {
 						acc += coef[j][m] * prob[m][i];
 					}
@@ -217,10 +433,10 @@ public abstract class SVMClassifier<S, T, E extends Enum<E>> {
 			}
 		}
 
-		double[] weights = new double[model.SV[0].length];
-		for (int i = 0; i < model.nr_class - 1; ++i) {
-			for (int j = i + 1, k = i; j < model.nr_class; ++j, ++k) {
-				for (int m = 0; m < model.SV[0].length; ++m) {
+		double[] weights = new double[svmModel.SV[0].length];
+		for (int i = 0; i < svmModel.nr_class - 1; ++i) {
+			for (int j = i + 1, k = i; j < svmModel.nr_class; ++j, ++k) {
+				for (int m = 0; m < svmModel.SV[0].length; ++m) {
 					weights[m] = (w_list[i][k][m] + w_list[j][i][m]);
 
 				}
@@ -230,6 +446,10 @@ public abstract class SVMClassifier<S, T, E extends Enum<E>> {
 	}
 
 	public void loadModelFromResources(String modelFilePath, String rangeFilePath) throws IOException {
+        if (this.getClass().getResource(modelFilePath + COMPILED_MODEL_EXTENSION) != null) {
+            loadModelFromCompiledResource(modelFilePath + COMPILED_MODEL_EXTENSION);
+            return;
+        }
 		InputStreamReader modelISR = new InputStreamReader(this.getClass().getResourceAsStream(modelFilePath));
 		BufferedReader modelFile = new BufferedReader(modelISR);
 		
@@ -264,12 +484,64 @@ public abstract class SVMClassifier<S, T, E extends Enum<E>> {
 		}
 
 		this.model = svm.svm_load_model(modelFile);
+		this.denseModel = null;
 	}
 
 	public void saveModel(String modelPath) throws IOException {
 		scaler.saveRangeFile(modelPath + ".range");
-		svm.svm_save_model(modelPath, model);
+		svm.svm_save_model(modelPath, getModel());
 	}
+    
+    /**
+     * Loads a model saved with {@link #saveCompiledModel(String)}
+     * or converted with {@link SVMModelConverter}. The file is memory-mapped,
+     * so the support vectors are not copied onto the heap.
+     * 
+     * @param compiledModelPath compiled model file path
+     * @throws IOException 
+     */
+    public void loadModelFromCompiledFile(String compiledModelPath) throws IOException {
+        loadModel(CompiledSVMModel.map(new File(compiledModelPath)));
+    }
+    
+    public void loadModelFromCompiledResource(String compiledModelPath) throws IOException {
+        InputStream is = this.getClass().getResourceAsStream(compiledModelPath);
+        if (is == null) {
+            throw new FileNotFoundException("Resource not found: " + compiledModelPath);
+        }
+        try {
+            loadModel(CompiledSVMModel.read(is));
+        } finally {
+            is.close();
+        }
+    }
+    
+    private void loadModel(CompiledSVMModel compiledModel) {
+        FeatureLimits[] limits = compiledModel.getLimits();
+        if (limits != null && limits.length != featureVectorBuilder.size()) {
+            throw new IllegalArgumentException("Supplied compiled model has "
+                    + "wrong number of features (got " + limits.length
+                    + ", expected " + featureVectorBuilder.size() + " )");
+        }
+        this.scaler = compiledModel.getScaler();
+        this.model = null;
+        this.denseModel = compiledModel.getModel();
+    }
+    
+    /**
+     * Saves the model together with its scaling limits in the compiled binary form.
+     * 
+     * @param modelPath output file path
+     * @throws IOException 
+     */
+    public void saveCompiledModel(String modelPath) throws IOException {
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(modelPath));
+        try {
+            CompiledSVMModel.write(getModel(), scaler, os);
+        } finally {
+            os.close();
+        }
+    }
 	
 	public void printWeigths(FeatureVectorBuilder<BxZone, BxPage> vectorBuilder) {
 		List<String> fnames = featureVectorBuilder.getFeatureNames();
@@ -289,4 +561,23 @@ public abstract class SVMClassifier<S, T, E extends Enum<E>> {
 		this.param = param;
 	}
 
+    public FeatureVectorScaler getScaler() {
+        return scaler;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to calculate feature vectors in parallel
+     * in {@link #predictLabels(List, List)}. The executor is not shut down
+     * by the classifier.
+     * 
+     * @param executor executor, or null to calculate feature vectors sequentially
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
 }
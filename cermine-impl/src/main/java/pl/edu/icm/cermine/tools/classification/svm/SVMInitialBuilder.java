@@ -133,7 +133,7 @@ public class SVMInitialBuilder {
                 FeatureVectorBuilder<BxZone, BxPage> featureVectorBuilder = SVMInitialZoneClassifier.getFeatureVectorBuilder();
                 List<TrainingSample<BxZoneLabel>> trainingSamples =
                     BxDocsToTrainingSamplesConverter.getZoneTrainingSamples(it.iterator(), featureVectorBuilder,
-                        BxZoneLabel.getLabelToGeneralMap());
+                        BxZoneLabel.getLabelToGeneralMap(), Runtime.getRuntime().availableProcessors());
                 SVMZoneClassifier classifier = getZoneClassifier(trainingSamples, kernelType, gamma, C, degree);
                 classifier.saveModel(outFile);
             } else {
@@ -158,7 +158,7 @@ public class SVMInitialBuilder {
                 
                     FeatureVectorBuilder<BxZone, BxPage> featureVectorBuilder = SVMInitialZoneClassifier.getFeatureVectorBuilder();
                     trainingSamples = BxDocsToTrainingSamplesConverter.getZoneTrainingSamples(it.iterator(), featureVectorBuilder,
-                        BxZoneLabel.getLabelToGeneralMap());
+                        BxZoneLabel.getLabelToGeneralMap(), Runtime.getRuntime().availableProcessors());
                 } else {
                     trainingSamples = SVMZoneClassifier.loadProblem(inDir+"/"+i, SVMInitialZoneClassifier.getFeatureVectorBuilder());
                 }
@@ -136,7 +136,7 @@ public class SVMMetadataBuilder {
                 DocumentsIterator it = new DocumentsIterator(inDir, ext);
                 FeatureVectorBuilder<BxZone, BxPage> featureVectorBuilder = SVMMetadataZoneClassifier.getFeatureVectorBuilder();
                 trainingSamples = BxDocsToTrainingSamplesConverter.getZoneTrainingSamples(it.iterator(), featureVectorBuilder,
-                    BxZoneLabel.getIdentityMap());
+                    BxZoneLabel.getIdentityMap(), Runtime.getRuntime().availableProcessors());
             } else {
                 trainingSamples = SVMZoneClassifier.loadProblem(inDir, SVMMetadataZoneClassifier.getFeatureVectorBuilder());
             }
@@ -157,7 +157,7 @@ public class SVMMetadataBuilder {
                 
                     FeatureVectorBuilder<BxZone, BxPage> featureVectorBuilder = SVMMetadataZoneClassifier.getFeatureVectorBuilder();
                     trainingSamples = BxDocsToTrainingSamplesConverter.getZoneTrainingSamples(it.iterator(), featureVectorBuilder,
-                        BxZoneLabel.getIdentityMap());
+                        BxZoneLabel.getIdentityMap(), Runtime.getRuntime().availableProcessors());
                 } else {
                     trainingSamples = SVMZoneClassifier.loadProblem(inDir+"/"+i, SVMMetadataZoneClassifier.getFeatureVectorBuilder());
                 }
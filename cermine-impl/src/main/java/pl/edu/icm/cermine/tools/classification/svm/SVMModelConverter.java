@@ -0,0 +1,71 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.svm;
+
+import java.io.*;
+import libsvm.svm;
+import libsvm.svm_model;
+import org.apache.commons.cli.*;
+import pl.edu.icm.cermine.tools.classification.general.FeatureVectorScaler;
+import pl.edu.icm.cermine.tools.classification.general.FeatureVectorScalerImpl;
+import pl.edu.icm.cermine.tools.classification.general.FeatureVectorScalerNoOp;
+
+/**
+ * Converts a libsvm text model and its .range file into the compiled binary
+ * form read by {@link CompiledSVMModel}. A compiled model placed next to
+ * a model resource, with the {@link SVMClassifier#COMPILED_MODEL_EXTENSION}
+ * extension, is loaded instead of the text model.
+ */
+public class SVMModelConverter {
+
+    public static void main(String[] args) throws ParseException, IOException {
+        Options options = new Options();
+        options.addOption("model", true, "libsvm model path");
+        options.addOption("range", true, "range file path");
+        options.addOption("output", true, "compiled model path");
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine line = parser.parse(options, args);
+        if (!line.hasOption("model")) {
+            System.err.println("Usage: SVMModelConverter -model <model path> [-range <range file path>] [-output <path>]");
+            System.exit(1);
+        }
+        String modelPath = line.getOptionValue("model");
+        String outputPath = modelPath + SVMClassifier.COMPILED_MODEL_EXTENSION;
+        if (line.hasOption("output")) {
+            outputPath = line.getOptionValue("output");
+        }
+
+        svm_model model = svm.svm_load_model(modelPath);
+        FeatureVectorScaler scaler = new FeatureVectorScalerNoOp();
+        if (line.hasOption("range")) {
+            BufferedReader rangeFile = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(line.getOptionValue("range"))));
+            scaler = FeatureVectorScalerImpl.fromRangeReader(rangeFile);
+        }
+
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(outputPath));
+        try {
+            CompiledSVMModel.write(model, scaler, os);
+        } finally {
+            os.close();
+        }
+    }
+
+}
@@ -20,6 +20,7 @@ package pl.edu.icm.cermine.tools.classification.svm;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
 import pl.edu.icm.cermine.exception.AnalysisException;
@@ -34,18 +35,152 @@ import pl.edu.icm.cermine.tools.classification.general.TrainingSample;
 
 public class SVMZoneClassifier extends SVMClassifier<BxZone, BxPage, BxZoneLabel>  implements ZoneClassifier{
     
+    /** cheap classifier labelling confident zones, null if the cascade is disabled */
+    private SVMZoneClassifier firstStage;
+    
+    private double minMargin;
+    
 	public SVMZoneClassifier(FeatureVectorBuilder<BxZone, BxPage> featureVectorBuilder) {
 		super(featureVectorBuilder, BxZoneLabel.class);
 	}
 
 	@Override
 	public BxDocument classifyZones(BxDocument document) throws AnalysisException {
-    	for (BxZone zone: document.asZones()) {
-    		BxZoneLabel predicted = predictLabel(zone, zone.getParent());
-			zone.setLabel(predicted);
-		}
+        classifyZones(getZonesToClassify(document));
 		return document;
 	}
+    
+    /**
+     * Classifies the zones of several documents at once. Zones of all 
+     * the documents are pooled into a single batch, so that their feature 
+     * vectors are calculated and scored together, unless the features
+     * depend on the labels of other zones.
+     * 
+     * @param documents documents
+     * @return the same documents with labels set
+     * @throws AnalysisException 
+     */
+    public List<BxDocument> classifyDocuments(List<BxDocument> documents) throws AnalysisException {
+        List<BxZone> zones = new ArrayList<BxZone>();
+        for (BxDocument document : documents) {
+            zones.addAll(getZonesToClassify(document));
+        }
+        classifyZones(zones);
+        return documents;
+    }
+    
+    /**
+     * Returns the zones of the document that should be classified.
+     * 
+     * @param document document
+     * @return zones to classify
+     */
+    protected List<BxZone> getZonesToClassify(BxDocument document) {
+        return document.asZones();
+    }
+    
+    /**
+     * Sets a cheap classifier used as the first stage of a cascade. Zones
+     * labelled by the first stage with a margin of at least minMargin keep
+     * its label, only the remaining zones get the full feature vector
+     * and are classified by this classifier. The first stage should be
+     * trained on the same labels, typically with a linear kernel 
+     * and a small set of features that are fast to compute.
+     * 
+     * @param firstStage first-stage classifier, or null to disable the cascade
+     * @param minMargin minimum margin of a first-stage prediction to be accepted
+     */
+    public void setFirstStage(SVMZoneClassifier firstStage, double minMargin) {
+        this.firstStage = firstStage;
+        this.minMargin = minMargin;
+    }
+
+    public SVMZoneClassifier getFirstStage() {
+        return firstStage;
+    }
+
+    public double getMinMargin() {
+        return minMargin;
+    }
+    
+    /**
+     * Predicts and sets the labels of the given zones. The feature vectors
+     * of all the zones are calculated first, concurrently if an executor 
+     * was supplied. If any feature depends on the labels of preceding zones,
+     * the values of such features are then filled in and the zones are 
+     * labelled one by one, in order, so that every zone sees the labels 
+     * already given to the zones before it. Otherwise the labels are predicted
+     * together.
+     * 
+     * @param zones zones
+     * @throws AnalysisException 
+     */
+    protected void classifyZones(List<BxZone> zones) throws AnalysisException {
+        boolean firstStageLabelDependent = firstStage != null && firstStage.featureVectorBuilder.isLabelDependent();
+        if (firstStage != null && !firstStageLabelDependent) {
+            zones = classifyConfidentZones(zones);
+        }
+        List<BxPage> pages = getPages(zones);
+        if (!firstStageLabelDependent && !featureVectorBuilder.isLabelDependent()) {
+            List<BxZoneLabel> labels = predictLabels(zones, pages);
+            for (int i = 0; i < zones.size(); i++) {
+                zones.get(i).setLabel(labels.get(i));
+            }
+            return;
+        }
+        
+        List<FeatureVector> firstStageVectors = null;
+        if (firstStageLabelDependent) {
+            firstStageVectors = firstStage.getLabelIndependentFeatureVectors(zones, pages);
+        }
+        List<FeatureVector> featureVectors = getLabelIndependentFeatureVectors(zones, pages);
+        double[] margins = new double[1];
+        for (int i = 0; i < zones.size(); i++) {
+            BxZone zone = zones.get(i);
+            if (firstStageVectors != null) {
+                FeatureVector featureVector = firstStageVectors.get(i);
+                firstStage.featureVectorBuilder.updateLabelDependentFeatures(featureVector, zone, pages.get(i));
+                BxZoneLabel label = firstStage.predictLabels(Collections.singletonList(featureVector), margins).get(0);
+                if (margins[0] >= minMargin) {
+                    zone.setLabel(label);
+                    continue;
+                }
+            }
+            FeatureVector featureVector = featureVectors.get(i);
+            featureVectorBuilder.updateLabelDependentFeatures(featureVector, zone, pages.get(i));
+            zone.setLabel(predictLabels(Collections.singletonList(featureVector)).get(0));
+        }
+    }
+    
+    /**
+     * Labels the zones classified by the first stage with a sufficient margin.
+     * 
+     * @param zones zones
+     * @return zones left for the full classifier
+     * @throws AnalysisException 
+     */
+    private List<BxZone> classifyConfidentZones(List<BxZone> zones) throws AnalysisException {
+        double[] margins = new double[zones.size()];
+        List<BxZoneLabel> labels = firstStage.predictLabels(
+                firstStage.getFeatureVectors(zones, getPages(zones)), margins);
+        List<BxZone> uncertain = new ArrayList<BxZone>();
+        for (int i = 0; i < zones.size(); i++) {
+            if (margins[i] >= minMargin) {
+                zones.get(i).setLabel(labels.get(i));
+            } else {
+                uncertain.add(zones.get(i));
+            }
+        }
+        return uncertain;
+    }
+    
+    private static List<BxPage> getPages(List<BxZone> zones) {
+        List<BxPage> pages = new ArrayList<BxPage>(zones.size());
+        for (BxZone zone : zones) {
+            pages.add(zone.getParent());
+        }
+        return pages;
+    }
 	
 	public static List<TrainingSample<BxZoneLabel>>loadProblem(String path, FeatureVectorBuilder<BxZone, BxPage> fvb) throws IOException {
 		File file = new File(path);
@@ -18,6 +18,9 @@
 
 package pl.edu.icm.cermine.bibref;
 
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 import pl.edu.icm.cermine.bibref.model.BibEntry;
@@ -143,6 +146,23 @@ public abstract class AbstractBibReferenceParserTest {
         assertTrue((double) parsedFields / (double) allFields >= getMinPercentage());
     }
     
+    @Test
+    public void parseBibReferencesTest() throws AnalysisException {
+        List<BibEntry> parsed = getParser().parseBibReferences(getTexts());
+        assertEquals(entries.length, parsed.size());
+        for (int i = 0; i < entries.length; i++) {
+            assertEquals(getParser().parseBibReference(entries[i].getText()).toBibTeX(), parsed.get(i).toBibTeX());
+        }
+    }
+    
+    protected List<String> getTexts() {
+        List<String> texts = new ArrayList<String>();
+        for (BibEntry entry : entries) {
+            texts.add(entry.getText());
+        }
+        return texts;
+    }
+    
     protected abstract BibReferenceParser<BibEntry> getParser();
     
     protected abstract double getMinPercentage();    
@@ -18,9 +18,29 @@
 
 package pl.edu.icm.cermine.bibref;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import org.junit.Before;
+import org.junit.Test;
+import pl.edu.icm.cermine.PdfNLMContentExtractor;
 import pl.edu.icm.cermine.bibref.model.BibEntry;
+import pl.edu.icm.cermine.bibref.parsing.model.Citation;
+import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
+import pl.edu.icm.cermine.bibref.parsing.model.CitationTokenLabel;
 import pl.edu.icm.cermine.exception.AnalysisException;
+import pl.edu.icm.cermine.parsing.tools.ACRFModel;
+import pl.edu.icm.cermine.parsing.tools.LinearChainCRF;
 
 /**
  *
@@ -28,6 +48,10 @@ import pl.edu.icm.cermine.exception.AnalysisException;
  */
 public class CRFBibReferenceParserTest extends AbstractBibReferenceParserTest {
     
+    private static final String ACRF_MODEL_FILE = "/pl/edu/icm/cermine/bibref/acrf.ser.gz";
+    
+    private static final String CRF_MODEL_FILE = "/pl/edu/icm/cermine/bibref/crf.bin.gz";
+    
     private double minPercentage = 0.9;
     
     private CRFBibReferenceParser parser;
@@ -37,6 +61,118 @@ public class CRFBibReferenceParserTest extends AbstractBibReferenceParserTest {
         parser = CRFBibReferenceParser.getInstance();
     }
 
+    @Test
+    public void parallelParsingTest() throws AnalysisException {
+        List<String> texts = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            texts.addAll(getTexts());
+        }
+        int threads = PdfNLMContentExtractor.THREADS_NUMBER;
+        List<BibEntry> expected;
+        try {
+            PdfNLMContentExtractor.THREADS_NUMBER = 1;
+            expected = parser.parseBibReferences(texts);
+        } finally {
+            PdfNLMContentExtractor.THREADS_NUMBER = threads;
+        }
+        
+        List<BibEntry> pooled = parser.parseBibReferences(texts);
+        assertEquals(expected.size(), pooled.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toBibTeX(), pooled.get(i).toBibTeX());
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            parser.setExecutor(executor);
+            List<BibEntry> parsed = parser.parseBibReferences(texts);
+            assertEquals(expected.size(), parsed.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).toBibTeX(), parsed.get(i).toBibTeX());
+            }
+        } finally {
+            parser.setExecutor(null);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedModelTest() throws AnalysisException, InterruptedException, ExecutionException {
+        final List<String> texts = getTexts();
+        final List<BibEntry> expected = parser.parseBibReferences(texts);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<List<BibEntry>>> tasks = new ArrayList<Callable<List<BibEntry>>>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(new Callable<List<BibEntry>>() {
+                    @Override
+                    public List<BibEntry> call() throws AnalysisException {
+                        return CRFBibReferenceParser.getInstance().parseBibReferences(texts);
+                    }
+                });
+            }
+            for (Future<List<BibEntry>> result : executor.invokeAll(tasks)) {
+                List<BibEntry> parsed = result.get();
+                assertEquals(expected.size(), parsed.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).toBibTeX(), parsed.get(i).toBibTeX());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void acrfModelTest() throws AnalysisException {
+        CRFBibReferenceParser acrfParser = new CRFBibReferenceParser(
+                ACRFModel.getInstance(CRFBibReferenceParser.class.getResource(ACRF_MODEL_FILE)));
+        List<String> singleTokenTexts = Arrays.asList("Hoeffding", "1963", "Heart", "pp");
+        List<String> texts = new ArrayList<String>(getTexts());
+        texts.addAll(singleTokenTexts);
+        
+        List<Citation> expected = acrfParser.parseCitations(texts);
+        List<Citation> parsed = parser.parseCitations(texts);
+        assertEquals(expected.size(), parsed.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(texts.get(i), getLabels(expected.get(i)), getLabels(parsed.get(i)));
+        }
+        for (Citation citation : parsed.subList(getTexts().size(), texts.size())) {
+            assertEquals(1, citation.getTokens().size());
+        }
+    }
+    
+    private List<CitationTokenLabel> getLabels(Citation citation) {
+        List<CitationTokenLabel> labels = new ArrayList<CitationTokenLabel>();
+        for (CitationToken token : citation.getTokens()) {
+            labels.add(token.getLabel());
+        }
+        return labels;
+    }
+
+    /**
+     * Checks that the default model is the export of the ACRF model.
+     * The model is regenerated with:
+     * LinearChainCRF -acrf acrf.ser.gz -out crf.bin.gz
+     */
+    @Test
+    public void defaultModelTest() throws AnalysisException, IOException {
+        LinearChainCRF exported = ACRFModel.getInstance(CRFBibReferenceParser.class.getResource(ACRF_MODEL_FILE))
+                .toLinearChainCRF();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        exported.write(expected);
+        
+        InputStream is = CRFBibReferenceParser.class.getResourceAsStream(CRF_MODEL_FILE);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try {
+            LinearChainCRF.read(is).write(actual);
+        } finally {
+            is.close();
+        }
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
     @Override
     protected BibReferenceParser<BibEntry> getParser() {
         return parser;
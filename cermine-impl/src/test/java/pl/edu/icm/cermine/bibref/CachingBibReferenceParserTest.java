@@ -0,0 +1,138 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.icm.cermine.bibref;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.icm.cermine.bibref.model.BibEntry;
+import pl.edu.icm.cermine.bibref.model.BibEntryField;
+import pl.edu.icm.cermine.exception.AnalysisException;
+
+public class CachingBibReferenceParserTest {
+    
+    private List<String> parsedTexts;
+    
+    private CachingBibReferenceParser parser;
+    
+    @Before
+    public void setUp() {
+        parsedTexts = new ArrayList<String>();
+        parser = new CachingBibReferenceParser(new BibReferenceParser<BibEntry>() {
+
+            @Override
+            public BibEntry parseBibReference(String text) {
+                return parseBibReferences(Collections.singletonList(text)).get(0);
+            }
+
+            @Override
+            public List<BibEntry> parseBibReferences(List<String> texts) {
+                parsedTexts.addAll(texts);
+                List<BibEntry> entries = new ArrayList<BibEntry>();
+                for (String text : texts) {
+                    int index = text.indexOf("fi");
+                    BibEntry entry = new BibEntry(BibEntry.TYPE_ARTICLE).setText(text);
+                    if (index >= 0) {
+                        entry.addField(BibEntry.FIELD_TITLE, text.substring(index), index, text.length());
+                    }
+                    entries.add(entry);
+                }
+                return entries;
+            }
+        }, 2);
+    }
+
+    @Test
+    public void testNormalizedHit() throws AnalysisException {
+        BibEntry first = parser.parseBibReference("Smith J., Some  results – first");
+        String original = " Smith J.,\tSome results – ﬁrst ";
+        BibEntry second = parser.parseBibReference(original);
+        
+        assertEquals(Arrays.asList("Smith J., Some results - first"), parsedTexts);
+        assertEquals(1, parser.getHitCount());
+        assertEquals(1, parser.getMissCount());
+        assertEquals(0.5, parser.getHitRatio(), 0.0);
+        
+        assertEquals("Smith J., Some  results – first", first.getText());
+        assertEquals(original, second.getText());
+        BibEntryField field = second.getFirstField(BibEntry.FIELD_TITLE);
+        assertEquals("first", field.getText());
+        assertEquals("ﬁrst", original.substring(field.getStartIndex(), field.getEndIndex()));
+    }
+
+    @Test
+    public void testExpandingCharacters() throws AnalysisException {
+        String original = "\uFB03\uFB03\uFB03\uFB03 x";
+        BibEntry entry = parser.parseBibReference(original);
+        
+        assertEquals(Arrays.asList("ffiffiffiffi x"), parsedTexts);
+        assertEquals(original, entry.getText());
+        BibEntryField field = entry.getFirstField(BibEntry.FIELD_TITLE);
+        assertEquals("fiffiffiffi x", field.getText());
+        assertEquals(0, field.getStartIndex());
+        assertEquals(original.length(), field.getEndIndex());
+    }
+
+    @Test
+    public void testDefensiveCopies() throws AnalysisException {
+        BibEntry entry = parser.parseBibReference("A first text");
+        entry.setField(BibEntry.FIELD_TITLE, "changed");
+        
+        BibEntry cached = parser.parseBibReference("A first text");
+        assertEquals("first text", cached.getFirstFieldValue(BibEntry.FIELD_TITLE));
+        assertNotSame(entry, cached);
+    }
+
+    @Test
+    public void testBatchAndEviction() throws AnalysisException {
+        List<BibEntry> entries = parser.parseBibReferences(Arrays.asList("a", "b", " a", "c"));
+        assertEquals(4, entries.size());
+        assertEquals(" a", entries.get(2).getText());
+        assertEquals(Arrays.asList("a", "b", "c"), parsedTexts);
+        assertEquals(1, parser.getHitCount());
+        assertTrue(parser.size() <= 2);
+    }
+
+    @Test
+    public void testSaveLoad() throws AnalysisException, IOException {
+        parser.parseBibReference("The first reference");
+        File file = File.createTempFile("references", ".cache");
+        try {
+            parser.save(file);
+            parser.clear();
+            assertEquals(0, parser.size());
+            assertEquals(1, parser.load(file));
+        } finally {
+            file.delete();
+        }
+        parsedTexts.clear();
+        BibEntry entry = parser.parseBibReference("The  first reference");
+        assertTrue(parsedTexts.isEmpty());
+        assertEquals("first reference", entry.getFirstFieldValue(BibEntry.FIELD_TITLE));
+        assertEquals(5, entry.getFirstField(BibEntry.FIELD_TITLE).getStartIndex());
+    }
+
+}
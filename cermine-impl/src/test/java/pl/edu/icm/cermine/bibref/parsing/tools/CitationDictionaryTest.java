@@ -0,0 +1,57 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.icm.cermine.bibref.parsing.tools;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
+
+public class CitationDictionaryTest {
+
+    @Test
+    public void testContains() {
+        CitationToken token = new CitationToken("Springer", 0, 8);
+        assertTrue(CitationDictionary.contains(token, CitationDictionary.PUBLISHER_WORD));
+        assertTrue(CitationDictionary.contains(token, CitationDictionary.SERIES_WORD));
+        assertFalse(CitationDictionary.contains(token, CitationDictionary.CITY));
+        assertTrue(CitationDictionary.contains(token, CitationDictionary.CITY | CitationDictionary.SERIES_WORD));
+
+        assertTrue(CitationDictionary.contains(new CitationToken("DE", 0, 2), CitationDictionary.DE));
+        assertTrue(CitationDictionary.contains(new CitationToken("De", 0, 2), CitationDictionary.SURNAME_PART));
+        assertTrue(CitationDictionary.contains(new CitationToken("Göttingen", 0, 9), CitationDictionary.CITY));
+        assertEquals(0, CitationDictionary.getMemberships(new CitationToken("&", 0, 1)));
+    }
+
+    @Test
+    public void testCachedMemberships() {
+        CitationToken token = new CitationToken("Vol", 0, 3);
+        assertEquals(CitationDictionary.VOLUME_TEXT, CitationDictionary.getMemberships(token));
+        assertEquals(CitationDictionary.VOLUME_TEXT, token.getDictionaryMemberships());
+
+        token.appendText("ume");
+        assertEquals(-1, token.getDictionaryMemberships());
+        assertTrue(CitationDictionary.contains(token, CitationDictionary.VOLUME_TEXT));
+
+        token.setText("http");
+        assertTrue(CitationDictionary.contains(token, CitationDictionary.HTTP));
+        assertFalse(CitationDictionary.contains(token, CitationDictionary.VOLUME_TEXT));
+    }
+
+}
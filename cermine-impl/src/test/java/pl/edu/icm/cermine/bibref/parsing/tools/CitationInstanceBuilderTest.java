@@ -0,0 +1,107 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.bibref.parsing.tools;
+
+import edu.umass.cs.mallet.base.pipe.Pipe;
+import edu.umass.cs.mallet.base.pipe.iterator.LineGroupIterator;
+import edu.umass.cs.mallet.base.types.FeatureVector;
+import edu.umass.cs.mallet.base.types.FeatureVectorSequence;
+import edu.umass.cs.mallet.base.types.Instance;
+import edu.umass.cs.mallet.base.types.InstanceList;
+import edu.umass.cs.mallet.grmm.learning.ACRF;
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.icm.cermine.bibref.parsing.model.Citation;
+
+public class CitationInstanceBuilderTest {
+    
+    private static final String MODEL_FILE = "/pl/edu/icm/cermine/bibref/acrf.ser.gz";
+    private static final String WORDS_FILE = "/pl/edu/icm/cermine/bibref/crf-train-words.txt";
+    
+    private static final String[] REFERENCES = {
+        "[6]  W. Hoeffding, Probability inequalities for sums of bounded random variables, J. Amer. Statist. Assoc, 58 (1963) 13-30.",
+        "[4] W. C. Lee, Y. E. Chavez, T. Baker, and B. R. Luce, “Economic burden of heart failure: a summary of recent literature,” Heart and Lung, vol. 33, no. 6, pp. 362–371, 2004.",
+        "S.D. Whitehead and D. H. Ballard. Active perception and reinforcement learning. Neural Computation, 2 (4): 409-419, 1990.",
+        "Smith",
+        "a b"
+    };
+    
+    private Pipe pipe;
+    private Set<String> words;
+    
+    @Before
+    public void setUp() throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new GZIPInputStream(
+                CitationInstanceBuilderTest.class.getResourceAsStream(MODEL_FILE))));
+        try {
+            pipe = ((ACRF) ois.readObject()).getInputPipe();
+        } finally {
+            ois.close();
+        }
+        words = new HashSet<String>(IOUtils.readLines(CitationInstanceBuilderTest.class.getResourceAsStream(WORDS_FILE)));
+    }
+
+    @Test
+    public void testToInstance() {
+        CitationInstanceBuilder builder = new CitationInstanceBuilder(pipe, words);
+        for (String reference : REFERENCES) {
+            Citation citation = CitationUtils.stringToCitation(reference);
+            
+            FeatureVectorSequence actual = (FeatureVectorSequence) builder.toInstance(citation).getData();
+            
+            int alphabetSize = actual.getAlphabet().size();
+            String data = StringUtils.join(CitationUtils.citationToMalletInputFormat(citation, words), "\n");
+            InstanceList instanceList = new InstanceList(pipe);
+            instanceList.add(new LineGroupIterator(new StringReader(data), Pattern.compile("\\s*"), true));
+            Instance instance = instanceList.getInstance(0);
+            FeatureVectorSequence expected = (FeatureVectorSequence) instance.getData();
+            
+            assertSame(expected.getAlphabet(), actual.getAlphabet());
+            assertEquals(citation.getTokens().size(), actual.size());
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(getIndices((FeatureVector) expected.get(i), alphabetSize), 
+                        getIndices((FeatureVector) actual.get(i), alphabetSize));
+            }
+        }
+    }
+    
+    private int[] getIndices(FeatureVector vector, int alphabetSize) {
+        int[] indices = new int[vector.numLocations()];
+        int count = 0;
+        for (int i = 0; i < vector.numLocations(); i++) {
+            if (vector.indexAtLocation(i) < alphabetSize && vector.valueAtLocation(i) != 0) {
+                indices[count++] = vector.indexAtLocation(i);
+            }
+        }
+        indices = Arrays.copyOf(indices, count);
+        Arrays.sort(indices);
+        return indices;
+    }
+    
+}
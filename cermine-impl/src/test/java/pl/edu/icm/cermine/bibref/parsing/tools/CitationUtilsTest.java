@@ -0,0 +1,105 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.icm.cermine.bibref.parsing.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import pl.edu.icm.cermine.bibref.parsing.model.Citation;
+import pl.edu.icm.cermine.bibref.parsing.model.CitationToken;
+
+public class CitationUtilsTest {
+
+    private static final String CHARACTERS = "aZ09ąŁéß_-.,;:()[]\"'–— \t\n\r\f\u000B  ";
+
+    @Test
+    public void testStringToCitation() {
+        assertTokens("Smith, J.: Title (2001) 12-34",
+                "Smith", ",", "J", ".", ":", "Title", "(", "2001", ")", "12", "-", "34");
+        assertTokens("  Kähler V  ", "Kähler", " ", "V");
+        assertTokens("");
+        assertTokens(" \t\n");
+        assertTokens("x𝑥y 😀", "x𝑥y", "😀");
+
+        Citation citation = CitationUtils.stringToCitation(" ab, c");
+        assertEquals(1, citation.getTokens().get(0).getStartIndex());
+        assertEquals(3, citation.getTokens().get(0).getEndIndex());
+        assertEquals(3, citation.getTokens().get(1).getStartIndex());
+        assertEquals(4, citation.getTokens().get(1).getEndIndex());
+        assertEquals(5, citation.getTokens().get(2).getStartIndex());
+    }
+
+    @Test
+    public void testStringToCitationRandom() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(60);
+            for (int j = 0; j < length; j++) {
+                sb.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+            }
+            String text = sb.toString();
+            List<CitationToken> expected = substringTokens(text);
+            List<CitationToken> actual = CitationUtils.stringToCitation(text).getTokens();
+            assertEquals(text, expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.get(j).getText(), actual.get(j).getText());
+                assertEquals(expected.get(j).getStartIndex(), actual.get(j).getStartIndex());
+                assertEquals(expected.get(j).getEndIndex(), actual.get(j).getEndIndex());
+            }
+        }
+    }
+
+    private void assertTokens(String text, String... tokens) {
+        List<CitationToken> actual = CitationUtils.stringToCitation(text).getTokens();
+        assertEquals(tokens.length, actual.size());
+        for (int i = 0; i < tokens.length; i++) {
+            assertEquals(tokens[i], actual.get(i).getText());
+        }
+    }
+
+    /**
+     * The substring-based tokenization, for texts without surrogate pairs.
+     */
+    private List<CitationToken> substringTokens(String citation) {
+        List<CitationToken> tokenList = new ArrayList<CitationToken>();
+        String text = citation;
+        int actIndex = 0;
+        while (text.length() > 0) {
+            int end = 1;
+            if (Character.isLetterOrDigit(text.charAt(0))) {
+                end = 0;
+                while (text.length() > end && Character.isLetterOrDigit(text.charAt(end))) {
+                    end++;
+                }
+            }
+            String token = text.substring(0, end);
+            if (!token.matches("\\s+")) {
+                tokenList.add(new CitationToken(token, actIndex, actIndex + end));
+            }
+            text = text.substring(end);
+            actIndex += end;
+        }
+        return tokenList;
+    }
+
+}
@@ -0,0 +1,92 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.metadata.zoneclassification.features;
+
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import pl.edu.icm.cermine.structure.model.BxBounds;
+import pl.edu.icm.cermine.structure.model.BxPage;
+import pl.edu.icm.cermine.structure.model.BxZone;
+import pl.edu.icm.cermine.structure.tools.BxZoneSpatialIndex;
+
+public class DistanceFromNearestNeighbourFeatureTest {
+
+    private final DistanceFromNearestNeighbourFeature feature = new DistanceFromNearestNeighbourFeature();
+
+    @Test
+    public void testLowerLeftNeighbour() {
+        BxPage page = new BxPage();
+        BxZone zone = addZone(page, 100, 0, 50, 10);
+        addZone(page, 0, 200, 90, 10);
+        addZone(page, 300, 0, 50, 10);
+
+        // octant 6 distance: sqrt((100 - 90)^2 + (100 + 10 - 200)^2)
+        assertEquals(Math.sqrt(100 + 8100), feature.calculateFeatureValue(zone, page), 0);
+    }
+
+    @Test
+    public void testNoNeighbours() {
+        BxPage page = new BxPage();
+        BxZone zone = addZone(page, 0, 0, 100, 100);
+        addZone(page, 10, 10, 10, 10);
+        assertEquals(0, feature.calculateFeatureValue(zone, page), 0);
+    }
+
+    @Test
+    public void testRandomPages() {
+        Random random = new Random(2013);
+        for (int p = 0; p < 100; p++) {
+            BxPage page = new BxPage();
+            int count = 1 + random.nextInt(60);
+            for (int i = 0; i < count; i++) {
+                addZone(page, Math.floor(random.nextDouble() * 500), Math.floor(random.nextDouble() * 700),
+                        1 + Math.floor(random.nextDouble() * 200), 1 + Math.floor(random.nextDouble() * 50));
+            }
+            for (BxZone zone : page.getZones()) {
+                assertEquals(expectedDistance(zone, page), feature.calculateFeatureValue(zone, page), 0);
+            }
+        }
+    }
+
+    private static double expectedDistance(BxZone zone, BxPage page) {
+        BxBounds b = zone.getBounds();
+        double minDist = Double.MAX_VALUE;
+        for (BxZone other : page.getZones()) {
+            BxBounds o = other.getBounds();
+            double dist = BxZoneSpatialIndex.distance(b, o);
+            if (other == zone || dist < 0) {
+                continue;
+            }
+            if (o.getX() + o.getWidth() <= b.getX() && b.getY() + b.getHeight() <= o.getY()) {
+                double dx = b.getX() - (o.getX() + o.getWidth());
+                double dy = b.getX() + b.getHeight() - o.getY();
+                dist = Math.sqrt(dx * dx + dy * dy);
+            }
+            minDist = Math.min(minDist, dist);
+        }
+        return minDist == Double.MAX_VALUE ? 0 : minDist;
+    }
+
+    private static BxZone addZone(BxPage page, double x, double y, double width, double height) {
+        BxZone zone = new BxZone().setBounds(new BxBounds(x, y, width, height));
+        page.addZone(zone);
+        return zone;
+    }
+}
@@ -0,0 +1,103 @@
+package pl.edu.icm.cermine.parsing.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LinearChainCRFTest {
+
+	private static final int LABELS = 3;
+	private static final int FEATURES = 4;
+
+	private double[] transitions;
+	private double[] weights;
+	private LinearChainCRF crf;
+
+	@Before
+	public void setUp() {
+		Random random = new Random(1);
+		transitions = new double[LABELS * LABELS];
+		for (int i = 0; i < transitions.length; i++) {
+			transitions[i] = random.nextGaussian();
+		}
+		weights = new double[FEATURES * LABELS * LABELS];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = random.nextGaussian();
+		}
+		crf = new LinearChainCRF(Arrays.asList("A", "B", "C"), Arrays.asList("f0", "f1", "f2", "f3"),
+				transitions, weights);
+	}
+
+	@Test
+	public void testGetBestLabels() {
+		Random random = new Random(2);
+		for (int length = 0; length <= 6; length++) {
+			int[][] features = new int[length][];
+			for (int i = 0; i < length; i++) {
+				features[i] = random.nextBoolean() ? new int[]{0, 2} : new int[]{1, 3};
+			}
+			assertArrayEquals(bruteForce(features), crf.getBestLabels(features));
+		}
+	}
+
+	@Test
+	public void testReadWrite() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		crf.write(bos);
+		LinearChainCRF read = LinearChainCRF.read(new ByteArrayInputStream(bos.toByteArray()));
+
+		assertEquals(crf.getLabels(), read.getLabels());
+		assertEquals(FEATURES, read.getFeatureCount());
+		assertEquals(2, read.getFeatureIndex("f2"));
+		assertEquals(-1, read.getFeatureIndex("f4"));
+		int[][] features = {{0}, {1, 2}, {}, {3}};
+		assertArrayEquals(crf.getBestLabels(features), read.getBestLabels(features));
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadInvalid() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		GZIPOutputStream gos = new GZIPOutputStream(bos);
+		gos.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+		gos.close();
+		LinearChainCRF.read(new ByteArrayInputStream(bos.toByteArray()));
+	}
+
+	private int[] bruteForce(int[][] features) {
+		int length = features.length;
+		int[] best = new int[length];
+		if (length < 2) {
+			return best;
+		}
+		double bestScore = Double.NEGATIVE_INFINITY;
+		int[] labels = new int[length];
+		int count = (int) Math.pow(LABELS, length);
+		for (int code = 0; code < count; code++) {
+			int rest = code;
+			for (int i = length - 1; i >= 0; i--) {
+				labels[i] = rest % LABELS;
+				rest /= LABELS;
+			}
+			double score = 0;
+			for (int i = 0; i + 1 < length; i++) {
+				score += transitions[labels[i] * LABELS + labels[i + 1]];
+				for (int feature : features[i]) {
+					score += weights[(feature * LABELS + labels[i]) * LABELS + labels[i + 1]];
+				}
+			}
+			if (score > bestScore) {
+				bestScore = score;
+				best = labels.clone();
+			}
+		}
+		return best;
+	}
+
+}
@@ -0,0 +1,148 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.structure;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import pl.edu.icm.cermine.exception.AnalysisException;
+import pl.edu.icm.cermine.structure.model.BxDocument;
+import pl.edu.icm.cermine.structure.model.BxZone;
+import pl.edu.icm.cermine.structure.model.BxZoneLabel;
+import pl.edu.icm.cermine.structure.model.BxZoneLabelCategory;
+import pl.edu.icm.cermine.tools.classification.svm.SVMZoneClassifier;
+
+/**
+ * Checks that zones classified in batches, in parallel or pooled from several
+ * documents get the same labels as zones classified one by one, in order.
+ */
+public class ParallelSVMInitialClassifierTest extends SVMInitialClassifierTest {
+
+    /** number of zones whose feature vectors are calculated in a single task */
+    private static final int BATCH_SIZE = 16;
+    
+    private ExecutorService executor;
+    
+    /** number of tasks run by the executor */
+    private final AtomicInteger executedTasks = new AtomicInteger();
+
+    private SVMZoneClassifier sequentialClassifier;
+    
+    private SVMZoneClassifier metadataClassifier;
+
+    private SVMZoneClassifier cascadeClassifier;
+
+    @Before
+    @Override
+    public void setUp() throws IOException, AnalysisException {
+        super.setUp();
+        executor = new ThreadPoolExecutor(3, 3, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task) {
+                executedTasks.incrementAndGet();
+            }
+        };
+        classifier.setExecutor(executor);
+        sequentialClassifier = new SVMInitialZoneClassifier();
+        metadataClassifier = new SVMMetadataZoneClassifier();
+        metadataClassifier.setExecutor(executor);
+        cascadeClassifier = new SVMInitialZoneClassifier();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Override
+	protected BxDocument process(BxDocument doc) throws AnalysisException {
+        for (BxZone z : doc.asZones()) {
+            z.setLabel(null);
+        }
+        for (BxZone z : doc.asZones()) {
+            z.setLabel(sequentialClassifier.predictLabel(z, z.getParent()));
+        }
+        List<BxZoneLabel> expected = getLabels(doc);
+
+        for (BxZone z : doc.asZones()) {
+            z.setLabel(null);
+        }
+        sequentialClassifier.classifyDocuments(Collections.singletonList(doc));
+        assertEquals(expected, getLabels(doc));
+
+        for (double minMargin : new double[]{Double.MAX_VALUE, -Double.MAX_VALUE}) {
+            for (BxZone z : doc.asZones()) {
+                z.setLabel(null);
+            }
+            cascadeClassifier.setFirstStage(sequentialClassifier, minMargin);
+            cascadeClassifier.classifyZones(doc);
+            assertEquals(expected, getLabels(doc));
+        }
+
+        for (BxZone z : doc.asZones()) {
+            z.setLabel(null);
+        }
+        executedTasks.set(0);
+        super.process(doc);
+        assertEquals(expected, getLabels(doc));
+        assertTrue(doc.asZones().size() <= BATCH_SIZE || executedTasks.get() > 1);
+        
+        List<BxZone> metadataZones = new ArrayList<BxZone>();
+        for (BxZone z : doc.asZones()) {
+            if (z.getLabel().isOfCategoryOrGeneral(BxZoneLabelCategory.CAT_METADATA)) {
+                metadataZones.add(z);
+            }
+        }
+        for (BxZone z : metadataZones) {
+            z.setLabel(metadataClassifier.predictLabel(z, z.getParent()));
+        }
+        List<BxZoneLabel> expectedMetadata = getLabels(doc);
+        for (int i = 0; i < metadataZones.size(); i++) {
+            metadataZones.get(i).setLabel(expected.get(doc.asZones().indexOf(metadataZones.get(i))));
+        }
+        executedTasks.set(0);
+        metadataClassifier.classifyZones(doc);
+        assertEquals(expectedMetadata, getLabels(doc));
+        assertTrue(metadataZones.size() <= BATCH_SIZE || executedTasks.get() > 1);
+        
+        for (int i = 0; i < doc.asZones().size(); i++) {
+            doc.asZones().get(i).setLabel(expected.get(i));
+        }
+        return doc;
+    }
+    
+    private static List<BxZoneLabel> getLabels(BxDocument doc) {
+        List<BxZoneLabel> labels = new ArrayList<BxZoneLabel>();
+        for (BxZone z : doc.asZones()) {
+            labels.add(z.getLabel());
+        }
+        return labels;
+    }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.structure.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import pl.edu.icm.cermine.structure.model.BxBounds;
+import pl.edu.icm.cermine.structure.model.BxPage;
+import pl.edu.icm.cermine.structure.model.BxZone;
+
+public class BxZoneSpatialIndexTest {
+
+    private static final double EPSILON = 0.0001;
+
+    @Test
+    public void testDistance() {
+        BxBounds b = new BxBounds(10, 10, 10, 10);
+        assertEquals(-1, BxZoneSpatialIndex.distance(b, new BxBounds(15, 15, 10, 10)), EPSILON);
+        assertEquals(5, BxZoneSpatialIndex.distance(b, new BxBounds(25, 12, 10, 2)), EPSILON);
+        assertEquals(3, BxZoneSpatialIndex.distance(b, new BxBounds(0, 0, 30, 7)), EPSILON);
+        assertEquals(5, BxZoneSpatialIndex.distance(b, new BxBounds(23, 24, 1, 1)), EPSILON);
+        assertEquals(0, BxZoneSpatialIndex.distance(b, new BxBounds(20, 20, 1, 1)), EPSILON);
+        assertEquals(0, BxZoneSpatialIndex.distance(b, new BxBounds(20, 5, 10, 10)), EPSILON);
+        assertEquals(0, BxZoneSpatialIndex.distance(b, new BxBounds(5, 20, 10, 10)), EPSILON);
+    }
+
+    @Test
+    public void testTouchingZones() {
+        BxPage page = new BxPage();
+        BxZone z1 = addZone(page, 0, 0, 100, 20);
+        BxZone z2 = addZone(page, 100, 10, 50, 20);
+        addZone(page, 0, 40, 100, 20);
+
+        BxZoneSpatialIndex index = page.getZoneSpatialIndex();
+        assertSame(z2, index.getNearestZone(z1));
+        assertEquals(0, index.getNearestZoneDistance(z1), EPSILON);
+        assertSame(z1, index.getNearestZone(z2));
+        assertEquals(1, index.getZonesWithin(z1, 0).size());
+    }
+
+    @Test
+    public void testNearestZone() {
+        BxPage page = new BxPage();
+        BxZone z1 = addZone(page, 0, 0, 100, 20);
+        BxZone z2 = addZone(page, 0, 30, 100, 20);
+        BxZone z3 = addZone(page, 150, 0, 100, 50);
+        BxZone z4 = addZone(page, 10, 10, 20, 30);
+
+        BxZoneSpatialIndex index = page.getZoneSpatialIndex();
+        assertSame(z2, index.getNearestZone(z1));
+        assertEquals(10, index.getNearestZoneDistance(z1), EPSILON);
+        assertSame(z1, index.getNearestZone(z2));
+        assertEquals(50, index.getNearestZoneDistance(z3), EPSILON);
+        assertSame(z3, index.getNearestZone(z4));
+        assertEquals(120, index.getNearestZoneDistance(z4), EPSILON);
+    }
+
+    @Test
+    public void testOverlappingZones() {
+        BxPage page = new BxPage();
+        BxZone z1 = addZone(page, 0, 0, 100, 20);
+        addZone(page, 50, 10, 100, 20);
+
+        BxZoneSpatialIndex index = page.getZoneSpatialIndex();
+        assertNull(index.getNearestZone(z1));
+        assertEquals(Double.MAX_VALUE, index.getNearestZoneDistance(z1), EPSILON);
+        assertTrue(index.getZonesWithin(z1, 100).isEmpty());
+    }
+
+    @Test
+    public void testIndexRefresh() {
+        BxPage page = new BxPage();
+        BxZone z1 = addZone(page, 0, 0, 10, 10);
+        addZone(page, 20, 0, 10, 10);
+        BxZoneSpatialIndex index = page.getZoneSpatialIndex();
+        assertSame(index, page.getZoneSpatialIndex());
+        assertEquals(10, page.getZoneSpatialIndex().getNearestZoneDistance(z1), EPSILON);
+
+        addZone(page, 0, 12, 10, 10);
+        assertNotSame(index, page.getZoneSpatialIndex());
+        assertEquals(2, page.getZoneSpatialIndex().getNearestZoneDistance(z1), EPSILON);
+
+        index = page.getZoneSpatialIndex();
+        z1.setBounds(new BxBounds(0, 0, 10, 11));
+        assertNotSame(index, page.getZoneSpatialIndex());
+        assertEquals(1, page.getZoneSpatialIndex().getNearestZoneDistance(z1), EPSILON);
+
+        index = page.getZoneSpatialIndex();
+        page.getZones().set(2, new BxZone().setBounds(new BxBounds(0, 30, 10, 10)));
+        assertNotSame(index, page.getZoneSpatialIndex());
+        assertEquals(10, page.getZoneSpatialIndex().getNearestZoneDistance(z1), EPSILON);
+
+        index = page.getZoneSpatialIndex();
+        page.getZones().remove(1);
+        assertNotSame(index, page.getZoneSpatialIndex());
+        assertEquals(19, page.getZoneSpatialIndex().getNearestZoneDistance(z1), EPSILON);
+    }
+
+    @Test
+    public void testRandomPages() {
+        Random random = new Random(2013);
+        for (int p = 0; p < 50; p++) {
+            BxPage page = new BxPage();
+            int count = 1 + random.nextInt(60);
+            for (int i = 0; i < count; i++) {
+                addZone(page, random.nextDouble() * 500, random.nextDouble() * 700,
+                        1 + random.nextDouble() * 200, 1 + random.nextDouble() * 50);
+            }
+            BxZoneSpatialIndex index = page.getZoneSpatialIndex();
+            for (BxZone zone : page.getZones()) {
+                double expectedMin = Double.MAX_VALUE;
+                List<BxZone> expectedWithin = new ArrayList<BxZone>();
+                for (BxZone other : page.getZones()) {
+                    if (other == zone) {
+                        continue;
+                    }
+                    double dist = BxZoneSpatialIndex.distance(zone.getBounds(), other.getBounds());
+                    if (dist >= 0 && dist < expectedMin) {
+                        expectedMin = dist;
+                    }
+                    if (dist >= 0 && dist <= 40) {
+                        expectedWithin.add(other);
+                    }
+                }
+                assertEquals(expectedMin, index.getNearestZoneDistance(zone), EPSILON);
+                assertEquals(expectedWithin, index.getZonesWithin(zone, 40));
+            }
+        }
+    }
+
+    @Test
+    public void testZonesIntersecting() {
+        Random random = new Random(2013);
+        BxPage page = new BxPage();
+        for (int i = 0; i < 60; i++) {
+            addZone(page, random.nextDouble() * 500, random.nextDouble() * 700,
+                    1 + random.nextDouble() * 200, 1 + random.nextDouble() * 50);
+        }
+        BxZoneSpatialIndex index = page.getZoneSpatialIndex();
+        for (int i = 0; i < 50; i++) {
+            BxBounds area = new BxBounds(random.nextDouble() * 600 - 50, random.nextDouble() * 800 - 50,
+                    random.nextDouble() * 100, random.nextDouble() * 100);
+            List<BxZone> expected = new ArrayList<BxZone>();
+            for (BxZone zone : page.getZones()) {
+                BxBounds b = zone.getBounds();
+                if (b.getX() <= area.getX() + area.getWidth() && area.getX() <= b.getX() + b.getWidth()
+                        && b.getY() <= area.getY() + area.getHeight() && area.getY() <= b.getY() + b.getHeight()) {
+                    expected.add(zone);
+                }
+            }
+            assertEquals(expected, index.getZonesIntersecting(area));
+        }
+        BxBounds strip = new BxBounds(100, 300, 20, Double.MAX_VALUE);
+        for (BxZone zone : index.getZonesIntersecting(strip)) {
+            assertTrue(zone.getY() + zone.getHeight() >= 300);
+        }
+    }
+
+    private static BxZone addZone(BxPage page, double x, double y, double width, double height) {
+        BxZone zone = new BxZone().setBounds(new BxBounds(x, y, width, height));
+        page.addZone(zone);
+        return zone;
+    }
+}
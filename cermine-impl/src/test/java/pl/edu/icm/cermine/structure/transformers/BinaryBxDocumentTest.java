@@ -0,0 +1,146 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.structure.transformers;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipFile;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.icm.cermine.exception.TransformationException;
+import pl.edu.icm.cermine.structure.model.*;
+
+public class BinaryBxDocumentTest {
+    
+    private static final String ZIP_FILE = "/pl/edu/icm/cermine/structure/roa_test_small.zip";
+    private static final String DOCUMENT_FILE = "1748717X.xml.out";
+
+    private BxDocument document;
+    
+    @Before
+    public void setUp() throws IOException, URISyntaxException, TransformationException {
+        ZipFile zipFile = new ZipFile(new File(this.getClass().getResource(ZIP_FILE).toURI()));
+        try {
+            Reader reader = new InputStreamReader(zipFile.getInputStream(zipFile.getEntry(DOCUMENT_FILE)), "UTF-8");
+            document = new BxDocument().setPages(new TrueVizToBxDocumentReader().read(reader));
+            document.setFilename(DOCUMENT_FILE);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryBxDocument.write(document, out);
+        BinaryBxDocument binary = BinaryBxDocument.read(new ByteArrayInputStream(out.toByteArray()));
+        
+        assertEquals(DOCUMENT_FILE, binary.getFilename());
+        assertEquals(document.getPages().size(), binary.getPageCount());
+        BxDocument read = binary.getDocument();
+        assertEquals(DOCUMENT_FILE, read.getFilename());
+        assertEqualObjects(document.asPages(), read.asPages());
+        assertEqualObjects(document.asZones(), read.asZones());
+        assertEqualObjects(document.asLines(), read.asLines());
+        assertEqualObjects(document.asWords(), read.asWords());
+        assertEqualObjects(document.asChunks(), read.asChunks());
+        List<BxZone> zones = document.asZones();
+        List<BxZone> readZones = read.asZones();
+        for (int i = 0; i < zones.size(); i++) {
+            assertEquals(zones.get(i).getLabel(), readZones.get(i).getLabel());
+        }
+        List<BxChunk> chunks = document.asChunks();
+        List<BxChunk> readChunks = read.asChunks();
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(chunks.get(i).toText(), readChunks.get(i).toText());
+            assertEquals(chunks.get(i).getFontName(), readChunks.get(i).getFontName());
+        }
+        assertEquals(document.toText(), read.toText());
+    }
+
+    @Test
+    public void testMap() throws IOException {
+        File file = File.createTempFile("document", ".bxd");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                BinaryBxDocument.write(document, out);
+            } finally {
+                out.close();
+            }
+            BinaryBxDocument binary = BinaryBxDocument.map(file);
+            int last = binary.getPageCount() - 1;
+            BxPage page = binary.getPage(last);
+            BxPage expected = document.getPages().get(last);
+            assertEquals(expected.getId(), page.getId());
+            assertEquals(expected.toText(), page.toText());
+            assertEquals(expected.getZones().size(), page.getZones().size());
+            assertNull(page.getPrev());
+            assertEqualObjects(document.asPages(), binary.getDocument().asPages());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryBxDocument.write(new BxDocument(), out);
+        BinaryBxDocument binary = BinaryBxDocument.read(new ByteArrayInputStream(out.toByteArray()));
+        assertNull(binary.getFilename());
+        assertEquals(0, binary.getPageCount());
+        assertTrue(binary.getDocument().getPages().isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalid() throws IOException {
+        BinaryBxDocument.read(new ByteArrayInputStream("<Document/>".getBytes("UTF-8")));
+    }
+
+    private <A extends BxObject<A, ?>> void assertEqualObjects(List<A> expected, List<A> actual) {
+        assertEquals(expected.size(), actual.size());
+        Map<A, Integer> expectedIndexes = getIndexes(expected);
+        Map<A, Integer> actualIndexes = getIndexes(actual);
+        for (int i = 0; i < expected.size(); i++) {
+            A exp = expected.get(i);
+            A act = actual.get(i);
+            assertEquals(exp.getId(), act.getId());
+            assertEquals(exp.getNextId(), act.getNextId());
+            assertEquals(expectedIndexes.get(exp.getNext()), actualIndexes.get(act.getNext()));
+            assertEquals(expectedIndexes.get(exp.getPrev()), actualIndexes.get(act.getPrev()));
+            assertEquals((float) exp.getX(), act.getX(), 0.0);
+            assertEquals((float) exp.getY(), act.getY(), 0.0);
+            assertEquals((float) exp.getWidth(), act.getWidth(), 0.0);
+            assertEquals((float) exp.getHeight(), act.getHeight(), 0.0);
+        }
+    }
+
+    private <A> Map<A, Integer> getIndexes(List<A> objects) {
+        Map<A, Integer> indexes = new IdentityHashMap<A, Integer>();
+        for (A object : objects) {
+            indexes.put(object, indexes.size());
+        }
+        return indexes;
+    }
+
+}
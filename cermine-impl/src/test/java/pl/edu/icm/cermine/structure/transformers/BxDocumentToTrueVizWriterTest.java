@@ -19,11 +19,16 @@
 package pl.edu.icm.cermine.structure.transformers;
 
 import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
+import org.apache.commons.io.IOUtils;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 import org.w3c.dom.Document;
@@ -36,6 +41,9 @@ import pl.edu.icm.cermine.structure.model.*;
  */
 public class BxDocumentToTrueVizWriterTest {
 
+    private static final String GOLDEN_FILE = "/pl/edu/icm/cermine/structure/transformers/trueviz-writer.xml";
+    private static final String GOLDEN_FILE_MINIMAL = "/pl/edu/icm/cermine/structure/transformers/trueviz-writer-minimal.xml";
+
     private XPath xpath;
     private BxDocument bxDoc;
     private Document domDoc;
@@ -198,4 +206,56 @@ public class BxDocumentToTrueVizWriterTest {
 
         assertXpath("count(/Document/Page[2]/Zone[1]/ZoneCorners)", 1);
     }
+
+    @Test
+    public void testEscaping() throws Exception {
+        String text = "<a & \"b\">\t\uD83D\uDE00";
+        BxChunk chunk = new BxChunk(new BxBounds(0, 0, 1, 1), text);
+        BxWord word = new BxWord().addChunk(chunk);
+        BxPage page = new BxPage().addZone(new BxZone().addLine(new BxLine().addWord(word)));
+        
+        String out = new BxDocumentToTrueVizWriter().write(Collections.singletonList(page));
+        assertTrue(out.contains("&lt;a &amp; &quot;b&quot;&gt;"));
+        domDoc = TrueVizUtils.newDocumentBuilder(true).parse(new InputSource(new StringReader(out)));
+        assertXpath("string(/Document/Page[1]/Zone[1]/Line[1]/Word[1]/Character[1]/GT_Text/@Value)", text);
+    }
+
+    private List<BxPage> getGoldenPages() {
+        BxChunk chunk = new BxChunk(new BxBounds(1.23456, 2.5, 3.0004, 4), "a&b<c>d\"e'f\tg\nh\u00e9\u20ac\uD83D\uDE00 \u0001");
+        chunk.setId("c1");
+        chunk.setFontName("Times&<\"Bold\">");
+        BxWord word = new BxWord().addChunk(chunk);
+        word.setId("w1");
+        word.setBounds(new BxBounds(1, 2, 3, 4));
+        BxLine line = new BxLine().addWord(word);
+        line.setId("l1");
+        line.setBounds(new BxBounds(1, 2, 3, 4));
+        BxZone zone = new BxZone().addLine(line).setLabel(BxZoneLabel.MET_TITLE);
+        zone.setId("z1");
+        zone.setBounds(new BxBounds(1, 2, 30, 40));
+        BxZone zone2 = new BxZone().setLabel(BxZoneLabel.BODY_CONTENT);
+        zone.setNextId("z2");
+        zone2.setId("z2");
+        BxPage page = new BxPage().addZone(zone).addZone(zone2);
+        page.setId("p1");
+        page.setNextId("p2");
+        page.setBounds(new BxBounds(0, 0, 612, 792));
+        BxPage page2 = new BxPage().addZone(new BxZone());
+        page2.setId("p2");
+        return Arrays.asList(page, page2);
+    }
+
+    /**
+     * Compares the output with the one of the DOM-based writer, serialized
+     * by Xalan, which is the transformer on the classpath.
+     */
+    @Test
+    public void testGoldenOutput() throws Exception {
+        BxDocumentToTrueVizWriter writer = new BxDocumentToTrueVizWriter();
+        String expected = IOUtils.toString(getClass().getResourceAsStream(GOLDEN_FILE), "UTF-8");
+        assertEquals(expected, writer.write(getGoldenPages()).replace("\r\n", "\n"));
+
+        expected = IOUtils.toString(getClass().getResourceAsStream(GOLDEN_FILE_MINIMAL), "UTF-8");
+        assertEquals(expected, writer.write(getGoldenPages(), BxDocumentToTrueVizWriter.MINIMAL_OUTPUT_SIZE).replace("\r\n", "\n"));
+    }
 }
@@ -155,6 +155,25 @@ public class TrueVizToBxDocumentReaderTest {
     	assertEquals(countChainedElements(doc.asChunks()), Integer.valueOf(doc.asChunks().size()-1));
     }
     
+    @Test
+    public void testSkippedElements() throws TransformationException {
+        String xml = "<Document><Unknown><Page><Zone/></Page></Unknown>"
+                + "<page><Zone><Classification><Type Value=\"title\"/><Category Value=\"author\"/></Classification>"
+                + "<ZoneCorners><Vertex x=\"1\" y=\"2\"/><Unknown><Vertex x=\"100\" y=\"200\"/></Unknown><Vertex x=\"5\" y=\"9\"/></ZoneCorners>"
+                + "<Line><Word><Character><GT_Text Value=\"a&amp;b\"/><GT_Text Value=\"c\"/><Font Type=\"font-1\"/></Character></Word>"
+                + "<Unknown><Word/></Unknown></Line></Zone></page></Document>";
+        List<BxPage> pages = new TrueVizToBxDocumentReader().read(xml);
+        assertEquals(1, pages.size());
+        BxZone zone = pages.get(0).getZones().get(0);
+        assertEquals(BxZoneLabel.MET_AUTHOR, zone.getLabel());
+        assertEquals(4, zone.getBounds().getWidth(), 0.0);
+        assertEquals(7, zone.getBounds().getHeight(), 0.0);
+        assertEquals(1, zone.getLines().get(0).getWords().size());
+        BxChunk chunk = zone.getLines().get(0).getWords().get(0).getChunks().get(0);
+        assertEquals("a&b", chunk.toText());
+        assertEquals("font-1", chunk.getFontName());
+    }
+
     @Test
     public void testHeight() throws IOException,  ParserConfigurationException, SAXException, TransformationException {
        BxPage page=new MargToTextrImporter().read(new InputStreamReader(this.getClass().getResourceAsStream("/pl/edu/icm/cermine/structure/006.xml"))).get(0);
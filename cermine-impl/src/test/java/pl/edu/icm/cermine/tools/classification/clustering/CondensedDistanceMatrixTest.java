@@ -0,0 +1,56 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.clustering;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class CondensedDistanceMatrixTest {
+
+    @Test
+    public void testIndexes() {
+        CondensedDistanceMatrix matrix = new CondensedDistanceMatrix(5);
+        int index = 0;
+        for (int i = 0; i < 5; i++) {
+            for (int j = i + 1; j < 5; j++) {
+                assertEquals(index, CondensedDistanceMatrix.getIndex(5, i, j));
+                assertEquals(index, CondensedDistanceMatrix.getIndex(5, j, i));
+                matrix.set(i, j, index);
+                index++;
+            }
+        }
+        assertEquals(1.0, matrix.get(2, 0), 0.0);
+        assertEquals(0.0, matrix.get(4, 4), 0.0);
+    }
+
+    @Test
+    public void testLargeIndexes() {
+        int size = 65536;
+        long length = (long) size * (size - 1) / 2;
+        assertEquals(length - 1, CondensedDistanceMatrix.getIndex(size, size - 2, size - 1));
+        assertEquals(length - 2, CondensedDistanceMatrix.getIndex(size, size - 1, size - 3));
+        assertEquals(size - 2, CondensedDistanceMatrix.getIndex(size, 0, size - 1));
+        assertEquals(size - 1, CondensedDistanceMatrix.getIndex(size, 1, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyElements() {
+        new CondensedDistanceMatrix(65537);
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.icm.cermine.tools.classification.clustering;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import pl.edu.icm.cermine.PdfNLMContentExtractor;
+import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
+import pl.edu.icm.cermine.tools.classification.metrics.FeatureVectorDistanceMetric;
+import pl.edu.icm.cermine.tools.classification.metrics.FeatureVectorEuclideanMetric;
+
+public class FeatureVectorClusterizerTest {
+
+    @Test
+    public void testDistanceMatrix() {
+        FeatureVector[] vectors = randomVectors(new Random(1), 300);
+        FeatureVectorDistanceMetric metric = new FeatureVectorEuclideanMetric();
+        FeatureVectorClusterizer clusterizer = new FeatureVectorClusterizer();
+        
+        int threads = PdfNLMContentExtractor.THREADS_NUMBER;
+        CondensedDistanceMatrix sequential;
+        try {
+            PdfNLMContentExtractor.THREADS_NUMBER = 1;
+            sequential = clusterizer.getDistanceMatrix(vectors, metric);
+        } finally {
+            PdfNLMContentExtractor.THREADS_NUMBER = threads;
+        }
+        CondensedDistanceMatrix pooled = clusterizer.getDistanceMatrix(vectors, metric);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CondensedDistanceMatrix parallel;
+        try {
+            clusterizer.setExecutor(executor);
+            parallel = clusterizer.getDistanceMatrix(vectors, metric);
+        } finally {
+            executor.shutdown();
+        }
+        
+        assertEquals(vectors.length, sequential.size());
+        for (int i = 0; i < vectors.length; i++) {
+            for (int j = 0; j < vectors.length; j++) {
+                double expected = metric.getDistance(vectors[i], vectors[j]);
+                assertEquals(expected, sequential.get(i, j), 1e-12);
+                assertEquals(expected, pooled.get(i, j), 1e-12);
+                assertEquals(expected, parallel.get(i, j), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testNormalizedDistanceMatrix() {
+        FeatureVector[] vectors = randomVectors(new Random(2), 20);
+        FeatureVectorBuilder<Object, Object> builder = new FeatureVectorBuilder<Object, Object>();
+        builder.setFeatureCalculators(Arrays.<FeatureCalculator<Object, Object>>asList(
+                new NamedFeature("a"), new NamedFeature("b"), new NamedFeature("c")));
+        FeatureVectorsNormalizer.normalize(vectors, builder);
+        FeatureVectorDistanceMetric metric = new FeatureVectorEuclideanMetric();
+        
+        CondensedDistanceMatrix distances = new FeatureVectorClusterizer().getDistanceMatrix(vectors, metric);
+        for (int i = 0; i < vectors.length; i++) {
+            for (int j = i + 1; j < vectors.length; j++) {
+                assertEquals(metric.getDistance(vectors[i], vectors[j]), distances.get(i, j), 1e-12);
+            }
+        }
+    }
+    
+    private static class NamedFeature extends FeatureCalculator<Object, Object> {
+        
+        private final String name;
+
+        public NamedFeature(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getFeatureName() {
+            return name;
+        }
+
+        @Override
+        public double calculateFeatureValue(Object object, Object context) {
+            return 0;
+        }
+    }
+    
+    private FeatureVector[] randomVectors(Random random, int count) {
+        FeatureVector[] vectors = new FeatureVector[count];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = new FeatureVector();
+            for (String name : Arrays.asList("a", "b", "c")) {
+                vectors[i].addFeature(name, random.nextDouble());
+            }
+        }
+        return vectors;
+    }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package pl.edu.icm.cermine.tools.classification.clustering;
+
+import java.util.*;
+import static org.junit.Assert.assertArrayEquals;
+import org.junit.Test;
+
+/**
+ * Compares the clusterizers with straightforward implementations
+ * of the linkage clustering.
+ */
+public class LinkageClusterizerTest {
+    
+    private static final ClusteringEvaluator EVALUATOR = new ClusteringEvaluator() {
+
+        @Override
+        public boolean isAcceptable(int[] clusters) {
+            int prevIndex = 0;
+            for (int i = 1; i < clusters.length; i++) {
+                if (clusters[i] == clusters[0]) {
+                    if (i - prevIndex > 3) {
+                        return false;
+                    }
+                    prevIndex = i;
+                }
+            }
+            return clusters.length - prevIndex <= 3;
+        }
+    };
+
+    @Test
+    public void testSingleLinkage() {
+        Random random = new Random(1);
+        for (int test = 0; test < 200; test++) {
+            double[][] distances = randomDistances(random, random.nextInt(30) + 1);
+            double maxDistance = random.nextDouble() * 4;
+            assertArrayEquals(simpleSingleLinkage(distances, maxDistance),
+                    new SingleLinkageClusterizer().clusterize(distances, maxDistance));
+            assertArrayEquals(simpleSingleLinkage(distances, maxDistance),
+                    new SingleLinkageClusterizer().clusterize(new CondensedDistanceMatrix(distances), maxDistance));
+        }
+    }
+
+    @Test
+    public void testCompleteLinkage() {
+        Random random = new Random(2);
+        for (int test = 0; test < 200; test++) {
+            double[][] distances = randomDistances(random, random.nextInt(30) + 1);
+            double maxDistance = random.nextDouble() * 4;
+            assertArrayEquals(simpleCompleteLinkage(distances, maxDistance, null),
+                    new CompleteLinkageClusterizer().clusterize(distances, maxDistance));
+            assertArrayEquals(simpleCompleteLinkage(distances, maxDistance, EVALUATOR),
+                    new CompleteLinkageClusterizer(EVALUATOR).clusterize(distances, maxDistance));
+            assertArrayEquals(simpleCompleteLinkage(distances, maxDistance, EVALUATOR),
+                    new CompleteLinkageClusterizer(EVALUATOR).clusterize(new CondensedDistanceMatrix(distances), 
+                    maxDistance));
+        }
+    }
+    
+    private double[][] randomDistances(Random random, int size) {
+        double[][] points = new double[size][3];
+        for (double[] point : points) {
+            for (int i = 0; i < point.length; i++) {
+                point[i] = random.nextDouble() * 2;
+            }
+        }
+        double[][] distances = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                double sum = 0;
+                for (int k = 0; k < points[i].length; k++) {
+                    sum += (points[i][k] - points[j][k]) * (points[i][k] - points[j][k]);
+                }
+                distances[i][j] = Math.sqrt(sum);
+            }
+        }
+        return distances;
+    }
+    
+    private int[] simpleSingleLinkage(double[][] distances, double maxDistance) {
+        int[] clusters = new int[distances.length];
+        for (int i = 0; i < clusters.length; i++) {
+            clusters[i] = i;
+        }
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < clusters.length; i++) {
+                for (int j = 0; j < clusters.length; j++) {
+                    if (distances[i][j] < maxDistance && clusters[i] != clusters[j]) {
+                        int old = clusters[i];
+                        for (int k = 0; k < clusters.length; k++) {
+                            if (clusters[k] == old) {
+                                clusters[k] = clusters[j];
+                            }
+                        }
+                        merged = true;
+                    }
+                }
+            }
+        }
+        return normalize(clusters);
+    }
+    
+    private int[] simpleCompleteLinkage(double[][] distances, double maxDistance, ClusteringEvaluator evaluator) {
+        List<List<Integer>> clusters = new ArrayList<List<Integer>>();
+        for (int i = 0; i < distances.length; i++) {
+            clusters.add(new ArrayList<Integer>(Arrays.asList(i)));
+        }
+        while (clusters.size() > 1) {
+            double minDistance = Double.POSITIVE_INFINITY;
+            int min1 = -1;
+            int min2 = -1;
+            for (int c1 = 0; c1 < clusters.size(); c1++) {
+                for (int c2 = c1 + 1; c2 < clusters.size(); c2++) {
+                    double distance = Double.NEGATIVE_INFINITY;
+                    for (int i : clusters.get(c1)) {
+                        for (int j : clusters.get(c2)) {
+                            distance = Math.max(distance, distances[i][j]);
+                        }
+                    }
+                    if (distance < minDistance) {
+                        minDistance = distance;
+                        min1 = c1;
+                        min2 = c2;
+                    }
+                }
+            }
+            if (minDistance < maxDistance || (evaluator != null && !evaluator.isAcceptable(toArray(clusters)))) {
+                clusters.get(min1).addAll(clusters.remove(min2));
+            } else {
+                break;
+            }
+        }
+        return toArray(clusters);
+    }
+    
+    private int[] toArray(List<List<Integer>> clusters) {
+        int size = 0;
+        for (List<Integer> cluster : clusters) {
+            size += cluster.size();
+        }
+        int[] array = new int[size];
+        for (int c = 0; c < clusters.size(); c++) {
+            for (int element : clusters.get(c)) {
+                array[element] = c;
+            }
+        }
+        return normalize(array);
+    }
+    
+    private int[] normalize(int[] clusters) {
+        Map<Integer, Integer> indexes = new HashMap<Integer, Integer>();
+        int[] normalized = new int[clusters.length];
+        for (int i = 0; i < clusters.length; i++) {
+            if (!indexes.containsKey(clusters[i])) {
+                indexes.put(clusters[i], indexes.size());
+            }
+            normalized[i] = indexes.get(clusters[i]);
+        }
+        return normalized;
+    }
+    
+}
@@ -0,0 +1,165 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.features;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class FeatureEvaluationContextTest {
+
+    private static int lengthCalculations;
+    private static int contextCalculations;
+
+    private static final SharedFeatureValue<String, List<String>> CONTEXT_LENGTH =
+            new SharedFeatureValue<String, List<String>>("ContextLength", true) {
+
+        @Override
+        public double calculate(String object, List<String> context, 
+                FeatureEvaluationContext<String, List<String>> evaluation) {
+            contextCalculations++;
+            int length = 0;
+            for (String s : context) {
+                length += s.length();
+            }
+            return length;
+        }
+    };
+
+    @Test
+    public void testMemoization() {
+        lengthCalculations = 0;
+        FeatureEvaluationContext<String, List<String>> evaluation =
+                new FeatureEvaluationContext<String, List<String>>("abc", null);
+        RelativeLengthFeature relative = new RelativeLengthFeature(false);
+        assertEquals(3.0, evaluation.getFeatureValue(new LengthFeature()), 0.0);
+        assertEquals(1.5, evaluation.getFeatureValue(relative), 0.0);
+        assertEquals(1.5, evaluation.getFeatureValue(relative), 0.0);
+        assertEquals(1, lengthCalculations);
+    }
+
+    @Test
+    public void testSharedContextValues() {
+        lengthCalculations = 0;
+        contextCalculations = 0;
+        List<String> page1 = Arrays.asList("ab", "cdef");
+        List<String> page2 = Arrays.asList("x");
+        FeatureVectorBuilder<String, List<String>> builder = new FeatureVectorBuilder<String, List<String>>();
+        builder.setFeatureCalculators(Arrays.<FeatureCalculator<String, List<String>>>asList(
+                new LengthFeature(), new RelativeLengthFeature(true)));
+
+        List<FeatureVector> vectors = builder.getFeatureVectors(
+                Arrays.asList("ab", "cdef", "x"), Arrays.asList(page1, page1, page2));
+        assertEquals(3, vectors.size());
+        assertEquals(2.0 / 6.0, vectors.get(0).getValue("RelativeLength"), 0.0);
+        assertEquals(4.0 / 6.0, vectors.get(1).getValue("RelativeLength"), 0.0);
+        assertEquals(1.0, vectors.get(2).getValue("RelativeLength"), 0.0);
+        assertEquals(3, lengthCalculations);
+        assertEquals(2, contextCalculations);
+
+        FeatureVector single = builder.getFeatureVector("ab", page1);
+        assertEquals(vectors.get(0).getValue("RelativeLength"), single.getValue("RelativeLength"), 0.0);
+    }
+
+    @Test
+    public void testContextValueCache() {
+        contextCalculations = 0;
+        List<String> page1 = Arrays.asList("ab", "cdef");
+        List<String> page2 = Arrays.asList("x");
+        FeatureVectorBuilder<String, List<String>> builder = new FeatureVectorBuilder<String, List<String>>();
+        builder.setFeatureCalculators(Arrays.<FeatureCalculator<String, List<String>>>asList(
+                new LengthFeature(), new RelativeLengthFeature(true)));
+        ContextValueCache<List<String>> cache = new ContextValueCache<List<String>>();
+
+        assertEquals(2.0 / 6.0, builder.getFeatureVector("ab", page1, cache).getValue("RelativeLength"), 0.0);
+        assertEquals(4.0 / 6.0, builder.getFeatureVector("cdef", page1, cache).getValue("RelativeLength"), 0.0);
+        List<FeatureVector> vectors = builder.getFeatureVectors(
+                Arrays.asList("x", "ab"), Arrays.asList(page2, page1), cache);
+        assertEquals(1.0, vectors.get(0).getValue("RelativeLength"), 0.0);
+        assertEquals(2.0 / 6.0, vectors.get(1).getValue("RelativeLength"), 0.0);
+        assertEquals(2, contextCalculations);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCycle() {
+        new FeatureEvaluationContext<String, List<String>>("abc", null).getFeatureValue(new CyclicFeature());
+    }
+
+    private static class LengthFeature extends FeatureCalculator<String, List<String>> {
+
+        @Override
+        public String getFeatureName() {
+            return "Length";
+        }
+
+        @Override
+        public double calculateFeatureValue(String object, List<String> context) {
+            lengthCalculations++;
+            return object.length();
+        }
+    }
+
+    private static class RelativeLengthFeature extends FeatureCalculator<String, List<String>> {
+
+        private final boolean useContext;
+
+        public RelativeLengthFeature(boolean useContext) {
+            this.useContext = useContext;
+        }
+
+        @Override
+        public String getFeatureName() {
+            return "RelativeLength";
+        }
+
+        @Override
+        public double calculateFeatureValue(String object, List<String> context) {
+            return calculateFeatureValue(object, context, 
+                    new FeatureEvaluationContext<String, List<String>>(object, context));
+        }
+
+        @Override
+        public double calculateFeatureValue(String object, List<String> context,
+                FeatureEvaluationContext<String, List<String>> evaluation) {
+            double length = evaluation.getFeatureValue(new LengthFeature());
+            return length / (useContext ? evaluation.getValue(CONTEXT_LENGTH) : 2);
+        }
+    }
+
+    private static class CyclicFeature extends FeatureCalculator<String, List<String>> {
+
+        @Override
+        public String getFeatureName() {
+            return "Cyclic";
+        }
+
+        @Override
+        public double calculateFeatureValue(String object, List<String> context) {
+            return 0;
+        }
+
+        @Override
+        public double calculateFeatureValue(String object, List<String> context,
+                FeatureEvaluationContext<String, List<String>> evaluation) {
+            return evaluation.getFeatureValue(this);
+        }
+    }
+
+}
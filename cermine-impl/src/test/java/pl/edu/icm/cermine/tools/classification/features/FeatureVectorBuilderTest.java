@@ -0,0 +1,138 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.features;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FeatureVectorBuilderTest {
+
+    private FeatureVectorBuilder<String, Object> builder;
+
+    @Before
+    public void setUp() {
+        builder = new FeatureVectorBuilder<String, Object>();
+        builder.setFeatureCalculators(Arrays.<FeatureCalculator<String, Object>>asList(
+                new LengthFeature(), new SlowFeature()));
+    }
+
+    @Test
+    public void testNoProfiling() {
+        FeatureVector fv = builder.getFeatureVector("abc", null);
+        assertEquals(Arrays.asList("Length", "Slow"), fv.getFeatureNames());
+        assertEquals(3.0, fv.getValue("Length"), 0.0);
+        assertFalse(builder.isProfiling());
+        assertTrue(builder.getCalculationTimes().isEmpty());
+        assertTrue(builder.getCalculationCounts().isEmpty());
+    }
+
+    @Test
+    public void testProfiling() {
+        builder.setProfiling(true);
+        FeatureVector fv = builder.getFeatureVector("abc", null);
+        builder.getFeatureVector("abcd", null);
+        assertEquals(3.0, fv.getValue("Length"), 0.0);
+
+        Map<String, Long> counts = builder.getCalculationCounts();
+        assertEquals(Arrays.asList("Length", "Slow"), Arrays.asList(counts.keySet().toArray()));
+        assertEquals(Long.valueOf(2), counts.get("Length"));
+        assertEquals(Long.valueOf(2), counts.get("Slow"));
+        Map<String, Long> times = builder.getCalculationTimes();
+        assertTrue(times.get("Slow") >= 2 * 1000000L);
+
+        builder.setProfiling(true);
+        assertEquals(Long.valueOf(0), builder.getCalculationCounts().get("Slow"));
+        builder.setProfiling(false);
+        assertTrue(builder.getCalculationCounts().isEmpty());
+    }
+
+    @Test
+    public void testLabelDependentFeatures() {
+        FeatureVectorBuilder<String, Object> labelBuilder = new FeatureVectorBuilder<String, Object>();
+        labelBuilder.setFeatureCalculators(Arrays.<FeatureCalculator<String, Object>>asList(
+                new LengthFeature(), new ContextLengthFeature()));
+        assertTrue(labelBuilder.isLabelDependent());
+        assertFalse(builder.isLabelDependent());
+        
+        List<FeatureVector> fvs = labelBuilder.getLabelIndependentFeatureVectors(
+                Arrays.asList("abc", "de"), Arrays.<Object>asList("wxyz", "v"));
+        assertEquals(Arrays.asList("Length", "ContextLength"), fvs.get(0).getFeatureNames());
+        assertArrayEquals(new double[]{3, 0}, fvs.get(0).getValues(), 0.0);
+        assertArrayEquals(new double[]{2, 0}, fvs.get(1).getValues(), 0.0);
+        
+        labelBuilder.updateLabelDependentFeatures(fvs.get(1), "de", "v");
+        assertArrayEquals(new double[]{2, 1}, fvs.get(1).getValues(), 0.0);
+        assertArrayEquals(labelBuilder.getFeatureVector("de", "v").getValues(), fvs.get(1).getValues(), 0.0);
+    }
+
+    private static class LengthFeature extends FeatureCalculator<String, Object> {
+
+        @Override
+        public String getFeatureName() {
+            return "Length";
+        }
+
+        @Override
+        public double calculateFeatureValue(String object, Object context) {
+            return object.length();
+        }
+    }
+
+    /** stands for a feature depending on the labels of other objects */
+    private static class ContextLengthFeature extends FeatureCalculator<String, Object> {
+
+        @Override
+        public String getFeatureName() {
+            return "ContextLength";
+        }
+
+        @Override
+        public double calculateFeatureValue(String object, Object context) {
+            return context.toString().length();
+        }
+
+        @Override
+        public boolean isLabelDependent() {
+            return true;
+        }
+    }
+
+    private static class SlowFeature extends FeatureCalculator<String, Object> {
+
+        @Override
+        public String getFeatureName() {
+            return "Slow";
+        }
+
+        @Override
+        public double calculateFeatureValue(String object, Object context) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        }
+    }
+
+}
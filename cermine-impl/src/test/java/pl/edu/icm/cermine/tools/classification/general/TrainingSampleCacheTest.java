@@ -0,0 +1,224 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.general;
+
+import java.io.*;
+import java.util.*;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.icm.cermine.exception.AnalysisException;
+import pl.edu.icm.cermine.structure.model.BxPage;
+import pl.edu.icm.cermine.structure.model.BxZone;
+import pl.edu.icm.cermine.structure.model.BxZoneLabel;
+import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
+
+public class TrainingSampleCacheTest {
+
+    private static final String SOURCE = "test";
+
+    private File file;
+    private FeatureVectorBuilder<BxZone, BxPage> vectorBuilder;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("samples", ".cache");
+        file.delete();
+        vectorBuilder = getBuilder(new FirstFeature(), new SecondFeature());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        TrainingSampleCache cache = new TrainingSampleCache(file, vectorBuilder, SOURCE);
+        assertFalse(cache.isValid());
+
+        List<TrainingSample<BxZoneLabel>> samples = new ArrayList<TrainingSample<BxZoneLabel>>();
+        samples.add(getSample(BxZoneLabel.MET_TITLE, "doc1.cxml", "Title ąę", 1.5, -2.0));
+        samples.add(getSample(BxZoneLabel.BODY_CONTENT, "doc1.cxml", null, 0.0, Double.NaN));
+        samples.add(getSample(null, "doc2.cxml", "", 3.25, 1e-10));
+        samples.add(getSample(BxZoneLabel.OTH_UNKNOWN, null, "text", -1.0, 7.0));
+        cache.write(samples);
+
+        assertTrue(cache.isValid());
+        List<TrainingSample<BxZoneLabel>> read = new TrainingSampleCache(file, vectorBuilder, SOURCE).read();
+        assertEquals(samples.size(), read.size());
+        for (int i = 0; i < samples.size(); i++) {
+            TrainingSample<BxZoneLabel> expected = samples.get(i);
+            TrainingSample<BxZoneLabel> actual = read.get(i);
+            assertEquals(expected.getLabel(), actual.getLabel());
+            assertEquals(expected.getDocumentId(), actual.getDocumentId());
+            assertEquals(expected.getData(), actual.getData());
+            assertEquals(vectorBuilder.getFeatureNames(), actual.getFeatureVector().getFeatureNames());
+            assertArrayEquals(expected.getFeatureVector().getValues(), actual.getFeatureVector().getValues(), 0.0);
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        TrainingSampleCache cache = new TrainingSampleCache(file, vectorBuilder, SOURCE);
+        cache.write(new ArrayList<TrainingSample<BxZoneLabel>>());
+        assertTrue(cache.isValid());
+        assertTrue(cache.read().isEmpty());
+    }
+
+    @Test
+    public void testSchemaChange() throws IOException {
+        new TrainingSampleCache(file, vectorBuilder, SOURCE).write(
+                Arrays.asList(getSample(BxZoneLabel.MET_TITLE, "doc1.cxml", "Title", 1.0, 2.0)));
+
+        assertFalse(new TrainingSampleCache(file, getBuilder(new SecondFeature(), new FirstFeature()), SOURCE).isValid());
+        assertFalse(new TrainingSampleCache(file, getBuilder(new FirstFeature()), SOURCE).isValid());
+        assertFalse(new TrainingSampleCache(file, vectorBuilder, "other").isValid());
+        assertFalse(new TrainingSampleCache(file, getBuilder(new FirstFeature(), new SecondFeature(2)), SOURCE).isValid());
+        assertTrue(new TrainingSampleCache(file, getBuilder(new FirstFeature(), new SecondFeature()), SOURCE).isValid());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalid() throws IOException {
+        new TrainingSampleCache(file, vectorBuilder, SOURCE).write(
+                Arrays.asList(getSample(BxZoneLabel.MET_TITLE, "doc1.cxml", "Title", 1.0, 2.0)));
+        new TrainingSampleCache(file, getBuilder(new FirstFeature()), SOURCE).read();
+    }
+
+    @Test
+    public void testCachedSamples() throws IOException, AnalysisException {
+        File dir = File.createTempFile("corpus", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            writeFile(new File(dir, "doc1.cxml"), "first");
+            writeFile(new File(dir, "notes.txt"), "notes");
+            final List<String> calls = new ArrayList<String>();
+            TrainingSampleCache.SampleProvider provider = new TrainingSampleCache.SampleProvider() {
+
+                @Override
+                public List<TrainingSample<BxZoneLabel>> getSamples(String inputFile, String ext) {
+                    calls.add(ext);
+                    return Arrays.asList(getSample(BxZoneLabel.MET_TITLE, "doc1.cxml", "Title", 1.0, 2.0));
+                }
+            };
+            Map<BxZoneLabel, BxZoneLabel> labelMap = new EnumMap<BxZoneLabel, BxZoneLabel>(BxZoneLabel.class);
+            String input = dir.getPath();
+
+            assertEquals(1, TrainingSampleCache.getSamples(file, vectorBuilder, SOURCE, input, "cxml", labelMap, provider).size());
+            assertEquals(1, TrainingSampleCache.getSamples(file, vectorBuilder, SOURCE, input, "cxml", labelMap, provider).size());
+            assertEquals(Arrays.asList("cxml"), calls);
+
+            writeFile(new File(dir, "notes2.txt"), "other notes");
+            TrainingSampleCache.getSamples(file, vectorBuilder, SOURCE, input, "cxml", labelMap, provider);
+            assertEquals(1, calls.size());
+
+            TrainingSampleCache.getSamples(file, vectorBuilder, SOURCE, input, "txt", labelMap, provider);
+            assertEquals(2, calls.size());
+
+            labelMap.put(BxZoneLabel.MET_TITLE, BxZoneLabel.GEN_METADATA);
+            TrainingSampleCache.getSamples(file, vectorBuilder, SOURCE, input, "txt", labelMap, provider);
+            assertEquals(3, calls.size());
+
+            writeFile(new File(dir, "doc2.txt"), "second");
+            TrainingSampleCache.getSamples(file, vectorBuilder, SOURCE, input, "txt", labelMap, provider);
+            assertEquals(4, calls.size());
+
+            TrainingSampleCache.getSamples(null, vectorBuilder, SOURCE, input, "txt", labelMap, provider);
+            assertEquals(5, calls.size());
+        } finally {
+            for (File child : dir.listFiles()) {
+                child.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private TrainingSample<BxZoneLabel> getSample(BxZoneLabel label, String document, String data, double... values) {
+        FeatureVector fv = new FeatureVector();
+        List<String> names = vectorBuilder.getFeatureNames();
+        for (int i = 0; i < values.length; i++) {
+            fv.addFeature(names.get(i), values[i]);
+        }
+        TrainingSample<BxZoneLabel> sample = new TrainingSample<BxZoneLabel>(fv, label);
+        sample.setDocumentId(document);
+        sample.setData(data);
+        return sample;
+    }
+
+    private static FeatureVectorBuilder<BxZone, BxPage> getBuilder(FeatureCalculator<BxZone, BxPage>... calculators) {
+        FeatureVectorBuilder<BxZone, BxPage> builder = new FeatureVectorBuilder<BxZone, BxPage>();
+        builder.setFeatureCalculators(new ArrayList<FeatureCalculator<BxZone, BxPage>>(Arrays.asList(calculators)));
+        return builder;
+    }
+
+    private static class FirstFeature extends FeatureCalculator<BxZone, BxPage> {
+
+        @Override
+        public String getFeatureName() {
+            return "First";
+        }
+
+        @Override
+        public double calculateFeatureValue(BxZone object, BxPage context) {
+            return 0;
+        }
+    }
+
+    private static class SecondFeature extends FeatureCalculator<BxZone, BxPage> {
+
+        private final int version;
+
+        public SecondFeature() {
+            this(1);
+        }
+
+        public SecondFeature(int version) {
+            this.version = version;
+        }
+
+        @Override
+        public String getFeatureName() {
+            return "Second";
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public double calculateFeatureValue(BxZone object, BxPage context) {
+            return 1;
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.svm;
+
+import java.io.*;
+import java.util.Random;
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.icm.cermine.tools.classification.general.FeatureLimits;
+import pl.edu.icm.cermine.tools.classification.general.FeatureVectorScalerImpl;
+import pl.edu.icm.cermine.tools.classification.general.FeatureVectorScalerNoOp;
+
+public class CompiledSVMModelTest {
+
+    private static final String MODEL_PATH = "/pl/edu/icm/cermine/content/header.model";
+    private static final String RANGE_PATH = "/pl/edu/icm/cermine/content/header.range";
+
+    private svm_model model;
+    private FeatureVectorScalerImpl scaler;
+
+    @Before
+    public void setUp() throws IOException {
+        BufferedReader modelReader = new BufferedReader(new InputStreamReader(
+                CompiledSVMModelTest.class.getResourceAsStream(MODEL_PATH)));
+        try {
+            model = svm.svm_load_model(modelReader);
+        } finally {
+            modelReader.close();
+        }
+        scaler = FeatureVectorScalerImpl.fromRangeReader(new BufferedReader(new InputStreamReader(
+                CompiledSVMModelTest.class.getResourceAsStream(RANGE_PATH))));
+    }
+
+    @Test
+    public void testReadFromStream() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        CompiledSVMModel.write(model, scaler, os);
+        CompiledSVMModel compiled = CompiledSVMModel.read(new ByteArrayInputStream(os.toByteArray()));
+
+        assertSameLimits(compiled);
+        assertSamePredictions(compiled.getModel());
+    }
+
+    @Test
+    public void testMap() throws IOException {
+        File file = File.createTempFile("header", SVMClassifier.COMPILED_MODEL_EXTENSION);
+        file.deleteOnExit();
+        OutputStream os = new FileOutputStream(file);
+        try {
+            CompiledSVMModel.write(model, scaler, os);
+        } finally {
+            os.close();
+        }
+        CompiledSVMModel compiled = CompiledSVMModel.map(file);
+
+        assertSameLimits(compiled);
+        assertSamePredictions(compiled.getModel());
+    }
+
+    @Test
+    public void testNoScaling() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        CompiledSVMModel.write(model, new FeatureVectorScalerNoOp(), os);
+        CompiledSVMModel compiled = CompiledSVMModel.read(new ByteArrayInputStream(os.toByteArray()));
+
+        assertNull(compiled.getLimits());
+        assertTrue(compiled.getScaler() instanceof FeatureVectorScalerNoOp);
+        assertSamePredictions(compiled.getModel());
+    }
+
+    @Test
+    public void testToSvmModel() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        CompiledSVMModel.write(model, scaler, os);
+        DenseSVMModel dense = CompiledSVMModel.read(new ByteArrayInputStream(os.toByteArray())).getModel();
+        svm_model restored = dense.toSvmModel();
+
+        assertTrue(dense.isBuiltFrom(restored));
+        assertEquals(model.nr_class, restored.nr_class);
+        assertEquals(model.l, restored.l);
+        assertArrayEquals(model.label, restored.label);
+        assertArrayEquals(model.nSV, restored.nSV);
+        Random random = new Random(11);
+        for (int i = 0; i < 50; i++) {
+            svm_node[] nodes = randomInstance(random, dense.getDimension());
+            assertEquals(svm.svm_predict(model, nodes), svm.svm_predict(restored, nodes), 0.0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws IOException {
+        CompiledSVMModel.read(CompiledSVMModelTest.class.getResourceAsStream(RANGE_PATH));
+    }
+
+    private void assertSameLimits(CompiledSVMModel compiled) {
+        FeatureLimits[] expected = scaler.getLimits();
+        FeatureLimits[] actual = compiled.getLimits();
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getMin(), actual[i].getMin(), 0.0);
+            assertEquals(expected[i].getMax(), actual[i].getMax(), 0.0);
+        }
+    }
+
+    private void assertSamePredictions(DenseSVMModel dense) {
+        Random random = new Random(2013);
+        for (int i = 0; i < 200; i++) {
+            svm_node[] nodes = randomInstance(random, dense.getDimension());
+            double[] instance = new double[nodes.length];
+            for (int j = 0; j < nodes.length; j++) {
+                instance[j] = nodes[j].value;
+            }
+            assertEquals(svm.svm_predict(model, nodes), dense.predict(instance), 0.0);
+        }
+    }
+
+    private static svm_node[] randomInstance(Random random, int dimension) {
+        svm_node[] nodes = new svm_node[dimension];
+        for (int j = 0; j < dimension; j++) {
+            nodes[j] = new svm_node();
+            nodes[j].index = j;
+            nodes[j].value = random.nextInt(4) == 0 ? 0.0 : random.nextDouble();
+        }
+        return nodes;
+    }
+
+}
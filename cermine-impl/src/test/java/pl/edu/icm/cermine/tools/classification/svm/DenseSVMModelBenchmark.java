@@ -0,0 +1,116 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.svm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Random;
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+
+/**
+ * Compares the prediction time of libsvm and DenseSVMModel on the bundled
+ * initial and metadata zone classification models.
+ *
+ * Usage: DenseSVMModelBenchmark [iterations]
+ */
+public class DenseSVMModelBenchmark {
+
+    private static final String[] MODELS = {
+        "/pl/edu/icm/cermine/structure/model-initial-default",
+        "/pl/edu/icm/cermine/structure/model-metadata-default"
+    };
+
+    private static final int SAMPLES = 1000;
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        for (String path : MODELS) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    DenseSVMModelBenchmark.class.getResourceAsStream(path)));
+            svm_model model = svm.svm_load_model(reader);
+            reader.close();
+            DenseSVMModel dense = new DenseSVMModel(model);
+
+            Random random = new Random(2013);
+            double[][] instances = new double[SAMPLES][dense.getDimension()];
+            for (double[] instance : instances) {
+                for (int i = 0; i < instance.length; i++) {
+                    instance[i] = random.nextDouble();
+                }
+            }
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                runLibsvm(model, instances);
+                runDense(dense, instances);
+            }
+
+            long libsvmTime = 0;
+            long denseTime = 0;
+            double checksum = 0;
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+                checksum += runLibsvm(model, instances);
+                libsvmTime += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                checksum -= runDense(dense, instances);
+                denseTime += System.nanoTime() - start;
+            }
+
+            long predictions = (long) rounds * SAMPLES;
+            System.out.println(path);
+            System.out.println("    support vectors: " + model.l + ", features: " + dense.getDimension());
+            System.out.printf("    libsvm: %.1f us/prediction%n", libsvmTime / 1000.0 / predictions);
+            System.out.printf("    dense:  %.1f us/prediction%n", denseTime / 1000.0 / predictions);
+            System.out.printf("    speedup: %.2fx%n", (double) libsvmTime / denseTime);
+            if (checksum != 0) {
+                System.out.println("    WARNING: predictions differ!");
+            }
+        }
+    }
+
+    private static double runLibsvm(svm_model model, double[][] instances) {
+        double sum = 0;
+        for (double[] instance : instances) {
+            svm_node[] nodes = new svm_node[instance.length];
+            for (int i = 0; i < instance.length; i++) {
+                nodes[i] = new svm_node();
+                nodes[i].index = i;
+                nodes[i].value = instance[i];
+            }
+            sum += svm.svm_predict(model, nodes);
+        }
+        return sum;
+    }
+
+    private static double runDense(DenseSVMModel model, double[][] instances) {
+        double sum = 0;
+        for (double[] instance : instances) {
+            sum += model.predict(instance);
+        }
+        return sum;
+    }
+
+}
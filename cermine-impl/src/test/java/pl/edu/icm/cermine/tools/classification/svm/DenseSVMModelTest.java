@@ -0,0 +1,171 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.svm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Random;
+import libsvm.*;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class DenseSVMModelTest {
+
+    private static final String HEADER_MODEL = "/pl/edu/icm/cermine/content/header.model";
+    private static final String METADATA_MODEL = "/pl/edu/icm/cermine/structure/model-metadata-humanities";
+
+    @Test
+    public void testHeaderModel() throws IOException {
+        assertSamePredictions(loadModel(HEADER_MODEL), 200);
+    }
+
+    @Test
+    public void testMetadataModel() throws IOException {
+        assertSamePredictions(loadModel(METADATA_MODEL), 200);
+    }
+
+    @Test
+    public void testPolynomialModel() {
+        Random random = new Random(7);
+        svm_problem problem = new svm_problem();
+        problem.l = 100;
+        problem.x = new svm_node[problem.l][];
+        problem.y = new double[problem.l];
+        for (int i = 0; i < problem.l; i++) {
+            problem.x[i] = randomInstance(random, 6);
+            problem.y[i] = random.nextInt(3);
+        }
+        svm_parameter param = SVMClassifier.getDefaultParam();
+        svm.svm_set_print_string_function(new svm_print_interface() {
+            @Override
+            public void print(String s) {
+            }
+        });
+        assertSamePredictions(svm.svm_train(problem, param), 200);
+    }
+
+    @Test
+    public void testBinaryMargin() throws IOException {
+        DenseSVMModel dense = new DenseSVMModel(loadModel(HEADER_MODEL));
+        Random random = new Random(5);
+        double[] values = new double[dense.getDecisionValuesCount()];
+        for (int i = 0; i < 100; i++) {
+            double label = dense.predictValues(toArray(randomInstance(random, dense.getDimension())), values);
+            assertEquals(Math.abs(values[0]), dense.getMargin(values, label), 0.0);
+        }
+    }
+
+    @Test
+    public void testMulticlassMargin() throws IOException {
+        svm_model model = loadModel(METADATA_MODEL);
+        DenseSVMModel dense = new DenseSVMModel(model);
+        Random random = new Random(5);
+        double[] values = new double[dense.getDecisionValuesCount()];
+        for (int i = 0; i < 100; i++) {
+            double label = dense.predictValues(toArray(randomInstance(random, dense.getDimension())), values);
+            double margin = dense.getMargin(values, label);
+
+            boolean wonAll = true;
+            int p = 0;
+            for (int j = 0; j < model.nr_class; j++) {
+                for (int k = j + 1; k < model.nr_class; k++) {
+                    if ((model.label[j] == label && values[p] <= 0) || (model.label[k] == label && values[p] > 0)) {
+                        wonAll = false;
+                    }
+                    p++;
+                }
+            }
+            assertEquals(wonAll, margin > 0);
+        }
+    }
+
+    @Test
+    public void testBatchPrediction() throws IOException {
+        DenseSVMModel dense = new DenseSVMModel(loadModel(METADATA_MODEL));
+        Random random = new Random(17);
+        double[][] instances = new double[75][];
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = toArray(randomInstance(random, dense.getDimension()));
+        }
+        double[][] batchValues = new double[instances.length][dense.getDecisionValuesCount()];
+        double[] batchLabels = dense.predictValues(instances, batchValues);
+        
+        double[] values = new double[dense.getDecisionValuesCount()];
+        for (int i = 0; i < instances.length; i++) {
+            assertEquals(dense.predictValues(instances[i], values), batchLabels[i], 0.0);
+            for (int j = 0; j < values.length; j++) {
+                assertEquals(values[j], batchValues[i][j], 0.0);
+            }
+        }
+        assertEquals(0, dense.predictValues(new double[0][], null).length);
+    }
+
+    private static void assertSamePredictions(svm_model model, int samples) {
+        DenseSVMModel dense = new DenseSVMModel(model);
+        Random random = new Random(2013);
+        for (int i = 0; i < samples; i++) {
+            svm_node[] nodes = randomInstance(random, dense.getDimension());
+            double[] instance = new double[nodes.length];
+            for (int j = 0; j < nodes.length; j++) {
+                instance[j] = nodes[j].value;
+            }
+
+            double[] expectedValues = new double[dense.getDecisionValuesCount()];
+            double[] actualValues = new double[dense.getDecisionValuesCount()];
+            double expected = svm.svm_predict_values(model, nodes, expectedValues);
+            double actual = dense.predictValues(instance, actualValues);
+
+            assertEquals(expected, actual, 0.0);
+            for (int j = 0; j < expectedValues.length; j++) {
+                assertEquals(expectedValues[j], actualValues[j], 0.0);
+            }
+            assertEquals(svm.svm_predict(model, nodes), dense.predict(instance), 0.0);
+        }
+    }
+
+    private static double[] toArray(svm_node[] nodes) {
+        double[] instance = new double[nodes.length];
+        for (int j = 0; j < nodes.length; j++) {
+            instance[j] = nodes[j].value;
+        }
+        return instance;
+    }
+
+    private static svm_node[] randomInstance(Random random, int dimension) {
+        svm_node[] nodes = new svm_node[dimension];
+        for (int j = 0; j < dimension; j++) {
+            nodes[j] = new svm_node();
+            nodes[j].index = j;
+            nodes[j].value = random.nextInt(4) == 0 ? 0.0 : random.nextDouble();
+        }
+        return nodes;
+    }
+
+    private static svm_model loadModel(String path) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                DenseSVMModelTest.class.getResourceAsStream(path)));
+        try {
+            return svm.svm_load_model(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+}
@@ -0,0 +1,363 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.tools.classification.svm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import pl.edu.icm.cermine.exception.AnalysisException;
+import pl.edu.icm.cermine.exception.TransformationException;
+import pl.edu.icm.cermine.structure.HierarchicalReadingOrderResolver;
+import pl.edu.icm.cermine.structure.SVMInitialZoneClassifier;
+import pl.edu.icm.cermine.structure.model.BxDocument;
+import pl.edu.icm.cermine.structure.model.BxPage;
+import pl.edu.icm.cermine.structure.model.BxZone;
+import pl.edu.icm.cermine.structure.model.BxZoneLabel;
+import pl.edu.icm.cermine.structure.transformers.TrueVizToBxDocumentReader;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
+
+public class PooledZoneClassifierTest {
+
+    private static final long LONG_DELAY = 60000;
+    
+    private static final String ZIP_FILE = "/pl/edu/icm/cermine/structure/roa_test_small.zip";
+    
+    private static final String DOCUMENT_FILE = "1748717X.xml";
+
+    @Test
+    public void testSingleThread() throws AnalysisException {
+        StubClassifier stub = new StubClassifier();
+        PooledZoneClassifier pool = new PooledZoneClassifier(stub, 10, LONG_DELAY);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            BxDocument document = getDocument("doc" + i);
+            assertSame(document, pool.classifyZones(document));
+            assertTrue(stub.isClassified(document));
+        }
+        assertTrue(System.currentTimeMillis() - start < LONG_DELAY / 2);
+        assertEquals(Arrays.asList(1, 1, 1), stub.getBatchSizes());
+    }
+
+    @Test
+    public void testBatching() throws InterruptedException {
+        StubClassifier stub = new StubClassifier();
+        PooledZoneClassifier pool = new PooledZoneClassifier(stub, 3, LONG_DELAY);
+        Map<BxDocument, Throwable> results = classifyWhileBlocked(pool, stub, 
+                getDocument("a"), getDocument("b"), getDocument("c"));
+        
+        assertEquals(Arrays.asList(1, 3), stub.getBatchSizes());
+        for (Map.Entry<BxDocument, Throwable> result : results.entrySet()) {
+            assertNull(result.getValue());
+            assertTrue(stub.isClassified(result.getKey()));
+        }
+    }
+
+    @Test
+    public void testFailureIsolation() throws InterruptedException {
+        StubClassifier stub = new StubClassifier();
+        PooledZoneClassifier pool = new PooledZoneClassifier(stub, 3, LONG_DELAY);
+        BxDocument first = getDocument("first");
+        BxDocument failing = getDocument("exception");
+        BxDocument second = getDocument("second");
+        Map<BxDocument, Throwable> results = classifyWhileBlocked(pool, stub, first, failing, second);
+        
+        assertNull(results.get(first));
+        assertNull(results.get(second));
+        assertTrue(stub.isClassified(first));
+        assertTrue(stub.isClassified(second));
+        assertTrue(results.get(failing) instanceof AnalysisException);
+        assertFalse(stub.isClassified(failing));
+    }
+
+    @Test
+    public void testErrorIsolation() throws InterruptedException {
+        StubClassifier stub = new StubClassifier();
+        PooledZoneClassifier pool = new PooledZoneClassifier(stub, 3, LONG_DELAY);
+        BxDocument first = getDocument("first");
+        BxDocument failing = getDocument("error");
+        BxDocument second = getDocument("second");
+        Map<BxDocument, Throwable> results = classifyWhileBlocked(pool, stub, first, failing, second);
+        
+        assertNull(results.get(first));
+        assertNull(results.get(second));
+        assertTrue(results.get(failing) instanceof StubError);
+        assertFalse(stub.isClassified(failing));
+    }
+
+    @Test
+    public void testSingleDocumentError() throws AnalysisException {
+        PooledZoneClassifier pool = new PooledZoneClassifier(new StubClassifier(), 10, LONG_DELAY);
+        try {
+            pool.classifyZones(getDocument("error"));
+            fail("Error expected");
+        } catch (StubError ex) {
+            // expected
+        }
+        BxDocument document = getDocument("next");
+        assertSame(document, pool.classifyZones(document));
+    }
+
+    @Test
+    public void testLabelDependentClassifier() throws Exception {
+        SVMInitialZoneClassifier sequential = new SVMInitialZoneClassifier();
+        BxDocument expected = readDocument();
+        sequential.classifyZones(expected);
+        
+        InitialClassifier classifier = new InitialClassifier();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            classifier.setExecutor(executor);
+            PooledZoneClassifier pool = new PooledZoneClassifier(classifier, 3, LONG_DELAY);
+            BxDocument blocked = readDocument();
+            BxDocument[] documents = new BxDocument[]{readDocument(), readDocument(), readDocument()};
+            Map<BxDocument, Throwable> results = classifyWhileBlocked(pool, classifier.gate, blocked, documents);
+            
+            assertEquals(Arrays.asList(1, 3), classifier.getBatchSizes());
+            assertEquals(getLabels(expected), getLabels(blocked));
+            for (BxDocument document : documents) {
+                assertNull(results.get(document));
+                assertEquals(getLabels(expected), getLabels(document));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    private static BxDocument readDocument() throws IOException, URISyntaxException, TransformationException {
+        ZipFile zipFile = new ZipFile(new File(PooledZoneClassifierTest.class.getResource(ZIP_FILE).toURI()));
+        try {
+            InputStreamReader reader = new InputStreamReader(zipFile.getInputStream(zipFile.getEntry(DOCUMENT_FILE)));
+            BxDocument document = new BxDocument().setPages(new TrueVizToBxDocumentReader().read(reader));
+            document = new HierarchicalReadingOrderResolver().resolve(document);
+            for (BxZone zone : document.asZones()) {
+                zone.setLabel(null);
+            }
+            return document;
+        } finally {
+            zipFile.close();
+        }
+    }
+    
+    private static List<BxZoneLabel> getLabels(BxDocument document) {
+        List<BxZoneLabel> labels = new ArrayList<BxZoneLabel>();
+        for (BxZone zone : document.asZones()) {
+            labels.add(zone.getLabel());
+        }
+        return labels;
+    }
+
+    /**
+     * Classifies a document, and while its classification is blocked, 
+     * classifies the given documents concurrently.
+     * 
+     * @return the errors of the given documents, null for success
+     */
+    private Map<BxDocument, Throwable> classifyWhileBlocked(PooledZoneClassifier pool, StubClassifier stub, 
+            BxDocument... documents) throws InterruptedException {
+        return classifyWhileBlocked(pool, stub.gate, getDocument("blocked"), documents);
+    }
+    
+    private Map<BxDocument, Throwable> classifyWhileBlocked(PooledZoneClassifier pool, Gate gate, 
+            BxDocument blockedDocument, BxDocument... documents) throws InterruptedException {
+        gate.block();
+        Classification blocked = new Classification(pool, blockedDocument);
+        blocked.start();
+        assertTrue(gate.entered.await(10, TimeUnit.SECONDS));
+        
+        List<Classification> classifications = new ArrayList<Classification>();
+        for (BxDocument document : documents) {
+            Classification classification = new Classification(pool, document);
+            classifications.add(classification);
+            classification.start();
+        }
+        Map<BxDocument, Throwable> results = new HashMap<BxDocument, Throwable>();
+        for (Classification classification : classifications) {
+            classification.join(LONG_DELAY / 2);
+            assertFalse(classification.isAlive());
+            results.put(classification.document, classification.error);
+        }
+        
+        gate.release.countDown();
+        blocked.join(LONG_DELAY / 2);
+        assertFalse(blocked.isAlive());
+        assertNull(blocked.error);
+        return results;
+    }
+    
+    private static BxDocument getDocument(String name) {
+        BxDocument document = new BxDocument();
+        document.setFilename(name);
+        return document;
+    }
+
+    private static class Classification extends Thread {
+        
+        private final PooledZoneClassifier pool;
+        
+        private final BxDocument document;
+        
+        private volatile Throwable error;
+
+        Classification(PooledZoneClassifier pool, BxDocument document) {
+            this.pool = pool;
+            this.document = document;
+        }
+
+        @Override
+        public void run() {
+            try {
+                pool.classifyZones(document);
+            } catch (Throwable ex) {
+                error = ex;
+            }
+        }
+    }
+    
+    private static class StubError extends Error {
+    }
+
+    /**
+     * Classifier failing for documents named "exception" or "error", and
+     * optionally blocking its first batch until released.
+     */
+    private static class StubClassifier extends SVMZoneClassifier {
+        
+        private final List<Integer> batchSizes = new ArrayList<Integer>();
+        
+        private final Set<BxDocument> classified = new HashSet<BxDocument>();
+        
+        private final Gate gate = new Gate();
+
+        StubClassifier() {
+            super(new FeatureVectorBuilder<BxZone, BxPage>());
+        }
+
+        @Override
+        public List<BxDocument> classifyDocuments(List<BxDocument> documents) throws AnalysisException {
+            synchronized (this) {
+                batchSizes.add(documents.size());
+            }
+            gate.pass();
+            for (BxDocument document : documents) {
+                check(document);
+            }
+            for (BxDocument document : documents) {
+                setClassified(document);
+            }
+            return documents;
+        }
+
+        @Override
+        public BxDocument classifyZones(BxDocument document) throws AnalysisException {
+            check(document);
+            setClassified(document);
+            return document;
+        }
+        
+        private void check(BxDocument document) throws AnalysisException {
+            if ("exception".equals(document.getFilename())) {
+                throw new AnalysisException("Cannot classify document!");
+            }
+            if ("error".equals(document.getFilename())) {
+                throw new StubError();
+            }
+        }
+        
+        private synchronized void setClassified(BxDocument document) {
+            classified.add(document);
+        }
+        
+        synchronized boolean isClassified(BxDocument document) {
+            return classified.contains(document);
+        }
+
+        synchronized List<Integer> getBatchSizes() {
+            return new ArrayList<Integer>(batchSizes);
+        }
+    }
+    
+    /**
+     * Initial zone classifier recording the sizes of its batches, and optionally
+     * blocking its first batch until released.
+     */
+    private static class InitialClassifier extends SVMInitialZoneClassifier {
+        
+        private final List<Integer> batchSizes = new ArrayList<Integer>();
+        
+        private final Gate gate = new Gate();
+
+        InitialClassifier() throws AnalysisException, IOException {
+        }
+
+        @Override
+        public List<BxDocument> classifyDocuments(List<BxDocument> documents) throws AnalysisException {
+            synchronized (this) {
+                batchSizes.add(documents.size());
+            }
+            gate.pass();
+            return super.classifyDocuments(documents);
+        }
+
+        synchronized List<Integer> getBatchSizes() {
+            return new ArrayList<Integer>(batchSizes);
+        }
+    }
+    
+    /**
+     * Blocks the first thread passing after {@link #block()} until released.
+     */
+    private static class Gate {
+        
+        private final CountDownLatch entered = new CountDownLatch(1);
+        
+        private final CountDownLatch release = new CountDownLatch(1);
+        
+        private boolean blocking;
+        
+        synchronized void block() {
+            blocking = true;
+        }
+        
+        void pass() throws AnalysisException {
+            boolean block;
+            synchronized (this) {
+                block = blocking;
+                blocking = false;
+            }
+            if (block) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new AnalysisException(ex);
+                }
+            }
+        }
+    }
+
+}
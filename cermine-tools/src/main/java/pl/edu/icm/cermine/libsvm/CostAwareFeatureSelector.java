@@ -0,0 +1,406 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.libsvm;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import libsvm.svm_parameter;
+import org.apache.commons.cli.*;
+import pl.edu.icm.cermine.evaluation.DividedEvaluationSet;
+import pl.edu.icm.cermine.evaluation.tools.EvaluationUtils.DocumentsIterator;
+import pl.edu.icm.cermine.evaluation.tools.PenaltyCalculator;
+import pl.edu.icm.cermine.exception.AnalysisException;
+import pl.edu.icm.cermine.structure.SVMInitialZoneClassifier;
+import pl.edu.icm.cermine.structure.SVMMetadataZoneClassifier;
+import pl.edu.icm.cermine.structure.model.BxPage;
+import pl.edu.icm.cermine.structure.model.BxZone;
+import pl.edu.icm.cermine.structure.model.BxZoneLabel;
+import pl.edu.icm.cermine.structure.model.BxZoneLabelCategory;
+import pl.edu.icm.cermine.tools.classification.features.FeatureCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
+import pl.edu.icm.cermine.tools.classification.general.BxDocsToTrainingSamplesConverter;
+import pl.edu.icm.cermine.tools.classification.general.ClassificationUtils;
+import pl.edu.icm.cermine.tools.classification.general.TrainingSample;
+import pl.edu.icm.cermine.tools.classification.svm.SVMZoneClassifier;
+
+/**
+ * Proposes a reduced feature set for the initial or metadata zone classifier.
+ *
+ * The cost of every feature is measured by profiling the feature vector builder
+ * while the training samples are computed. The importance of a feature is
+ * either the absolute value of its SVM weight or the accuracy drop observed
+ * on a validation set when the feature is replaced by its mean value (ablation).
+ * Features with the lowest importance per unit of cost are then removed
+ * greedily, as long as the validation accuracy stays within the given budget.
+ * Finally, C and gamma are tuned for the reduced features with
+ * {@link SVMParameterFinder} and the model is trained on all samples.
+ *
+ * The model is saved together with a .features file listing the selected
+ * features, in the order of the feature vector builder.
+ */
+public class CostAwareFeatureSelector {
+
+    private final boolean metadata;
+
+    private int kernel = svm_parameter.RBF;
+    private double gamma = 0.125;
+    private double C = 32;
+    private int degree = 3;
+
+    public CostAwareFeatureSelector(boolean metadata) {
+        this.metadata = metadata;
+    }
+
+    public FeatureVectorBuilder<BxZone, BxPage> getFeatureVectorBuilder() {
+        return metadata ? SVMMetadataZoneClassifier.getFeatureVectorBuilder()
+                : SVMInitialZoneClassifier.getFeatureVectorBuilder();
+    }
+
+    /**
+     * @param names feature names
+     * @return builder using the calculators of the given features,
+     * in the order of the full builder
+     */
+    public FeatureVectorBuilder<BxZone, BxPage> getFeatureVectorBuilder(Collection<String> names) {
+        List<FeatureCalculator<BxZone, BxPage>> calculators = new ArrayList<FeatureCalculator<BxZone, BxPage>>();
+        for (FeatureCalculator<BxZone, BxPage> calculator : getFeatureVectorBuilder().getFeatureCalculators()) {
+            if (names.contains(calculator.getFeatureName())) {
+                calculators.add(calculator);
+            }
+        }
+        FeatureVectorBuilder<BxZone, BxPage> vectorBuilder = new FeatureVectorBuilder<BxZone, BxPage>();
+        vectorBuilder.setFeatureCalculators(calculators);
+        return vectorBuilder;
+    }
+
+    /**
+     * Computes the training samples with the full feature set.
+     *
+     * @param inputDir directory with training documents
+     * @param ext documents extension
+     * @param costs map filled with the average calculation time of every feature in nanoseconds
+     * @return training samples
+     * @throws AnalysisException
+     */
+    public List<TrainingSample<BxZoneLabel>> getSamples(String inputDir, String ext, Map<String, Double> costs)
+            throws AnalysisException {
+        FeatureVectorBuilder<BxZone, BxPage> vectorBuilder = getFeatureVectorBuilder();
+        vectorBuilder.setProfiling(true);
+        DocumentsIterator it = new DocumentsIterator(inputDir, ext);
+        List<TrainingSample<BxZoneLabel>> samples = BxDocsToTrainingSamplesConverter.getZoneTrainingSamples(
+                it.iterator(), vectorBuilder,
+                metadata ? BxZoneLabel.getIdentityMap() : BxZoneLabel.getLabelToGeneralMap());
+        if (metadata) {
+            samples = ClassificationUtils.filterElements(samples, BxZoneLabelCategory.CAT_METADATA);
+        }
+
+        Map<String, Long> counts = vectorBuilder.getCalculationCounts();
+        for (Map.Entry<String, Long> time : vectorBuilder.getCalculationTimes().entrySet()) {
+            long count = counts.get(time.getKey());
+            costs.put(time.getKey(), count == 0 ? 0.0 : (double) time.getValue() / count);
+        }
+        return samples;
+    }
+
+    /**
+     * @param samples samples with the full feature set
+     * @param names selected feature names
+     * @return samples with the selected features only
+     */
+    public List<TrainingSample<BxZoneLabel>> project(List<TrainingSample<BxZoneLabel>> samples, Collection<String> names) {
+        List<String> selected = getFeatureVectorBuilder(names).getFeatureNames();
+        int[] indices = new int[selected.size()];
+        List<String> allNames = getFeatureVectorBuilder().getFeatureNames();
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = allNames.indexOf(selected.get(i));
+        }
+
+        List<TrainingSample<BxZoneLabel>> projected = new ArrayList<TrainingSample<BxZoneLabel>>(samples.size());
+        for (TrainingSample<BxZoneLabel> sample : samples) {
+            FeatureVector fv = new FeatureVector();
+            for (int i = 0; i < indices.length; i++) {
+                fv.addFeature(selected.get(i), sample.getFeatureVector().getValue(indices[i]));
+            }
+            projected.add(new TrainingSample<BxZoneLabel>(fv, sample.getLabel()));
+        }
+        return projected;
+    }
+
+    public SVMZoneClassifier train(List<TrainingSample<BxZoneLabel>> samples, Collection<String> names,
+            double gamma, double C) {
+        PenaltyCalculator pc = new PenaltyCalculator(samples);
+        int[] intClasses = new int[pc.getClasses().size()];
+        double[] classesWeights = new double[pc.getClasses().size()];
+        int labelIdx = 0;
+        for (BxZoneLabel label : pc.getClasses()) {
+            intClasses[labelIdx] = label.ordinal();
+            classesWeights[labelIdx] = pc.getPenaltyWeigth(label);
+            ++labelIdx;
+        }
+
+        SVMZoneClassifier zoneClassifier = new SVMZoneClassifier(getFeatureVectorBuilder(names));
+        svm_parameter param = SVMZoneClassifier.getDefaultParam();
+        param.svm_type = svm_parameter.C_SVC;
+        param.gamma = gamma;
+        param.C = C;
+        param.degree = degree;
+        param.kernel_type = kernel;
+        param.weight = classesWeights;
+        param.weight_label = intClasses;
+        zoneClassifier.setParameter(param);
+        zoneClassifier.buildClassifier(samples);
+        return zoneClassifier;
+    }
+
+    public double getAccuracy(SVMZoneClassifier classifier, List<TrainingSample<BxZoneLabel>> samples) {
+        int correct = 0;
+        for (TrainingSample<BxZoneLabel> sample : samples) {
+            if (sample.getLabel() == classifier.predictLabel(sample)) {
+                correct++;
+            }
+        }
+        return (double) correct / samples.size();
+    }
+
+    /**
+     * @return absolute SVM weights of the features, by name
+     */
+    public Map<String, Double> getWeightImportance(SVMZoneClassifier classifier, List<String> names) {
+        double[] weights = classifier.getWeights();
+        Map<String, Double> importance = new HashMap<String, Double>();
+        for (int i = 0; i < names.size(); i++) {
+            importance.put(names.get(i), Math.abs(weights[i]));
+        }
+        return importance;
+    }
+
+    /**
+     * @return validation accuracy drop caused by replacing the feature
+     * with its mean training value, by name
+     */
+    public Map<String, Double> getAblationImportance(SVMZoneClassifier classifier, List<String> names,
+            List<TrainingSample<BxZoneLabel>> trainingSamples, List<TrainingSample<BxZoneLabel>> testSamples) {
+        double baseline = getAccuracy(classifier, testSamples);
+        Map<String, Double> importance = new HashMap<String, Double>();
+        for (int i = 0; i < names.size(); i++) {
+            double mean = 0;
+            for (TrainingSample<BxZoneLabel> sample : trainingSamples) {
+                mean += sample.getFeatureVector().getValue(i);
+            }
+            mean /= trainingSamples.size();
+
+            List<TrainingSample<BxZoneLabel>> ablated = new ArrayList<TrainingSample<BxZoneLabel>>(testSamples.size());
+            for (TrainingSample<BxZoneLabel> sample : testSamples) {
+                FeatureVector fv = sample.getFeatureVector().copy();
+                fv.setValue(i, mean);
+                ablated.add(new TrainingSample<BxZoneLabel>(fv, sample.getLabel()));
+            }
+            importance.put(names.get(i), Math.max(0, baseline - getAccuracy(classifier, ablated)));
+        }
+        return importance;
+    }
+
+    /**
+     * Greedily removes the features with the lowest importance per unit of cost.
+     *
+     * @param samples samples with the full feature set
+     * @param costs average calculation times of the features
+     * @param ablation whether to use ablation instead of weights as the importance
+     * @param budget maximum acceptable validation accuracy loss
+     * @param step number of features removed at once
+     * @return selected feature names
+     */
+    public List<String> selectFeatures(List<TrainingSample<BxZoneLabel>> samples, Map<String, Double> costs,
+            boolean ablation, double budget, int step) {
+        List<String> names = getFeatureVectorBuilder().getFeatureNames();
+        DividedEvaluationSet split = DividedEvaluationSet.build(samples, 5).get(0);
+        List<TrainingSample<BxZoneLabel>> trainingSamples = split.getTrainingDocuments();
+        List<TrainingSample<BxZoneLabel>> testSamples = split.getTestDocuments();
+
+        SVMZoneClassifier full = train(trainingSamples, names, gamma, C);
+        double baseline = getAccuracy(full, testSamples);
+        System.out.println("Baseline validation accuracy: " + baseline);
+
+        final Map<String, Double> importance = ablation
+                ? getAblationImportance(full, names, trainingSamples, testSamples)
+                : getWeightImportance(full, names);
+        final Map<String, Double> featureCosts = costs;
+        List<String> candidates = new ArrayList<String>(names);
+        Collections.sort(candidates, new Comparator<String>() {
+            @Override
+            public int compare(String name1, String name2) {
+                return Double.compare(getScore(name1), getScore(name2));
+            }
+
+            private double getScore(String name) {
+                return importance.get(name) / Math.max(featureCosts.get(name), 1.0);
+            }
+        });
+
+        Set<String> selected = new LinkedHashSet<String>(names);
+        int from = 0;
+        while (from < candidates.size()) {
+            List<String> removed = candidates.subList(from, Math.min(from + step, candidates.size()));
+            from += removed.size();
+            if (tryRemove(selected, removed, trainingSamples, testSamples, baseline, budget)) {
+                continue;
+            }
+            if (removed.size() > 1) {
+                for (String name : removed) {
+                    tryRemove(selected, Collections.singletonList(name), trainingSamples, testSamples, baseline, budget);
+                }
+            }
+        }
+        return new ArrayList<String>(selected);
+    }
+
+    private boolean tryRemove(Set<String> selected, List<String> removed,
+            List<TrainingSample<BxZoneLabel>> trainingSamples, List<TrainingSample<BxZoneLabel>> testSamples,
+            double baseline, double budget) {
+        Set<String> reduced = new LinkedHashSet<String>(selected);
+        reduced.removeAll(removed);
+        if (reduced.isEmpty()) {
+            return false;
+        }
+        SVMZoneClassifier classifier = train(project(trainingSamples, reduced), reduced, gamma, C);
+        double accuracy = getAccuracy(classifier, project(testSamples, reduced));
+        boolean accepted = baseline - accuracy <= budget;
+        System.out.println((accepted ? "Removed " : "Kept ") + removed + ", accuracy: " + accuracy
+                + ", features: " + (accepted ? reduced.size() : selected.size()));
+        if (accepted) {
+            selected.removeAll(removed);
+        }
+        return accepted;
+    }
+
+    private class ReducedFeaturesParameterFinder extends SVMParameterFinder {
+
+        private final List<String> names;
+
+        public ReducedFeaturesParameterFinder(List<String> names) {
+            this.names = names;
+            this.foldness = 5;
+        }
+
+        @Override
+        protected List<TrainingSample<BxZoneLabel>> getSamples(String inputFile, String ext) {
+            throw new UnsupportedOperationException("Samples are supplied directly!");
+        }
+
+        @Override
+        protected FeatureVectorBuilder<BxZone, BxPage> getFeatureVectorBuilder() {
+            return CostAwareFeatureSelector.this.getFeatureVectorBuilder(names);
+        }
+    }
+
+    public static void main(String[] args)
+            throws ParseException, AnalysisException, IOException, InterruptedException, ExecutionException {
+        Options options = new Options();
+        options.addOption("type", true, "classifier type: initial or metadata");
+        options.addOption("input", true, "input path");
+        options.addOption("output", true, "output model path");
+        options.addOption("ext", true, "documents extension");
+        options.addOption("kernel", true, "kernel type");
+        options.addOption("g", true, "gamma");
+        options.addOption("C", true, "C");
+        options.addOption("degree", true, "degree");
+        options.addOption("budget", true, "maximum accuracy loss");
+        options.addOption("step", true, "number of features removed at once");
+        options.addOption("ablation", false, "measure importance by ablation instead of SVM weights");
+        options.addOption("tune", false, "tune C and gamma for the selected features");
+        options.addOption("threads", true, "number of threads used for tuning");
+
+        CommandLineParser parser = new GnuParser();
+        CommandLine line = parser.parse(options, args);
+        if (!line.hasOption("input") || !line.hasOption("output")) {
+            System.err.println("Usage: CostAwareFeatureSelector [-type <initial|metadata>] [-kernel <kernel type>] "
+                    + "[-degree <degree>] [-g <gamma>] [-C <error cost>] [-ext <extension>] [-budget <loss>] "
+                    + "[-step <n>] [-ablation] [-tune [-threads <n>]] -input <input dir> -output <path>");
+            System.exit(1);
+        }
+
+        CostAwareFeatureSelector selector = new CostAwareFeatureSelector(
+                "metadata".equals(line.getOptionValue("type", "initial")));
+        selector.C = Double.valueOf(line.getOptionValue("C", "32"));
+        selector.gamma = Double.valueOf(line.getOptionValue("g", "0.125"));
+        selector.degree = Integer.valueOf(line.getOptionValue("degree", "3"));
+        if (line.hasOption("kernel")) {
+            switch (Integer.valueOf(line.getOptionValue("kernel"))) {
+                case 0: selector.kernel = svm_parameter.LINEAR; break;
+                case 1: selector.kernel = svm_parameter.POLY; break;
+                case 2: selector.kernel = svm_parameter.RBF; break;
+                case 3: selector.kernel = svm_parameter.SIGMOID; break;
+                default:
+                    throw new IllegalArgumentException("Invalid kernel value provided");
+            }
+        }
+        double budget = Double.valueOf(line.getOptionValue("budget", "0.005"));
+        int step = Integer.valueOf(line.getOptionValue("step", "5"));
+        int threads = Integer.valueOf(line.getOptionValue("threads", "3"));
+        String outFile = line.getOptionValue("output");
+
+        Map<String, Double> costs = new LinkedHashMap<String, Double>();
+        List<TrainingSample<BxZoneLabel>> samples = selector.getSamples(
+                line.getOptionValue("input"), line.getOptionValue("ext", "cxml"), costs);
+        System.out.println("Feature costs (ns per zone):");
+        for (Map.Entry<String, Double> cost : costs.entrySet()) {
+            System.out.printf("%40s %12.0f%n", cost.getKey(), cost.getValue());
+        }
+
+        List<String> selected = selector.selectFeatures(samples, costs, line.hasOption("ablation"), budget, step);
+        List<TrainingSample<BxZoneLabel>> reducedSamples = selector.project(samples, selected);
+
+        double gamma = selector.gamma;
+        double C = selector.C;
+        if (line.hasOption("tune")) {
+            SVMParameterFinder.EvaluationParams best = selector.new ReducedFeaturesParameterFinder(selected)
+                    .findParameters(reducedSamples, threads, selector.kernel, selector.degree);
+            gamma = best.getGamma();
+            C = best.getC();
+        }
+        SVMZoneClassifier classifier = selector.train(reducedSamples, selected, gamma, C);
+        classifier.saveModel(outFile);
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(outFile + ".features"));
+        try {
+            for (String name : selected) {
+                writer.write(name);
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+
+        double fullCost = 0;
+        double reducedCost = 0;
+        for (Map.Entry<String, Double> cost : costs.entrySet()) {
+            fullCost += cost.getValue();
+            if (selected.contains(cost.getKey())) {
+                reducedCost += cost.getValue();
+            }
+        }
+        System.out.println("Selected features: " + selected.size() + " of " + costs.size());
+        System.out.printf("Feature computation time per zone: %.0f ns -> %.0f ns (%.1f%%)%n",
+                fullCost, reducedCost, 100.0 * reducedCost / fullCost);
+        System.out.println("Gamma: " + gamma + ", C: " + C);
+    }
+
+}
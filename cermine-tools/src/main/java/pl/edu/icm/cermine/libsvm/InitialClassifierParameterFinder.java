@@ -21,10 +21,8 @@ package pl.edu.icm.cermine.libsvm;
 import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import libsvm.svm_parameter;
 import org.apache.commons.cli.ParseException;
 import pl.edu.icm.cermine.evaluation.tools.EvaluationUtils.DocumentsIterator;
-import pl.edu.icm.cermine.evaluation.tools.PenaltyCalculator;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.exception.TransformationException;
 import pl.edu.icm.cermine.structure.SVMInitialZoneClassifier;
@@ -34,42 +32,14 @@ import pl.edu.icm.cermine.structure.model.BxZoneLabel;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
 import pl.edu.icm.cermine.tools.classification.general.BxDocsToTrainingSamplesConverter;
 import pl.edu.icm.cermine.tools.classification.general.TrainingSample;
-import pl.edu.icm.cermine.tools.classification.svm.SVMZoneClassifier;
 
 public class InitialClassifierParameterFinder extends SVMParameterFinder {
 
     @Override
-    protected SVMZoneClassifier getZoneClassifier(List<TrainingSample<BxZoneLabel>> trainingSamples, int kernelType, double gamma, double C, int degree) throws IOException, AnalysisException, CloneNotSupportedException {
-        for (TrainingSample<BxZoneLabel> trainingSample : trainingSamples) {
+    protected void prepareSamples(List<TrainingSample<BxZoneLabel>> samples) {
+        for (TrainingSample<BxZoneLabel> trainingSample : samples) {
             trainingSample.setLabel(trainingSample.getLabel().getGeneralLabel());
         }
-
-        PenaltyCalculator pc = new PenaltyCalculator(trainingSamples);
-        int[] intClasses = new int[pc.getClasses().size()];
-        double[] classesWeights = new double[pc.getClasses().size()];
-
-        int labelIdx = 0;
-        for(BxZoneLabel label: pc.getClasses()) {
-            intClasses[labelIdx] = label.ordinal();
-            classesWeights[labelIdx] = pc.getPenaltyWeigth(label);
-            ++labelIdx;
-        }
-       
-        SVMZoneClassifier zoneClassifier = new SVMZoneClassifier(SVMInitialZoneClassifier.getFeatureVectorBuilder());
-        svm_parameter param = SVMZoneClassifier.getDefaultParam();
-        param.svm_type = svm_parameter.C_SVC;
-        param.gamma = gamma;
-        param.C = C;
-        System.out.println(degree);
-        param.degree = degree;
-        param.kernel_type = kernelType;
-        param.weight = classesWeights;
-        param.weight_label = intClasses;
-        
-        zoneClassifier.setParameter(param);
-        zoneClassifier.buildClassifier(trainingSamples);
-
-        return zoneClassifier;
     }
 
 	public static void main(String[] args) 
@@ -87,7 +57,7 @@ public class InitialClassifierParameterFinder extends SVMParameterFinder {
         DocumentsIterator it = new DocumentsIterator(inputFile, ext);
         return BxDocsToTrainingSamplesConverter.getZoneTrainingSamples(it.iterator(), 
                     getFeatureVectorBuilder(),
-                    BxZoneLabel.getLabelToGeneralMap());
+                    BxZoneLabel.getLabelToGeneralMap(), Runtime.getRuntime().availableProcessors());
     }
 }
 
@@ -22,10 +22,8 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
-import libsvm.svm_parameter;
 import org.apache.commons.cli.ParseException;
 import pl.edu.icm.cermine.evaluation.tools.EvaluationUtils.DocumentsIterator;
-import pl.edu.icm.cermine.evaluation.tools.PenaltyCalculator;
 import pl.edu.icm.cermine.exception.AnalysisException;
 import pl.edu.icm.cermine.exception.TransformationException;
 import pl.edu.icm.cermine.structure.SVMMetadataZoneClassifier;
@@ -37,47 +35,17 @@ import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
 import pl.edu.icm.cermine.tools.classification.general.BxDocsToTrainingSamplesConverter;
 import pl.edu.icm.cermine.tools.classification.general.ClassificationUtils;
 import pl.edu.icm.cermine.tools.classification.general.TrainingSample;
-import pl.edu.icm.cermine.tools.classification.svm.SVMZoneClassifier;
 
 public class MetadataClassifierParameterFinder extends SVMParameterFinder {
     
     @Override
-    protected SVMZoneClassifier getZoneClassifier(List<TrainingSample<BxZoneLabel>> trainingSamples, int kernelType, double gamma, double C, int degree) 
-            throws IOException, AnalysisException, CloneNotSupportedException {
-
+    protected void prepareSamples(List<TrainingSample<BxZoneLabel>> samples) {
         Map<BxZoneLabel, BxZoneLabel> labelMapper = BxZoneLabel.getLabelToGeneralMap();
-        for (TrainingSample<BxZoneLabel> sample : trainingSamples) {
+        for (TrainingSample<BxZoneLabel> sample : samples) {
         	if (sample.getLabel().getCategory() != BxZoneLabelCategory.CAT_METADATA) {
         		sample.setLabel(labelMapper.get(sample.getLabel()));
             }
         }
-       
-        PenaltyCalculator pc = new PenaltyCalculator(trainingSamples);
-        int[] intClasses = new int[pc.getClasses().size()];
-        double[] classesWeights = new double[pc.getClasses().size()];
-
-        int labelIdx = 0;
-        for (BxZoneLabel label : pc.getClasses()) {
-            intClasses[labelIdx] = label.ordinal();
-            classesWeights[labelIdx] = pc.getPenaltyWeigth(label);
-            ++labelIdx;
-        }
-       
-        SVMZoneClassifier zoneClassifier = new SVMZoneClassifier(SVMMetadataZoneClassifier.getFeatureVectorBuilder());
-        svm_parameter param = SVMZoneClassifier.getDefaultParam();
-        param.svm_type = svm_parameter.C_SVC;
-        param.gamma = gamma;
-        param.C = C;
-        System.out.println(degree);
-        param.degree = degree;
-        param.kernel_type = kernelType;
-        param.weight = classesWeights;
-        param.weight_label = intClasses;
-        
-        zoneClassifier.setParameter(param);
-        zoneClassifier.buildClassifier(trainingSamples);
-
-        return zoneClassifier;
     }
 
     public static void main(String[] args)
@@ -94,7 +62,7 @@ public class MetadataClassifierParameterFinder extends SVMParameterFinder {
     public List<TrainingSample<BxZoneLabel>> getSamples(String inputFile, String ext) throws AnalysisException {
         DocumentsIterator it = new DocumentsIterator(inputFile, ext);
         List<TrainingSample<BxZoneLabel>> samples = BxDocsToTrainingSamplesConverter.getZoneTrainingSamples(it.iterator(), 
-                    getFeatureVectorBuilder(), null);
+                    getFeatureVectorBuilder(), null, Runtime.getRuntime().availableProcessors());
         return ClassificationUtils.filterElements(samples, BxZoneLabelCategory.CAT_METADATA);
     }
     
@@ -18,12 +18,11 @@
 
 package pl.edu.icm.cermine.libsvm;
 
-import java.io.IOException;
-import java.util.EnumMap;
-import java.util.List;
-import java.util.Map;
+import java.io.*;
+import java.util.*;
 import java.util.concurrent.*;
 import libsvm.svm_parameter;
+import libsvm.svm_problem;
 import org.apache.commons.cli.*;
 import pl.edu.icm.cermine.evaluation.ClassificationResults;
 import pl.edu.icm.cermine.evaluation.DividedEvaluationSet;
@@ -32,8 +31,12 @@ import pl.edu.icm.cermine.exception.TransformationException;
 import pl.edu.icm.cermine.structure.model.BxPage;
 import pl.edu.icm.cermine.structure.model.BxZone;
 import pl.edu.icm.cermine.structure.model.BxZoneLabel;
+import pl.edu.icm.cermine.evaluation.tools.PenaltyCalculator;
+import pl.edu.icm.cermine.tools.classification.features.FeatureVector;
 import pl.edu.icm.cermine.tools.classification.features.FeatureVectorBuilder;
+import pl.edu.icm.cermine.tools.classification.general.FeatureVectorScaler;
 import pl.edu.icm.cermine.tools.classification.general.TrainingSample;
+import pl.edu.icm.cermine.tools.classification.general.TrainingSampleCache;
 import pl.edu.icm.cermine.tools.classification.svm.SVMZoneClassifier;
 
 public abstract class SVMParameterFinder {
@@ -46,7 +49,25 @@ public abstract class SVMParameterFinder {
         }
     }
 
+    private static final int MIN_CLOG = -5;
+    private static final int MAX_CLOG = 15;
+    private static final int MIN_GLOG = -15;
+    private static final int MAX_GLOG = 3;
+    
+    /** seed of the division into folds, fixed so that resumed searches use the same folds */
+    private static final long FOLDS_SEED = 2013;
+    
     protected int foldness;
+    
+    /** grid step of the first stage of the search, 1 for the exhaustive search */
+    private int coarseStep = 1;
+    
+    /** file with the results of evaluated parameters, null if checkpoints are disabled */
+    private File checkpointFile;
+    
+    /** training sample cache file, null if the cache is disabled */
+    private File cacheFile;
+    
     private final Map<BxZoneLabel, BxZoneLabel> labelMap = DEFAULT_LABEL_MAP.clone();
 
     public static void main(String[] args, SVMParameterFinder evaluator)
@@ -61,6 +82,9 @@ public abstract class SVMParameterFinder {
         options.addOption("degree", true, "degree");
         options.addOption("ext", true, "file extension");
         options.addOption("threads", true, "number of threads");
+        options.addOption("coarse", true, "initial grid step of coarse-to-fine search");
+        options.addOption("checkpoint", true, "file storing evaluated parameters, used to resume the search");
+        options.addOption("cache", true, "training sample cache file");
         
         CommandLineParser parser = new GnuParser();
         CommandLine line = parser.parse(options, args);
@@ -110,6 +134,20 @@ public abstract class SVMParameterFinder {
                 ext = extStr;
             }
             
+            String coarseStr = line.getOptionValue("coarse");
+            if (coarseStr != null && !coarseStr.isEmpty()) {
+                evaluator.setCoarseStep(Integer.valueOf(coarseStr));
+            }
+            String checkpointStr = line.getOptionValue("checkpoint");
+            if (checkpointStr != null && !checkpointStr.isEmpty()) {
+                evaluator.setCheckpointFile(new File(checkpointStr));
+            }
+            
+            String cacheStr = line.getOptionValue("cache");
+            if (cacheStr != null && !cacheStr.isEmpty()) {
+                evaluator.setCacheFile(new File(cacheStr));
+            }
+            
             evaluator.setLabelMap(BxZoneLabel.getLabelToGeneralMap());
             evaluator.run(inputFile, ext, threads, kernelType, degree);
         }
@@ -117,41 +155,203 @@ public abstract class SVMParameterFinder {
 
     protected abstract List<TrainingSample<BxZoneLabel>> getSamples(String inputFile, String ext) throws AnalysisException;
     
-    public void run(String inputFile, String ext, int threads, int kernel, int degree) throws AnalysisException, IOException, TransformationException, CloneNotSupportedException, InterruptedException, ExecutionException {
-        List<TrainingSample<BxZoneLabel>> samples = getSamples(inputFile, ext);
+    /**
+     * Reads the samples from the cache file if it is set and valid, otherwise
+     * obtains the samples with {@link #getSamples(String, String)} and writes
+     * them to the cache file.
+     * 
+     * @param inputFile input directory
+     * @param ext document file extension
+     * @return training samples
+     * @throws AnalysisException 
+     */
+    protected List<TrainingSample<BxZoneLabel>> getCachedSamples(String inputFile, String ext) throws AnalysisException {
+        return TrainingSampleCache.getSamples(cacheFile, getFeatureVectorBuilder(), getClass().getName(),
+                inputFile, ext, labelMap, new TrainingSampleCache.SampleProvider() {
 
-        ExecutorService executor = Executors.newFixedThreadPool(3);
-        CompletionService<EvaluationParams> completionService = new ExecutorCompletionService<EvaluationParams>(executor);
-        
-        double bestRate = 0;
-        int bestclog = 0;
-        int bestglog = 0;
+                    @Override
+                    public List<TrainingSample<BxZoneLabel>> getSamples(String inputFile, String ext) 
+                            throws AnalysisException {
+                        return SVMParameterFinder.this.getSamples(inputFile, ext);
+                    }
+                });
+    }
 
-        int submitted = 0;
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+    
+    public void run(String inputFile, String ext, int threads, int kernel, int degree) throws AnalysisException, IOException, TransformationException, CloneNotSupportedException, InterruptedException, ExecutionException {
+        List<TrainingSample<BxZoneLabel>> samples = getCachedSamples(inputFile, ext);
+        findParameters(samples, inputFile, threads, kernel, degree);
+    }
+    
+    public EvaluationParams findParameters(List<TrainingSample<BxZoneLabel>> samples, int threads, int kernel, int degree) 
+            throws InterruptedException, ExecutionException {
+        return findParameters(samples, null, threads, kernel, degree);
+    }
+    
+    /**
+     * Searches for the values of C and gamma giving the best cross-validated
+     * mean F score on the given samples. The samples are divided into folds,
+     * and every fold is scaled and converted into a training problem once,
+     * the problems are then shared by all the evaluated parameters.
+     * 
+     * With the coarse step set to 1 all the points of the grid are evaluated.
+     * With a larger step the grid with that step is evaluated first, then 
+     * the search moves around the best point found so far, halving the step
+     * whenever none of the neighbours of the best point is better, and stops
+     * after a pass with step 1 that does not improve the best point.
+     * 
+     * If a checkpoint file is set, the result of every evaluation is appended
+     * to it and the parameters already present in the file are not evaluated
+     * again, so an interrupted search can be resumed. The file starts with 
+     * a header describing the input, the folds and the feature schema, 
+     * and is started anew if the header does not match the current search.
+     * 
+     * @param samples training samples
+     * @param inputFile input the samples come from, used to validate the checkpoint file
+     * @param threads number of threads
+     * @param kernel kernel type
+     * @param degree kernel degree
+     * @return the best parameters found
+     * @throws InterruptedException
+     * @throws ExecutionException 
+     */
+    public EvaluationParams findParameters(List<TrainingSample<BxZoneLabel>> samples, String inputFile, 
+            int threads, int kernel, int degree) throws InterruptedException, ExecutionException {
+        String header = getCheckpointHeader(inputFile);
+        Map<String, EvaluationParams> results = readCheckpoint(header, kernel, degree);
+        boolean resumed = results != null;
+        if (!resumed) {
+            results = new LinkedHashMap<String, EvaluationParams>();
+        }
+        List<Fold> folds = buildFolds(samples);
         
-        for (int clog = -5; clog <= 15; clog++) {
-            for (int glog = 3; glog >= -15; glog--) {
-                completionService.submit(new Evaluator(samples, new EvaluationParams(clog, glog), kernel, degree));
-                submitted++;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Writer checkpoint = null;
+        try {
+            if (checkpointFile != null) {
+                checkpoint = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(checkpointFile, resumed), "UTF-8"));
+                if (!resumed) {
+                    checkpoint.write(header + "\n");
+                    checkpoint.flush();
+                }
+            }
+            Search search = new Search(executor, checkpoint, folds, kernel, degree, results);
+            
+            int step = Math.max(1, coarseStep);
+            List<EvaluationParams> grid = new ArrayList<EvaluationParams>();
+            for (int clog = MIN_CLOG; clog <= MAX_CLOG; clog += step) {
+                for (int glog = MAX_GLOG; glog >= MIN_GLOG; glog -= step) {
+                    grid.add(new EvaluationParams(clog, glog));
+                }
+            }
+            search.evaluate(grid);
+            
+            while (step >= 1) {
+                EvaluationParams best = search.getBest();
+                List<EvaluationParams> neighbours = new ArrayList<EvaluationParams>();
+                for (int dc = -step; dc <= step; dc += step) {
+                    for (int dg = -step; dg <= step; dg += step) {
+                        int clog = best.clog + dc;
+                        int glog = best.glog + dg;
+                        if (clog >= MIN_CLOG && clog <= MAX_CLOG && glog >= MIN_GLOG && glog <= MAX_GLOG) {
+                            neighbours.add(new EvaluationParams(clog, glog));
+                        }
+                    }
+                }
+                search.evaluate(neighbours);
+                if (search.getBest() == best) {
+                    step /= 2;
+                }
+            }
+            return search.getBest();
+        } catch (IOException ex) {
+            throw new ExecutionException(ex);
+        } finally {
+            executor.shutdown();
+            if (checkpoint != null) {
+                try {
+                    checkpoint.close();
+                } catch (IOException ex) {
+                    System.err.println("Cannot close checkpoint file: " + ex.getMessage());
+                }
             }
         }
-        
-        while (submitted > 0) {
-            Future<EvaluationParams> f1 = completionService.take();
-            EvaluationParams p = f1.get();
-            if (p.rate > bestRate) {
-                bestRate = p.rate;
-                bestclog = p.clog;
-                bestglog = p.glog;
-            }
-            System.out.println("Gamma: "+p.glog+", C: "+p.clog+", rate: "+p.rate+" (Best: "+bestglog+" "+bestclog+" "+bestRate+")");
-            submitted--;
-        }    
-        
-        executor.shutdown();
+    }
+    
+    /**
+     * Builds the header of the checkpoint file. Results stored in a file 
+     * with a different header were evaluated on different folds or features
+     * and cannot be reused.
+     * 
+     * @param inputFile input the samples come from
+     * @return header line
+     */
+    private String getCheckpointHeader(String inputFile) {
+        long schemaHash = TrainingSampleCache.getSchemaHash(getFeatureVectorBuilder(), getClass().getName());
+        return "# input=" + inputFile + " folds=" + foldness + " seed=" + FOLDS_SEED 
+                + " schema=" + Long.toHexString(schemaHash);
+    }
+    
+    /**
+     * Reads the results stored in the checkpoint file.
+     * 
+     * @param header expected header of the file
+     * @param kernel kernel type
+     * @param degree kernel degree
+     * @return results by parameter key, or null if the file is not set, 
+     * does not exist or was written for a different search
+     */
+    private Map<String, EvaluationParams> readCheckpoint(String header, int kernel, int degree) {
+        if (checkpointFile == null || !checkpointFile.exists()) {
+            return null;
+        }
+        Map<String, EvaluationParams> results = new LinkedHashMap<String, EvaluationParams>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(checkpointFile), "UTF-8"));
+            try {
+                if (!header.equals(reader.readLine())) {
+                    System.err.println("Checkpoint file was written for a different input, folds or features, "
+                            + "starting from scratch");
+                    return null;
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.trim().split(" ");
+                    if (fields.length != 5 || Integer.parseInt(fields[0]) != kernel 
+                            || Integer.parseInt(fields[1]) != degree) {
+                        continue;
+                    }
+                    EvaluationParams params = new EvaluationParams(Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+                    params.rate = Double.parseDouble(fields[4]);
+                    results.put(params.getKey(), params);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ex) {
+            System.err.println("Cannot read checkpoint file, starting from scratch: " + ex.getMessage());
+            return null;
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid checkpoint file, starting from scratch: " + ex.getMessage());
+            return null;
+        }
+        System.out.println("Resuming search with " + results.size() + " evaluated parameters");
+        return results;
+    }
+    
+    private List<Fold> buildFolds(List<TrainingSample<BxZoneLabel>> samples) {
+        prepareSamples(samples);
+        List<Fold> folds = new ArrayList<Fold>(foldness);
+        for (DividedEvaluationSet set : DividedEvaluationSet.build(samples, foldness, new Random(FOLDS_SEED))) {
+            folds.add(new Fold(set.getTrainingDocuments(), set.getTestDocuments()));
+        }
+        return folds;
     }
 
-    private static class EvaluationParams {
+    public static class EvaluationParams {
         int clog;
         int glog;
         double rate;
@@ -160,18 +360,133 @@ public abstract class SVMParameterFinder {
             this.clog = clog;
             this.glog = glog;
         }
+
+        public double getC() {
+            return Math.pow(2, clog);
+        }
+
+        public double getGamma() {
+            return Math.pow(2, glog);
+        }
+
+        public double getRate() {
+            return rate;
+        }
+        
+        private String getKey() {
+            return clog + " " + glog;
+        }
+        
+    }
+    
+    /**
+     * Training problem and test samples of a single fold, shared read-only 
+     * by all the evaluations.
+     */
+    private class Fold {
+        
+        private final svm_problem problem;
+        private final FeatureVectorScaler scaler;
+        private final int[] weightLabels;
+        private final double[] weights;
+        private final List<FeatureVector> testVectors;
+        private final List<BxZoneLabel> testLabels;
+
+        public Fold(List<TrainingSample<BxZoneLabel>> trainingSamples, List<TrainingSample<BxZoneLabel>> testSamples) {
+            SVMZoneClassifier classifier = createZoneClassifier();
+            problem = classifier.buildProblem(trainingSamples);
+            scaler = classifier.getScaler();
+            
+            PenaltyCalculator pc = new PenaltyCalculator(trainingSamples);
+            weightLabels = new int[pc.getClasses().size()];
+            weights = new double[pc.getClasses().size()];
+            int labelIdx = 0;
+            for (BxZoneLabel label : pc.getClasses()) {
+                weightLabels[labelIdx] = label.ordinal();
+                weights[labelIdx] = pc.getPenaltyWeigth(label);
+                ++labelIdx;
+            }
+            
+            testVectors = new ArrayList<FeatureVector>(testSamples.size());
+            testLabels = new ArrayList<BxZoneLabel>(testSamples.size());
+            for (TrainingSample<BxZoneLabel> testSample : testSamples) {
+                testVectors.add(testSample.getFeatureVector());
+                testLabels.add(testSample.getLabel());
+            }
+        }
+    }
+    
+    /**
+     * State of a single search: evaluated parameters and the best of them.
+     */
+    private class Search {
+        
+        private final CompletionService<EvaluationParams> completionService;
+        private final Writer checkpoint;
+        private final List<Fold> folds;
+        private final int kernel;
+        private final int degree;
+        private final Map<String, EvaluationParams> results;
+        private EvaluationParams best;
+
+        public Search(ExecutorService executor, Writer checkpoint, List<Fold> folds, int kernel, int degree,
+                Map<String, EvaluationParams> results) {
+            this.completionService = new ExecutorCompletionService<EvaluationParams>(executor);
+            this.checkpoint = checkpoint;
+            this.folds = folds;
+            this.kernel = kernel;
+            this.degree = degree;
+            this.results = results;
+        }
+        
+        /**
+         * Evaluates the given parameters, skipping those evaluated before.
+         */
+        public void evaluate(List<EvaluationParams> candidates) throws InterruptedException, ExecutionException, IOException {
+            int submitted = 0;
+            for (EvaluationParams params : candidates) {
+                EvaluationParams previous = results.get(params.getKey());
+                if (previous != null) {
+                    update(previous);
+                } else {
+                    completionService.submit(new Evaluator(folds, params, kernel, degree));
+                    submitted++;
+                }
+            }
+            
+            while (submitted > 0) {
+                EvaluationParams p = completionService.take().get();
+                results.put(p.getKey(), p);
+                update(p);
+                if (checkpoint != null) {
+                    checkpoint.write(kernel + " " + degree + " " + p.clog + " " + p.glog + " " + p.rate + "\n");
+                    checkpoint.flush();
+                }
+                System.out.println("Gamma: "+p.glog+", C: "+p.clog+", rate: "+p.rate+" (Best: "+best.glog+" "+best.clog+" "+best.rate+")");
+                submitted--;
+            }
+        }
         
+        private void update(EvaluationParams params) {
+            if (best == null || params.rate > best.rate) {
+                best = params;
+            }
+        }
+
+        public EvaluationParams getBest() {
+            return best;
+        }
     }
     
     private class Evaluator implements Callable<EvaluationParams> {
 
-        private final List<TrainingSample<BxZoneLabel>> samples;
+        private final List<Fold> folds;
         private final EvaluationParams params;
         private final int kernel;
         private final int degree;
 
-        public Evaluator(List<TrainingSample<BxZoneLabel>> samples, EvaluationParams params, int kernel, int degree) {
-            this.samples = samples;
+        public Evaluator(List<Fold> folds, EvaluationParams params, int kernel, int degree) {
+            this.folds = folds;
             this.params = params;
             this.kernel = kernel;
             this.degree = degree;
@@ -181,29 +496,34 @@ public abstract class SVMParameterFinder {
         public EvaluationParams call() throws Exception {
             double gamma = Math.pow(2, params.glog);
             double c = Math.pow(2, params.clog);
-            double rate = evaluate(samples, kernel, gamma, c, degree);
+            double rate = evaluate(folds, kernel, gamma, c, degree);
             params.rate = rate;
             return params;
         }
     }
     
-    private double evaluate(List<TrainingSample<BxZoneLabel>> samples, int kernelType, double gamma, double C, int degree) throws AnalysisException, IOException, CloneNotSupportedException {
+    private double evaluate(List<Fold> folds, int kernelType, double gamma, double C, int degree) {
         ClassificationResults summary = new ClassificationResults();
         
-        List<DividedEvaluationSet> sampleSets = DividedEvaluationSet.build(samples, foldness);
-        
-        for (int fold = 0; fold < foldness; ++fold) {
-        	List<TrainingSample<BxZoneLabel>> trainingSamples = sampleSets.get(fold).getTrainingDocuments();
-        	List<TrainingSample<BxZoneLabel>> testSamples = sampleSets.get(fold).getTestDocuments();
-
+        for (Fold fold : folds) {
             ClassificationResults iterationResults = new ClassificationResults();
 
-            SVMZoneClassifier zoneClassifier = getZoneClassifier(trainingSamples, kernelType, gamma, C, degree);
+            svm_parameter param = SVMZoneClassifier.getDefaultParam();
+            param.svm_type = svm_parameter.C_SVC;
+            param.gamma = gamma;
+            param.C = C;
+            param.degree = degree;
+            param.kernel_type = kernelType;
+            param.weight = fold.weights;
+            param.weight_label = fold.weightLabels;
+            
+            SVMZoneClassifier zoneClassifier = createZoneClassifier();
+            zoneClassifier.setParameter(param);
+            zoneClassifier.buildClassifier(fold.problem, fold.scaler);
 
-            for (TrainingSample<BxZoneLabel> testSample : testSamples) {
-            	BxZoneLabel expectedClass = testSample.getLabel();
-                BxZoneLabel inferedClass = zoneClassifier.predictLabel(testSample);
-                ClassificationResults documentResults = compareItems(expectedClass, inferedClass);
+            List<BxZoneLabel> inferedClasses = zoneClassifier.predictLabels(fold.testVectors);
+            for (int i = 0; i < inferedClasses.size(); i++) {
+                ClassificationResults documentResults = compareItems(fold.testLabels.get(i), inferedClasses.get(i));
                 iterationResults.add(documentResults);
             }
             summary.add(iterationResults);
@@ -223,7 +543,31 @@ public abstract class SVMParameterFinder {
         labelMap.putAll(value);
     }
 
-    protected abstract SVMZoneClassifier getZoneClassifier(List<TrainingSample<BxZoneLabel>> trainingSamples, int kernelType, double gamma, double C, int degree)
-            throws AnalysisException, IOException, CloneNotSupportedException;
+    public void setCoarseStep(int coarseStep) {
+        this.coarseStep = coarseStep;
+    }
+
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Prepares the samples before they are divided into folds,
+     * for example maps their labels. By default does nothing.
+     * 
+     * @param samples samples
+     */
+    protected void prepareSamples(List<TrainingSample<BxZoneLabel>> samples) {
+    }
+    
+    /**
+     * Creates an untrained classifier using the features of the searched model.
+     * 
+     * @return classifier
+     */
+    protected SVMZoneClassifier createZoneClassifier() {
+        return new SVMZoneClassifier(getFeatureVectorBuilder());
+    }
+    
     protected abstract FeatureVectorBuilder<BxZone, BxPage> getFeatureVectorBuilder();
 }
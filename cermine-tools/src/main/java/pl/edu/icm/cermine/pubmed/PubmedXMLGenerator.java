@@ -787,7 +787,7 @@ public class PubmedXMLGenerator {
                         StringTools.getTrueVizPath(nxmlPath).replace(".xml", "."+coverage+".cxml"));
                 BufferedWriter out = new BufferedWriter(fstream);
                 BxDocumentToTrueVizWriter writer = new BxDocumentToTrueVizWriter();
-                out.write(writer.write(bxDoc.getPages()));
+                writer.write(out, bxDoc.getPages());
                 out.close();
                 
                 System.out.println(" done");
@@ -237,7 +237,7 @@ public class PubmedZoneMerger {
             FileWriter fstream = new FileWriter(newPath);
             BufferedWriter out = new BufferedWriter(fstream);
             BxDocumentToTrueVizWriter writer = new BxDocumentToTrueVizWriter();
-            out.write(writer.write(bxDoc.getPages()));
+            writer.write(out, bxDoc.getPages());
             out.close();
             i++;
             System.out.println("Progress: "+i+" out of "+files.size()+" ("+(i*100./files.size())+"%)");
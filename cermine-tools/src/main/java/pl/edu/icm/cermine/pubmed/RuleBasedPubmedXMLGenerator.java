@@ -914,7 +914,7 @@ public class RuleBasedPubmedXMLGenerator {
                 FileWriter fstream = new FileWriter(cpxmlPath);
                 BufferedWriter out = new BufferedWriter(fstream);
                 BxDocumentToTrueVizWriter writer = new BxDocumentToTrueVizWriter();
-                out.write(writer.write(bxDoc.getPages()));
+                writer.write(out, bxDoc.getPages());
                 out.close();
                 System.out.println("Progress: " + i + " out of " + files.size() + " (" + (i * 100. / files.size()) + "%)");
             } catch (Exception e) {
@@ -18,15 +18,19 @@
 
 package pl.edu.icm.cermine.service;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Properties;
 import java.util.concurrent.*;
 import javax.annotation.PostConstruct;
+import org.apache.commons.io.IOUtils;
 import org.jdom.Document;
 import org.jdom.Element;
+import org.jdom.input.SAXBuilder;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
 import org.slf4j.Logger;
@@ -36,6 +40,8 @@ import org.springframework.stereotype.Component;
 import pl.edu.icm.cermine.PdfNLMContentExtractor;
 import pl.edu.icm.cermine.content.transformers.NLMElementToHTMLWriter;
 import pl.edu.icm.cermine.exception.AnalysisException;
+import pl.edu.icm.cermine.structure.model.BxDocument;
+import pl.edu.icm.cermine.structure.transformers.BinaryBxDocument;
 
 /**
  *
@@ -44,12 +50,43 @@ import pl.edu.icm.cermine.exception.AnalysisException;
 @Component
 public class CermineExtractorServiceImpl implements CermineExtractorService {
 
+    private static final String STRUCTURE_SUFFIX = ".bxd";
+    private static final String RESULT_SUFFIX = ".nlm";
+    
+    private static final String VERSION_FILE = "/cermine-web.version.properties";
+    private static final String VERSION_PROPERTY = "cermine-web.version";
+    
+    /** the models and dictionaries used by the default extractors */
+    private static final String[] MODEL_RESOURCES = {
+        "/pl/edu/icm/cermine/structure/model-initial-default",
+        "/pl/edu/icm/cermine/structure/model-initial-default.range",
+        "/pl/edu/icm/cermine/structure/model-metadata-default",
+        "/pl/edu/icm/cermine/structure/model-metadata-default.range",
+        "/pl/edu/icm/cermine/content/filtering.model",
+        "/pl/edu/icm/cermine/content/filtering.range",
+        "/pl/edu/icm/cermine/content/header.model",
+        "/pl/edu/icm/cermine/content/header.range",
+        "/pl/edu/icm/cermine/bibref/crf.bin.gz",
+        "/pl/edu/icm/cermine/bibref/crf-train-words.txt",
+        "/pl/edu/icm/cermine/metadata/affiliation/acrf-affiliations-pubmed.ser.gz",
+        "/pl/edu/icm/cermine/metadata/affiliation/common-words-affiliations-pubmed.txt",
+        "/pl/edu/icm/cermine/metadata/affiliation/country-codes.txt",
+        "/pl/edu/icm/cermine/metadata/affiliation/features/address_keywords.txt",
+        "/pl/edu/icm/cermine/metadata/affiliation/features/countries2.txt",
+        "/pl/edu/icm/cermine/metadata/affiliation/features/institution_keywords.txt"
+    };
+    
     int threadPoolSize = 4;
     int maxQueueForBatch = 0;
+    long cacheMemorySize = 64L * 1024 * 1024;
+    File cacheDirectory;
+    long cacheDiskSize = 1024L * 1024 * 1024;
+    String modelVersion;
     Logger log = LoggerFactory.getLogger(CermineExtractorServiceImpl.class);
     List<PdfNLMContentExtractor> extractors;
     ExecutorService processingExecutor;
     ExecutorService batchProcessingExecutor;
+    ExtractionCache cache;
     @Autowired
     TaskManager taskManager;
 
@@ -71,6 +108,11 @@ public class CermineExtractorServiceImpl implements CermineExtractorService {
             for (int i = 0; i < threadPoolSize; i++) {
                 extractors.add(new PdfNLMContentExtractor());
             }
+            if (modelVersion == null) {
+                modelVersion = getDefaultModelVersion();
+            }
+            log.debug("Extraction cache model version: " + modelVersion);
+            cache = new ExtractionCache(cacheMemorySize, cacheDirectory, cacheDiskSize);
         } catch (Exception ex) {
             log.error("Failed to init content extractor", ex);
             throw new RuntimeException(ex);
@@ -93,6 +135,111 @@ public class CermineExtractorServiceImpl implements CermineExtractorService {
         this.maxQueueForBatch = maxQueueForBatch;
     }
 
+    public long getCacheMemorySize() {
+        return cacheMemorySize;
+    }
+
+    public void setCacheMemorySize(long cacheMemorySize) {
+        this.cacheMemorySize = cacheMemorySize;
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Sets the directory of the on-disk tier of the result cache. If not set, 
+     * results are cached only in memory.
+     * 
+     * @param cacheDirectory 
+     */
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public long getCacheDiskSize() {
+        return cacheDiskSize;
+    }
+
+    public void setCacheDiskSize(long cacheDiskSize) {
+        this.cacheDiskSize = cacheDiskSize;
+    }
+
+    public String getModelVersion() {
+        return modelVersion;
+    }
+
+    /**
+     * Sets the version of the models and configuration, which is a part of
+     * the cache keys. It should be changed every time the extraction results
+     * may change. If not set, the version is derived from the artifact version
+     * and the contents of the bundled models (see 
+     * {@link #getDefaultModelVersion()}).
+     * 
+     * @param modelVersion 
+     */
+    public void setModelVersion(String modelVersion) {
+        this.modelVersion = modelVersion;
+    }
+
+    /**
+     * Builds the default model version: the artifact version followed by 
+     * a hash of the models bundled with the extractors, so that the cached 
+     * results are not reused after an upgrade or a model change.
+     * 
+     * @return model version
+     * @throws IOException 
+     */
+    public static String getDefaultModelVersion() throws IOException {
+        String version = null;
+        InputStream is = CermineExtractorServiceImpl.class.getResourceAsStream(VERSION_FILE);
+        if (is != null) {
+            try {
+                Properties properties = new Properties();
+                properties.load(is);
+                version = properties.getProperty(VERSION_PROPERTY);
+            } finally {
+                is.close();
+            }
+        }
+        if (version == null || version.trim().isEmpty() || version.contains("${")) {
+            version = "unknown";
+        }
+        
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported!", ex);
+        }
+        byte[] buffer = new byte[65536];
+        for (String resource : MODEL_RESOURCES) {
+            digest.update(resource.getBytes("UTF-8"));
+            InputStream model = PdfNLMContentExtractor.class.getResourceAsStream(resource);
+            if (model == null) {
+                continue;
+            }
+            try {
+                int read;
+                while ((read = model.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                model.close();
+            }
+        }
+        StringBuilder hash = new StringBuilder();
+        byte[] bytes = digest.digest();
+        for (int i = 0; i < 8; i++) {
+            hash.append(String.format("%02x", bytes[i]));
+        }
+        return version.trim() + "." + hash;
+    }
+
+    public ExtractionCache getCache() {
+        return cache;
+    }
+
     @Override
     public ExtractionResult extractNLM(InputStream is) throws AnalysisException, ServiceException {
         log.debug("Starting extractNLM task...");
@@ -162,26 +309,47 @@ public class CermineExtractorServiceImpl implements CermineExtractorService {
     }
 
     /**
-     * Method to perform real extraction.
+     * Method to perform real extraction. Results, as well as the intermediate 
+     * structure, are taken from the cache if possible.
      *
      * @param result
-     * @param input
+     * @param pdf
      * @return
      */
-    private ExtractionResult performExtraction(ExtractionResult result, InputStream input) {
+    private ExtractionResult performExtraction(ExtractionResult result, byte[] pdf) {
         PdfNLMContentExtractor e = null;
         try {
-            e = obtainExtractor();
-            result.processingStart = new Date();
-            log.debug("Starting extraction on the input stream...");
-            Element resEl = e.extractContent(input);
-            log.debug("Extraction ok..");
-            XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
-            Document doc = new Document(resEl);
-            String res = outputter.outputString(doc);
-            result.setNlm(res);
-            String html = new NLMElementToHTMLWriter().write(resEl);
-            result.setHtml(html);
+            String key = ExtractionCache.getKey(pdf, modelVersion);
+            byte[] cached = cache.get(key + RESULT_SUFFIX);
+            log.debug("Extraction cache hit rate: " + cache.getHitRate());
+            Document doc;
+            if (cached != null) {
+                log.debug("Extraction result found in the cache");
+                result.processingStart = new Date();
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(cached));
+                result.setNlm(readString(in));
+                result.setHtml(readString(in));
+                doc = new SAXBuilder().build(new StringReader(result.getNlm()));
+            } else {
+                e = obtainExtractor();
+                result.processingStart = new Date();
+                log.debug("Starting extraction on the input stream...");
+                Element resEl = e.extractContent(getStructure(e, key, pdf));
+                log.debug("Extraction ok..");
+                XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
+                doc = new Document(resEl);
+                String res = outputter.outputString(doc);
+                result.setNlm(res);
+                String html = new NLMElementToHTMLWriter().write(resEl);
+                result.setHtml(html);
+                
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                DataOutputStream dos = new DataOutputStream(out);
+                writeString(dos, res);
+                writeString(dos, html);
+                dos.flush();
+                cache.put(key + RESULT_SUFFIX, out.toByteArray());
+            }
             log.debug("Article meta extraction start:");
             result.setMeta(ArticleMeta.extractNLM(doc));
             log.debug("Article meta extraction succeeded");
@@ -199,6 +367,32 @@ public class CermineExtractorServiceImpl implements CermineExtractorService {
         return result;
     }
 
+    private BxDocument getStructure(PdfNLMContentExtractor e, String key, byte[] pdf) 
+            throws AnalysisException, IOException {
+        byte[] cached = cache.get(key + STRUCTURE_SUFFIX);
+        if (cached != null) {
+            log.debug("Document structure found in the cache");
+            return BinaryBxDocument.read(new ByteArrayInputStream(cached)).getDocument();
+        }
+        BxDocument document = e.getStructureExtractor().extractStructure(new ByteArrayInputStream(pdf));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryBxDocument.write(document, out);
+        cache.put(key + STRUCTURE_SUFFIX, out.toByteArray());
+        return document;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
     private class ExtractingTaskExecution implements Runnable {
 
         ExtractionTask task;
@@ -216,7 +410,7 @@ public class CermineExtractorServiceImpl implements CermineExtractorService {
             result.setProcessingStart(new Date());
             result.setSubmit(task.getCreationDate());
             log.debug("Running extraction: " + task.getId());
-            performExtraction(result, new ByteArrayInputStream(task.getPdf()));
+            performExtraction(result, task.getPdf());
             task.setResult(result);
             log.debug("Processing finished: " + task.getId());
             if (result.isSucceeded()) {
@@ -240,7 +434,18 @@ public class CermineExtractorServiceImpl implements CermineExtractorService {
 
         @Override
         public ExtractionResult call() {
-            return performExtraction(result, input);
+            byte[] pdf;
+            try {
+                pdf = IOUtils.toByteArray(input);
+            } catch (IOException ex) {
+                log.debug("Exception while reading input: ", ex);
+                result.setProcessingStart(new Date());
+                result.setError(ex);
+                result.setSucceeded(false);
+                result.setProcessingEnd(new Date());
+                return result;
+            }
+            return performExtraction(result, pdf);
         }
     }
 }
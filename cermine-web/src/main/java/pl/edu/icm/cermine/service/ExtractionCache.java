@@ -0,0 +1,260 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Two-tier LRU cache of extraction results. Entries are kept in memory
+ * and, if a directory is given, on disk, both tiers bounded by the total size
+ * of the entries. Disk entries survive restarts, their access order is kept
+ * in the file modification times.
+ * 
+ * Keys are built from the SHA-256 digest of the PDF file and the version 
+ * of the models and configuration used for the extraction. Only the entries 
+ * with keys built this way are stored on disk, and the cache reads, replaces
+ * and removes only the files with such names, so the directory can be shared
+ * with other files.
+ */
+public class ExtractionCache {
+
+    /** the format of the keys built by {@link #getKey(byte[], String)} */
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}-[A-Za-z0-9._]*");
+    
+    /** the format of the names of temporary files of entries being stored */
+    private static final Pattern TEMP_PATTERN = Pattern.compile("\\.[0-9a-f]{64}-[A-Za-z0-9._]*\\.[0-9]+\\.tmp");
+    
+    Logger log = LoggerFactory.getLogger(ExtractionCache.class);
+    
+    private final long maxMemorySize;
+    private final File directory;
+    private final long maxDiskSize;
+    
+    private final LinkedHashMap<String, byte[]> memoryEntries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private long memorySize;
+    private final LinkedHashMap<String, Long> diskEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long diskSize;
+    
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+
+    /**
+     * @param maxMemorySize maximum total size of the entries kept in memory
+     * @param directory cache directory, or null if entries should not be
+     * stored on disk
+     * @param maxDiskSize maximum total size of the entries kept on disk
+     */
+    public ExtractionCache(long maxMemorySize, File directory, long maxDiskSize) {
+        this.maxMemorySize = maxMemorySize;
+        this.directory = directory;
+        this.maxDiskSize = maxDiskSize;
+        if (directory != null) {
+            loadDiskEntries();
+        }
+    }
+
+    private void loadDiskEntries() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create cache directory: " + directory);
+        }
+        File[] files = directory.listFiles();
+        Arrays.sort(files, new Comparator<File>() {
+
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            if (TEMP_PATTERN.matcher(file.getName()).matches()) {
+                file.delete();
+            } else if (KEY_PATTERN.matcher(file.getName()).matches()) {
+                diskEntries.put(file.getName(), file.length());
+                diskSize += file.length();
+            }
+        }
+        evictDiskEntries();
+    }
+
+    /**
+     * Builds the cache key.
+     * 
+     * @param pdf PDF file content
+     * @param version models and configuration version
+     * @return the key
+     */
+    public static String getKey(byte[] pdf, String version) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest(pdf)) {
+                key.append(String.format("%02x", b));
+            }
+            key.append('-').append(version.replaceAll("[^A-Za-z0-9._]", "_"));
+            return key.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported!", ex);
+        }
+    }
+
+    /**
+     * Returns cached value.
+     * 
+     * @param key the key
+     * @return the value or null, if the key is not cached
+     */
+    public byte[] get(String key) {
+        synchronized (this) {
+            byte[] value = memoryEntries.get(key);
+            if (value != null) {
+                memoryHits++;
+                return value;
+            }
+            if (diskEntries.get(key) == null) {
+                misses++;
+                return null;
+            }
+        }
+        File file = new File(directory, key);
+        try {
+            byte[] value = FileUtils.readFileToByteArray(file);
+            file.setLastModified(System.currentTimeMillis());
+            synchronized (this) {
+                diskHits++;
+                putInMemory(key, value);
+            }
+            return value;
+        } catch (IOException ex) {
+            log.warn("Cannot read cache entry: " + file, ex);
+            synchronized (this) {
+                misses++;
+                removeFromDisk(key);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores the value. The value is stored on disk only if the key was built
+     * with {@link #getKey(byte[], String)}.
+     * 
+     * @param key the key
+     * @param value the value
+     */
+    public void put(String key, byte[] value) {
+        synchronized (this) {
+            putInMemory(key, value);
+        }
+        if (directory == null || value.length > maxDiskSize || !KEY_PATTERN.matcher(key).matches()) {
+            return;
+        }
+        File file = new File(directory, key);
+        File temp = new File(directory, "." + key + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            OutputStream os = new FileOutputStream(temp);
+            try {
+                os.write(value);
+            } finally {
+                os.close();
+            }
+            synchronized (this) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Cannot rename " + temp + " to " + file);
+                }
+                removeFromDisk(key);
+                diskEntries.put(key, (long) value.length);
+                diskSize += value.length;
+                evictDiskEntries();
+            }
+        } catch (IOException ex) {
+            log.warn("Cannot store cache entry: " + file, ex);
+            temp.delete();
+        }
+    }
+
+    private void putInMemory(String key, byte[] value) {
+        byte[] old = memoryEntries.remove(key);
+        if (old != null) {
+            memorySize -= old.length;
+        }
+        if (value.length > maxMemorySize) {
+            return;
+        }
+        memoryEntries.put(key, value);
+        memorySize += value.length;
+        Iterator<byte[]> it = memoryEntries.values().iterator();
+        while (memorySize > maxMemorySize) {
+            memorySize -= it.next().length;
+            it.remove();
+        }
+    }
+
+    private void removeFromDisk(String key) {
+        Long size = diskEntries.remove(key);
+        if (size != null) {
+            diskSize -= size;
+        }
+    }
+
+    private void evictDiskEntries() {
+        Iterator<Map.Entry<String, Long>> it = diskEntries.entrySet().iterator();
+        while (diskSize > maxDiskSize) {
+            Map.Entry<String, Long> entry = it.next();
+            new File(directory, entry.getKey()).delete();
+            diskSize -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    public synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the fraction of lookups answered from memory or disk
+     */
+    public synchronized double getHitRate() {
+        long lookups = memoryHits + diskHits + misses;
+        return lookups == 0 ? 0 : (double) (memoryHits + diskHits) / lookups;
+    }
+
+}
@@ -74,6 +74,48 @@ public class CermineExtractorServiceImplTest {
 
     }
 
+    /**
+     * Test of the extraction result cache.
+     */
+    @Test
+    public void testCache() throws Exception {
+        System.out.println("cache");
+        CermineExtractorServiceImpl instance = new CermineExtractorServiceImpl();
+        instance.init();
+        ExtractionResult result = instance.extractNLM(this.getClass().getResourceAsStream("/pdf/test1.pdf"));
+        assertTrue(result.isSucceeded());
+        assertEquals(0, instance.getCache().getMemoryHits());
+        
+        ExtractionResult cached = instance.extractNLM(this.getClass().getResourceAsStream("/pdf/test1.pdf"));
+        assertTrue(cached.isSucceeded());
+        assertEquals(1, instance.getCache().getMemoryHits());
+        assertEquals(result.getNlm(), cached.getNlm());
+        assertEquals(result.getHtml(), cached.getHtml());
+        assertEquals(result.getMeta().getTitle(), cached.getMeta().getTitle());
+    }
+
+    /**
+     * Test of the default model version, a part of the cache keys.
+     */
+    @Test
+    public void testModelVersion() throws Exception {
+        System.out.println("modelVersion");
+        String version = CermineExtractorServiceImpl.getDefaultModelVersion();
+        assertTrue(version.matches(".+\\.[0-9a-f]{16}"));
+        assertEquals(version, CermineExtractorServiceImpl.getDefaultModelVersion());
+        
+        CermineExtractorServiceImpl instance = new CermineExtractorServiceImpl();
+        instance.setThreadPoolSize(1);
+        instance.init();
+        assertEquals(version, instance.getModelVersion());
+        
+        instance = new CermineExtractorServiceImpl();
+        instance.setThreadPoolSize(1);
+        instance.setModelVersion("custom");
+        instance.init();
+        assertEquals("custom", instance.getModelVersion());
+    }
+
     /**
      * Test of extractNLM method, of class CermineExtractorServiceImpl.
      */
@@ -0,0 +1,137 @@
+/**
+ * This file is part of CERMINE project.
+ * Copyright (c) 2011-2013 ICM-UW
+ *
+ * CERMINE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CERMINE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with CERMINE. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.edu.icm.cermine.service;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExtractionCacheTest {
+
+    File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("extraction", "cache");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testGetKey() throws Exception {
+        byte[] pdf = "pdf".getBytes("UTF-8");
+        String key = ExtractionCache.getKey(pdf, "1.0/a");
+        assertEquals("c35b21d6ca39aa7cc3b79a705d989f1a6e88b99ab43988d74048799e3db926a3-1.0_a", key);
+        assertEquals(key, ExtractionCache.getKey(pdf, "1.0/a"));
+        assertFalse(key.equals(ExtractionCache.getKey(pdf, "1.1")));
+        assertFalse(key.equals(ExtractionCache.getKey("other".getBytes("UTF-8"), "1.0/a")));
+    }
+
+    @Test
+    public void testMemoryEviction() {
+        ExtractionCache cache = new ExtractionCache(10, null, 0);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        assertNotNull(cache.get("a"));
+        cache.put("c", new byte[4]);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        cache.put("d", new byte[11]);
+        assertNull(cache.get("d"));
+        
+        assertEquals(3, cache.getMemoryHits());
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0.6, cache.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void testDisk() throws IOException {
+        String a = getKey("a");
+        ExtractionCache cache = new ExtractionCache(0, directory, 100);
+        cache.put(a, new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get(a));
+        assertEquals(1, cache.getDiskHits());
+        
+        ExtractionCache reopened = new ExtractionCache(10, directory, 100);
+        assertArrayEquals(new byte[]{1, 2, 3}, reopened.get(a));
+        assertArrayEquals(new byte[]{1, 2, 3}, reopened.get(a));
+        assertEquals(1, reopened.getDiskHits());
+        assertEquals(1, reopened.getMemoryHits());
+    }
+
+    @Test
+    public void testDiskEviction() throws IOException {
+        String a = getKey("a");
+        String b = getKey("b");
+        String c = getKey("c");
+        ExtractionCache cache = new ExtractionCache(0, directory, 10);
+        cache.put(a, new byte[4]);
+        cache.put(b, new byte[4]);
+        assertNotNull(cache.get(a));
+        cache.put(c, new byte[4]);
+        assertNotNull(cache.get(a));
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(c));
+        assertFalse(new File(directory, b).exists());
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    @Test
+    public void testSharedDirectory() throws IOException {
+        String a = getKey("a");
+        String b = getKey("b");
+        directory.mkdirs();
+        File other = new File(directory, "other.pdf");
+        File otherTemp = new File(directory, "other.tmp");
+        FileUtils.writeByteArrayToFile(other, new byte[20]);
+        FileUtils.writeByteArrayToFile(otherTemp, new byte[20]);
+        
+        ExtractionCache cache = new ExtractionCache(0, directory, 10);
+        assertTrue(other.exists());
+        assertTrue(otherTemp.exists());
+        cache.put(a, new byte[6]);
+        cache.put(b, new byte[6]);
+        cache.put("c", new byte[2]);
+        assertNull(cache.get(a));
+        assertNotNull(cache.get(b));
+        assertNull(cache.get("c"));
+        assertFalse(new File(directory, "c").exists());
+        
+        ExtractionCache reopened = new ExtractionCache(0, directory, 5);
+        assertNull(reopened.get(b));
+        assertTrue(other.exists());
+        assertTrue(otherTemp.exists());
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    private static String getKey(String pdf) throws IOException {
+        return ExtractionCache.getKey(pdf.getBytes("UTF-8"), "1.0");
+    }
+
+}